@@ -4,7 +4,7 @@ import com.alibaba.fastjson.JSONObject;
 import com.google.common.collect.Lists;
 import com.sohu.tv.cc.client.spectator.heartbeat.ClientStatusEnum;
 import com.sohu.tv.cc.client.spectator.util.Constants;
-import com.sohu.tv.cc.client.spectator.util.HttpUtils;
+import com.sohu.tv.cc.client.spectator.util.TopologySnapshot;
 import com.sohu.tv.cc.client.spectator.util.StringUtil;
 import io.lettuce.core.ConnectionId;
 import io.lettuce.core.RedisURI;
@@ -44,6 +44,12 @@ public class RedisClusterClientBuilder {
     //构建锁
     private final Lock lock = new ReentrantLock();
 
+    //拓扑快照目录, 为null时不使用快照(默认)
+    private String topologySnapshotDir;
+
+    //拓扑快照最大过期时间(毫秒)
+    private long topologySnapshotMaxStalenessMillis = TopologySnapshot.DEFAULT_MAX_STALENESS_MILLIS;
+
     //客户端配置
     private ClusterClientOptions.Builder clusterClientOptionsBuilder;
 
@@ -60,14 +66,15 @@ public class RedisClusterClientBuilder {
 
     public RedisClusterClient build() {
         if (redisClusterClient == null) {
+            String url = String.format(Constants.REDIS_CLUSTER_URL, String.valueOf(appId));
+            TopologySnapshot snapshot = new TopologySnapshot(url, topologySnapshotDir, topologySnapshotMaxStalenessMillis);
             while (true) {
                 try {
                     if(lock.tryLock(10, TimeUnit.SECONDS)){
                         if (redisClusterClient != null) {
                             return redisClusterClient;
                         }
-                        String url = String.format(Constants.REDIS_CLUSTER_URL, String.valueOf(appId));
-                        String response = HttpUtils.doGet(url);
+                        String response = snapshot.fetch();
                         JSONObject jsonObject = JSONObject.parseObject(response);
                         if (jsonObject == null) {
                             logger.warn("cluster is invalid, info: {}, appId: {}, continue...", response, appId);
@@ -197,4 +204,19 @@ public class RedisClusterClientBuilder {
     public List<RedisURI> getRedisURIs() {
         return redisURIs;
     }
+
+    /**
+     * 拓扑快照: 从CacheCloud获取的拓扑写入本地文件, 启动时优先使用未过期的快照构建客户端(同时在后台刷新快照),
+     * CacheCloud不可用时不阻塞启动
+     *
+     * @param dir                快照目录, 为null时不使用快照(默认); 快照包含密码, 目录应只对当前用户可读写,
+     *                           其它用户可访问的已有目录不会被使用
+     * @param maxStalenessMillis 快照最大过期时间(毫秒), 默认1天
+     * @return
+     */
+    public RedisClusterClientBuilder setTopologySnapshot(String dir, long maxStalenessMillis) {
+        this.topologySnapshotDir = dir;
+        this.topologySnapshotMaxStalenessMillis = maxStalenessMillis;
+        return this;
+    }
 }
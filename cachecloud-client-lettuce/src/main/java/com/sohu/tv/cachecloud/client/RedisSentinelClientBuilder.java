@@ -3,7 +3,7 @@ package com.sohu.tv.cachecloud.client;
 import com.alibaba.fastjson.JSONObject;
 import com.sohu.tv.cc.client.spectator.heartbeat.ClientStatusEnum;
 import com.sohu.tv.cc.client.spectator.util.Constants;
-import com.sohu.tv.cc.client.spectator.util.HttpUtils;
+import com.sohu.tv.cc.client.spectator.util.TopologySnapshot;
 import com.sohu.tv.cc.client.spectator.util.StringUtil;
 import io.lettuce.core.ClientOptions;
 import io.lettuce.core.ConnectionId;
@@ -39,6 +39,12 @@ public class RedisSentinelClientBuilder {
     //构建锁
     private final Lock lock = new ReentrantLock();
 
+    //拓扑快照目录, 为null时不使用快照(默认)
+    private String topologySnapshotDir;
+
+    //拓扑快照最大过期时间(毫秒)
+    private long topologySnapshotMaxStalenessMillis = TopologySnapshot.DEFAULT_MAX_STALENESS_MILLIS;
+
     //客户端配置
     private ClientOptions.Builder clientOptionsBuilder;
 
@@ -55,13 +61,15 @@ public class RedisSentinelClientBuilder {
 
     public RedisClient build() {
         if (redisClient == null) {
+            String url = String.format(Constants.REDIS_SENTINEL_URL, appId);
+            TopologySnapshot snapshot = new TopologySnapshot(url, topologySnapshotDir, topologySnapshotMaxStalenessMillis);
             while (true) {
                 try {
                     if(lock.tryLock(10, TimeUnit.MILLISECONDS)){
                         if (redisClient != null) {
                             return redisClient;
                         }
-                        String response = HttpUtils.doGet(String.format(Constants.REDIS_SENTINEL_URL, appId));
+                        String response = snapshot.fetch();
                         if (response == null || response.isEmpty()) {
                             logger.warn("get response from remote server error, appId: {}, continue...", appId);
                             continue;
@@ -188,4 +196,18 @@ public class RedisSentinelClientBuilder {
         return redisURI;
     }
 
+    /**
+     * 拓扑快照: 从CacheCloud获取的拓扑写入本地文件, 启动时优先使用未过期的快照构建客户端(同时在后台刷新快照),
+     * CacheCloud不可用时不阻塞启动
+     *
+     * @param dir                快照目录, 为null时不使用快照(默认); 快照包含密码, 目录应只对当前用户可读写,
+     *                           其它用户可访问的已有目录不会被使用
+     * @param maxStalenessMillis 快照最大过期时间(毫秒), 默认1天
+     * @return
+     */
+    public RedisSentinelClientBuilder setTopologySnapshot(String dir, long maxStalenessMillis) {
+        this.topologySnapshotDir = dir;
+        this.topologySnapshotMaxStalenessMillis = maxStalenessMillis;
+        return this;
+    }
 }
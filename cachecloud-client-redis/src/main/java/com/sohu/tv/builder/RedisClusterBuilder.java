@@ -2,18 +2,20 @@ package com.sohu.tv.builder;
 
 import com.sohu.tv.cc.client.spectator.AsyncStatsCollector;
 import com.sohu.tv.cc.client.spectator.ClientConfig;
-import com.sohu.tv.cc.client.spectator.StatsCollector;
 import com.sohu.tv.cc.client.spectator.heartbeat.ClientStatusEnum;
+import com.sohu.tv.cc.client.spectator.hotkey.HotKeyDetector;
 import com.sohu.tv.cc.client.spectator.json.JSONUtils;
 import com.sohu.tv.cc.client.spectator.util.Constants;
-import com.sohu.tv.cc.client.spectator.util.HttpUtils;
+import com.sohu.tv.cc.client.spectator.util.TopologySnapshot;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.*;
 import redis.clients.jedis.util.AuthUtil;
+import redis.clients.jedis.util.PipelineExecutors;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -58,11 +60,130 @@ public class RedisClusterBuilder {
      */
     private boolean whetherInitIdleJedis = false;
 
+    /**
+     * 连接池预热时间上限(毫秒)
+     */
+    private long warmUpTimeoutMillis = PoolWarmer.DEFAULT_TIMEOUT_MILLIS;
+
+    /**
+     * 批量命令是否各节点并行执行, 默认关闭
+     */
+    private boolean pipelineParallel = false;
+
+    /**
+     * 批量命令并行执行线程数(JDK21以下有效)
+     */
+    private int pipelineThreads = Runtime.getRuntime().availableProcessors() * 2;
+
+    /**
+     * 批量命令并行执行的自定义线程池
+     */
+    private ExecutorService pipelineExecutor;
+
+    /**
+     * 批量命令是否按slot合并为原生多key命令(MGET/MSET/DEL等), 默认关闭
+     */
+    private boolean slotCommandEnabled = false;
+
+    /**
+     * 每条多key命令最多包含的key数量, 小于等于0时不限制
+     */
+    private int slotCommandMaxKeys = 0;
+
+    /**
+     * 批量命令每个子pipeline最多发送的命令数, 小于等于0时不限制
+     */
+    private int pipelineMaxCommands = 0;
+
+    /**
+     * 批量命令每个子pipeline最多发送的请求字节数, 小于等于0时不限制
+     */
+    private long pipelineMaxBytes = 0;
+
+    /**
+     * 一次批量命令回复的总字节数上限, 小于等于0时不限制
+     */
+    private long pipelineMaxReplyBytes = 0;
+
+    /**
+     * 两次成功的slot拓扑刷新的最小间隔(毫秒), 默认0不限制
+     */
+    private long topologyRefreshIntervalMillis = JedisClusterInfoCache.DEFAULT_MIN_REFRESH_INTERVAL_MILLIS;
+
+    /**
+     * 读命令的节点选择策略, 默认只读master
+     */
+    private ReadFrom readFrom = ReadFrom.MASTER;
+
+    /**
+     * 读命令的对冲策略, 默认不对冲
+     */
+    private HedgePolicy hedgePolicy;
+
+    /**
+     * 是否隔离故障节点
+     */
+    private boolean nodeQuarantineEnabled = false;
+
+    /**
+     * 节点隔离阈值: 连续失败次数, 窗口内错误率, 按错误率隔离需要的最少命令数
+     */
+    private int nodeQuarantineConsecutiveFailures = NodeHealth.DEFAULT_CONSECUTIVE_FAILURES;
+
+    private double nodeQuarantineErrorRate = NodeHealth.DEFAULT_ERROR_RATE_THRESHOLD;
+
+    private int nodeQuarantineMinRequests = NodeHealth.DEFAULT_MIN_REQUESTS;
+
+    /**
+     * 多路复用连接时每个节点的socket数, 0表示每个连接独占socket
+     */
+    private int multiplexedConnections = 0;
+
+    /**
+     * 自动批量的等待时间(微秒), 0表示关闭
+     */
+    private long autoBatchWindowMicros = 0;
+
+    /**
+     * 自动批量一次写出的命令数上限
+     */
+    private int autoBatchMaxCommands = MultiplexedConnection.DEFAULT_MAX_BATCH_COMMANDS;
+
+    /**
+     * 近端缓存最多缓存项数, 0表示关闭
+     */
+    private int nearCacheMaxEntries = 0;
+
+    /**
+     * 近端缓存的key前缀, 为空时缓存所有key
+     */
+    private String[] nearCachePrefixes = new String[0];
+
+    /**
+     * 本地缓存, 为null时buildLocalCached不可用
+     */
+    private LocalCache localCache;
+
     /**
      * 构建锁
      */
     private final Lock lock = new ReentrantLock();
 
+    /**
+     * 拓扑快照目录, 为null时不使用快照(默认)
+     */
+    private String topologySnapshotDir;
+
+    /**
+     * 拓扑快照最大过期时间(毫秒)
+     */
+    private long topologySnapshotMaxStalenessMillis = TopologySnapshot.DEFAULT_MAX_STALENESS_MILLIS;
+
+    /**
+     * 热点key探测器, 为null时不探测
+     */
+    private HotKeyDetector hotKeyDetector;
+
     /**
      * 是否开启统计,默认开启
      */
@@ -87,14 +208,15 @@ public class RedisClusterBuilder {
 
     public PipelineCluster build() {
         if (pipelineCluster == null) {
+            String url = String.format(Constants.REDIS_CLUSTER_URL, String.valueOf(appId));
+            TopologySnapshot snapshot = new TopologySnapshot(url, topologySnapshotDir, topologySnapshotMaxStalenessMillis);
             while (true) {
                 try {
                     lock.tryLock(10, TimeUnit.SECONDS);
                     if (pipelineCluster != null) {
                         return pipelineCluster;
                     }
-                    String url = String.format(Constants.REDIS_CLUSTER_URL, String.valueOf(appId));
-                    String response = HttpUtils.doGet(url);
+                    String response = snapshot.fetch();
                     Map<String, Object> jsonObject = null;
                     try {
                         Object object = JSONUtils.parse(response);
@@ -143,12 +265,45 @@ public class RedisClusterBuilder {
                         pkey = "";
                     }
                     ClientConfig clientConfig = new ClientConfig(getConfigMap(), clientStatIsOpen);
-                    StatsCollector statsCollector = new AsyncStatsCollector(appId, clientConfig);
+                    AsyncStatsCollector statsCollector = new AsyncStatsCollector(appId, clientConfig);
+                    statsCollector.setHotKeyDetector(hotKeyDetector);
+                    if (localCache != null) {
+                        statsCollector.registerLocalCache(localCache);
+                    }
                     statsCollector.start();
 
                     //String password = appId + AuthUtil.SPLIT_KEY + pkey;
-                    pipelineCluster = new PipelineCluster(jedisPoolConfig, nodeList, connectionTimeout, soTimeout,
-                            maxAttempts, pkey, whetherInitIdleJedis, statsCollector);
+                    PipelineCluster cluster = new PipelineCluster(jedisPoolConfig, nodeList, connectionTimeout, soTimeout,
+                            maxAttempts, pkey, false, statsCollector);
+                    if (pipelineParallel && pipelineExecutor != null) {
+                        cluster.setPipelineExecutor(pipelineExecutor);
+                    } else if (pipelineParallel) {
+                        // 按pipelineThreads创建的线程池随集群close关闭
+                        cluster.setPipelineExecutor(PipelineExecutors.newExecutor(pipelineThreads), true);
+                    }
+                    cluster.setSlotCommandEnabled(slotCommandEnabled);
+                    cluster.setSlotCommandMaxKeys(slotCommandMaxKeys);
+                    cluster.setPipelineMaxCommands(pipelineMaxCommands);
+                    cluster.setPipelineMaxBytes(pipelineMaxBytes);
+                    cluster.setPipelineMaxReplyBytes(pipelineMaxReplyBytes);
+                    cluster.setTopologyRefreshIntervalMillis(topologyRefreshIntervalMillis);
+                    cluster.setReadFrom(readFrom);
+                    cluster.setHedgePolicy(hedgePolicy);
+                    cluster.setNodeQuarantineThresholds(nodeQuarantineConsecutiveFailures, nodeQuarantineErrorRate,
+                            nodeQuarantineMinRequests);
+                    cluster.setNodeQuarantineEnabled(nodeQuarantineEnabled);
+                    cluster.setMultiplexedConnections(multiplexedConnections);
+                    if (autoBatchWindowMicros > 0) {
+                        cluster.setAutoBatch(autoBatchWindowMicros, autoBatchMaxCommands);
+                    }
+                    if (nearCacheMaxEntries > 0) {
+                        cluster.setNearCache(nearCacheMaxEntries, nearCachePrefixes);
+                    }
+                    if (whetherInitIdleJedis) {
+                        // 从从节点读取时同时预热从节点
+                        cluster.warmUp(readFrom != ReadFrom.MASTER, jedisPoolConfig.getMinIdle(), warmUpTimeoutMillis);
+                    }
+                    pipelineCluster = cluster;
 
                     //启动主动刷新集群拓扑线程
                     ClusterAdaptiveRefreshScheduler scheduler = new ClusterAdaptiveRefreshScheduler(pipelineCluster);
@@ -171,6 +326,32 @@ public class RedisClusterBuilder {
         }
     }
 
+    /**
+     * 构造异步客户端, 共享build()创建的PipelineCluster, 使用时需要自行close释放线程池
+     *
+     * @param threads   异步命令执行线程数
+     * @param queueSize 等待队列长度, 队列满时返回失败的Future
+     * @param timeoutMillis 默认超时(毫秒), 小于等于0时不设置超时
+     * @return
+     */
+    public AsyncPipelineCluster buildAsync(int threads, int queueSize, long timeoutMillis) {
+        AsyncPipelineCluster asyncPipelineCluster = new AsyncPipelineCluster(build(), threads, queueSize);
+        asyncPipelineCluster.setTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        return asyncPipelineCluster;
+    }
+
+    /**
+     * 构造带本地缓存的客户端, 共享build()创建的PipelineCluster, 需要先通过setLocalCache设置本地缓存
+     *
+     * @return
+     */
+    public LocalCachedCluster<PipelineCluster> buildLocalCached() {
+        if (localCache == null) {
+            throw new IllegalStateException("localCache is not set, appId: " + appId);
+        }
+        return new LocalCachedCluster<PipelineCluster>(build(), localCache);
+    }
+
     /**
      * 设置配置
      *
@@ -225,6 +406,17 @@ public class RedisClusterBuilder {
         return this;
     }
 
+    /**
+     * 设置连接池预热时间上限(毫秒), 超时未建立的连接不再等待
+     *
+     * @param warmUpTimeoutMillis
+     * @return
+     */
+    public RedisClusterBuilder setWarmUpTimeoutMillis(long warmUpTimeoutMillis) {
+        this.warmUpTimeoutMillis = warmUpTimeoutMillis;
+        return this;
+    }
+
     /**
      * redis操作超时时间:默认2秒
      * 如果timeout小于0 超时:200微秒
@@ -259,6 +451,218 @@ public class RedisClusterBuilder {
         return this;
     }
 
+    /**
+     * 批量命令(mget/mset/mHgetAll等)是否各节点并行执行
+     *
+     * @param pipelineParallel
+     * @return
+     */
+    public RedisClusterBuilder setPipelineParallel(boolean pipelineParallel) {
+        this.pipelineParallel = pipelineParallel;
+        return this;
+    }
+
+    /**
+     * 批量命令并行执行线程数, JDK21+使用虚拟线程时忽略
+     *
+     * @param pipelineThreads
+     * @return
+     */
+    public RedisClusterBuilder setPipelineThreads(int pipelineThreads) {
+        this.pipelineThreads = pipelineThreads;
+        return this;
+    }
+
+    /**
+     * 批量命令并行执行的自定义线程池, 设置后开启并行执行; 线程池由调用方负责关闭
+     *
+     * @param pipelineExecutor
+     * @return
+     */
+    public RedisClusterBuilder setPipelineExecutor(ExecutorService pipelineExecutor) {
+        this.pipelineExecutor = pipelineExecutor;
+        this.pipelineParallel = pipelineExecutor != null;
+        return this;
+    }
+
+    /**
+     * 批量命令(mget/mset/mdel等)是否按slot合并为原生多key命令, 默认关闭;
+     * 开启后非string类型的key在MGET中返回nil而不是WRONGTYPE错误
+     *
+     * @param slotCommandEnabled
+     * @return
+     */
+    public RedisClusterBuilder setSlotCommandEnabled(boolean slotCommandEnabled) {
+        this.slotCommandEnabled = slotCommandEnabled;
+        return this;
+    }
+
+    /**
+     * 每条多key命令最多包含的key数量, 小于等于0时不限制
+     *
+     * @param slotCommandMaxKeys
+     * @return
+     */
+    public RedisClusterBuilder setSlotCommandMaxKeys(int slotCommandMaxKeys) {
+        this.slotCommandMaxKeys = slotCommandMaxKeys;
+        return this;
+    }
+
+    /**
+     * 批量命令每个子pipeline最多发送的命令数, 超过时分片依次执行
+     *
+     * @param pipelineMaxCommands
+     * @return
+     */
+    public RedisClusterBuilder setPipelineMaxCommands(int pipelineMaxCommands) {
+        this.pipelineMaxCommands = pipelineMaxCommands;
+        return this;
+    }
+
+    /**
+     * 批量命令每个子pipeline最多发送的请求字节数, 超过时分片依次执行
+     *
+     * @param pipelineMaxBytes
+     * @return
+     */
+    public RedisClusterBuilder setPipelineMaxBytes(long pipelineMaxBytes) {
+        this.pipelineMaxBytes = pipelineMaxBytes;
+        return this;
+    }
+
+    /**
+     * 一次批量命令回复的总字节数上限, 超过时抛出JedisPipelineLimitException
+     *
+     * @param pipelineMaxReplyBytes
+     * @return
+     */
+    public RedisClusterBuilder setPipelineMaxReplyBytes(long pipelineMaxReplyBytes) {
+        this.pipelineMaxReplyBytes = pipelineMaxReplyBytes;
+        return this;
+    }
+
+    /**
+     * 两次成功的slot拓扑刷新的最小间隔(毫秒), 间隔内MOVED/连接异常触发的刷新请求合并为间隔结束时的一次刷新,
+     * 刷新失败不计入间隔; 默认0, 只合并并发的刷新请求
+     *
+     * @param topologyRefreshIntervalMillis
+     * @return
+     */
+    public RedisClusterBuilder setTopologyRefreshIntervalMillis(long topologyRefreshIntervalMillis) {
+        this.topologyRefreshIntervalMillis = topologyRefreshIntervalMillis;
+        return this;
+    }
+
+    /**
+     * 读命令(含mget/mHgetAll等批量读命令)的节点选择策略: MASTER/REPLICA_PREFERRED/REPLICA/NEAREST
+     *
+     * @param readFrom
+     * @return
+     */
+    public RedisClusterBuilder setReadFrom(ReadFrom readFrom) {
+        this.readFrom = readFrom;
+        return this;
+    }
+
+    /**
+     * 读命令的对冲策略, 如HedgePolicy.p95Delay(PipelineExecutors.newAsyncExecutor(16, 256), HedgePolicy.DEFAULT_BUDGET_RATIO),
+     * 线程池由调用方负责关闭
+     *
+     * @param hedgePolicy
+     * @return
+     */
+    public RedisClusterBuilder setHedgePolicy(HedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+        return this;
+    }
+
+    /**
+     * 是否隔离故障节点(默认关闭), 隔离期间该节点的命令立即失败而不是等待连接超时
+     *
+     * @param nodeQuarantineEnabled
+     * @return
+     */
+    public RedisClusterBuilder setNodeQuarantineEnabled(boolean nodeQuarantineEnabled) {
+        this.nodeQuarantineEnabled = nodeQuarantineEnabled;
+        return this;
+    }
+
+    /**
+     * 节点隔离阈值(开启隔离时生效), 默认连续失败3次, 或10秒窗口内至少20条命令且错误率达到50%
+     *
+     * @param consecutiveFailures 连续建连失败或连接异常次数
+     * @param errorRate           窗口内错误率, (0, 1]
+     * @param minRequests         按错误率隔离时窗口内需要的最少命令数
+     * @return
+     */
+    public RedisClusterBuilder setNodeQuarantineThresholds(int consecutiveFailures, double errorRate, int minRequests) {
+        this.nodeQuarantineConsecutiveFailures = consecutiveFailures;
+        this.nodeQuarantineErrorRate = errorRate;
+        this.nodeQuarantineMinRequests = minRequests;
+        return this;
+    }
+
+    /**
+     * 多路复用连接: 每个节点只建立multiplexedConnections个socket供所有线程共享, 并发命令合并写出,
+     * 大幅减少服务端连接数; 阻塞命令(BLPOP等), 事务, 发布订阅不可用. 默认0, 每个连接独占socket
+     *
+     * @param multiplexedConnections 每个节点的socket数, 通常1~4
+     * @return
+     */
+    public RedisClusterBuilder setMultiplexedConnections(int multiplexedConnections) {
+        this.multiplexedConnections = multiplexedConnections;
+        return this;
+    }
+
+    /**
+     * 自动批量: 并发的单key命令按节点等待autoBatchWindowMicros后合并为一次写出, 减少大量小命令的系统调用开销,
+     * 每条命令最多增加autoBatchWindowMicros延迟; 开启后使用多路复用连接(未设置时每个节点1个socket)
+     *
+     * @param autoBatchWindowMicros 通常50~200, 默认0(关闭)
+     * @return
+     */
+    public RedisClusterBuilder setAutoBatchWindowMicros(long autoBatchWindowMicros) {
+        this.autoBatchWindowMicros = autoBatchWindowMicros;
+        return this;
+    }
+
+    /**
+     * 自动批量一次写出的命令数达到autoBatchMaxCommands时不再等待
+     *
+     * @param autoBatchMaxCommands
+     * @return
+     */
+    public RedisClusterBuilder setAutoBatchMaxCommands(int autoBatchMaxCommands) {
+        this.autoBatchMaxCommands = autoBatchMaxCommands;
+        return this;
+    }
+
+    /**
+     * 近端缓存: get/hget/hgetAll/mget的结果缓存在本地, 由服务端CLIENT TRACKING的失效消息删除(需要redis 6.0+),
+     * 适合读多写少的热点key
+     *
+     * @param nearCacheMaxEntries 最多缓存项数, 默认0(关闭)
+     * @param nearCachePrefixes   只缓存这些前缀的key, 前缀内的写命令才产生失效消息; 不指定时缓存所有key
+     * @return
+     */
+    public RedisClusterBuilder setNearCache(int nearCacheMaxEntries, String... nearCachePrefixes) {
+        this.nearCacheMaxEntries = nearCacheMaxEntries;
+        this.nearCachePrefixes = nearCachePrefixes == null ? new String[0] : nearCachePrefixes;
+        return this;
+    }
+
+    /**
+     * 本地缓存: buildLocalCached()构造的客户端的get/hget/hgetAll/mget/mHgetAll结果按ttl缓存在本地,
+     * 不随服务端的修改失效, 适合能容忍短暂旧数据的场景; 命中率, 淘汰数随命令指标每分钟上报
+     *
+     * @param localCache 如LocalCache.maxSize(100000).setTtl(Protocol.Command.GET, 5, TimeUnit.SECONDS)
+     * @return
+     */
+    public RedisClusterBuilder setLocalCache(LocalCache localCache) {
+        this.localCache = localCache;
+        return this;
+    }
+
     /**
      * 是否开启统计
      *
@@ -270,6 +674,18 @@ public class RedisClusterBuilder {
         return this;
     }
 
+    /**
+     * 开启热点key探测: 采样命令的key统计各节点的热点key, 随命令指标每分钟上报,
+     * 可通过{@link HotKeyDetector#setListener}回调
+     *
+     * @param hotKeyDetector 如new HotKeyDetector(), 为null时不探测
+     * @return
+     */
+    public RedisClusterBuilder setHotKeyDetector(HotKeyDetector hotKeyDetector) {
+        this.hotKeyDetector = hotKeyDetector;
+        return this;
+    }
+
     private Map<String, Object> getConfigMap() {
         Map<String, Object> map = new HashMap<>();
         map.put("connectTimeout", connectionTimeout);
@@ -285,4 +701,19 @@ public class RedisClusterBuilder {
         map.put("timeBetweenEvictionRunsMillis", jedisPoolConfig.getTimeBetweenEvictionRunsMillis());
         return map;
     }
+
+    /**
+     * 拓扑快照: 从CacheCloud获取的拓扑写入本地文件, 启动时优先使用未过期的快照构建客户端(同时在后台刷新快照),
+     * CacheCloud不可用时不阻塞启动
+     *
+     * @param dir                快照目录, 为null时不使用快照(默认); 快照包含密码, 目录应只对当前用户可读写,
+     *                           其它用户可访问的已有目录不会被使用
+     * @param maxStalenessMillis 快照最大过期时间(毫秒), 默认1天
+     * @return
+     */
+    public RedisClusterBuilder setTopologySnapshot(String dir, long maxStalenessMillis) {
+        this.topologySnapshotDir = dir;
+        this.topologySnapshotMaxStalenessMillis = maxStalenessMillis;
+        return this;
+    }
 }
@@ -2,16 +2,17 @@ package com.sohu.tv.builder;
 
 import com.sohu.tv.cc.client.spectator.AsyncStatsCollector;
 import com.sohu.tv.cc.client.spectator.ClientConfig;
-import com.sohu.tv.cc.client.spectator.StatsCollector;
 import com.sohu.tv.cc.client.spectator.heartbeat.ClientStatusEnum;
+import com.sohu.tv.cc.client.spectator.hotkey.HotKeyDetector;
 import com.sohu.tv.cc.client.spectator.json.JSONUtils;
 import com.sohu.tv.cc.client.spectator.util.Constants;
-import com.sohu.tv.cc.client.spectator.util.HttpUtils;
+import com.sohu.tv.cc.client.spectator.util.TopologySnapshot;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.JedisPoolConfig;
 import redis.clients.jedis.JedisSentinelPool;
+import redis.clients.jedis.PoolWarmer;
 import redis.clients.jedis.Protocol;
 import redis.clients.jedis.util.AuthUtil;
 
@@ -52,11 +53,31 @@ public class RedisSentinelBuilder {
      */
     private volatile JedisSentinelPool sentinelPool;
 
+    /**
+     * 构建时是否并行预热连接池(创建minIdle个连接)
+     */
+    private boolean whetherInitIdleJedis = false;
+
     /**
      * 构建锁
      */
     private final Lock lock = new ReentrantLock();
 
+    /**
+     * 拓扑快照目录, 为null时不使用快照(默认)
+     */
+    private String topologySnapshotDir;
+
+    /**
+     * 拓扑快照最大过期时间(毫秒)
+     */
+    private long topologySnapshotMaxStalenessMillis = TopologySnapshot.DEFAULT_MAX_STALENESS_MILLIS;
+
+    /**
+     * 热点key探测器, 为null时不探测
+     */
+    private HotKeyDetector hotKeyDetector;
+
     /**
      * 是否开启统计
      */
@@ -80,6 +101,8 @@ public class RedisSentinelBuilder {
 
     public JedisSentinelPool build() {
         if (sentinelPool == null) {
+            String url = String.format(Constants.REDIS_SENTINEL_URL, appId);
+            TopologySnapshot snapshot = new TopologySnapshot(url, topologySnapshotDir, topologySnapshotMaxStalenessMillis);
             while (true) {
                 try {
                     lock.tryLock(10, TimeUnit.SECONDS);
@@ -87,7 +110,7 @@ public class RedisSentinelBuilder {
                         /**
                          * http请求返回的结果是空的；
                          */
-                        String response = HttpUtils.doGet(String.format(Constants.REDIS_SENTINEL_URL, appId));
+                        String response = snapshot.fetch();
                         if (response == null || response.isEmpty()) {
                             logger.warn("get response from remote server error, appId: {}, continue...", appId);
                             continue;
@@ -141,12 +164,17 @@ public class RedisSentinelBuilder {
                         }
 
                         ClientConfig clientConfig = new ClientConfig(getConfigMap(), clientStatIsOpen);
-                        StatsCollector statsCollector = new AsyncStatsCollector(appId, clientConfig);
+                        AsyncStatsCollector statsCollector = new AsyncStatsCollector(appId, clientConfig);
+                        statsCollector.setHotKeyDetector(hotKeyDetector);
                         statsCollector.start();
                         //String password = appId + AuthUtil.SPLIT_KEY + pkey;
 
                         sentinelPool = new JedisSentinelPool(masterName, sentinelSet, poolConfig, statsCollector, connectionTimeout,
                                 soTimeout, pkey, Protocol.DEFAULT_DATABASE);
+                        if (whetherInitIdleJedis) {
+                            PoolWarmer.warmUp(Collections.singletonList(sentinelPool), poolConfig.getMinIdle(),
+                                    PoolWarmer.DEFAULT_TIMEOUT_MILLIS);
+                        }
                         return sentinelPool;
                     }
                 } catch (Throwable e) {//容错
@@ -175,6 +203,17 @@ public class RedisSentinelBuilder {
         return this;
     }
 
+    /**
+     * 构建时是否并行预热连接池(创建minIdle个连接)
+     *
+     * @param whetherInitIdleJedis
+     * @return
+     */
+    public RedisSentinelBuilder setWhetherInitIdleJedis(boolean whetherInitIdleJedis) {
+        this.whetherInitIdleJedis = whetherInitIdleJedis;
+        return this;
+    }
+
     /**
      * 设置jedis连接超时时间
      *
@@ -219,6 +258,18 @@ public class RedisSentinelBuilder {
         return this;
     }
 
+    /**
+     * 开启热点key探测: 采样命令的key统计各节点的热点key, 随命令指标每分钟上报,
+     * 可通过{@link HotKeyDetector#setListener}回调
+     *
+     * @param hotKeyDetector 如new HotKeyDetector(), 为null时不探测
+     * @return
+     */
+    public RedisSentinelBuilder setHotKeyDetector(HotKeyDetector hotKeyDetector) {
+        this.hotKeyDetector = hotKeyDetector;
+        return this;
+    }
+
     private Map<String, Object> getConfigMap() {
         Map<String, Object> map = new HashMap<>();
         map.put("connectTimeout", connectionTimeout);
@@ -234,4 +285,19 @@ public class RedisSentinelBuilder {
         map.put("timeBetweenEvictionRunsMillis", poolConfig.getTimeBetweenEvictionRunsMillis());
         return map;
     }
+
+    /**
+     * 拓扑快照: 从CacheCloud获取的拓扑写入本地文件, 启动时优先使用未过期的快照构建客户端(同时在后台刷新快照),
+     * CacheCloud不可用时不阻塞启动
+     *
+     * @param dir                快照目录, 为null时不使用快照(默认); 快照包含密码, 目录应只对当前用户可读写,
+     *                           其它用户可访问的已有目录不会被使用
+     * @param maxStalenessMillis 快照最大过期时间(毫秒), 默认1天
+     * @return
+     */
+    public RedisSentinelBuilder setTopologySnapshot(String dir, long maxStalenessMillis) {
+        this.topologySnapshotDir = dir;
+        this.topologySnapshotMaxStalenessMillis = maxStalenessMillis;
+        return this;
+    }
 }
@@ -2,21 +2,23 @@ package com.sohu.tv.builder;
 
 import com.sohu.tv.cc.client.spectator.AsyncStatsCollector;
 import com.sohu.tv.cc.client.spectator.ClientConfig;
-import com.sohu.tv.cc.client.spectator.StatsCollector;
 import com.sohu.tv.cc.client.spectator.heartbeat.ClientStatusEnum;
+import com.sohu.tv.cc.client.spectator.hotkey.HotKeyDetector;
 import com.sohu.tv.cc.client.spectator.json.JSONUtils;
 import com.sohu.tv.cc.client.spectator.util.Constants;
-import com.sohu.tv.cc.client.spectator.util.HttpUtils;
+import com.sohu.tv.cc.client.spectator.util.TopologySnapshot;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.PoolWarmer;
 import redis.clients.jedis.Protocol;
 import redis.clients.jedis.util.AuthUtil;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Collections;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
@@ -31,11 +33,32 @@ import java.util.concurrent.locks.ReentrantLock;
 public class RedisStandaloneBuilder {
     private Logger logger = LoggerFactory.getLogger(RedisStandaloneBuilder.class);
 
+    /**
+     * 构建时是否并行预热连接池(创建minIdle个连接)
+     */
+    private boolean whetherInitIdleJedis = false;
+
     private final Lock lock = new ReentrantLock();
+
+    /**
+     * 拓扑快照目录, 为null时不使用快照(默认)
+     */
+    private String topologySnapshotDir;
+
+    /**
+     * 拓扑快照最大过期时间(毫秒)
+     */
+    private long topologySnapshotMaxStalenessMillis = TopologySnapshot.DEFAULT_MAX_STALENESS_MILLIS;
     private volatile JedisPool jedisPool;
     private GenericObjectPoolConfig poolConfig;
     private final long appId;
     private int timeout = Protocol.DEFAULT_TIMEOUT;
+
+    /**
+     * 热点key探测器, 为null时不探测
+     */
+    private HotKeyDetector hotKeyDetector;
+
     /**
      * 是否开启统计
      */
@@ -57,6 +80,8 @@ public class RedisStandaloneBuilder {
 
     public JedisPool build() {
         if (jedisPool == null) {
+            String url = String.format(Constants.REDIS_STANDALONE_URL, appId);
+            TopologySnapshot snapshot = new TopologySnapshot(url, topologySnapshotDir, topologySnapshotMaxStalenessMillis);
             while (true) {
                 try {
                     lock.tryLock(10, TimeUnit.SECONDS);
@@ -64,7 +89,7 @@ public class RedisStandaloneBuilder {
                         /**
                          * 心跳返回的请求为空；
                          */
-                        String response = HttpUtils.doGet(String.format(Constants.REDIS_STANDALONE_URL, appId));
+                        String response = snapshot.fetch();
                         if (response == null || response.isEmpty()) {
                             logger.warn("cannot get response from server, appId={}. continue...", appId);
                             continue;
@@ -111,13 +136,18 @@ public class RedisStandaloneBuilder {
                             pkey = "";
                         }
                         ClientConfig clientConfig = new ClientConfig(getConfigMap(), clientStatIsOpen);
-                        StatsCollector statsCollector = new AsyncStatsCollector(appId, clientConfig);
+                        AsyncStatsCollector statsCollector = new AsyncStatsCollector(appId, clientConfig);
+                        statsCollector.setHotKeyDetector(hotKeyDetector);
                         statsCollector.start();
 
                         //String password = appId + AuthUtil.SPLIT_KEY + pkey;
 
                         jedisPool = new JedisPool(poolConfig, statsCollector, instanceArr[0], Integer.valueOf(instanceArr[1]),
                                 timeout, pkey);
+                        if (whetherInitIdleJedis) {
+                            PoolWarmer.warmUp(Collections.singletonList(jedisPool), poolConfig.getMinIdle(),
+                                    PoolWarmer.DEFAULT_TIMEOUT_MILLIS);
+                        }
                         return jedisPool;
                     }
                 } catch (Throwable e) {
@@ -147,6 +177,17 @@ public class RedisStandaloneBuilder {
         return this;
     }
 
+    /**
+     * 构建时是否并行预热连接池(创建minIdle个连接)
+     *
+     * @param whetherInitIdleJedis
+     * @return
+     */
+    public RedisStandaloneBuilder setWhetherInitIdleJedis(boolean whetherInitIdleJedis) {
+        this.whetherInitIdleJedis = whetherInitIdleJedis;
+        return this;
+    }
+
     /**
      * @param timeout 单位:毫秒
      * @return
@@ -167,6 +208,18 @@ public class RedisStandaloneBuilder {
         return this;
     }
 
+    /**
+     * 开启热点key探测: 采样命令的key统计各节点的热点key, 随命令指标每分钟上报,
+     * 可通过{@link HotKeyDetector#setListener}回调
+     *
+     * @param hotKeyDetector 如new HotKeyDetector(), 为null时不探测
+     * @return
+     */
+    public RedisStandaloneBuilder setHotKeyDetector(HotKeyDetector hotKeyDetector) {
+        this.hotKeyDetector = hotKeyDetector;
+        return this;
+    }
+
     private Map<String, Object> getConfigMap(){
         Map<String, Object> map = new HashMap<>();
         map.put("connectTimeout", timeout);
@@ -182,4 +235,19 @@ public class RedisStandaloneBuilder {
         map.put("timeBetweenEvictionRunsMillis", poolConfig.getTimeBetweenEvictionRunsMillis());
         return map;
     }
+
+    /**
+     * 拓扑快照: 从CacheCloud获取的拓扑写入本地文件, 启动时优先使用未过期的快照构建客户端(同时在后台刷新快照),
+     * CacheCloud不可用时不阻塞启动
+     *
+     * @param dir                快照目录, 为null时不使用快照(默认); 快照包含密码, 目录应只对当前用户可读写,
+     *                           其它用户可访问的已有目录不会被使用
+     * @param maxStalenessMillis 快照最大过期时间(毫秒), 默认1天
+     * @return
+     */
+    public RedisStandaloneBuilder setTopologySnapshot(String dir, long maxStalenessMillis) {
+        this.topologySnapshotDir = dir;
+        this.topologySnapshotMaxStalenessMillis = maxStalenessMillis;
+        return this;
+    }
 }
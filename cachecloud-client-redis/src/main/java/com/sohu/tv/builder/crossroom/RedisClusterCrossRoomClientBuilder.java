@@ -1,7 +1,10 @@
 package com.sohu.tv.builder.crossroom;
 
 import com.alibaba.csp.sentinel.slots.block.degrade.DegradeRuleManager;
+import com.sohu.tv.cc.client.spectator.StatsCollector;
 import redis.clients.jedis.CrossRoomCluster;
+import redis.clients.jedis.LocalCache;
+import redis.clients.jedis.LocalCachedCluster;
 import redis.clients.jedis.PipelineCluster;
 
 /**
@@ -38,6 +41,11 @@ public class RedisClusterCrossRoomClientBuilder {
      */
     private CrossRoomSentinelConfig sentinelConfig = CrossRoomSentinelConfig.builder().build();
 
+    /**
+     * 本地缓存, 为null时buildLocalCached不可用
+     */
+    private LocalCache localCache;
+
 
     public CrossRoomCluster build() {
         //加载sentinel规则
@@ -45,6 +53,33 @@ public class RedisClusterCrossRoomClientBuilder {
         return new CrossRoomCluster(majorAppId, majorPipelineCluster, minorAppId, minorPipelineCluster);
     }
 
+    /**
+     * 构造带本地缓存的跨机房客户端, 本地缓存的统计随主集群的命令指标上报
+     *
+     * @return
+     */
+    public LocalCachedCluster<CrossRoomCluster> buildLocalCached() {
+        if (localCache == null) {
+            throw new IllegalStateException("localCache is not set");
+        }
+        StatsCollector statsCollector = majorPipelineCluster.getStatsCollector();
+        if (statsCollector != null) {
+            statsCollector.registerLocalCache(localCache);
+        }
+        return new LocalCachedCluster<CrossRoomCluster>(build(), localCache);
+    }
+
+    /**
+     * 本地缓存: get/hget/hgetAll/mget/mHgetAll结果按ttl缓存在本地, 不随服务端的修改失效
+     *
+     * @param localCache
+     * @return
+     */
+    public RedisClusterCrossRoomClientBuilder setLocalCache(LocalCache localCache) {
+        this.localCache = localCache;
+        return this;
+    }
+
     public RedisClusterCrossRoomClientBuilder setSentinelConfig(CrossRoomSentinelConfig sentinelConfig) {
         this.sentinelConfig = sentinelConfig;
         return this;
@@ -5,8 +5,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.PoolWarmer;
 import redis.clients.jedis.Protocol;
 
+import java.util.Collections;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
@@ -31,6 +33,11 @@ public class JedisPoolBuilder {
      * redis实例密码
      */
     private final String password;
+    /**
+     * 构建时是否并行预热连接池(创建minIdle个连接)
+     */
+    private boolean whetherInitIdleJedis = false;
+
     /**
      * 构建锁
      */
@@ -73,6 +80,10 @@ public class JedisPoolBuilder {
                     lock.tryLock(10, TimeUnit.SECONDS);
                     if (jedisPool == null) {
                         jedisPool = new JedisPool(poolConfig, host, port, timeout, password);
+                        if (whetherInitIdleJedis) {
+                            PoolWarmer.warmUp(Collections.singletonList(jedisPool), poolConfig.getMinIdle(),
+                                    PoolWarmer.DEFAULT_TIMEOUT_MILLIS);
+                        }
                         return jedisPool;
                     }
                 } catch (Throwable e) {
@@ -102,6 +113,17 @@ public class JedisPoolBuilder {
         return this;
     }
 
+    /**
+     * 构建时是否并行预热连接池(创建minIdle个连接)
+     *
+     * @param whetherInitIdleJedis
+     * @return
+     */
+    public JedisPoolBuilder setWhetherInitIdleJedis(boolean whetherInitIdleJedis) {
+        this.whetherInitIdleJedis = whetherInitIdleJedis;
+        return this;
+    }
+
     /**
      * @param timeout
      * @return
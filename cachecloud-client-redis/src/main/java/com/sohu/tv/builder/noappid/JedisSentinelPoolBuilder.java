@@ -5,8 +5,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.JedisPoolConfig;
 import redis.clients.jedis.JedisSentinelPool;
+import redis.clients.jedis.PoolWarmer;
 import redis.clients.jedis.Protocol;
 
+import java.util.Collections;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -54,6 +56,11 @@ public class JedisSentinelPoolBuilder {
      */
     private volatile JedisSentinelPool sentinelPool;
 
+    /**
+     * 构建时是否并行预热连接池(创建minIdle个连接)
+     */
+    private boolean whetherInitIdleJedis = false;
+
     /**
      * 构建锁
      */
@@ -87,6 +94,10 @@ public class JedisSentinelPoolBuilder {
                     if (sentinelPool == null) {
                         sentinelPool = new JedisSentinelPool(masterName, sentinels, poolConfig, connectionTimeout,
                                 soTimeout, password, Protocol.DEFAULT_DATABASE);
+                        if (whetherInitIdleJedis) {
+                            PoolWarmer.warmUp(Collections.singletonList(sentinelPool), poolConfig.getMinIdle(),
+                                    PoolWarmer.DEFAULT_TIMEOUT_MILLIS);
+                        }
                         return sentinelPool;
                     }
                 } catch (Throwable e) {//容错
@@ -115,6 +126,17 @@ public class JedisSentinelPoolBuilder {
         return this;
     }
 
+    /**
+     * 构建时是否并行预热连接池(创建minIdle个连接)
+     *
+     * @param whetherInitIdleJedis
+     * @return
+     */
+    public JedisSentinelPoolBuilder setWhetherInitIdleJedis(boolean whetherInitIdleJedis) {
+        this.whetherInitIdleJedis = whetherInitIdleJedis;
+        return this;
+    }
+
     /**
      * 设置jedis连接超时时间
      *
@@ -2,7 +2,7 @@ package com.sohu.tv.cachecloud.client.redisson;
 
 import com.alibaba.fastjson.JSONObject;
 import com.sohu.tv.cc.client.spectator.heartbeat.ClientStatusEnum;
-import com.sohu.tv.cc.client.spectator.util.HttpUtils;
+import com.sohu.tv.cc.client.spectator.util.TopologySnapshot;
 import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
 import org.redisson.config.Config;
@@ -28,6 +28,12 @@ public abstract class RedissonAbstractClientBuilder {
     //构建锁
     private final Lock lock = new ReentrantLock();
 
+    //拓扑快照目录, 为null时不使用快照(默认)
+    private String topologySnapshotDir;
+
+    //拓扑快照最大过期时间(毫秒)
+    private long topologySnapshotMaxStalenessMillis = TopologySnapshot.DEFAULT_MAX_STALENESS_MILLIS;
+
     //客户端配置
     protected Config config;
 
@@ -43,14 +49,15 @@ public abstract class RedissonAbstractClientBuilder {
 
     public RedissonClient build() {
         if (redissonClient == null) {
+            String url = clientUrl(appId);
+            TopologySnapshot snapshot = new TopologySnapshot(url, topologySnapshotDir, topologySnapshotMaxStalenessMillis);
             while (true) {
                 try {
                     lock.tryLock(10, TimeUnit.SECONDS);
                     if (redissonClient != null) {
                         return redissonClient;
                     }
-                    String url = clientUrl(appId);
-                    String response = HttpUtils.doGet(url);
+                    String response = snapshot.fetch();
                     JSONObject jsonObject = JSONObject.parseObject(response);
                     if (jsonObject == null) {
                         logger.warn("cluster is invalid, info: {}, appId: {}, continue...", response, appId);
@@ -103,4 +110,18 @@ public abstract class RedissonAbstractClientBuilder {
         return redissonClient;
     }
 
+    /**
+     * 拓扑快照: 从CacheCloud获取的拓扑写入本地文件, 启动时优先使用未过期的快照构建客户端(同时在后台刷新快照),
+     * CacheCloud不可用时不阻塞启动
+     *
+     * @param dir                快照目录, 为null时不使用快照(默认); 快照包含密码, 目录应只对当前用户可读写,
+     *                           其它用户可访问的已有目录不会被使用
+     * @param maxStalenessMillis 快照最大过期时间(毫秒), 默认1天
+     * @return
+     */
+    public RedissonAbstractClientBuilder setTopologySnapshot(String dir, long maxStalenessMillis) {
+        this.topologySnapshotDir = dir;
+        this.topologySnapshotMaxStalenessMillis = maxStalenessMillis;
+        return this;
+    }
 }
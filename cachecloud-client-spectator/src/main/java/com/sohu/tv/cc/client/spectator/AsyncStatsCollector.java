@@ -1,9 +1,12 @@
 package com.sohu.tv.cc.client.spectator;
 
+import com.sohu.tv.cc.client.spectator.hotkey.HotKeyDetector;
 import com.sohu.tv.cc.client.spectator.json.JSONUtils;
+import com.sohu.tv.cc.client.spectator.model.BigValueModel;
 import com.sohu.tv.cc.client.spectator.model.CommandFailedModel;
 import com.sohu.tv.cc.client.spectator.model.CommandStatsModel;
 import com.sohu.tv.cc.client.spectator.model.ExceptionModel;
+import com.sohu.tv.cc.client.spectator.model.LocalCacheModel;
 import com.sohu.tv.cc.client.spectator.model.report.ExceptionReport;
 import com.sohu.tv.cc.client.spectator.model.report.StatsReport;
 import com.sohu.tv.cc.client.spectator.stat.CommandStat;
@@ -14,6 +17,7 @@ import com.sohu.tv.cc.client.spectator.util.NetUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.*;
@@ -37,6 +41,23 @@ public class AsyncStatsCollector implements StatsCollector {
      * 超时命令明文长度上限
      */
     private static final int COMMAND_ARGS_SIZE = 128;
+    /**
+     * 默认大value字节数下限
+     */
+    public static final long DEFAULT_BIG_VALUE_BYTES = 10 * 1024;
+    /**
+     * 每分钟上报的大请求, 大响应各自的数量上限
+     */
+    private static final int BIG_VALUE_TOP_N = 10;
+    /**
+     * 按字节数升序, 用于小顶堆淘汰
+     */
+    private static final Comparator<BigValueModel> BIG_VALUE_COMPARATOR = new Comparator<BigValueModel>() {
+        @Override
+        public int compare(BigValueModel o1, BigValueModel o2) {
+            return Long.compare(o1.getBytes(), o2.getBytes());
+        }
+    };
     /**
      * redis应用id
      */
@@ -85,6 +106,18 @@ public class AsyncStatsCollector implements StatsCollector {
      * 指标发送队列
      */
     private ArrayBlockingQueue<Runnable> senderQueue;
+    /**
+     * 热点key探测器, 为null时不探测
+     */
+    private volatile HotKeyDetector hotKeyDetector;
+    /**
+     * 请求或响应字节数不小于该值的命令作为大value统计
+     */
+    private volatile long bigValueBytes = DEFAULT_BIG_VALUE_BYTES;
+    /**
+     * 已注册的本地缓存
+     */
+    private final List<LocalCacheMetrics> localCaches = new CopyOnWriteArrayList<>();
 
     public AsyncStatsCollector(long appId, ClientConfig clientConfig) {
         this.appId = appId;
@@ -170,6 +203,45 @@ public class AsyncStatsCollector implements StatsCollector {
         return result;
     }
 
+    @Override
+    public HotKeyDetector getHotKeyDetector() {
+        return hotKeyDetector;
+    }
+
+    /**
+     * 设置热点key探测器, 热点key随命令指标每分钟上报, 为null时不探测; 探测器的窗口由统计线程切换
+     *
+     * @param hotKeyDetector
+     */
+    public void setHotKeyDetector(HotKeyDetector hotKeyDetector) {
+        this.hotKeyDetector = hotKeyDetector;
+    }
+
+    /**
+     * 设置大value字节数下限, 每分钟上报请求, 响应字节数最大的命令各BIG_VALUE_TOP_N个
+     *
+     * @param bigValueBytes
+     */
+    public void setBigValueBytes(long bigValueBytes) {
+        this.bigValueBytes = bigValueBytes;
+    }
+
+    public long getBigValueBytes() {
+        return bigValueBytes;
+    }
+
+    @Override
+    public void registerLocalCache(LocalCacheMetrics metrics) {
+        if (metrics != null && !localCaches.contains(metrics)) {
+            localCaches.add(metrics);
+        }
+    }
+
+    @Override
+    public void unregisterLocalCache(LocalCacheMetrics metrics) {
+        localCaches.remove(metrics);
+    }
+
     @Override
     public void shutdown() {
         this.stopped = true;
@@ -232,6 +304,8 @@ public class AsyncStatsCollector implements StatsCollector {
     class AsyncCommandStatsWorker implements Runnable {
         private boolean stopped;
         private Map<String, CommandStatsModel> commandMap = new HashMap<>();
+        private PriorityQueue<BigValueModel> bigRequests = new PriorityQueue<>(BIG_VALUE_TOP_N, BIG_VALUE_COMPARATOR);     //当前分钟最大的请求
+        private PriorityQueue<BigValueModel> bigReplies = new PriorityQueue<>(BIG_VALUE_TOP_N, BIG_VALUE_COMPARATOR);      //当前分钟最大的响应
         private long lastTimestamp = System.currentTimeMillis();       //上次上报时间戳
         private long oneMinInMills = TimeUnit.SECONDS.toMillis(60);
 
@@ -243,6 +317,10 @@ public class AsyncStatsCollector implements StatsCollector {
                     //get stats data element from blocking Queue
                     stat = commandStatsQueue.poll(5, TimeUnit.MILLISECONDS);
                     process(stat);
+                    HotKeyDetector detector = hotKeyDetector;
+                    if (detector != null) {     //热点key窗口在统计线程切换, 不占用命令线程
+                        detector.rotate();
+                    }
                     if (AsyncStatsCollector.this.stopped) {
                         this.stopped = true;
                     }
@@ -262,12 +340,14 @@ public class AsyncStatsCollector implements StatsCollector {
             if (System.currentTimeMillis() >= lastTimestamp + oneMinInMills) {      //下一分钟上报
                 try {
                     String currentMin = sdf.format(new Date());
-                    if (commandMap.size() > 0) {
-                        buildRequest(currentMin, new ArrayList<>(commandMap.values()));
+                    if (commandMap.size() > 0 || !localCaches.isEmpty()) {     //请求全部命中本地缓存时也上报
+                        buildRequest(currentMin, new ArrayList<>(commandMap.values()), getBigValues());
                     }
                 } finally {
                     lastTimestamp = System.currentTimeMillis();     //重置上次上报时间戳
                     commandMap.clear();
+                    bigRequests.clear();
+                    bigReplies.clear();
                 }
             }
         }
@@ -275,7 +355,7 @@ public class AsyncStatsCollector implements StatsCollector {
         /**
          * 按分钟累加相同命令调用指标
          */
-        private void accumulation(CommandStat stat) {
+        void accumulation(CommandStat stat) {
             String command = stat.getCommand();
             if (!commandMap.keySet().contains(command)) {
                 commandMap.put(command, new CommandStatsModel(command));
@@ -285,13 +365,69 @@ public class AsyncStatsCollector implements StatsCollector {
             model.setCost(model.getCost() + stat.getCost());
             model.setBytesIn(model.getBytesIn() + stat.getBytesIn());
             model.setBytesOut(model.getBytesOut() + stat.getBytesOut());
+            model.addSize(stat.getBytesIn(), stat.getBytesOut());
+            offerBigValue(bigRequests, stat, stat.getBytesIn(), BigValueModel.TYPE_REQUEST);
+            offerBigValue(bigReplies, stat, stat.getBytesOut(), BigValueModel.TYPE_REPLY);
+        }
+
+        /**
+         * 保留当前分钟字节数最大的BIG_VALUE_TOP_N个命令, 只有进入topN时才解析key
+         */
+        void offerBigValue(PriorityQueue<BigValueModel> topN, CommandStat stat, long bytes, String type) {
+            if (bytes < bigValueBytes) {
+                return;
+            }
+            if (topN.size() >= BIG_VALUE_TOP_N) {
+                if (bytes <= topN.peek().getBytes()) {
+                    return;
+                }
+                topN.poll();
+            }
+            String key = "";
+            byte[] keyBytes = stat.getKey();
+            if (keyBytes != null) {     //裁剪
+                key = new String(keyBytes, 0, Math.min(keyBytes.length, COMMAND_ARGS_SIZE), StandardCharsets.UTF_8);
+            }
+            topN.offer(new BigValueModel(stat.getCommand(), stat.getNode(), key, bytes, type, stat.getInvokeTime()));
+        }
+
+        /**
+         * @return 当前分钟的大请求及大响应, 按字节数降序
+         */
+        List<BigValueModel> getBigValues() {
+            List<BigValueModel> bigValues = new ArrayList<>(bigRequests.size() + bigReplies.size());
+            bigValues.addAll(bigRequests);
+            bigValues.addAll(bigReplies);
+            Collections.sort(bigValues, Collections.reverseOrder(BIG_VALUE_COMPARATOR));
+            return bigValues;
+        }
+
+        /**
+         * @return 各本地缓存上次上报以来的统计
+         */
+        private List<LocalCacheModel> getLocalCacheModels() {
+            List<LocalCacheModel> models = new ArrayList<>(localCaches.size());
+            for (LocalCacheMetrics metrics : localCaches) {
+                try {
+                    models.add(metrics.collect());
+                } catch (Exception e) {
+                    logger.error("collect local cache stats error", e);
+                }
+            }
+            return models;
         }
 
-        private void buildRequest(String currentMin, List<CommandStatsModel> modelList) {
+        private void buildRequest(String currentMin, List<CommandStatsModel> modelList, List<BigValueModel> bigValues) {
             StatsReport statsReport = new StatsReport();
             statsReport.setAppId(appId);
             statsReport.setClientVersion(Constants.CLIENT_VERSION);
             statsReport.setCommandStatsModels(modelList);
+            statsReport.setBigValueModels(bigValues);
+            HotKeyDetector detector = hotKeyDetector;
+            if (detector != null) {
+                statsReport.setHotKeyModels(detector.getHotKeys());
+            }
+            statsReport.setLocalCacheModels(getLocalCacheModels());
             statsReport.setClientIp(getClientIp());
             statsReport.setCurrentMin(currentMin);
             AsyncSendRunnable request = new AsyncSendRunnable(Constants.CLIENT_VERSION, JSONUtils.toJSONString(statsReport.toMap()), Constants.CACHECLOUD_COMMAND_REPORT_URL, currentMin);
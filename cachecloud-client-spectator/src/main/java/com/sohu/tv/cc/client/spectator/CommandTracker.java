@@ -1,10 +1,12 @@
 package com.sohu.tv.cc.client.spectator;
 
+import com.sohu.tv.cc.client.spectator.hotkey.HotKeyDetector;
 import com.sohu.tv.cc.client.spectator.stat.CommandStat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.function.Function;
 
 /**
  * @author wenruiwu
@@ -43,15 +45,42 @@ public class CommandTracker {
         if (ignoreCommands.contains(cmd)) {
             return;
         }
+        HotKeyDetector hotKeyDetector = statsCollector.getHotKeyDetector();
+        if (hotKeyDetector != null && !isFailed) {
+            hotKeyDetector.sample(cmd, hostPort, args);
+        }
         long total = 0;
         for (int i = 0; i < args.length; i++) {
             total = total + args[i].length;
         }
+        start(new CommandItem(cmd, hostPort, total, args, invokeTime, startTime), isFailed, statsCollector);
+    }
+
+    /**
+     * 命令开始, 参数未编码为byte[](直接写入输出缓冲区的String, 数字等),
+     * 只在采样热点key, 记录异常命令参数及大value的key时编码
+     *
+     * @param inputBytes 参数编码后的总字节数
+     * @param args       命令参数
+     * @param encoder    参数编码
+     */
+    public void commandStart(StatsCollector statsCollector, String cmd, String hostPort, long invokeTime, long startTime,
+                             boolean isFailed, long inputBytes, Object[] args, Function<Object, byte[]> encoder) {
+        if (ignoreCommands.contains(cmd)) {
+            return;
+        }
+        HotKeyDetector hotKeyDetector = statsCollector.getHotKeyDetector();
+        if (hotKeyDetector != null && !isFailed) {
+            hotKeyDetector.sample(cmd, hostPort, args, encoder);
+        }
+        start(new CommandItem(cmd, hostPort, inputBytes, args, encoder, invokeTime, startTime), isFailed, statsCollector);
+    }
+
+    private void start(CommandItem commandItem, boolean isFailed, StatsCollector statsCollector) {
         if (isFailed) {       //sendCommand failed
             try {
                 long endTime = System.nanoTime();
-                long cost = endTime - startTime;
-                CommandItem commandItem = new CommandItem(cmd, hostPort, total, args, invokeTime, startTime);
+                long cost = endTime - commandItem.getStartTime();
                 commandItem.setCost(cost);
                 statsCollector.appendCommandExpStat(commandItem);
             } catch (Exception e) {
@@ -60,7 +89,6 @@ public class CommandTracker {
                 this.clear();
             }
         } else {    //sendCommand succeed
-            CommandItem commandItem = new CommandItem(cmd, hostPort, total, args, invokeTime, startTime);
             queue.add(commandItem);
         }
     }
@@ -93,6 +121,20 @@ public class CommandTracker {
      * 命令调用完成
      */
     public void commandCompleted(Object response, boolean isFailed, StatsCollector statsCollector) {
+        commandCompleted(response, -1, isFailed, statsCollector);
+    }
+
+    /**
+     * 命令调用完成, 回复已由调用方计算字节数(如扁平回复)
+     */
+    public void commandCompleted(long bytesOut, boolean isFailed, StatsCollector statsCollector) {
+        commandCompleted(null, bytesOut, isFailed, statsCollector);
+    }
+
+    /**
+     * @param bytesOut 小于0时由response计算
+     */
+    private void commandCompleted(Object response, long bytesOut, boolean isFailed, StatsCollector statsCollector) {
         try {
             if (queue.size() > 0) {
                 CommandItem item = queue.poll();
@@ -103,8 +145,18 @@ public class CommandTracker {
                         item.setCost(cost);
                         statsCollector.appendCommandExpStat(item);
                     } else {        //command succeed
-                        long bytesOut = calBytesOut(response);
-                        CommandStat commandStat = new CommandStat(item.getCommand(), item.getNode(), cost, item.getInputBytes(), bytesOut);
+                        if (bytesOut < 0) {
+                            bytesOut = calBytesOut(response);
+                        }
+                        CommandStat commandStat;
+                        if (item.rawArgs != null) {     //key在统计线程需要时才编码
+                            commandStat = new CommandStat(item.getCommand(), item.getNode(), cost, item.getInputBytes(), bytesOut,
+                                    item.rawArgs.length > 0 ? item.rawArgs[0] : null, item.encoder, item.getInvokeTime());
+                        } else {
+                            byte[][] args = item.getCommandArgs();
+                            commandStat = new CommandStat(item.getCommand(), item.getNode(), cost, item.getInputBytes(), bytesOut,
+                                    args.length > 0 ? args[0] : null, item.getInvokeTime());
+                        }
                         statsCollector.appendCommandStat(commandStat);
                     }
                 }
@@ -166,6 +218,11 @@ public class CommandTracker {
         private String command;
         private long inputBytes;
         private byte[][] commandArgs;
+        /**
+         * 未编码的参数及其编码, commandArgs在需要时由其生成
+         */
+        private Object[] rawArgs;
+        private Function<Object, byte[]> encoder;
         private long invokeTime;
         private long startTime;
         private long endTime;
@@ -197,7 +254,21 @@ public class CommandTracker {
             this.inputBytes = inputBytes;
         }
 
+        public CommandItem(String command, String node, long inputBytes, Object[] rawArgs, Function<Object, byte[]> encoder,
+                           long invokeTime, long startTime) {
+            this(command, node, inputBytes, (byte[][]) null, invokeTime, startTime);
+            this.rawArgs = rawArgs;
+            this.encoder = encoder;
+        }
+
         public byte[][] getCommandArgs() {
+            if (commandArgs == null && rawArgs != null) {
+                byte[][] args = new byte[rawArgs.length][];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = encoder.apply(rawArgs[i]);
+                }
+                commandArgs = args;
+            }
             return commandArgs;
         }
 
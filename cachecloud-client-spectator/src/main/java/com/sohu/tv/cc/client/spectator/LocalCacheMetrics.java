@@ -0,0 +1,18 @@
+package com.sohu.tv.cc.client.spectator;
+
+import com.sohu.tv.cc.client.spectator.model.LocalCacheModel;
+
+/**
+ * 客户端本地缓存的统计来源, 注册到{@link StatsCollector}后随命令指标每分钟上报
+ *
+ * @see StatsCollector#registerLocalCache(LocalCacheMetrics)
+ */
+public interface LocalCacheMetrics {
+
+    /**
+     * 每次上报时调用
+     *
+     * @return 上次调用以来的命中, 未命中, 淘汰及过期数, 以及当前的缓存项数和权重
+     */
+    LocalCacheModel collect();
+}
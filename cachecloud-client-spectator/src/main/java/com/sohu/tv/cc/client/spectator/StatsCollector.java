@@ -1,5 +1,6 @@
 package com.sohu.tv.cc.client.spectator;
 
+import com.sohu.tv.cc.client.spectator.hotkey.HotKeyDetector;
 import com.sohu.tv.cc.client.spectator.stat.CommandStat;
 
 /**
@@ -33,6 +34,31 @@ public interface StatsCollector {
      */
     boolean appendConnectExpStat(final String node, final long cost);
 
+    /**
+     * 热点key探测器
+     *
+     * @return 未开启热点key探测时返回null
+     */
+    default HotKeyDetector getHotKeyDetector() {
+        return null;
+    }
+
+    /**
+     * 注册本地缓存, 其命中率, 淘汰数等随命令指标每分钟上报; 默认不上报
+     *
+     * @param metrics
+     */
+    default void registerLocalCache(final LocalCacheMetrics metrics) {
+    }
+
+    /**
+     * 取消注册本地缓存
+     *
+     * @param metrics
+     */
+    default void unregisterLocalCache(final LocalCacheMetrics metrics) {
+    }
+
     void shutdown();
 
 }
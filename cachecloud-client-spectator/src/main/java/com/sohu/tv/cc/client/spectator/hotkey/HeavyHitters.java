@@ -0,0 +1,112 @@
+package com.sohu.tv.cc.client.spectator.hotkey;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一个节点一个窗口内的heavy hitters: Count-Min Sketch估计每个key的采样次数,
+ * 同时保留估计值最大的topK个候选key; 内存占用固定(depth * width个计数及topK个key)
+ */
+class HeavyHitters {
+
+    private static final int DEPTH = 4;
+
+    private final int width;
+
+    private final int mask;
+
+    private final int[] counts;
+
+    private final int topK;
+
+    /**
+     * 候选key及其估计值
+     */
+    private final Map<String, Integer> candidates;
+
+    /**
+     * 候选key中估计值最小的, 候选key满topK个时用于淘汰
+     */
+    private String minKey;
+
+    private int minCount;
+
+    /**
+     * @param width 每行计数器个数, 2的幂
+     * @param topK  保留的候选key数
+     */
+    HeavyHitters(int width, int topK) {
+        this.width = width;
+        this.mask = width - 1;
+        this.counts = new int[DEPTH * width];
+        this.topK = topK;
+        this.candidates = new HashMap<>(topK * 2);
+    }
+
+    synchronized void add(String key) {
+        int h1 = key.hashCode();
+        int h2 = spread(h1);
+        int estimate = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            int index = i * width + ((h1 + i * h2) & mask);
+            int count = ++counts[index];
+            if (count < estimate) {
+                estimate = count;
+            }
+        }
+        if (candidates.containsKey(key)) {
+            candidates.put(key, estimate);
+            if (key.equals(minKey)) {
+                updateMin();
+            }
+        } else if (candidates.size() < topK) {
+            candidates.put(key, estimate);
+            updateMin();
+        } else if (estimate > minCount) {
+            candidates.remove(minKey);
+            candidates.put(key, estimate);
+            updateMin();
+        }
+    }
+
+    /**
+     * @return 候选key及其估计值, 按估计值降序
+     */
+    synchronized List<Map.Entry<String, Integer>> top() {
+        List<Map.Entry<String, Integer>> top = new ArrayList<>(candidates.entrySet());
+        Collections.sort(top, new Comparator<Map.Entry<String, Integer>>() {
+            @Override
+            public int compare(Map.Entry<String, Integer> o1, Map.Entry<String, Integer> o2) {
+                return Integer.compare(o2.getValue(), o1.getValue());
+            }
+        });
+        return top;
+    }
+
+    private void updateMin() {
+        minKey = null;
+        minCount = Integer.MAX_VALUE;
+        for (Map.Entry<String, Integer> entry : candidates.entrySet()) {
+            if (entry.getValue() < minCount) {
+                minKey = entry.getKey();
+                minCount = entry.getValue();
+            }
+        }
+    }
+
+    /**
+     * 第二个哈希函数(murmur3 fmix32), 为奇数保证各行下标不同
+     */
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h | 1;
+    }
+}
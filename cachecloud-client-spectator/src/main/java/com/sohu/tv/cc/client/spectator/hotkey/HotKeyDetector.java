@@ -0,0 +1,271 @@
+package com.sohu.tv.cc.client.spectator.hotkey;
+
+import com.sohu.tv.cc.client.spectator.model.HotKeyModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * 客户端热点key探测: 按采样率采样命令的key, 每个节点每个统计窗口用Count-Min Sketch加topK候选统计访问最多的key,
+ * 窗口结束时计算各节点的热点key(估计访问次数及qps), 供分钟上报及{@link HotKeyListener}使用;
+ * 未采样的命令只有一次随机数判断. 窗口切换由{@link #rotate()}完成(AsyncStatsCollector的统计线程定期调用),
+ * 命令线程只累加当前窗口, 不计算热点key也不回调监听器
+ */
+public class HotKeyDetector {
+
+    private static final Logger logger = LoggerFactory.getLogger(HotKeyDetector.class);
+
+    /**
+     * 默认采样率
+     */
+    public static final double DEFAULT_SAMPLE_RATE = 0.01;
+
+    /**
+     * 默认每个节点的热点key数
+     */
+    public static final int DEFAULT_TOP_K = 10;
+
+    /**
+     * 默认统计窗口(与分钟上报一致)
+     */
+    public static final long DEFAULT_WINDOW_MILLIS = 60000;
+
+    /**
+     * Count-Min Sketch每行计数器个数
+     */
+    private static final int SKETCH_WIDTH = 2048;
+
+    private static final int SAMPLE_SCALE = 1 << 24;
+
+    /**
+     * 采样次数少于该值的key不是热点(Count-Min Sketch只会高估)
+     */
+    private static final int MIN_SAMPLES = 3;
+
+    /**
+     * 上报及回调的key最大长度
+     */
+    private static final int MAX_KEY_LENGTH = 128;
+
+    /**
+     * 没有key的命令
+     */
+    private static final Set<String> NO_KEY_COMMANDS = new HashSet<>(Arrays.asList("auth", "select", "ping", "echo",
+            "info", "cluster", "asking", "readonly", "readwrite", "client", "config", "script", "eval", "evalsha",
+            "publish", "subscribe", "psubscribe", "unsubscribe", "punsubscribe", "pubsub", "time", "dbsize", "scan",
+            "slowlog", "quit", "hello", "command", "memory", "object", "debug", "multi", "exec", "discard", "flushdb",
+            "flushall", "randomkey", "keys", "wait", "role", "sentinel", "latency", "migrate", "bitop", "xread",
+            "xreadgroup"));
+
+    /**
+     * 参数都是key的命令
+     */
+    private static final Set<String> ALL_KEYS_COMMANDS = new HashSet<>(Arrays.asList("mget", "del", "exists",
+            "unlink", "touch", "watch", "sinter", "sunion", "sdiff", "pfcount"));
+
+    /**
+     * 参数为key, value交替的命令
+     */
+    private static final Set<String> KEY_VALUE_COMMANDS = new HashSet<>(Arrays.asList("mset", "msetnx"));
+
+    private final double sampleRate;
+
+    private final int sampleThreshold;
+
+    private final int topK;
+
+    private final long windowMillis;
+
+    private volatile Window window = new Window(System.currentTimeMillis());
+
+    /**
+     * 上一个窗口的热点key
+     */
+    private volatile List<HotKeyModel> hotKeys = Collections.emptyList();
+
+    private volatile HotKeyListener listener;
+
+    public HotKeyDetector() {
+        this(DEFAULT_SAMPLE_RATE, DEFAULT_TOP_K, DEFAULT_WINDOW_MILLIS);
+    }
+
+    /**
+     * @param sampleRate   采样率, (0, 1]
+     * @param topK         每个节点的热点key数
+     * @param windowMillis 统计窗口(毫秒)
+     */
+    public HotKeyDetector(double sampleRate, int topK, long windowMillis) {
+        if (sampleRate <= 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("sampleRate must be in (0, 1]: " + sampleRate);
+        }
+        if (topK <= 0 || windowMillis <= 0) {
+            throw new IllegalArgumentException("topK and windowMillis must be positive: " + topK + "," + windowMillis);
+        }
+        this.sampleRate = sampleRate;
+        this.sampleThreshold = (int) Math.ceil(sampleRate * SAMPLE_SCALE);
+        this.topK = topK;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * 按采样率采样一条命令的key
+     *
+     * @param command 小写命令名
+     * @param node    redis节点
+     * @param args    命令参数
+     */
+    public void sample(String command, String node, final byte[]... args) {
+        if (isSampled(command, args.length)) {
+            add(command, node, args.length, i -> new String(args[i], StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * 按采样率采样一条命令的key, 参数未编码(String, 数字等), 只有被采样的命令才编码key
+     *
+     * @param command 小写命令名
+     * @param node    redis节点
+     * @param args    命令参数
+     * @param encoder 参数编码
+     */
+    public void sample(String command, String node, final Object[] args, final Function<Object, byte[]> encoder) {
+        if (isSampled(command, args.length)) {
+            add(command, node, args.length, i -> args[i] instanceof String ? (String) args[i]
+                    : new String(encoder.apply(args[i]), StandardCharsets.UTF_8));
+        }
+    }
+
+    private boolean isSampled(String command, int argCount) {
+        return ThreadLocalRandom.current().nextInt(SAMPLE_SCALE) < sampleThreshold && argCount > 0
+                && !NO_KEY_COMMANDS.contains(command);
+    }
+
+    private void add(String command, String node, int argCount, IntFunction<String> key) {
+        HeavyHitters heavyHitters = window.get(node);
+        if (ALL_KEYS_COMMANDS.contains(command)) {
+            for (int i = 0; i < argCount; i++) {
+                heavyHitters.add(key.apply(i));
+            }
+        } else if (KEY_VALUE_COMMANDS.contains(command)) {
+            for (int i = 0; i < argCount; i += 2) {
+                heavyHitters.add(key.apply(i));
+            }
+        } else {
+            heavyHitters.add(key.apply(0));
+        }
+    }
+
+    /**
+     * @return 上一个统计窗口各节点的热点key, 按估计访问次数降序
+     */
+    public List<HotKeyModel> getHotKeys() {
+        return hotKeys;
+    }
+
+    /**
+     * 设置热点key监听器, 为null时不回调
+     */
+    public void setListener(HotKeyListener listener) {
+        this.listener = listener;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * 当前窗口到期时切换窗口, 计算上一个窗口的热点key并回调监听器; 在统计线程中调用,
+     * 切换时仍在累加旧窗口的采样会丢失
+     */
+    public void rotate() {
+        rotate(System.currentTimeMillis());
+    }
+
+    void rotate(long now) {
+        Window closed;
+        synchronized (this) {
+            closed = window;
+            if (now - closed.start < windowMillis) {
+                return;
+            }
+            window = new Window(now);
+        }
+        close(closed, now);
+    }
+
+    private void close(Window closed, long now) {
+        double seconds = Math.max(now - closed.start, 1) / 1000.0;
+        List<HotKeyModel> models = new ArrayList<>();
+        for (Map.Entry<String, HeavyHitters> entry : closed.nodes.entrySet()) {
+            for (Map.Entry<String, Integer> top : entry.getValue().top()) {
+                if (top.getValue() < MIN_SAMPLES) {
+                    break;
+                }
+                long count = Math.round(top.getValue() / sampleRate);
+                String key = top.getKey();
+                if (key.length() > MAX_KEY_LENGTH) {
+                    key = key.substring(0, MAX_KEY_LENGTH);
+                }
+                models.add(new HotKeyModel(entry.getKey(), key, count, Math.round(count / seconds)));
+            }
+        }
+        Collections.sort(models, new Comparator<HotKeyModel>() {
+            @Override
+            public int compare(HotKeyModel o1, HotKeyModel o2) {
+                return Long.compare(o2.getCount(), o1.getCount());
+            }
+        });
+        hotKeys = Collections.unmodifiableList(models);
+        HotKeyListener current = listener;
+        if (current != null && !models.isEmpty()) {
+            try {
+                current.onHotKeys(hotKeys);
+            } catch (Exception e) {
+                logger.error("HotKeyListener error", e);
+            }
+        }
+    }
+
+    /**
+     * 一个统计窗口各节点的heavy hitters
+     */
+    private class Window {
+        private final long start;
+        private final ConcurrentMap<String, HeavyHitters> nodes = new ConcurrentHashMap<>();
+
+        Window(long start) {
+            this.start = start;
+        }
+
+        HeavyHitters get(String node) {
+            HeavyHitters heavyHitters = nodes.get(node);
+            if (heavyHitters == null) {
+                heavyHitters = new HeavyHitters(SKETCH_WIDTH, topK);
+                HeavyHitters previous = nodes.putIfAbsent(node, heavyHitters);
+                if (previous != null) {
+                    heavyHitters = previous;
+                }
+            }
+            return heavyHitters;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HotKeyDetector{sampleRate=" + sampleRate + ", topK=" + topK + ", windowMillis=" + windowMillis + "}";
+    }
+}
@@ -0,0 +1,18 @@
+package com.sohu.tv.cc.client.spectator.hotkey;
+
+import com.sohu.tv.cc.client.spectator.model.HotKeyModel;
+
+import java.util.List;
+
+/**
+ * 热点key监听器, 每个统计窗口结束时回调
+ */
+public interface HotKeyListener {
+
+    /**
+     * 在统计线程中回调(见{@link HotKeyDetector#rotate()}), 应尽快返回
+     *
+     * @param hotKeys 上一个窗口各节点的热点key, 按估计访问次数降序
+     */
+    void onHotKeys(List<HotKeyModel> hotKeys);
+}
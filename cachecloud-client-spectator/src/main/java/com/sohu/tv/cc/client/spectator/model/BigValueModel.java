@@ -0,0 +1,118 @@
+package com.sohu.tv.cc.client.spectator.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 大value: 一分钟内请求或响应字节数最大的命令
+ */
+public class BigValueModel {
+
+    /**
+     * 请求
+     */
+    public static final String TYPE_REQUEST = "request";
+
+    /**
+     * 响应
+     */
+    public static final String TYPE_REPLY = "reply";
+
+    private String command;
+
+    private String node;
+
+    /**
+     * 命令第一个参数(一般为key), 超长时截断
+     */
+    private String key;
+
+    /**
+     * 请求或响应字节数
+     */
+    private long bytes;
+
+    /**
+     * TYPE_REQUEST或TYPE_REPLY
+     */
+    private String type;
+
+    /**
+     * 命令调用时间戳
+     */
+    private long invokeTime;
+
+    public BigValueModel(String command, String node, String key, long bytes, String type, long invokeTime) {
+        this.command = command;
+        this.node = node;
+        this.key = key;
+        this.bytes = bytes;
+        this.type = type;
+        this.invokeTime = invokeTime;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public void setCommand(String command) {
+        this.command = command;
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    public void setNode(String node) {
+        this.node = node;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public long getInvokeTime() {
+        return invokeTime;
+    }
+
+    public void setInvokeTime(long invokeTime) {
+        this.invokeTime = invokeTime;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("command", this.command);
+        map.put("node", this.node);
+        map.put("key", this.key);
+        map.put("bytes", this.bytes);
+        map.put("type", this.type);
+        map.put("invokeTime", this.invokeTime);
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return "BigValueModel{command=" + command + ", node=" + node + ", key=" + key + ", bytes=" + bytes + ", type="
+                + type + ", invokeTime=" + invokeTime + "}";
+    }
+}
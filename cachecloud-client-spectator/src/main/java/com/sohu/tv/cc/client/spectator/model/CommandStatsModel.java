@@ -10,17 +10,47 @@ import java.util.Map;
  */
 public class CommandStatsModel {
 
+    /**
+     * 字节数直方图各桶上限(含), 最后一个桶为超过1MB
+     */
+    public static final long[] SIZE_BUCKETS = {64, 256, 1024, 4 * 1024, 16 * 1024, 64 * 1024, 256 * 1024, 1024 * 1024};
+
     private String command;
     private String node;
     private int count;
     private long cost;
     private long bytesIn;
     private long bytesOut;
+    /**
+     * 请求字节数直方图, 按SIZE_BUCKETS分桶的命令次数
+     */
+    private long[] bytesInHistogram = new long[SIZE_BUCKETS.length + 1];
+    /**
+     * 响应字节数直方图, 按SIZE_BUCKETS分桶的命令次数
+     */
+    private long[] bytesOutHistogram = new long[SIZE_BUCKETS.length + 1];
 
     public CommandStatsModel(String command){
         this.command = command;
     }
 
+    /**
+     * 按请求, 响应字节数累加直方图
+     */
+    public void addSize(long bytesIn, long bytesOut) {
+        bytesInHistogram[sizeBucket(bytesIn)]++;
+        bytesOutHistogram[sizeBucket(bytesOut)]++;
+    }
+
+    private static int sizeBucket(long bytes) {
+        for (int i = 0; i < SIZE_BUCKETS.length; i++) {
+            if (bytes <= SIZE_BUCKETS[i]) {
+                return i;
+            }
+        }
+        return SIZE_BUCKETS.length;
+    }
+
     public String getCommand() {
         return command;
     }
@@ -69,6 +99,14 @@ public class CommandStatsModel {
         this.node = node;
     }
 
+    public long[] getBytesInHistogram() {
+        return bytesInHistogram;
+    }
+
+    public long[] getBytesOutHistogram() {
+        return bytesOutHistogram;
+    }
+
     public Map<String, Object> toMap(){
         Map<String, Object> map = new HashMap<>();
         map.put("command", this.command);
@@ -77,6 +115,8 @@ public class CommandStatsModel {
         map.put("cost", this.cost);
         map.put("bytesIn", this.bytesIn);
         map.put("bytesOut", this.bytesOut);
+        map.put("bytesInHistogram", this.bytesInHistogram);
+        map.put("bytesOutHistogram", this.bytesOutHistogram);
         return map;
     }
 }
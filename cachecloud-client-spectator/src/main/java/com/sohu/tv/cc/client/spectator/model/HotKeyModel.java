@@ -0,0 +1,77 @@
+package com.sohu.tv.cc.client.spectator.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 热点key: 一个统计窗口内某个节点上访问最多的key
+ */
+public class HotKeyModel {
+
+    private String node;
+
+    private String key;
+
+    /**
+     * 窗口内的估计访问次数(采样计数/采样率)
+     */
+    private long count;
+
+    /**
+     * 窗口内的估计qps
+     */
+    private long qps;
+
+    public HotKeyModel(String node, String key, long count, long qps) {
+        this.node = node;
+        this.key = key;
+        this.count = count;
+        this.qps = qps;
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    public void setNode(String node) {
+        this.node = node;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public long getQps() {
+        return qps;
+    }
+
+    public void setQps(long qps) {
+        this.qps = qps;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("node", this.node);
+        map.put("key", this.key);
+        map.put("count", this.count);
+        map.put("qps", this.qps);
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return "HotKeyModel{node=" + node + ", key=" + key + ", count=" + count + ", qps=" + qps + "}";
+    }
+}
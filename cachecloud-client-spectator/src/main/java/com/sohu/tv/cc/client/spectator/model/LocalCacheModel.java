@@ -0,0 +1,125 @@
+package com.sohu.tv.cc.client.spectator.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 客户端本地缓存: 一个上报周期内的命中, 未命中, 淘汰及过期数, 以及上报时的缓存项数和权重
+ */
+public class LocalCacheModel {
+
+    private String name;
+
+    private long hits;
+
+    private long misses;
+
+    /**
+     * 容量满时按淘汰策略移除的缓存项数
+     */
+    private long evictions;
+
+    /**
+     * 因ttl到期移除的缓存项数
+     */
+    private long expirations;
+
+    private long size;
+
+    private long weight;
+
+    public LocalCacheModel(String name, long hits, long misses, long evictions, long expirations, long size,
+                           long weight) {
+        this.name = name;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.expirations = expirations;
+        this.size = size;
+        this.weight = weight;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public void setHits(long hits) {
+        this.hits = hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public void setMisses(long misses) {
+        this.misses = misses;
+    }
+
+    /**
+     * @return 命中率, 周期内没有请求时为0
+     */
+    public double getHitRatio() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public void setEvictions(long evictions) {
+        this.evictions = evictions;
+    }
+
+    public long getExpirations() {
+        return expirations;
+    }
+
+    public void setExpirations(long expirations) {
+        this.expirations = expirations;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public long getWeight() {
+        return weight;
+    }
+
+    public void setWeight(long weight) {
+        this.weight = weight;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("name", this.name);
+        map.put("hits", this.hits);
+        map.put("misses", this.misses);
+        map.put("hitRatio", getHitRatio());
+        map.put("evictions", this.evictions);
+        map.put("expirations", this.expirations);
+        map.put("size", this.size);
+        map.put("weight", this.weight);
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return "LocalCacheModel{name=" + name + ", hits=" + hits + ", misses=" + misses + ", hitRatio="
+                + getHitRatio() + ", evictions=" + evictions + ", expirations=" + expirations + ", size=" + size
+                + ", weight=" + weight + "}";
+    }
+}
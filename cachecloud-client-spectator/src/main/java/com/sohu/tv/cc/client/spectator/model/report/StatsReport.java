@@ -1,6 +1,9 @@
 package com.sohu.tv.cc.client.spectator.model.report;
 
+import com.sohu.tv.cc.client.spectator.model.BigValueModel;
 import com.sohu.tv.cc.client.spectator.model.CommandStatsModel;
+import com.sohu.tv.cc.client.spectator.model.HotKeyModel;
+import com.sohu.tv.cc.client.spectator.model.LocalCacheModel;
 
 import java.util.*;
 
@@ -30,6 +33,18 @@ public class StatsReport {
      * 命令调用记录
      */
     private List<CommandStatsModel> commandStatsModels;
+    /**
+     * 热点key
+     */
+    private List<HotKeyModel> hotKeyModels;
+    /**
+     * 大value
+     */
+    private List<BigValueModel> bigValueModels;
+    /**
+     * 本地缓存
+     */
+    private List<LocalCacheModel> localCacheModels;
     /**
      * 数据统计耗时
      */
@@ -87,6 +102,30 @@ public class StatsReport {
         this.commandStatsModels = commandStatsModels;
     }
 
+    public List<HotKeyModel> getHotKeyModels() {
+        return hotKeyModels;
+    }
+
+    public void setHotKeyModels(List<HotKeyModel> hotKeyModels) {
+        this.hotKeyModels = hotKeyModels;
+    }
+
+    public List<BigValueModel> getBigValueModels() {
+        return bigValueModels;
+    }
+
+    public void setBigValueModels(List<BigValueModel> bigValueModels) {
+        this.bigValueModels = bigValueModels;
+    }
+
+    public List<LocalCacheModel> getLocalCacheModels() {
+        return localCacheModels;
+    }
+
+    public void setLocalCacheModels(List<LocalCacheModel> localCacheModels) {
+        this.localCacheModels = localCacheModels;
+    }
+
     public Map<String, Object> toMap() {
         Map<String, Object> map = new HashMap<>();
         map.put("currentMin", this.currentMin);
@@ -99,6 +138,27 @@ public class StatsReport {
             list.add(model.toMap());
         }
         map.put("commandStatsModels", list);
+        if (hotKeyModels != null && !hotKeyModels.isEmpty()) {
+            List<Map<String, Object>> hotKeyList = new ArrayList<>(hotKeyModels.size());
+            for (HotKeyModel model : hotKeyModels) {
+                hotKeyList.add(model.toMap());
+            }
+            map.put("hotKeyModels", hotKeyList);
+        }
+        if (bigValueModels != null && !bigValueModels.isEmpty()) {
+            List<Map<String, Object>> bigValueList = new ArrayList<>(bigValueModels.size());
+            for (BigValueModel model : bigValueModels) {
+                bigValueList.add(model.toMap());
+            }
+            map.put("bigValueModels", bigValueList);
+        }
+        if (localCacheModels != null && !localCacheModels.isEmpty()) {
+            List<Map<String, Object>> localCacheList = new ArrayList<>(localCacheModels.size());
+            for (LocalCacheModel model : localCacheModels) {
+                localCacheList.add(model.toMap());
+            }
+            map.put("localCacheModels", localCacheList);
+        }
         return map;
     }
 }
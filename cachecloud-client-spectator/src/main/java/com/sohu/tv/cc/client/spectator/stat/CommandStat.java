@@ -1,5 +1,7 @@
 package com.sohu.tv.cc.client.spectator.stat;
 
+import java.util.function.Function;
+
 /**
  * @author wenruiwu
  * @create 2019/12/20 10:34
@@ -27,6 +29,19 @@ public class CommandStat {
      * redis 节点
      */
     private String node;
+    /**
+     * 命令第一个参数(一般为key), 大value统计使用
+     */
+    private byte[] key;
+    /**
+     * 未编码的key及其编码, key在统计线程需要时才编码
+     */
+    private Object rawKey;
+    private Function<Object, byte[]> keyEncoder;
+    /**
+     * 命令调用时间戳
+     */
+    private long invokeTime;
 
     public CommandStat(String command, String node, long cost, long bytesIn, long bytesOut) {
         this.command = command;
@@ -36,6 +51,12 @@ public class CommandStat {
         this.bytesOut = bytesOut;
     }
 
+    public CommandStat(String command, String node, long cost, long bytesIn, long bytesOut, byte[] key, long invokeTime) {
+        this(command, node, cost, bytesIn, bytesOut);
+        this.key = key;
+        this.invokeTime = invokeTime;
+    }
+
     public String getCommand() {
         return command;
     }
@@ -44,6 +65,14 @@ public class CommandStat {
         this.command = command;
     }
 
+    public String getNode() {
+        return node;
+    }
+
+    public void setNode(String node) {
+        this.node = node;
+    }
+
     public long getCost() {
         return cost;
     }
@@ -68,6 +97,34 @@ public class CommandStat {
         this.bytesOut = bytesOut;
     }
 
+    public CommandStat(String command, String node, long cost, long bytesIn, long bytesOut, Object rawKey,
+                       Function<Object, byte[]> keyEncoder, long invokeTime) {
+        this(command, node, cost, bytesIn, bytesOut);
+        this.rawKey = rawKey;
+        this.keyEncoder = keyEncoder;
+        this.invokeTime = invokeTime;
+    }
+
+    public byte[] getKey() {
+        if (key == null && rawKey != null) {
+            key = keyEncoder.apply(rawKey);
+            rawKey = null;
+        }
+        return key;
+    }
+
+    public void setKey(byte[] key) {
+        this.key = key;
+    }
+
+    public long getInvokeTime() {
+        return invokeTime;
+    }
+
+    public void setInvokeTime(long invokeTime) {
+        this.invokeTime = invokeTime;
+    }
+
     @Override
     public String toString() {
         return "CommandStat [command=" + command + ",node=" + node + ", cost=" + cost + "ns, bytesIn=" + bytesIn + ", bytesOut=" + bytesOut + "]";
@@ -0,0 +1,250 @@
+package com.sohu.tv.cc.client.spectator.util;
+
+import com.sohu.tv.cc.client.spectator.heartbeat.ClientStatusEnum;
+import com.sohu.tv.cc.client.spectator.json.JSONUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 应用拓扑(CacheCloud接口返回的节点, 密码, masterName, sentinel等)的本地快照:
+ * 每次从HTTP获取成功后写入本地文件, 启动时优先使用未过期的快照构建客户端(同时在后台线程从HTTP刷新快照),
+ * 避免CacheCloud服务不可用时应用启动一直阻塞; 快照目录和文件只对当前用户可读写,
+ * 已存在的目录或文件不属于当前用户或其它用户可以访问时不读也不写(防止密码泄露或启动时使用伪造的快照)
+ */
+public class TopologySnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(TopologySnapshot.class);
+
+    /**
+     * 默认快照最大过期时间
+     */
+    public static final long DEFAULT_MAX_STALENESS_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * 后台刷新失败后的最大重试间隔
+     */
+    private static final long MAX_RETRY_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final String url;
+
+    /**
+     * 快照文件, 为null时不使用快照
+     */
+    private final File file;
+
+    private final long maxStalenessMillis;
+
+    private final AtomicBoolean bootstrapped = new AtomicBoolean();
+
+    /**
+     * @param url                CacheCloud接口地址
+     * @param dir                快照目录, 为null时不使用快照(每次请求HTTP)
+     * @param maxStalenessMillis 快照最大过期时间, 超过时不再使用
+     */
+    public TopologySnapshot(String url, String dir, long maxStalenessMillis) {
+        this.url = url;
+        this.file = dir == null ? null : new File(dir, fileName(url));
+        this.maxStalenessMillis = maxStalenessMillis;
+    }
+
+    /**
+     * 获取应用拓扑: 第一次调用时返回未过期的本地快照(同时在后台从HTTP刷新快照), 没有可用快照时请求HTTP;
+     * HTTP返回成功(可以解析且status不是ERROR)时写入快照
+     *
+     * @return 接口返回内容
+     */
+    public String fetch() {
+        if (file != null && bootstrapped.compareAndSet(false, true)) {
+            String snapshot = read();
+            if (snapshot != null) {
+                logger.warn("bootstrap from topology snapshot {}, refreshing from {} in background", file, url);
+                refreshInBackground();
+                return snapshot;
+            }
+        }
+        String response = HttpUtils.doGet(url);
+        save(response);
+        return response;
+    }
+
+    private void refreshInBackground() {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Random random = new Random();
+                long interval = 200;
+                while (true) {
+                    try {
+                        if (save(HttpUtils.doGet(url))) {
+                            logger.info("topology snapshot {} refreshed", file);
+                            return;
+                        }
+                    } catch (Exception e) {
+                        logger.warn("refresh topology snapshot from {} error: {}", url, e.getMessage());
+                    }
+                    try {
+                        TimeUnit.MILLISECONDS.sleep(interval + random.nextInt(1000));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    interval = Math.min(interval * 2, MAX_RETRY_INTERVAL_MILLIS);
+                }
+            }
+        }, "TopologySnapshotRefresh");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return 未过期的快照内容, 不存在, 已过期或无法读取时返回null
+     */
+    private String read() {
+        if (!file.isFile() || !isPrivate(file.getParentFile().toPath()) || !isPrivate(file.toPath())) {
+            return null;
+        }
+        long age = System.currentTimeMillis() - file.lastModified();
+        if (age > maxStalenessMillis) {
+            logger.warn("topology snapshot {} is stale: {}ms", file, age);
+            return null;
+        }
+        try {
+            String snapshot = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            return isValid(snapshot) ? snapshot : null;
+        } catch (IOException e) {
+            logger.warn("read topology snapshot {} error: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 写入快照(先写临时文件再原子替换, 读到的快照总是完整的)
+     *
+     * @return response是否有效
+     */
+    private boolean save(String response) {
+        if (!isValid(response)) {
+            return false;
+        }
+        if (file == null) {
+            return true;
+        }
+        try {
+            Path dir = file.getParentFile().toPath();
+            if (!Files.exists(dir, LinkOption.NOFOLLOW_LINKS)) {
+                Files.createDirectories(dir);
+                setOwnerOnly(dir, "rwx------");
+            }
+            if (!isPrivate(dir) || (Files.exists(file.toPath(), LinkOption.NOFOLLOW_LINKS) && !isPrivate(file.toPath()))) {
+                return true;
+            }
+            Path tmp = Files.createTempFile(dir, file.getName(), ".tmp");
+            setOwnerOnly(tmp, "rw-------");
+            Files.write(tmp, response.getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (Exception e) {
+            logger.warn("write topology snapshot {} error: {}", file, e.getMessage());
+        }
+        return true;
+    }
+
+    private static void setOwnerOnly(Path path, String permissions) {
+        try {
+            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString(permissions));
+        } catch (UnsupportedOperationException e) {
+            // 非POSIX文件系统
+        } catch (IOException e) {
+            logger.warn("set permissions of {} error: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * 是否为当前用户所有且组和其它用户没有任何权限(非POSIX文件系统只检查所有者), 符号链接不可用
+     */
+    private static boolean isPrivate(Path path) {
+        try {
+            if (Files.isSymbolicLink(path)) {
+                logger.warn("topology snapshot path {} is a symbolic link, ignored", path);
+                return false;
+            }
+            UserPrincipal owner = Files.getOwner(path, LinkOption.NOFOLLOW_LINKS);
+            UserPrincipal user = path.getFileSystem().getUserPrincipalLookupService()
+                    .lookupPrincipalByName(System.getProperty("user.name"));
+            if (!owner.equals(user)) {
+                logger.warn("topology snapshot path {} is owned by {}, ignored", path, owner.getName());
+                return false;
+            }
+            Set<PosixFilePermission> permissions;
+            try {
+                permissions = Files.getPosixFilePermissions(path, LinkOption.NOFOLLOW_LINKS);
+            } catch (UnsupportedOperationException e) {
+                return true;
+            }
+            for (PosixFilePermission permission : permissions) {
+                if (!permission.name().startsWith("OWNER_")) {
+                    logger.warn("topology snapshot path {} is accessible by other users ({}), ignored", path,
+                            PosixFilePermissions.toString(permissions));
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            logger.warn("check topology snapshot path {} error: {}", path, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 可以解析为JSON对象且status不是ERROR
+     */
+    private static boolean isValid(String response) {
+        if (response == null || response.isEmpty()) {
+            return false;
+        }
+        try {
+            Object object = JSONUtils.parse(response);
+            if (!(object instanceof Map)) {
+                return false;
+            }
+            Object status = ((Map) object).get("status");
+            return status != null && Integer.parseInt(String.valueOf(status)) != ClientStatusEnum.ERROR.getStatus();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * 接口路径的最后两级, 如cluster-10000.json
+     */
+    private static String fileName(String url) {
+        String path = url;
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        String[] segments = path.split("/");
+        String name = segments.length >= 2 ? segments[segments.length - 2] + "-" + segments[segments.length - 1]
+                : String.valueOf(url.hashCode());
+        return name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+}
@@ -0,0 +1,112 @@
+package com.sohu.tv.cc.client.spectator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import com.sohu.tv.cc.client.spectator.model.BigValueModel;
+import com.sohu.tv.cc.client.spectator.stat.CommandStat;
+
+/**
+ * Big values kept by the command stats worker within a minute.
+ */
+public class AsyncStatsCollectorTest {
+
+  private final AtomicInteger encoded = new AtomicInteger();
+
+  private final Function<Object, byte[]> encoder = arg -> {
+    encoded.incrementAndGet();
+    return String.valueOf(arg).getBytes(StandardCharsets.UTF_8);
+  };
+
+  // the worker is not started, statistics are accumulated on the test thread
+  private final AsyncStatsCollector collector = new AsyncStatsCollector(10000, null);
+  private final AsyncStatsCollector.AsyncCommandStatsWorker worker = collector.new AsyncCommandStatsWorker();
+
+  private CommandStat stat(String key, long bytesIn, long bytesOut) {
+    return new CommandStat("get", "127.0.0.1:6379", 1, bytesIn, bytesOut, key, encoder, 42);
+  }
+
+  private static List<Long> bytes(List<BigValueModel> bigValues) {
+    List<Long> bytes = new ArrayList<>();
+    for (BigValueModel bigValue : bigValues) {
+      bytes.add(bigValue.getBytes());
+    }
+    return bytes;
+  }
+
+  @Test
+  public void valuesBelowThresholdAreSkipped() {
+    collector.setBigValueBytes(1000);
+    worker.accumulation(stat("small", 999, 999));
+    worker.accumulation(stat("k", 999, 1000));
+    List<BigValueModel> bigValues = worker.getBigValues();
+    assertEquals(1, bigValues.size());
+    BigValueModel bigValue = bigValues.get(0);
+    assertEquals("get", bigValue.getCommand());
+    assertEquals("127.0.0.1:6379", bigValue.getNode());
+    assertEquals("k", bigValue.getKey());
+    assertEquals(1000, bigValue.getBytes());
+    assertEquals(BigValueModel.TYPE_REPLY, bigValue.getType());
+    assertEquals(42, bigValue.getInvokeTime());
+    // keys of skipped values are never encoded
+    assertEquals(1, encoded.get());
+  }
+
+  @Test
+  public void largestValuesAreKeptPerType() {
+    collector.setBigValueBytes(1);
+    for (int i = 1; i <= 15; i++) {
+      worker.accumulation(stat("k" + i, 0, i * 100));
+    }
+    worker.accumulation(stat("request", 5000, 0));
+    List<BigValueModel> bigValues = worker.getBigValues();
+    // requests and replies have separate top-N, sorted together by bytes
+    assertEquals(Arrays.asList(5000L, 1500L, 1400L, 1300L, 1200L, 1100L, 1000L, 900L, 800L, 700L, 600L),
+        bytes(bigValues));
+    assertEquals(BigValueModel.TYPE_REQUEST, bigValues.get(0).getType());
+    assertEquals("k15", bigValues.get(1).getKey());
+  }
+
+  @Test
+  public void keyIsEncodedOnlyWhenEnteringTopN() {
+    collector.setBigValueBytes(1);
+    for (int i = 1; i <= 10; i++) {
+      worker.accumulation(stat("k" + i, 0, i * 100));
+    }
+    assertEquals(10, encoded.get());
+    // not larger than the smallest kept value
+    worker.accumulation(stat("equal", 0, 100));
+    worker.accumulation(stat("smaller", 0, 50));
+    assertEquals(10, encoded.get());
+
+    worker.accumulation(stat("larger", 0, 150));
+    assertEquals(11, encoded.get());
+    List<BigValueModel> bigValues = worker.getBigValues();
+    assertEquals(10, bigValues.size());
+    assertEquals("larger", bigValues.get(9).getKey());
+    assertEquals(150, bigValues.get(9).getBytes());
+  }
+
+  @Test
+  public void keyIsTruncatedTo128Bytes() {
+    collector.setBigValueBytes(1);
+    StringBuilder key = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      key.append('k');
+    }
+    worker.accumulation(stat(key.toString(), 0, 100));
+    worker.accumulation(new CommandStat("ping", "127.0.0.1:6379", 1, 0, 50, null, encoder, 42));
+    List<BigValueModel> bigValues = worker.getBigValues();
+    assertEquals(key.substring(0, 128), bigValues.get(0).getKey());
+    // commands without arguments have an empty key
+    assertEquals("", bigValues.get(1).getKey());
+  }
+}
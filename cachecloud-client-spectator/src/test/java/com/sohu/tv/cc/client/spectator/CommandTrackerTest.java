@@ -0,0 +1,130 @@
+package com.sohu.tv.cc.client.spectator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import com.sohu.tv.cc.client.spectator.hotkey.HotKeyDetector;
+import com.sohu.tv.cc.client.spectator.model.HotKeyModel;
+import com.sohu.tv.cc.client.spectator.stat.CommandStat;
+
+public class CommandTrackerTest {
+
+  private final AtomicInteger encoded = new AtomicInteger();
+
+  private final Function<Object, byte[]> encoder = arg -> {
+    encoded.incrementAndGet();
+    return String.valueOf(arg).getBytes(StandardCharsets.UTF_8);
+  };
+
+  private final RecordingStatsCollector collector = new RecordingStatsCollector();
+
+  @Test
+  public void unencodedArgumentsAreEncodedOnlyWhenNeeded() {
+    CommandTracker tracker = CommandTracker.getCommandTracker();
+    tracker.commandStart(collector, "set", "127.0.0.1:6379", 1L, System.nanoTime(), false, 6,
+        new Object[] { "key", 123 }, encoder);
+    tracker.commandCompleted("OK".getBytes(StandardCharsets.UTF_8), false, collector);
+    assertEquals(0, encoded.get());
+
+    CommandStat stat = collector.stats.get(0);
+    assertEquals("set", stat.getCommand());
+    assertEquals(6, stat.getBytesIn());
+    assertEquals(2, stat.getBytesOut());
+    // the key is encoded on the stats thread, once
+    assertArrayEquals("key".getBytes(StandardCharsets.UTF_8), stat.getKey());
+    stat.getKey();
+    assertEquals(1, encoded.get());
+  }
+
+  @Test
+  public void failedSendEncodesArguments() {
+    CommandTracker.getCommandTracker().commandStart(collector, "zadd", "127.0.0.1:6379", 1L, System.nanoTime(),
+        true, 7, new Object[] { "z", 1.5, "m" }, encoder);
+    assertEquals(1, collector.failures.size());
+    byte[][] args = collector.failures.get(0).getCommandArgs();
+    assertEquals(3, args.length);
+    assertEquals("1.5", new String(args[1], StandardCharsets.UTF_8));
+    assertEquals(7, collector.failures.get(0).getInputBytes());
+  }
+
+  @Test
+  public void binaryArgumentsKeepWorking() {
+    CommandTracker tracker = CommandTracker.getCommandTracker();
+    tracker.commandStart(collector, "get", "n", 1L, System.nanoTime(), false, "k".getBytes(StandardCharsets.UTF_8));
+    tracker.commandCompleted(null, false, collector);
+    assertArrayEquals("k".getBytes(StandardCharsets.UTF_8), collector.stats.get(0).getKey());
+    assertEquals(1, collector.stats.get(0).getBytesIn());
+  }
+
+  @Test
+  public void commandWithoutArguments() {
+    CommandTracker tracker = CommandTracker.getCommandTracker();
+    tracker.commandStart(collector, "ping", "n", 1L, System.nanoTime(), false, 0, new Object[0], encoder);
+    tracker.commandCompleted(null, false, collector);
+    assertNull(collector.stats.get(0).getKey());
+  }
+
+  @Test
+  public void hotKeysSampledFromUnencodedArguments() throws InterruptedException {
+    HotKeyDetector detector = new HotKeyDetector(1, 10, 1);
+    collector.hotKeyDetector = detector;
+    CommandTracker tracker = CommandTracker.getCommandTracker();
+    for (int i = 0; i < 3; i++) {
+      tracker.commandStart(collector, "mset", "n", 1L, System.nanoTime(), false, 4,
+          new Object[] { "a", 1, 2L, "v" }, encoder);
+      tracker.commandCompleted(null, false, collector);
+    }
+    Thread.sleep(5);
+    detector.rotate();
+    List<String> keys = new ArrayList<>();
+    for (HotKeyModel model : detector.getHotKeys()) {
+      keys.add(model.getKey());
+    }
+    assertEquals(2, keys.size());
+    assertTrue(keys.contains("a") && keys.contains("2"));
+  }
+
+  private static class RecordingStatsCollector implements StatsCollector {
+    final List<CommandStat> stats = new ArrayList<>();
+    final List<CommandTracker.CommandItem> failures = new ArrayList<>();
+    HotKeyDetector hotKeyDetector;
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public boolean appendCommandStat(CommandStat stat) {
+      return stats.add(stat);
+    }
+
+    @Override
+    public boolean appendCommandExpStat(CommandTracker.CommandItem item) {
+      return failures.add(item);
+    }
+
+    @Override
+    public boolean appendConnectExpStat(String node, long cost) {
+      return true;
+    }
+
+    @Override
+    public HotKeyDetector getHotKeyDetector() {
+      return hotKeyDetector;
+    }
+
+    @Override
+    public void shutdown() {
+    }
+  }
+}
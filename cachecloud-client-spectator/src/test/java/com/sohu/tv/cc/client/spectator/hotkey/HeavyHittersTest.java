@@ -0,0 +1,79 @@
+package com.sohu.tv.cc.client.spectator.hotkey;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class HeavyHittersTest {
+
+  private static void add(HeavyHitters heavyHitters, String key, int times) {
+    for (int i = 0; i < times; i++) {
+      heavyHitters.add(key);
+    }
+  }
+
+  private static List<String> keys(HeavyHitters heavyHitters) {
+    List<String> keys = new ArrayList<>();
+    for (Map.Entry<String, Integer> entry : heavyHitters.top()) {
+      keys.add(entry.getKey());
+    }
+    return keys;
+  }
+
+  @Test
+  public void topIsSortedByEstimate() {
+    HeavyHitters heavyHitters = new HeavyHitters(2048, 10);
+    add(heavyHitters, "b", 2);
+    add(heavyHitters, "a", 5);
+    add(heavyHitters, "c", 1);
+    List<Map.Entry<String, Integer>> top = heavyHitters.top();
+    assertEquals(3, top.size());
+    assertEquals("a", top.get(0).getKey());
+    assertEquals(Integer.valueOf(5), top.get(0).getValue());
+    assertEquals("b", top.get(1).getKey());
+    assertEquals("c", top.get(2).getKey());
+  }
+
+  @Test
+  public void newKeyReplacesMinimumOnlyWhenLarger() {
+    HeavyHitters heavyHitters = new HeavyHitters(2048, 2);
+    add(heavyHitters, "a", 5);
+    add(heavyHitters, "b", 1);
+    // estimate 1 does not beat the minimum candidate b(1)
+    heavyHitters.add("c");
+    assertEquals(new HashSet<>(Arrays.asList("a", "b")), new HashSet<>(keys(heavyHitters)));
+    // estimate 2 does
+    heavyHitters.add("c");
+    assertEquals(Arrays.asList("a", "c"), keys(heavyHitters));
+  }
+
+  @Test
+  public void minimumFollowsCandidateUpdates() {
+    HeavyHitters heavyHitters = new HeavyHitters(2048, 2);
+    add(heavyHitters, "a", 1);
+    add(heavyHitters, "b", 3);
+    // a grows past b, b becomes the candidate to evict
+    add(heavyHitters, "a", 4);
+    add(heavyHitters, "c", 4);
+    assertEquals(Arrays.asList("a", "c"), keys(heavyHitters));
+  }
+
+  @Test
+  public void estimatesNeverUndercount() {
+    // a narrow sketch collides a lot but only overestimates
+    HeavyHitters heavyHitters = new HeavyHitters(16, 200);
+    for (int i = 0; i < 200; i++) {
+      add(heavyHitters, "key" + i, i % 7 + 1);
+    }
+    for (Map.Entry<String, Integer> entry : heavyHitters.top()) {
+      int i = Integer.parseInt(entry.getKey().substring(3));
+      assertEquals(true, entry.getValue() >= i % 7 + 1);
+    }
+  }
+}
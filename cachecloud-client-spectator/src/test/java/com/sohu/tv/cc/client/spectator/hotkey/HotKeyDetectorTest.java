@@ -0,0 +1,131 @@
+package com.sohu.tv.cc.client.spectator.hotkey;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sohu.tv.cc.client.spectator.model.HotKeyModel;
+
+public class HotKeyDetectorTest {
+
+  private static final long WINDOW = 60000;
+
+  private final List<List<HotKeyModel>> notified = new ArrayList<>();
+
+  private HotKeyDetector detector(double sampleRate, int topK) {
+    HotKeyDetector detector = new HotKeyDetector(sampleRate, topK, WINDOW);
+    detector.setListener(notified::add);
+    return detector;
+  }
+
+  private static byte[][] args(String... args) {
+    byte[][] bytes = new byte[args.length][];
+    for (int i = 0; i < args.length; i++) {
+      bytes[i] = args[i].getBytes(StandardCharsets.UTF_8);
+    }
+    return bytes;
+  }
+
+  private static void sample(HotKeyDetector detector, String command, String node, int times, String... args) {
+    for (int i = 0; i < times; i++) {
+      detector.sample(command, node, args(args));
+    }
+  }
+
+  private static long afterWindow() {
+    return System.currentTimeMillis() + WINDOW;
+  }
+
+  @Test
+  public void keysBelowMinSamplesAreDropped() {
+    HotKeyDetector detector = detector(1, 10);
+    sample(detector, "get", "n1", 3, "hot");
+    sample(detector, "get", "n1", 2, "warm");
+    detector.rotate(afterWindow());
+    List<HotKeyModel> hotKeys = detector.getHotKeys();
+    assertEquals(1, hotKeys.size());
+    assertEquals("hot", hotKeys.get(0).getKey());
+    assertEquals(3, hotKeys.get(0).getCount());
+  }
+
+  @Test
+  public void countsAreScaledBySampleRate() {
+    HotKeyDetector detector = new HotKeyDetector(1, 10, WINDOW);
+    sample(detector, "get", "n1", 5, "k");
+    detector.rotate(afterWindow());
+    HotKeyModel model = detector.getHotKeys().get(0);
+    assertEquals(5, model.getCount());
+    assertTrue(model.getQps() <= 5);
+  }
+
+  @Test
+  public void keysOfMultiKeyCommands() {
+    HotKeyDetector detector = detector(1, 10);
+    sample(detector, "mget", "n1", 3, "a", "b");
+    sample(detector, "mset", "n1", 3, "c", "value", "d", "value");
+    sample(detector, "ping", "n1", 3, "x");
+    sample(detector, "hget", "n1", 3, "e", "field");
+    detector.rotate(afterWindow());
+    List<String> keys = new ArrayList<>();
+    for (HotKeyModel model : detector.getHotKeys()) {
+      keys.add(model.getKey());
+    }
+    assertEquals(5, keys.size());
+    assertTrue(keys.containsAll(Arrays.asList("a", "b", "c", "d", "e")));
+  }
+
+  @Test
+  public void topKPerNodeSortedByCount() {
+    HotKeyDetector detector = detector(1, 2);
+    sample(detector, "get", "n1", 10, "a");
+    sample(detector, "get", "n1", 5, "b");
+    sample(detector, "get", "n1", 3, "c");
+    sample(detector, "get", "n2", 7, "a");
+    detector.rotate(afterWindow());
+    List<HotKeyModel> hotKeys = detector.getHotKeys();
+    assertEquals(3, hotKeys.size());
+    assertEquals("n1", hotKeys.get(0).getNode());
+    assertEquals(10, hotKeys.get(0).getCount());
+    assertEquals("n2", hotKeys.get(1).getNode());
+    assertEquals(7, hotKeys.get(1).getCount());
+    assertEquals("b", hotKeys.get(2).getKey());
+  }
+
+  @Test
+  public void windowRollover() {
+    HotKeyDetector detector = detector(1, 10);
+    sample(detector, "get", "n1", 4, "k");
+    // window still open
+    detector.rotate(System.currentTimeMillis());
+    assertTrue(detector.getHotKeys().isEmpty());
+    assertTrue(notified.isEmpty());
+
+    long now = afterWindow();
+    detector.rotate(now);
+    assertEquals(1, notified.size());
+    assertEquals(detector.getHotKeys(), notified.get(0));
+    // the next window starts empty, an empty result is published without notifying
+    detector.rotate(now + WINDOW);
+    assertTrue(detector.getHotKeys().isEmpty());
+    assertEquals(1, notified.size());
+  }
+
+  @Test
+  public void samplingNeverRotates() throws InterruptedException {
+    HotKeyDetector detector = new HotKeyDetector(1, 10, 1);
+    detector.setListener(notified::add);
+    sample(detector, "get", "n1", 3, "k");
+    Thread.sleep(5);
+    sample(detector, "get", "n1", 3, "k");
+    assertTrue(notified.isEmpty());
+    assertTrue(detector.getHotKeys().isEmpty());
+    detector.rotate();
+    assertEquals(6, detector.getHotKeys().get(0).getCount());
+  }
+}
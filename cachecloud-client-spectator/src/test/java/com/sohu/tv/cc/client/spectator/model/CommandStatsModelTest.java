@@ -0,0 +1,31 @@
+package com.sohu.tv.cc.client.spectator.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class CommandStatsModelTest {
+
+  private static final long MB = 1024 * 1024;
+
+  @Test
+  public void bucketUpperBoundsAreInclusive() {
+    CommandStatsModel model = new CommandStatsModel("get");
+    model.addSize(0, 64);
+    model.addSize(64, 65);
+    model.addSize(MB, MB);
+    model.addSize(MB + 1, 4 * 1024);
+    assertArrayEquals(new long[] { 2, 0, 0, 0, 0, 0, 0, 1, 1 }, model.getBytesInHistogram());
+    assertArrayEquals(new long[] { 1, 1, 0, 1, 0, 0, 0, 1, 0 }, model.getBytesOutHistogram());
+  }
+
+  @Test
+  public void largeValuesFallIntoLastBucket() {
+    CommandStatsModel model = new CommandStatsModel("get");
+    assertEquals(CommandStatsModel.SIZE_BUCKETS.length + 1, model.getBytesInHistogram().length);
+    model.addSize(Long.MAX_VALUE, 16 * MB);
+    assertEquals(1, model.getBytesInHistogram()[CommandStatsModel.SIZE_BUCKETS.length]);
+    assertEquals(1, model.getBytesOutHistogram()[CommandStatsModel.SIZE_BUCKETS.length]);
+  }
+}
@@ -0,0 +1,165 @@
+package com.sohu.tv.cc.client.spectator.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * {@link TopologySnapshot} against an in-process HTTP server.
+ */
+public class TopologySnapshotTest {
+
+  private static final String GOOD = "{\"status\":1,\"appId\":10000,\"version\":\"new\"}";
+  private static final String OLD = "{\"status\":1,\"appId\":10000,\"version\":\"old\"}";
+  private static final String ERROR = "{\"status\":-1,\"message\":\"app not found\"}";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private HttpServer server;
+  private String url;
+  private final AtomicReference<String> response = new AtomicReference<>(GOOD);
+  private final AtomicInteger requests = new AtomicInteger();
+  private File dir;
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", exchange -> {
+      requests.incrementAndGet();
+      byte[] body = response.get().getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.start();
+    url = "http://127.0.0.1:" + server.getAddress().getPort() + "/cache/client/redis/cluster/10000.json?clientVersion=1";
+    dir = new File(folder.getRoot(), "snapshot");
+    file = new File(dir, "cluster-10000.json");
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  private TopologySnapshot snapshot() {
+    return new TopologySnapshot(url, dir.getPath(), TimeUnit.HOURS.toMillis(1));
+  }
+
+  private void writeSnapshot(String content, long ageMillis) throws IOException {
+    assertTrue(dir.isDirectory() || dir.mkdir());
+    Files.setPosixFilePermissions(dir.toPath(), PosixFilePermissions.fromString("rwx------"));
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    Files.setPosixFilePermissions(file.toPath(), PosixFilePermissions.fromString("rw-------"));
+    assertTrue(file.setLastModified(System.currentTimeMillis() - ageMillis));
+  }
+
+  private String readSnapshot() throws IOException {
+    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void responseIsSavedOwnerOnly() throws IOException {
+    assertEquals(GOOD, snapshot().fetch());
+    assertEquals(GOOD, readSnapshot());
+    assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(dir.toPath())));
+    assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(file.toPath())));
+    // written to a temporary file and moved over the snapshot, nothing is left behind
+    assertEquals(1, dir.list().length);
+  }
+
+  @Test
+  public void freshSnapshotIsUsedOnStartup() throws IOException {
+    writeSnapshot(OLD, TimeUnit.MINUTES.toMillis(10));
+    TopologySnapshot snapshot = snapshot();
+    assertEquals(OLD, snapshot.fetch());
+    // refreshed in the background, only the first fetch uses the snapshot
+    assertEquals(GOOD, snapshot.fetch());
+    assertEquals(GOOD, readSnapshot());
+  }
+
+  @Test
+  public void staleSnapshotIsIgnored() throws IOException {
+    writeSnapshot(OLD, TimeUnit.HOURS.toMillis(2));
+    assertEquals(GOOD, snapshot().fetch());
+    assertEquals(1, requests.get());
+    assertEquals(GOOD, readSnapshot());
+  }
+
+  @Test
+  public void invalidResponseIsNotSaved() throws IOException {
+    writeSnapshot(OLD, TimeUnit.HOURS.toMillis(2));
+    response.set(ERROR);
+    assertEquals(ERROR, snapshot().fetch());
+    assertEquals(OLD, readSnapshot());
+    response.set("<html>502 Bad Gateway</html>");
+    snapshot().fetch();
+    assertEquals(OLD, readSnapshot());
+    assertEquals(1, dir.list().length);
+  }
+
+  @Test
+  public void invalidSnapshotIsIgnored() throws IOException {
+    writeSnapshot(ERROR, 0);
+    assertEquals(GOOD, snapshot().fetch());
+    assertEquals(GOOD, readSnapshot());
+  }
+
+  @Test
+  public void directoryAccessibleByOthersIsNotUsed() throws IOException {
+    writeSnapshot(OLD, 0);
+    // e.g. created in advance by another local user
+    Files.setPosixFilePermissions(dir.toPath(), PosixFilePermissions.fromString("rwxrwxrwx"));
+    assertEquals(GOOD, snapshot().fetch());
+    assertEquals(OLD, readSnapshot());
+  }
+
+  @Test
+  public void snapshotReadableByOthersIsNotUsed() throws IOException {
+    writeSnapshot(OLD, 0);
+    Files.setPosixFilePermissions(file.toPath(), PosixFilePermissions.fromString("rw-r--r--"));
+    assertEquals(GOOD, snapshot().fetch());
+    assertEquals(OLD, readSnapshot());
+  }
+
+  @Test
+  public void symbolicLinkIsNotUsed() throws IOException {
+    File target = folder.newFolder("target");
+    Files.setPosixFilePermissions(target.toPath(), PosixFilePermissions.fromString("rwx------"));
+    Path link = Files.createSymbolicLink(dir.toPath(), target.toPath());
+    assertEquals(GOOD, snapshot().fetch());
+    assertFalse(new File(target, file.getName()).exists());
+    assertTrue(Files.isSymbolicLink(link));
+  }
+
+  @Test
+  public void withoutDirectoryEveryFetchIsHttp() {
+    TopologySnapshot snapshot = new TopologySnapshot(url, null, TimeUnit.HOURS.toMillis(1));
+    assertEquals(GOOD, snapshot.fetch());
+    assertEquals(GOOD, snapshot.fetch());
+    assertEquals(2, requests.get());
+  }
+}
@@ -0,0 +1,362 @@
+package redis.clients.jedis;
+
+import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.util.NamedThreadFactory;
+import redis.clients.jedis.util.PipelineExecutors;
+import redis.clients.jedis.valueobject.BitOffsetValue;
+import redis.clients.jedis.valueobject.RangeRankVO;
+import redis.clients.jedis.valueobject.RangeScoreVO;
+import redis.clients.jedis.valueobject.SortedSetVO;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * PipelineCluster的异步门面: 命令在有界线程池中执行, 返回CompletableFuture, 可组合多个独立的查询;
+ * 设置默认超时后每个Future超时即以TimeoutException结束(已发出的命令不会被中断)
+ */
+public class AsyncPipelineCluster implements Closeable {
+
+    /**
+     * 超时调度线程, 所有实例共享; Future结束时取消的超时任务立即移出队列
+     */
+    static final ScheduledThreadPoolExecutor TIMEOUT_SCHEDULER;
+
+    static {
+        TIMEOUT_SCHEDULER = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("AsyncPipelineClusterTimeout"));
+        TIMEOUT_SCHEDULER.setRemoveOnCancelPolicy(true);
+    }
+
+    private final PipelineCluster pipelineCluster;
+
+    private final ExecutorService executor;
+
+    /**
+     * executor是否由本实例创建, 创建的线程池在close时关闭
+     */
+    private final boolean ownExecutor;
+
+    /**
+     * 默认超时(毫秒), 小于等于0时不设置超时
+     */
+    private volatile long timeoutMillis = 0;
+
+    /**
+     * @param pipelineCluster
+     * @param executor        命令执行线程池, 由调用方负责关闭, 建议使用有界线程池
+     */
+    public AsyncPipelineCluster(PipelineCluster pipelineCluster, ExecutorService executor) {
+        this(pipelineCluster, executor, false);
+    }
+
+    /**
+     * @param pipelineCluster
+     * @param threads         命令执行线程数
+     * @param queueSize       等待队列长度, 队列满时返回以RejectedExecutionException结束的Future
+     */
+    public AsyncPipelineCluster(PipelineCluster pipelineCluster, int threads, int queueSize) {
+        this(pipelineCluster, PipelineExecutors.newAsyncExecutor(threads, queueSize), true);
+    }
+
+    private AsyncPipelineCluster(PipelineCluster pipelineCluster, ExecutorService executor, boolean ownExecutor) {
+        if (pipelineCluster == null || executor == null) {
+            throw new IllegalArgumentException("pipelineCluster and executor must not be null");
+        }
+        this.pipelineCluster = pipelineCluster;
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+    }
+
+    /**
+     * 设置默认超时, 小于等于0时不设置超时
+     *
+     * @param timeout
+     * @param unit
+     */
+    public void setTimeout(long timeout, TimeUnit unit) {
+        this.timeoutMillis = unit.toMillis(timeout);
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public PipelineCluster getPipelineCluster() {
+        return pipelineCluster;
+    }
+
+    /**
+     * 在线程池中异步执行任意命令, 线程池拒绝时返回以RejectedExecutionException结束的Future
+     *
+     * @param command
+     * @return
+     */
+    public <T> CompletableFuture<T> execute(final Function<PipelineCluster, T> command) {
+        CompletableFuture<T> future;
+        try {
+            future = CompletableFuture.supplyAsync(() -> command.apply(pipelineCluster), executor);
+        } catch (RejectedExecutionException e) {
+            future = new CompletableFuture<T>();
+            future.completeExceptionally(e);
+            return future;
+        }
+        long timeout = timeoutMillis;
+        return timeout > 0 ? withTimeout(future, timeout, TimeUnit.MILLISECONDS) : future;
+    }
+
+    /**
+     * 为Future设置超时, 超时后以TimeoutException结束
+     *
+     * @param future
+     * @param timeout
+     * @param unit
+     * @return 传入的future
+     */
+    public static <T> CompletableFuture<T> withTimeout(final CompletableFuture<T> future, final long timeout,
+                                                       final TimeUnit unit) {
+        if (future.isDone()) {
+            return future;
+        }
+        final ScheduledFuture<?> timeoutTask = TIMEOUT_SCHEDULER.schedule(() -> {
+            future.completeExceptionally(new TimeoutException("AsyncPipelineCluster timeout after "
+                    + unit.toMillis(timeout) + "ms"));
+        }, timeout, unit);
+        future.whenComplete((result, e) -> timeoutTask.cancel(false));
+        return future;
+    }
+
+    @Override
+    public void close() {
+        if (ownExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    public CompletableFuture<String> get(final String key) {
+        return execute(cluster -> cluster.get(key));
+    }
+
+    public CompletableFuture<byte[]> getBytes(final String key) {
+        return execute(cluster -> cluster.getBytes(key));
+    }
+
+    public CompletableFuture<String> set(final String key, final String value) {
+        return execute(cluster -> cluster.set(key, value));
+    }
+
+    public CompletableFuture<String> set(final String key, final String value, final SetParams params) {
+        return execute(cluster -> cluster.set(key, value, params));
+    }
+
+    public CompletableFuture<String> setex(final String key, final int seconds, final String value) {
+        return execute(cluster -> cluster.setex(key, seconds, value));
+    }
+
+    public CompletableFuture<Long> del(final String key) {
+        return execute(cluster -> cluster.del(key));
+    }
+
+    public CompletableFuture<Boolean> exists(final String key) {
+        return execute(cluster -> cluster.exists(key));
+    }
+
+    public CompletableFuture<Long> expire(final String key, final int seconds) {
+        return execute(cluster -> cluster.expire(key, seconds));
+    }
+
+    public CompletableFuture<Long> ttl(final String key) {
+        return execute(cluster -> cluster.ttl(key));
+    }
+
+    public CompletableFuture<Long> incr(final String key) {
+        return execute(cluster -> cluster.incr(key));
+    }
+
+    public CompletableFuture<Long> incrBy(final String key, final long increment) {
+        return execute(cluster -> cluster.incrBy(key, increment));
+    }
+
+    public CompletableFuture<String> hget(final String key, final String field) {
+        return execute(cluster -> cluster.hget(key, field));
+    }
+
+    public CompletableFuture<Long> hset(final String key, final String field, final String value) {
+        return execute(cluster -> cluster.hset(key, field, value));
+    }
+
+    public CompletableFuture<List<String>> hmget(final String key, final String... fields) {
+        return execute(cluster -> cluster.hmget(key, fields));
+    }
+
+    public CompletableFuture<Map<String, String>> hgetAll(final String key) {
+        return execute(cluster -> cluster.hgetAll(key));
+    }
+
+    public CompletableFuture<Long> hdel(final String key, final String... fields) {
+        return execute(cluster -> cluster.hdel(key, fields));
+    }
+
+    public CompletableFuture<Long> sadd(final String key, final String... members) {
+        return execute(cluster -> cluster.sadd(key, members));
+    }
+
+    public CompletableFuture<Set<String>> smembers(final String key) {
+        return execute(cluster -> cluster.smembers(key));
+    }
+
+    public CompletableFuture<Boolean> sismember(final String key, final String member) {
+        return execute(cluster -> cluster.sismember(key, member));
+    }
+
+    public CompletableFuture<Long> zadd(final String key, final double score, final String member) {
+        return execute(cluster -> cluster.zadd(key, score, member));
+    }
+
+    public CompletableFuture<Double> zscore(final String key, final String member) {
+        return execute(cluster -> cluster.zscore(key, member));
+    }
+
+    public CompletableFuture<Set<String>> zrange(final String key, final long start, final long stop) {
+        return execute(cluster -> cluster.zrange(key, start, stop));
+    }
+
+    public CompletableFuture<Long> zrem(final String key, final String... members) {
+        return execute(cluster -> cluster.zrem(key, members));
+    }
+
+    public CompletableFuture<Map<String, String>> mget(final List<String> keys) {
+        return execute(cluster -> cluster.mget(keys));
+    }
+
+    public CompletableFuture<Map<String, Boolean>> mGetbit(final Map<String, Long> keyOffsetMap) {
+        return execute(cluster -> cluster.mGetbit(keyOffsetMap));
+    }
+
+    public CompletableFuture<Map<String, Boolean>> mSetbit(final Map<String, BitOffsetValue> keyOffsetValueMap) {
+        return execute(cluster -> cluster.mSetbit(keyOffsetValueMap));
+    }
+
+    public CompletableFuture<Map<String, Long>> mexpire(final Map<String, Integer> keyTimeMap) {
+        return execute(cluster -> cluster.mexpire(keyTimeMap));
+    }
+
+    public CompletableFuture<Map<String, Map<String, String>>> mHgetAll(final List<String> keys) {
+        return execute(cluster -> cluster.mHgetAll(keys));
+    }
+
+    public CompletableFuture<Map<String, List<String>>> mhmget(final Map<String, List<String>> keyValueMap) {
+        return execute(cluster -> cluster.mhmget(keyValueMap));
+    }
+
+    public CompletableFuture<Map<String, String>> mhmset(final Map<String, Map<String, String>> keyValueMap) {
+        return execute(cluster -> cluster.mhmset(keyValueMap));
+    }
+
+    public CompletableFuture<String> mset(final Map<String, String> keyValueMap) {
+        return execute(cluster -> cluster.mset(keyValueMap));
+    }
+
+    public CompletableFuture<String> msetnx(final Map<String, String> keyValueMap) {
+        return execute(cluster -> cluster.msetnx(keyValueMap));
+    }
+
+    public CompletableFuture<Map<String, Long>> msetnxs(final Map<String, String> keyValueMap) {
+        return execute(cluster -> cluster.msetnxs(keyValueMap));
+    }
+
+    public CompletableFuture<Map<String, Long>> mhsetnx(final Map<String, Map<String, String>> keyValueMap) {
+        return execute(cluster -> cluster.mhsetnx(keyValueMap));
+    }
+
+    public CompletableFuture<String> msetex(final Map<String, String> keyValueMap, final int seconds) {
+        return execute(cluster -> cluster.msetex(keyValueMap, seconds));
+    }
+
+    public CompletableFuture<String> mset(final Map<String, String> keyValueMap, final SetParams params) {
+        return execute(cluster -> cluster.mset(keyValueMap, params));
+    }
+
+    public CompletableFuture<Map<String, Long>> mincrBy(final Map<String, Long> keyValueMap) {
+        return execute(cluster -> cluster.mincrBy(keyValueMap));
+    }
+
+    public CompletableFuture<Long> mdel(final List<String> keys) {
+        return execute(cluster -> cluster.mdel(keys));
+    }
+
+    public CompletableFuture<Long> mexists(final List<String> keys) {
+        return execute(cluster -> cluster.mexists(keys));
+    }
+
+    public CompletableFuture<Long> munlink(final List<String> keys) {
+        return execute(cluster -> cluster.munlink(keys));
+    }
+
+    public CompletableFuture<Map<String, Long>> mzadd(final Map<String, SortedSetVO> map) {
+        return execute(cluster -> cluster.mzadd(map));
+    }
+
+    public CompletableFuture<Map<String, Long>> mzadds(final Map<String, Map<String, Double>> map) {
+        return execute(cluster -> cluster.mzadds(map));
+    }
+
+    public CompletableFuture<Map<String, Long>> mzrem(final Map<String, String[]> map) {
+        return execute(cluster -> cluster.mzrem(map));
+    }
+
+    public CompletableFuture<Map<String, Long>> mzcard(final List<String> keys) {
+        return execute(cluster -> cluster.mzcard(keys));
+    }
+
+    public CompletableFuture<Map<String, Long>> mzrank(final Map<String, String> map) {
+        return execute(cluster -> cluster.mzrank(map));
+    }
+
+    public CompletableFuture<Map<String, Boolean>> msismember(final Map<String, List<String>> map) {
+        return execute(cluster -> cluster.msismember(map));
+    }
+
+    public CompletableFuture<Map<String, Set<String>>> mzrangeByScore(final List<String> keys, final double min,
+                                                                      final double max) {
+        return execute(cluster -> cluster.mzrangeByScore(keys, min, max));
+    }
+
+    public CompletableFuture<Map<String, Set<Tuple>>> mzrevrangeWithScores(final Map<String, RangeRankVO> keyRankMap) {
+        return execute(cluster -> cluster.mzrevrangeWithScores(keyRankMap));
+    }
+
+    public CompletableFuture<Map<String, Set<String>>> mzrangeByScore(final Map<String, RangeScoreVO> keyScoreMap) {
+        return execute(cluster -> cluster.mzrangeByScore(keyScoreMap));
+    }
+
+    public CompletableFuture<Map<String, Set<String>>> mzrangeByScore(final List<String> keys, final String min,
+                                                                      final String max) {
+        return execute(cluster -> cluster.mzrangeByScore(keys, min, max));
+    }
+
+    public CompletableFuture<String> mzremrangeByScore(final Map<String, RangeScoreVO> keyScoreMap) {
+        return execute(cluster -> cluster.mzremrangeByScore(keyScoreMap));
+    }
+
+    public CompletableFuture<Map<String, byte[]>> mgetBytes(final List<String> keys) {
+        return execute(cluster -> cluster.mgetBytes(keys));
+    }
+
+    public CompletableFuture<String> msetBytes(final Map<String, byte[]> keyValueMap) {
+        return execute(cluster -> cluster.msetBytes(keyValueMap));
+    }
+
+    public CompletableFuture<Map<String, Double>> mzscore(final Map<String, String> keyMemberMap) {
+        return execute(cluster -> cluster.mzscore(keyMemberMap));
+    }
+}
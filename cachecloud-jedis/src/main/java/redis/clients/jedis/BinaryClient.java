@@ -54,6 +54,10 @@ public class BinaryClient extends Connection {
 
   private boolean isInWatch;
 
+  private boolean readOnly;
+
+  private int protocolVersion = Protocol.RESP2;
+
   public BinaryClient() {
     super();
   }
@@ -123,6 +127,43 @@ public class BinaryClient extends Connection {
     this.db = db;
   }
 
+  /**
+   * Send READONLY on this connection now (if connected) and after every reconnect, so a cluster
+   * replica serves reads instead of redirecting them to the master.
+   */
+  public void setReadOnly(boolean readOnly) {
+    if (readOnly && !this.readOnly && isConnected()) {
+      readonly();
+      getStatusCodeReply();
+    }
+    this.readOnly = readOnly;
+  }
+
+  public boolean isReadOnly() {
+    return readOnly;
+  }
+
+  /**
+   * Switch the protocol of this connection with HELLO now (if connected) and after every reconnect.
+   * RESP3 replies are read in the shapes of RESP2 so all commands keep working, and push frames can
+   * be taken out of band with {@link #setPushListener(PushListener)}. Requires redis 6.0+.
+   * @param protocolVersion 2 or 3
+   */
+  public void setProtocolVersion(int protocolVersion) {
+    if (protocolVersion != Protocol.RESP2 && protocolVersion != Protocol.RESP3) {
+      throw new IllegalArgumentException("Unsupported protocol version: " + protocolVersion);
+    }
+    if (protocolVersion != this.protocolVersion && isConnected()) {
+      hello(protocolVersion);
+      getObjectMultiBulkReply();
+    }
+    this.protocolVersion = protocolVersion;
+  }
+
+  public int getProtocolVersion() {
+    return protocolVersion;
+  }
+
   @Override
   public void connect() {
     if (!isConnected()) {
@@ -138,9 +179,21 @@ public class BinaryClient extends Connection {
         select(db);
         getStatusCodeReply();
       }
+      if (readOnly) {
+        readonly();
+        getStatusCodeReply();
+      }
+      if (protocolVersion != Protocol.RESP2) {
+        hello(protocolVersion);
+        getObjectMultiBulkReply();
+      }
     }
   }
 
+  public void hello(final int protocolVersion) {
+    sendCommand(HELLO, toByteArray(protocolVersion));
+  }
+
   public void ping() {
     sendCommand(PING);
   }
@@ -1283,6 +1336,15 @@ public class BinaryClient extends Connection {
     sendCommand(ASKING);
   }
 
+  /**
+   * Send ASKING ahead of the next command: both are written in one flush and the ASKING reply is
+   * dropped, so an ASK redirection costs one round trip instead of two.
+   */
+  public void askingWithNextCommand() {
+    asking();
+    discardReply();
+  }
+
   public void pfadd(final byte[] key, final byte[]... elements) {
     sendCommand(PFADD, joinParameters(key, elements));
   }
@@ -2561,7 +2561,10 @@ public class BinaryJedis implements BasicCommands, BinaryJedisCommands, MultiKey
   }
 
   protected Set<Tuple> getTupledSet() {
-    List<byte[]> membersWithScores = client.getBinaryMultiBulkReply();
+    if (client.isFlatReplyEnabled()) {
+      return client.getTupledSetReply();
+    }
+    List<byte[]> membersWithScores = BuilderFactory.flattenPairs(client.getBinaryMultiBulkReply());
     if (membersWithScores.isEmpty()) {
       return Collections.emptySet();
     }
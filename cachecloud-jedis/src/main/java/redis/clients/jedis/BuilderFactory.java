@@ -264,7 +264,7 @@ public final class BuilderFactory {
       if (null == data) {
         return null;
       }
-      List<byte[]> l = (List<byte[]>) data;
+      List<byte[]> l = flattenPairs((List<?>) data);
       final Set<Tuple> result = new LinkedHashSet<>(l.size()/2, 1);
       Iterator<byte[]> iterator = l.iterator();
       while (iterator.hasNext()) {
@@ -280,6 +280,22 @@ public final class BuilderFactory {
 
   };
 
+  /**
+   * RESP3 replies member, score pairs (e.g. WITHSCORES) as nested two element multi bulks, RESP2
+   * as one flat multi bulk.
+   */
+  @SuppressWarnings("unchecked")
+  static List<byte[]> flattenPairs(final List<?> l) {
+    if (l.isEmpty() || !(l.get(0) instanceof List)) {
+      return (List<byte[]>) l;
+    }
+    final List<byte[]> flat = new ArrayList<>(l.size() * 2);
+    for (Object pair : l) {
+      flat.addAll((List<byte[]>) pair);
+    }
+    return flat;
+  }
+
   public static final Builder<Tuple> TUPLE = new Builder<Tuple>() {
     @Override
     @SuppressWarnings("unchecked")
@@ -17,12 +17,30 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.net.Socket;
 import java.net.SocketException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 public class Connection implements Closeable {
 
   private static final byte[][] EMPTY_ARGS = new byte[0][];
+  private static final byte[] EMPTY_BYTES = new byte[0];
+
+  /**
+   * Encodes arguments for the stats collector, arguments Protocol rejected become empty.
+   */
+  private static final Function<Object, byte[]> STATS_ENCODER = arg -> {
+    try {
+      return Protocol.encodeArgument(arg);
+    } catch (JedisDataException e) {
+      return EMPTY_BYTES;
+    }
+  };
+  private static final long UNSAMPLED = Long.MIN_VALUE;
 
   private JedisSocketFactory jedisSocketFactory;
   private Socket socket;
@@ -30,7 +48,30 @@ public class Connection implements Closeable {
   private RedisInputStream inputStream;
   private boolean broken = false;
   private StatsCollector statsCollector;
-
+  private boolean recordLastCommand = false;
+  private ProtocolCommand lastCommand;
+  private byte[][] lastArgs;
+  private NodeLatency nodeLatency;
+  private NodeHealth nodeHealth;
+  private boolean timeoutInfinite;
+  // send time of every command waiting for its reply, oldest first
+  private long[] sentNanos;
+  private int sentHead;
+  private int sentCount;
+  // replies read and dropped before the next reply, e.g. ASKING sent ahead of a redirected command
+  private int discardedReplies;
+  // reusable buffer replies are parsed into when the flat reply parser is enabled, null otherwise
+  private FlatReply flatReply;
+  // socket shared with other connections the commands go through, null when owning a socket
+  private MultiplexedConnection multiplexedConnection;
+  private MultiplexedConnection.BatchBuffer multiplexedBuffer;
+  private int unflushedCommands;
+  private boolean unflushedReadOnly;
+  // replies of the commands handed to the shared socket, oldest first
+  private final ArrayDeque<MultiplexedConnection.Reply> multiplexedReplies = new ArrayDeque<>();
+  private long multiplexedReadBytes;
+
+  private PushListener pushListener;
 
   public Connection() {
     this(Protocol.DEFAULT_HOST);
@@ -96,11 +137,17 @@ public class Connection implements Closeable {
   }
 
   public void setTimeoutInfinite() {
+    if (multiplexedConnection != null) {
+      // blocking commands are rejected, see MultiplexedConnection
+      timeoutInfinite = true;
+      return;
+    }
     try {
       if (!isConnected()) {
         connect();
       }
       socket.setSoTimeout(0);
+      timeoutInfinite = true;
     } catch (SocketException ex) {
       broken = true;
       throw new JedisConnectionException(ex);
@@ -108,6 +155,10 @@ public class Connection implements Closeable {
   }
 
   public void rollbackTimeout() {
+    timeoutInfinite = false;
+    if (multiplexedConnection != null) {
+      return;
+    }
     try {
       socket.setSoTimeout(jedisSocketFactory.getSoTimeout());
     } catch (SocketException ex) {
@@ -117,6 +168,10 @@ public class Connection implements Closeable {
   }
 
   public void sendCommand(final ProtocolCommand cmd, final String... args) {
+    if (!recordLastCommand) {
+      sendUnencoded(cmd, args);
+      return;
+    }
     final byte[][] bargs = new byte[args.length][];
     for (int i = 0; i < args.length; i++) {
       bargs[i] = SafeEncoder.encode(args[i]);
@@ -124,17 +179,98 @@ public class Connection implements Closeable {
     sendCommand(cmd, bargs);
   }
 
+  /**
+   * Send a command with mixed arguments, see
+   * {@link Protocol#sendCommand(RedisOutputStream, ProtocolCommand, Object...)}.
+   */
+  public void sendCommand(final ProtocolCommand cmd, final Object... args) {
+    if (!recordLastCommand) {
+      sendUnencoded(cmd, args);
+      return;
+    }
+    final byte[][] bargs = new byte[args.length][];
+    for (int i = 0; i < args.length; i++) {
+      bargs[i] = Protocol.encodeArgument(args[i]);
+    }
+    sendCommand(cmd, bargs);
+  }
+
   public void sendCommand(final ProtocolCommand cmd) {
     sendCommand(cmd, EMPTY_ARGS);
   }
 
   public void sendCommand(final ProtocolCommand cmd, final byte[]... args) {
+    if (recordLastCommand) {
+      lastCommand = cmd;
+      lastArgs = args;
+    }
     long invokeTime = System.currentTimeMillis();
     long startTime = System.nanoTime();
     boolean isFailed = false;
+    try {
+      writeCommand(cmd, args, null, startTime);
+    } catch (JedisConnectionException ex) {
+      //tracker.commandFailed(statsCollector);
+      isFailed = true;
+      throw ex;
+    } finally {
+      if(statsCollector != null){
+        CommandTracker tracker = CommandTracker.getCommandTracker();
+        tracker.commandStart(statsCollector, cmd.toString().toLowerCase(), getHostPort(), invokeTime, startTime, isFailed, args);
+      }
+    }
+  }
+
+  /**
+   * Write string or mixed arguments straight into the output buffer. The stats collector gets the
+   * unencoded arguments and encodes them only when it needs bytes (sampled hot keys, failed
+   * commands, big values).
+   */
+  private void sendUnencoded(final ProtocolCommand cmd, final Object[] args) {
+    if (statsCollector == null) {
+      writeCommand(cmd, null, args, System.nanoTime());
+      return;
+    }
+    long invokeTime = System.currentTimeMillis();
+    long startTime = System.nanoTime();
+    boolean isFailed = false;
+    try {
+      writeCommand(cmd, null, args, startTime);
+    } catch (JedisConnectionException ex) {
+      isFailed = true;
+      throw ex;
+    } finally {
+      CommandTracker tracker = CommandTracker.getCommandTracker();
+      tracker.commandStart(statsCollector, cmd.toString().toLowerCase(), getHostPort(), invokeTime, startTime,
+          isFailed, Protocol.argumentsLength(args), args, STATS_ENCODER);
+    }
+  }
+
+  /**
+   * Encode the arguments into the output buffer, from binaryArgs if not null, otherwise from args
+   * (strings or mixed arguments).
+   */
+  private void writeCommand(final ProtocolCommand cmd, final byte[][] binaryArgs,
+      final Object[] args, final long startTime) {
     try {
       connect();
-      Protocol.sendCommand(outputStream, cmd, args);
+      if (multiplexedConnection != null) {
+        MultiplexedConnection.checkCommand(cmd, binaryArgs, args);
+      }
+      if (binaryArgs != null) {
+        Protocol.sendCommand(outputStream, cmd, binaryArgs);
+      } else if (args instanceof String[]) {
+        Protocol.sendCommand(outputStream, cmd, (String[]) args);
+      } else {
+        Protocol.sendCommand(outputStream, cmd, args);
+      }
+      if (multiplexedConnection != null) {
+        unflushedCommands++;
+        unflushedReadOnly |= cmd == Protocol.Command.READONLY;
+      }
+      if (nodeLatency != null) {
+        commandSent(startTime);
+      }
     } catch (JedisConnectionException ex) {
       /*
        * When client send request which formed by invalid protocol, Redis send back error message
@@ -152,17 +288,170 @@ public class Connection implements Closeable {
          * will eventually be closed.
          */
       }
-      //tracker.commandFailed(statsCollector);
-      isFailed = true;
       // Any other exceptions related to connection?
       broken = true;
       throw ex;
-    } finally {
-      if(statsCollector != null){
-        CommandTracker tracker = CommandTracker.getCommandTracker();
-        tracker.commandStart(statsCollector, cmd.toString().toLowerCase(), getHostPort(), invokeTime, startTime, isFailed, args);
+    }
+  }
+
+  /**
+   * Keep a reference to the last command sent on this connection, so that it can be re-sent to
+   * another node (e.g. after a cluster MOVED/ASK redirection). Disabling clears the reference.
+   */
+  public void setRecordLastCommand(boolean recordLastCommand) {
+    this.recordLastCommand = recordLastCommand;
+    if (!recordLastCommand) {
+      lastCommand = null;
+      lastArgs = null;
+    }
+  }
+
+  /**
+   * Feed round trip times and in flight commands of this connection to the node latency, null to
+   * stop tracking. Blocking commands (infinite timeout) are not sampled.
+   */
+  public void setNodeLatency(NodeLatency nodeLatency) {
+    if (this.nodeLatency != nodeLatency) {
+      releaseSent();
+      this.nodeLatency = nodeLatency;
+    }
+  }
+
+  public NodeLatency getNodeLatency() {
+    return nodeLatency;
+  }
+
+  /**
+   * Feed replies, connection errors and connect failures of this connection to the node health,
+   * null to stop tracking.
+   */
+  public void setNodeHealth(NodeHealth nodeHealth) {
+    this.nodeHealth = nodeHealth;
+  }
+
+  public NodeHealth getNodeHealth() {
+    return nodeHealth;
+  }
+
+  /**
+   * Parse replies into a reusable flat buffer (offsets and lengths) and decode status, bulk, integer
+   * and string multi bulk replies straight into the returned type, instead of allocating a byte[]
+   * per bulk, a Long per integer and a List per multi bulk first. Replies read as raw objects
+   * (pipelines, transactions, nested replies) keep using the classic parser. Not available on a
+   * multiplexed connection, whose replies are parsed by the reader of the shared socket.
+   */
+  public void setFlatReplyEnabled(boolean enabled) {
+    if (!enabled || multiplexedConnection != null) {
+      flatReply = null;
+    } else if (flatReply == null) {
+      flatReply = new FlatReply();
+    }
+  }
+
+  public boolean isFlatReplyEnabled() {
+    return flatReply != null;
+  }
+
+  /**
+   * Send the commands of this connection through the sockets of a {@link MultiplexedConnection}
+   * shared with other connections instead of a socket of its own: commands are handed over on
+   * flush and their replies awaited up to the soTimeout. Blocking commands, transactions, pub/sub
+   * and commands changing the connection state are rejected. null to switch back to an own socket.
+   * Unread replies are dropped.
+   */
+  public void setMultiplexedConnection(MultiplexedConnection multiplexedConnection) {
+    disconnect();
+    this.multiplexedConnection = multiplexedConnection;
+    if (multiplexedConnection != null) {
+      flatReply = null;
+    }
+  }
+
+  public MultiplexedConnection getMultiplexedConnection() {
+    return multiplexedConnection;
+  }
+
+  /**
+   * Hand the RESP3 push frames (e.g. the invalidation messages of CLIENT TRACKING) received ahead of
+   * a reply to the listener instead of returning them as the reply. Pushes are only seen while a
+   * reply is read. null to return them like replies, as pub/sub over RESP3 expects.
+   */
+  public void setPushListener(PushListener pushListener) {
+    this.pushListener = pushListener;
+  }
+
+  public PushListener getPushListener() {
+    return pushListener;
+  }
+
+  /**
+   * Drop the reply of the last sent command, it is read ahead of the reply of the next command so
+   * both commands go out in one flush and cost a single round trip.
+   */
+  protected void discardReply() {
+    discardedReplies++;
+  }
+
+  /**
+   * @return replies still dropped ahead of the next read
+   */
+  int getDiscardedReplies() {
+    return discardedReplies;
+  }
+
+  private void commandSent(long startNanos) {
+    if (sentNanos == null) {
+      sentNanos = new long[16];
+    } else if (sentCount == sentNanos.length) {
+      long[] grown = new long[sentNanos.length * 2];
+      for (int i = 0; i < sentCount; i++) {
+        grown[i] = sentNanos[(sentHead + i) % sentNanos.length];
+      }
+      sentNanos = grown;
+      sentHead = 0;
+    }
+    if (timeoutInfinite) {
+      startNanos = UNSAMPLED;
+    } else {
+      nodeLatency.commandSent();
+    }
+    sentNanos[(sentHead + sentCount) % sentNanos.length] = startNanos;
+    sentCount++;
+  }
+
+  private void replyReceived() {
+    if (sentCount == 0) {
+      // pushed messages (e.g. pub/sub) have no command
+      return;
+    }
+    long startNanos = sentNanos[sentHead];
+    sentHead = (sentHead + 1) % sentNanos.length;
+    sentCount--;
+    if (startNanos != UNSAMPLED) {
+      nodeLatency.replyReceived(System.nanoTime() - startNanos);
+    }
+  }
+
+  private void releaseSent() {
+    if (nodeLatency != null) {
+      int pending = 0;
+      for (int i = 0; i < sentCount; i++) {
+        if (sentNanos[(sentHead + i) % sentNanos.length] != UNSAMPLED) {
+          pending++;
+        }
       }
+      nodeLatency.release(pending);
     }
+    sentHead = 0;
+    sentCount = 0;
+  }
+
+  public ProtocolCommand getLastCommand() {
+    return lastCommand;
+  }
+
+  public byte[][] getLastArgs() {
+    return lastArgs;
   }
 
   public String getHost() {
@@ -182,6 +471,13 @@ public class Connection implements Closeable {
   }
 
   public void connect() {
+    if (multiplexedConnection != null) {
+      if (outputStream == null) {
+        multiplexedBuffer = new MultiplexedConnection.BatchBuffer();
+        outputStream = new RedisOutputStream(multiplexedBuffer);
+      }
+      return;
+    }
     if (!isConnected()) {
       long start = System.nanoTime();
       try {
@@ -194,6 +490,9 @@ public class Connection implements Closeable {
           statsCollector.appendConnectExpStat(getHostPort(), (System.nanoTime() - start));
         }
         broken = true;
+        if (nodeHealth != null) {
+          nodeHealth.failure();
+        }
         throw new JedisConnectionException("Failed connecting to "
             + jedisSocketFactory.getDescription(), ex);
       }
@@ -206,6 +505,18 @@ public class Connection implements Closeable {
   }
 
   public void disconnect() {
+    releaseSent();
+    discardedReplies = 0;
+    if (multiplexedConnection != null) {
+      // the shared sockets stay open for the other connections
+      outputStream = null;
+      multiplexedBuffer = null;
+      unflushedCommands = 0;
+      unflushedReadOnly = false;
+      multiplexedReplies.clear();
+      multiplexedReadBytes = 0;
+      return;
+    }
     if (isConnected()) {
       try {
         outputStream.flush();
@@ -220,12 +531,36 @@ public class Connection implements Closeable {
   }
 
   public boolean isConnected() {
+    if (multiplexedConnection != null) {
+      return outputStream != null && !multiplexedConnection.isClosed();
+    }
     return socket != null && socket.isBound() && !socket.isClosed() && socket.isConnected()
         && !socket.isInputShutdown() && !socket.isOutputShutdown();
   }
 
+  /**
+   * @return bytes written to the current socket, 0 if not connected
+   */
+  public long getWrittenBytes() {
+    return outputStream == null ? 0 : outputStream.getWrittenBytes();
+  }
+
+  /**
+   * @return bytes read from the current socket, 0 if not connected; replies read by this connection
+   *         if multiplexed
+   */
+  public long getReadBytes() {
+    if (multiplexedConnection != null) {
+      return multiplexedReadBytes;
+    }
+    return inputStream == null ? 0 : inputStream.getReadBytes();
+  }
+
   public String getStatusCodeReply() {
     flush();
+    if (flatReply != null) {
+      return readFlatReplyWithCheckingBroken().getString(0);
+    }
     final byte[] resp = (byte[]) readProtocolWithCheckingBroken();
     if (null == resp) {
       return null;
@@ -235,6 +570,10 @@ public class Connection implements Closeable {
   }
 
   public String getBulkReply() {
+    if (flatReply != null) {
+      flush();
+      return readFlatReplyWithCheckingBroken().getString(0);
+    }
     final byte[] result = getBinaryBulkReply();
     if (null != result) {
       return SafeEncoder.encode(result);
@@ -245,18 +584,51 @@ public class Connection implements Closeable {
 
   public byte[] getBinaryBulkReply() {
     flush();
+    if (flatReply != null) {
+      return readFlatReplyWithCheckingBroken().getBytes(0);
+    }
     return (byte[]) readProtocolWithCheckingBroken();
   }
 
   public Long getIntegerReply() {
     flush();
+    if (flatReply != null) {
+      final FlatReply reply = readFlatReplyWithCheckingBroken();
+      return reply.isNull(0) ? null : reply.getLong(0);
+    }
     return (Long) readProtocolWithCheckingBroken();
   }
 
   public List<String> getMultiBulkReply() {
+    if (flatReply != null) {
+      flush();
+      return readFlatReplyWithCheckingBroken().toStringList();
+    }
     return BuilderFactory.STRING_LIST.build(getBinaryMultiBulkReply());
   }
 
+  /**
+   * Reply of alternating fields and values, e.g. HGETALL.
+   */
+  public Map<String, String> getStringMapReply() {
+    if (flatReply != null) {
+      flush();
+      return readFlatReplyWithCheckingBroken().toStringMap();
+    }
+    return BuilderFactory.STRING_MAP.build(getBinaryMultiBulkReply());
+  }
+
+  /**
+   * Reply of alternating members and scores, e.g. ZRANGE WITHSCORES.
+   */
+  public Set<Tuple> getTupledSetReply() {
+    if (flatReply != null) {
+      flush();
+      return readFlatReplyWithCheckingBroken().toTupleSet();
+    }
+    return BuilderFactory.TUPLE_ZSET.build(getBinaryMultiBulkReply());
+  }
+
   @SuppressWarnings("unchecked")
   public List<byte[]> getBinaryMultiBulkReply() {
     flush();
@@ -298,6 +670,10 @@ public class Connection implements Closeable {
   }
 
   protected void flush() {
+    if (multiplexedConnection != null) {
+      flushMultiplexed();
+      return;
+    }
     try {
       outputStream.flush();
     } catch (IOException ex) {
@@ -306,28 +682,122 @@ public class Connection implements Closeable {
         tracker.flushFailed(statsCollector);
       }
       broken = true;
+      if (nodeHealth != null) {
+        nodeHealth.failure();
+      }
       throw new JedisConnectionException(ex);
     }
   }
 
+  /**
+   * Hand the commands encoded since the last flush to the shared socket as one batch, so that
+   * commands sent together (e.g. ASKING and the redirected command) stay adjacent.
+   */
+  private void flushMultiplexed() {
+    if (unflushedCommands == 0) {
+      return;
+    }
+    try {
+      outputStream.flush();
+    } catch (IOException ex) {
+      // written to memory
+      throw new JedisConnectionException(ex);
+    }
+    List<MultiplexedConnection.Reply> replies;
+    if (unflushedCommands == 1) {
+      replies = Collections.singletonList(new MultiplexedConnection.Reply());
+    } else {
+      replies = new ArrayList<>(unflushedCommands);
+      for (int i = 0; i < unflushedCommands; i++) {
+        replies.add(new MultiplexedConnection.Reply());
+      }
+    }
+    multiplexedReplies.addAll(replies);
+    if (unflushedReadOnly) {
+      multiplexedConnection.readOnly();
+    }
+    unflushedCommands = 0;
+    unflushedReadOnly = false;
+    multiplexedConnection.write(multiplexedBuffer.take(replies));
+  }
+
+  private Object readMultiplexedReply() {
+    MultiplexedConnection.Reply reply = multiplexedReplies.poll();
+    if (reply == null) {
+      throw new JedisConnectionException("No command waiting for a reply");
+    }
+    try {
+      return multiplexedConnection.await(reply, timeoutInfinite ? 0 : getSoTimeout());
+    } finally {
+      multiplexedReadBytes += reply.getBytes();
+    }
+  }
+
   protected Object readProtocolWithCheckingBroken() {
+    return readWithCheckingBroken(null);
+  }
+
+  /**
+   * Read the next reply into the flat reply of this connection, valid until the next read.
+   */
+  protected FlatReply readFlatReplyWithCheckingBroken() {
+    readWithCheckingBroken(flatReply);
+    return flatReply;
+  }
+
+  private Object readWithCheckingBroken(final FlatReply flat) {
 //    if (broken) {
 //      throw new JedisConnectionException("Attempting to read from a broken connection");
 //    }
+    while (discardedReplies > 0) {
+      discardedReplies--;
+      try {
+        readProtocolWithCheckingBroken();
+      } catch (JedisDataException e) {
+        // the reply of the next command tells whether the dropped one took effect
+      }
+    }
     boolean isFailed = false;
     Object o = null;
     try {
-      o = Protocol.read(inputStream);
+      if (multiplexedConnection != null) {
+        o = readMultiplexedReply();
+      } else if (flat != null) {
+        Protocol.readPushes(inputStream, pushListener);
+        flat.read(inputStream);
+      } else {
+        o = Protocol.read(inputStream, pushListener);
+      }
       return o;
     } catch (JedisConnectionException exc) {
       isFailed = true;
       broken = true;
+      discardedReplies = 0;
+      multiplexedReplies.clear();
       throw exc;
     } finally {
+      if (nodeLatency != null) {
+        if (isFailed) {
+          releaseSent();
+        } else {
+          replyReceived();
+        }
+      }
+      if (nodeHealth != null) {
+        if (isFailed) {
+          nodeHealth.failure();
+        } else {
+          nodeHealth.success();
+        }
+      }
       if(statsCollector != null){
         //tracker
         CommandTracker tracker = CommandTracker.getCommandTracker();
-        tracker.commandCompleted(o, isFailed, statsCollector);
+        if (flat != null) {
+          tracker.commandCompleted(isFailed ? 0 : flat.getReplyBytes(), isFailed, statsCollector);
+        } else {
+          tracker.commandCompleted(o, isFailed, statsCollector);
+        }
       }
     }
   }
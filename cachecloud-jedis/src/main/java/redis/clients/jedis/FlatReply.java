@@ -0,0 +1,502 @@
+package redis.clients.jedis;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.util.RedisInputStream;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 扁平回复: 一条RESP回复按先序展开为若干项, 每项只记录类型及在可复用缓冲区中的偏移量, 长度(整数记录值, 数组记录元素个数),
+ * 解析时不为bulk, 整数, multi-bulk分配对象, 解码时直接从缓冲区生成String, Map, Tuple等目标类型;
+ * 由{@link Connection}持有并复用, 内容在该连接下一次读取回复前有效;
+ * RESP3回复按与{@link Protocol#read}相同的规则展开: map及set为数组(map的key, value交替), 浮点数, 大整数及verbatim字符串为字符串,
+ * 布尔值为整数1/0, 属性被跳过
+ */
+public final class FlatReply {
+
+    public static final byte STATUS = 1;
+
+    public static final byte BULK = 2;
+
+    public static final byte INTEGER = 3;
+
+    public static final byte ARRAY = 4;
+
+    public static final byte ERROR = 5;
+
+    /**
+     * null bulk或null multi-bulk
+     */
+    public static final byte NULL = 6;
+
+    private static final int INITIAL_BYTES = 1024;
+
+    private static final int INITIAL_ENTRIES = 16;
+
+    /**
+     * 超过该大小的缓冲区在下一次读取时释放, 避免个别大回复长期占用内存
+     */
+    private static final int MAX_RETAINED_BYTES = 1024 * 1024;
+
+    private static final int MAX_RETAINED_ENTRIES = 64 * 1024;
+
+    private byte[] data = new byte[INITIAL_BYTES];
+
+    private int dataLength;
+
+    private byte[] types = new byte[INITIAL_ENTRIES];
+
+    /**
+     * 字符串项在data中的偏移量
+     */
+    private int[] starts = new int[INITIAL_ENTRIES];
+
+    /**
+     * 字符串项的字节数或数组项的元素个数
+     */
+    private int[] lengths = new int[INITIAL_ENTRIES];
+
+    /**
+     * 整数项的值
+     */
+    private long[] values = new long[INITIAL_ENTRIES];
+
+    private int size;
+
+    /**
+     * 字符串项(状态回复, bulk回复等)的字节数
+     */
+    private long replyBytes;
+
+    FlatReply() {
+    }
+
+    /**
+     * 读取一条完整回复, 顶层为错误回复时与{@link Protocol#read}抛出相同的异常
+     */
+    void read(RedisInputStream is) {
+        reset();
+        parse(is);
+        if (types[0] == ERROR) {
+            throw Protocol.errorReply(getString(0));
+        }
+    }
+
+    /**
+     * @return 项数, 第0项为顶层回复
+     */
+    public int size() {
+        return size;
+    }
+
+    public byte getType(int index) {
+        return types[index];
+    }
+
+    public boolean isNull(int index) {
+        return types[index] == NULL;
+    }
+
+    /**
+     * @return 数组项的元素个数
+     */
+    public int getCount(int index) {
+        return types[index] == ARRAY ? lengths[index] : 0;
+    }
+
+    /**
+     * @return 字符串项直接解码为String, null项返回null
+     */
+    public String getString(int index) {
+        if (types[index] == NULL) {
+            return null;
+        }
+        checkString(index);
+        return new String(data, starts[index], lengths[index], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return 字符串项的拷贝, null项返回null
+     */
+    public byte[] getBytes(int index) {
+        if (types[index] == NULL) {
+            return null;
+        }
+        checkString(index);
+        byte[] bytes = new byte[lengths[index]];
+        System.arraycopy(data, starts[index], bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    /**
+     * @return 整数项的值, 或按十进制解析字符串项, 超出long范围时抛出JedisDataException
+     */
+    public long getLong(int index) {
+        if (types[index] == INTEGER) {
+            return values[index];
+        }
+        checkString(index);
+        int start = starts[index];
+        int end = start + lengths[index];
+        boolean negative = start < end && data[start] == '-';
+        int pos = negative ? start + 1 : start;
+        if (pos == end) {
+            throw new JedisDataException("Not an integer: " + getString(index));
+        }
+        // 按负数累加, 与Long.parseLong相同的溢出判断, Long.MIN_VALUE也能表示
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplyLimit = limit / 10;
+        long value = 0;
+        for (; pos < end; pos++) {
+            int digit = data[pos] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new JedisDataException("Not an integer: " + getString(index));
+            }
+            if (value < multiplyLimit || value * 10 < limit + digit) {
+                throw new JedisDataException("Integer out of range: " + getString(index));
+            }
+            value = value * 10 - digit;
+        }
+        return negative ? value : -value;
+    }
+
+    /**
+     * @return 按redis浮点数格式(含inf, -inf)解析字符串项, 整数(如时间戳分值)不经过String
+     */
+    public double getDouble(int index) {
+        if (types[index] == INTEGER) {
+            return values[index];
+        }
+        checkString(index);
+        int start = starts[index];
+        int length = lengths[index];
+        // 15位以内的整数可以精确转换
+        if (length > 0 && length <= 15) {
+            boolean negative = data[start] == '-';
+            int pos = negative ? start + 1 : start;
+            int end = start + length;
+            long value = 0;
+            for (; pos < end; pos++) {
+                int digit = data[pos] - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                value = value * 10 + digit;
+            }
+            if (pos == end && end > (negative ? start + 1 : start)) {
+                return negative ? -(double) value : value;
+            }
+        }
+        String string = new String(data, start, length, StandardCharsets.US_ASCII);
+        try {
+            return Double.parseDouble(string);
+        } catch (NumberFormatException e) {
+            if (string.equals("inf") || string.equals("+inf")) {
+                return Double.POSITIVE_INFINITY;
+            }
+            if (string.equals("-inf")) {
+                return Double.NEGATIVE_INFINITY;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return 状态回复及bulk回复的总字节数
+     */
+    public long getReplyBytes() {
+        return replyBytes;
+    }
+
+    /**
+     * 顶层multi-bulk解码为List&lt;String&gt;, 与BuilderFactory.STRING_LIST结果相同
+     */
+    public List<String> toStringList() {
+        if (types[0] == NULL) {
+            return null;
+        }
+        int count = checkArray();
+        List<String> list = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            list.add(getString(i));
+        }
+        return list;
+    }
+
+    /**
+     * 顶层field, value交替的multi-bulk(如HGETALL)解码为Map, 与BuilderFactory.STRING_MAP结果相同
+     */
+    public Map<String, String> toStringMap() {
+        int count = checkArray();
+        Map<String, String> map = new HashMap<>(count / 2, 1);
+        for (int i = 1; i < count; i += 2) {
+            map.put(getString(i), getString(i + 1));
+        }
+        return map;
+    }
+
+    /**
+     * 顶层member, score交替的multi-bulk(如ZRANGE WITHSCORES)解码为有序的Tuple集合
+     */
+    public Set<Tuple> toTupleSet() {
+        if (types[0] == NULL) {
+            return null;
+        }
+        if (size > 1 && types[1] == ARRAY) {
+            return toTupleSetFromPairs();
+        }
+        int count = checkArray();
+        if (count == 0) {
+            return Collections.emptySet();
+        }
+        Set<Tuple> set = new LinkedHashSet<>(count / 2, 1.0f);
+        for (int i = 1; i < count; i += 2) {
+            set.add(new Tuple(getBytes(i), getDouble(i + 1)));
+        }
+        return set;
+    }
+
+    /**
+     * RESP3下WITHSCORES回复为[member, score]二元数组的数组, 每个元素占3项
+     */
+    private Set<Tuple> toTupleSetFromPairs() {
+        int count = lengths[0];
+        if (types[0] != ARRAY || size != count * 3 + 1) {
+            throw new JedisDataException("Unexpected reply, member score pairs expected");
+        }
+        Set<Tuple> set = new LinkedHashSet<>(count, 1.0f);
+        for (int i = 1; i < size; i += 3) {
+            if (types[i] != ARRAY || lengths[i] != 2) {
+                throw new JedisDataException("Unexpected reply, member score pairs expected");
+            }
+            set.add(new Tuple(getBytes(i + 1), getDouble(i + 2)));
+        }
+        return set;
+    }
+
+    private void reset() {
+        if (data.length > MAX_RETAINED_BYTES) {
+            data = new byte[INITIAL_BYTES];
+        }
+        if (types.length > MAX_RETAINED_ENTRIES) {
+            types = new byte[INITIAL_ENTRIES];
+            starts = new int[INITIAL_ENTRIES];
+            lengths = new int[INITIAL_ENTRIES];
+            values = new long[INITIAL_ENTRIES];
+        }
+        dataLength = 0;
+        size = 0;
+        replyBytes = 0;
+    }
+
+    private void parse(RedisInputStream is) {
+        final byte b = is.readByte();
+        switch (b) {
+            case Protocol.PLUS_BYTE:
+                readLine(is, STATUS);
+                break;
+            case Protocol.DOLLAR_BYTE:
+                readBulk(is, BULK);
+                break;
+            case Protocol.ASTERISK_BYTE:
+                readArray(is, 1);
+                break;
+            case Protocol.COLON_BYTE:
+                final int index = add(INTEGER);
+                values[index] = is.readLongCrLf();
+                break;
+            case Protocol.MINUS_BYTE:
+                readLine(is, ERROR);
+                break;
+            case Protocol.UNDERSCORE_BYTE:
+                add(NULL);
+                is.readLineBytes();
+                break;
+            case Protocol.COMMA_BYTE:
+            case Protocol.LEFT_BRACE_BYTE:
+                readLine(is, BULK);
+                break;
+            case Protocol.HASH_BYTE:
+                final int bool = add(INTEGER);
+                values[bool] = is.readByte() == 't' ? 1 : 0;
+                is.readLineBytes();
+                break;
+            case Protocol.EQUAL_BYTE:
+                readVerbatim(is);
+                break;
+            case Protocol.EXCLAMATION_BYTE:
+                readBulk(is, ERROR);
+                break;
+            case Protocol.PERCENT_BYTE:
+                readArray(is, 2);
+                break;
+            case Protocol.TILDE_BYTE:
+            case Protocol.GREATER_THAN_BYTE:
+                readArray(is, 1);
+                break;
+            case Protocol.PIPE_BYTE:
+                skipAttribute(is);
+                parse(is);
+                break;
+            default:
+                throw new JedisConnectionException("Unknown reply: " + (char) b);
+        }
+    }
+
+    /**
+     * @param width 每个元素占的项数, map为2
+     */
+    private void readArray(RedisInputStream is, int width) {
+        final int num = is.readIntCrLf();
+        if (num == -1) {
+            add(NULL);
+            return;
+        }
+        final int count = num * width;
+        lengths[add(ARRAY)] = count;
+        for (int i = 0; i < count; i++) {
+            parse(is);
+        }
+    }
+
+    /**
+     * 属性只是对其后回复的附加说明, 解析后丢弃
+     */
+    private void skipAttribute(RedisInputStream is) {
+        final int mark = size;
+        final int dataMark = dataLength;
+        final long bytesMark = replyBytes;
+        final int num = is.readIntCrLf();
+        for (int i = 0; i < num * 2; i++) {
+            parse(is);
+        }
+        size = mark;
+        dataLength = dataMark;
+        replyBytes = bytesMark;
+    }
+
+    private void readVerbatim(RedisInputStream is) {
+        final int index = readBulk(is, BULK);
+        if (types[index] == BULK && lengths[index] >= Protocol.VERBATIM_PREFIX_LENGTH) {
+            starts[index] += Protocol.VERBATIM_PREFIX_LENGTH;
+            lengths[index] -= Protocol.VERBATIM_PREFIX_LENGTH;
+            replyBytes -= Protocol.VERBATIM_PREFIX_LENGTH;
+        }
+    }
+
+    private void readLine(RedisInputStream is, byte type) {
+        final int index = add(type);
+        final int start = dataLength;
+        while (true) {
+            byte b = is.readByte();
+            if (b == '\r') {
+                byte c = is.readByte();
+                if (c == '\n') {
+                    break;
+                }
+                append(b);
+                append(c);
+            } else {
+                append(b);
+            }
+        }
+        starts[index] = start;
+        lengths[index] = dataLength - start;
+        if (type != ERROR) {
+            replyBytes += dataLength - start;
+        }
+    }
+
+    private int readBulk(RedisInputStream is, byte type) {
+        final int len = is.readIntCrLf();
+        if (len == -1) {
+            return add(NULL);
+        }
+        final int index = add(type);
+        ensureData(len);
+        int offset = 0;
+        while (offset < len) {
+            final int read = is.read(data, dataLength + offset, len - offset);
+            if (read == -1) {
+                throw new JedisConnectionException("It seems like server has closed the connection.");
+            }
+            offset += read;
+        }
+        starts[index] = dataLength;
+        lengths[index] = len;
+        dataLength += len;
+        if (type != ERROR) {
+            replyBytes += len;
+        }
+        // read 2 more bytes for the command delimiter
+        is.readByte();
+        is.readByte();
+        return index;
+    }
+
+    private int add(byte type) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            byte[] newTypes = new byte[capacity];
+            int[] newStarts = new int[capacity];
+            int[] newLengths = new int[capacity];
+            long[] newValues = new long[capacity];
+            System.arraycopy(types, 0, newTypes, 0, size);
+            System.arraycopy(starts, 0, newStarts, 0, size);
+            System.arraycopy(lengths, 0, newLengths, 0, size);
+            System.arraycopy(values, 0, newValues, 0, size);
+            types = newTypes;
+            starts = newStarts;
+            lengths = newLengths;
+            values = newValues;
+        }
+        types[size] = type;
+        return size++;
+    }
+
+    private void append(byte b) {
+        ensureData(1);
+        data[dataLength++] = b;
+    }
+
+    private void ensureData(int length) {
+        int required = dataLength + length;
+        if (required > data.length) {
+            byte[] newData = new byte[Math.max(required, data.length * 2)];
+            System.arraycopy(data, 0, newData, 0, dataLength);
+            data = newData;
+        }
+    }
+
+    private void checkString(int index) {
+        byte type = types[index];
+        if (type == ERROR) {
+            throw Protocol.errorReply(new String(data, starts[index], lengths[index], StandardCharsets.UTF_8));
+        }
+        if (type != STATUS && type != BULK) {
+            throw new JedisDataException("Unexpected reply type " + type + " at " + index);
+        }
+    }
+
+    /**
+     * 顶层为只包含字符串项的数组, 第i个元素即第i项
+     */
+    private int checkArray() {
+        if (types[0] != ARRAY) {
+            throw new JedisDataException("Unexpected reply type " + types[0] + ", multi bulk expected");
+        }
+        int count = lengths[0];
+        if (size != count + 1) {
+            throw new JedisDataException("Nested multi bulk reply is not supported");
+        }
+        return count;
+    }
+}
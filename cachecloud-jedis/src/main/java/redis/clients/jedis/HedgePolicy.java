@@ -0,0 +1,307 @@
+package redis.clients.jedis;
+
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 读命令对冲策略: 读请求在线程池中执行, 超过对冲延迟(固定值或该命令观测到的p95)仍未返回时,
+ * 向同一slot的另一个节点发送相同的读请求, 返回先成功的结果, 另一个的结果丢弃;
+ * 对冲请求数受预算限制(不超过请求数的budgetRatio), 对冲到的节点可能是从节点, 数据可能落后于master
+ */
+public class HedgePolicy {
+
+    /**
+     * 默认对冲请求占比上限
+     */
+    public static final double DEFAULT_BUDGET_RATIO = 0.05;
+
+    /**
+     * p95模式下开始对冲前每个命令需要的最少样本数
+     */
+    private static final int MIN_SAMPLES = 100;
+
+    /**
+     * 每个命令保留的最近样本数
+     */
+    private static final int WINDOW_SIZE = 1024;
+
+    /**
+     * 每隔多少个样本重新计算一次分位数
+     */
+    private static final int RECALCULATE_INTERVAL = 64;
+
+    /**
+     * 一次对冲消耗的令牌数, 令牌上限为10次对冲
+     */
+    private static final long TOKEN_UNIT = 1000000L;
+
+    private static final long MAX_TOKENS = 10 * TOKEN_UNIT;
+
+    private final ExecutorService executor;
+
+    /**
+     * 固定对冲延迟, 小于等于0时使用percentile
+     */
+    private final long delayNanos;
+
+    private final double percentile;
+
+    /**
+     * 每个请求存入的令牌数
+     */
+    private final long tokensPerRequest;
+
+    private final AtomicLong tokens = new AtomicLong(TOKEN_UNIT);
+
+    private final ConcurrentMap<String, LatencyWindow> windows = new ConcurrentHashMap<String, LatencyWindow>();
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong hedges = new AtomicLong();
+
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    private HedgePolicy(ExecutorService executor, long delayNanos, double percentile, double budgetRatio) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null");
+        }
+        if (budgetRatio < 0 || budgetRatio > 1) {
+            throw new IllegalArgumentException("budgetRatio must be in [0, 1]: " + budgetRatio);
+        }
+        this.executor = executor;
+        this.delayNanos = delayNanos;
+        this.percentile = percentile;
+        this.tokensPerRequest = (long) (budgetRatio * TOKEN_UNIT);
+    }
+
+    /**
+     * 固定对冲延迟
+     *
+     * @param executor    读请求执行线程池, 由调用方负责关闭, 可使用{@link redis.clients.jedis.util.PipelineExecutors#newAsyncExecutor(int, int)}(队列满时在调用线程执行且不对冲)
+     * @param delayMillis 对冲延迟(毫秒)
+     * @param budgetRatio 对冲请求占比上限, 如0.05
+     */
+    public static HedgePolicy fixedDelay(ExecutorService executor, long delayMillis, double budgetRatio) {
+        if (delayMillis <= 0) {
+            throw new IllegalArgumentException("delayMillis must be positive: " + delayMillis);
+        }
+        return new HedgePolicy(executor, TimeUnit.MILLISECONDS.toNanos(delayMillis), 0, budgetRatio);
+    }
+
+    /**
+     * 以每个命令最近耗时的p95作为对冲延迟, 样本不足时不对冲
+     *
+     * @param executor    读请求执行线程池, 由调用方负责关闭
+     * @param budgetRatio 对冲请求占比上限, 如0.05
+     */
+    public static HedgePolicy p95Delay(ExecutorService executor, double budgetRatio) {
+        return new HedgePolicy(executor, 0, 0.95, budgetRatio);
+    }
+
+    /**
+     * 执行读请求
+     *
+     * @param command 命令名, 用于统计分位数
+     * @param primary 首选节点上的读请求
+     * @param hedge   另一个节点上的读请求, 为null时不对冲(直接在调用线程执行primary)
+     */
+    public <T> T execute(String command, final Supplier<T> primary, Supplier<T> hedge) {
+        requests.incrementAndGet();
+        deposit();
+        final LatencyWindow window = delayNanos > 0 ? null : getWindow(command);
+        if (hedge == null) {
+            return timed(window, primary).get();
+        }
+        CompletableFuture<T> primaryFuture;
+        try {
+            primaryFuture = CompletableFuture.supplyAsync(timed(window, primary), executor);
+        } catch (RejectedExecutionException e) {
+            return timed(window, primary).get();
+        }
+        long delay = window == null ? delayNanos : window.getPercentileNanos();
+        if (delay < 0) {
+            return get(primaryFuture);
+        }
+        try {
+            return primaryFuture.get(delay, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // 超过对冲延迟
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JedisException("HedgePolicy interrupted", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+        if (!acquire()) {
+            return get(primaryFuture);
+        }
+        CompletableFuture<T> hedgeFuture;
+        try {
+            hedgeFuture = CompletableFuture.supplyAsync(hedge, executor);
+        } catch (RejectedExecutionException e) {
+            return get(primaryFuture);
+        }
+        hedges.incrementAndGet();
+        CompletableFuture<T> first = new CompletableFuture<T>();
+        AtomicInteger failures = new AtomicInteger();
+        primaryFuture.whenComplete((value, error) -> complete(first, failures, value, error, false));
+        hedgeFuture.whenComplete((value, error) -> complete(first, failures, value, error, true));
+        try {
+            return get(first);
+        } finally {
+            // 未开始执行的请求不再执行, 执行中的请求结束后结果丢弃
+            primaryFuture.cancel(false);
+            hedgeFuture.cancel(false);
+        }
+    }
+
+    private <T> void complete(CompletableFuture<T> first, AtomicInteger failures, T value, Throwable error,
+                              boolean hedge) {
+        if (error == null) {
+            if (!hedge) {
+                first.complete(value);
+            } else if (!first.isDone()) {
+                // 先计数再complete, execute返回时统计已包含本次
+                hedgeWins.incrementAndGet();
+                if (!first.complete(value)) {
+                    hedgeWins.decrementAndGet();
+                }
+            }
+        } else if (failures.incrementAndGet() == 2) {
+            first.completeExceptionally(error);
+        }
+    }
+
+    private <T> Supplier<T> timed(final LatencyWindow window, final Supplier<T> supplier) {
+        if (window == null) {
+            return supplier;
+        }
+        return () -> {
+            long start = System.nanoTime();
+            T result = supplier.get();
+            window.add(System.nanoTime() - start, percentile);
+            return result;
+        };
+    }
+
+    private static <T> T get(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JedisException("HedgePolicy interrupted", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private static RuntimeException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new JedisException(cause);
+    }
+
+    private LatencyWindow getWindow(String command) {
+        LatencyWindow window = windows.get(command);
+        if (window == null) {
+            window = new LatencyWindow();
+            LatencyWindow previous = windows.putIfAbsent(command, window);
+            if (previous != null) {
+                window = previous;
+            }
+        }
+        return window;
+    }
+
+    private void deposit() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current >= MAX_TOKENS) {
+                return;
+            }
+        } while (!tokens.compareAndSet(current, Math.min(MAX_TOKENS, current + tokensPerRequest)));
+    }
+
+    private boolean acquire() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < TOKEN_UNIT) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - TOKEN_UNIT));
+        return true;
+    }
+
+    /**
+     * @return 经过对冲策略的请求数
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return 发出的对冲请求数
+     */
+    public long getHedges() {
+        return hedges.get();
+    }
+
+    /**
+     * @return 对冲请求先返回的次数
+     */
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    /**
+     * @return 命令当前的对冲延迟(毫秒), 样本不足时返回-1
+     */
+    public double getDelayMillis(String command) {
+        long delay = delayNanos > 0 ? delayNanos : getWindow(command).getPercentileNanos();
+        return delay < 0 ? -1 : (double) delay / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        return "HedgePolicy{requests=" + getRequests() + ", hedges=" + getHedges() + ", hedgeWins=" + getHedgeWins() + "}";
+    }
+
+    /**
+     * 最近WINDOW_SIZE个样本的分位数
+     */
+    private static class LatencyWindow {
+        private final long[] samples = new long[WINDOW_SIZE];
+        private long count;
+        private volatile long percentileNanos = -1;
+
+        synchronized void add(long nanos, double percentile) {
+            samples[(int) (count % WINDOW_SIZE)] = nanos;
+            count++;
+            if (count >= MIN_SAMPLES && count % RECALCULATE_INTERVAL == 0) {
+                long[] sorted = Arrays.copyOf(samples, (int) Math.min(count, WINDOW_SIZE));
+                Arrays.sort(sorted);
+                percentileNanos = sorted[(int) Math.min(sorted.length - 1, (long) (sorted.length * percentile))];
+            }
+        }
+
+        long getPercentileNanos() {
+            return percentileNanos;
+        }
+    }
+}
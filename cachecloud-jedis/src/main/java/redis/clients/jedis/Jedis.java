@@ -976,7 +976,7 @@ public class Jedis extends BinaryJedis implements JedisCommands, MultiKeyCommand
   public Map<String, String> hgetAll(final String key) {
     checkIsInMultiOrPipeline();
     client.hgetAll(key);
-    return BuilderFactory.STRING_MAP.build(client.getBinaryMultiBulkReply());
+    return client.getStringMapReply();
   }
 
   /**
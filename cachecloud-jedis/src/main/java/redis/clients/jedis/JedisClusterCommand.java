@@ -7,10 +7,21 @@ public abstract class JedisClusterCommand<T> {
 
   private final JedisClusterConnectionHandler connectionHandler;
   private final int maxAttempts;
+  private ReadFrom readFrom;
+  private JedisPool firstPool;
 
   public JedisClusterCommand(JedisClusterConnectionHandler connectionHandler, int maxAttempts) {
+    this(connectionHandler, maxAttempts, ReadFrom.MASTER);
+  }
+
+  /**
+   * @param readFrom node selection of a read only command, {@link ReadFrom#MASTER} for writes
+   */
+  public JedisClusterCommand(JedisClusterConnectionHandler connectionHandler, int maxAttempts,
+      ReadFrom readFrom) {
     this.connectionHandler = connectionHandler;
     this.maxAttempts = maxAttempts;
+    this.readFrom = readFrom;
   }
 
   public abstract T execute(Jedis connection);
@@ -19,6 +30,15 @@ public abstract class JedisClusterCommand<T> {
     return runWithRetries(JedisClusterCRC16.getSlot(key), this.maxAttempts, false, null);
   }
 
+  /**
+   * Run the first attempt on the given node of the key's slot, retries and redirections are routed
+   * normally.
+   */
+  public T run(JedisPool firstPool, String key) {
+    this.firstPool = firstPool;
+    return run(key);
+  }
+
   public T run(int keyCount, String... keys) {
     if (keys == null || keys.length == 0) {
       throw new JedisClusterOperationException("No way to dispatch this command to Redis Cluster.");
@@ -43,6 +63,14 @@ public abstract class JedisClusterCommand<T> {
     return runWithRetries(JedisClusterCRC16.getSlot(key), this.maxAttempts, false, null);
   }
 
+  /**
+   * @see #run(JedisPool, String)
+   */
+  public T runBinary(JedisPool firstPool, byte[] key) {
+    this.firstPool = firstPool;
+    return runBinary(key);
+  }
+
   public T runBinary(int keyCount, byte[]... keys) {
     if (keys == null || keys.length == 0) {
       throw new JedisClusterOperationException("No way to dispatch this command to Redis Cluster.");
@@ -87,12 +115,18 @@ public abstract class JedisClusterCommand<T> {
       if (redirect != null) {
         connection = this.connectionHandler.getConnectionFromNode(redirect.getTargetNode());
         if (redirect instanceof JedisAskDataException) {
-          // TODO: Pipeline asking with the original command to make it faster....
-          connection.asking();
+          // sent in one flush with the command
+          connection.getClient().askingWithNextCommand();
         }
       } else {
         if (tryRandomNode) {
           connection = connectionHandler.getConnection();
+        } else if (firstPool != null) {
+          JedisPool pool = firstPool;
+          firstPool = null;
+          connection = connectionHandler.getReadConnectionFromPool(slot, pool);
+        } else if (readFrom != ReadFrom.MASTER) {
+          connection = connectionHandler.getReadConnectionFromSlot(slot, readFrom);
         } else {
           connection = connectionHandler.getConnectionFromSlot(slot);
         }
@@ -107,12 +141,15 @@ public abstract class JedisClusterCommand<T> {
       releaseConnection(connection);
       connection = null;
 
+      // the read node may be down, retry on the master unless reading from replicas only
+      readFrom = readFrom.fallback();
+
       if (attempts <= 1) {
         //We need this because if node is not reachable anymore - we need to finally initiate slots
         //renewing, or we can stuck with cluster state without one node in opposite case.
-        //But now if maxAttempts = [1 or 2] we will do it too often.
-        //TODO make tracking of successful/unsuccessful operations for node - do renewing only
-        //if there were no successful responses from this node last few seconds
+        //Refreshes are rate limited only when setMinRefreshIntervalMillis is set. With
+        //setNodeQuarantineEnabled (off by default) a node failing for a while is quarantined by
+        //its NodeHealth, which fails the attempts fast and drives the renewing in the background.
         this.connectionHandler.renewSlotCache();
       }
 
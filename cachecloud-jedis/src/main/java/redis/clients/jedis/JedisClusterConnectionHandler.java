@@ -2,18 +2,38 @@ package redis.clients.jedis;
 
 import com.sohu.tv.cc.client.spectator.StatsCollector;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisNoReachableClusterNodeException;
+import redis.clients.jedis.util.NamedThreadFactory;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLParameters;
 import javax.net.ssl.SSLSocketFactory;
 import java.io.Closeable;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public abstract class JedisClusterConnectionHandler implements Closeable {
+  private static final Logger logger = LoggerFactory.getLogger(JedisClusterConnectionHandler.class);
+
+  /**
+   * Interval between two probes of a quarantined node.
+   */
+  private static final long PROBE_INTERVAL_MILLIS = 500;
+
   protected final JedisClusterInfoCache cache;
 
+  // started on the first quarantine
+  private ScheduledExecutorService healthProbe;
+  private boolean closed;
+
   public JedisClusterConnectionHandler(Set<HostAndPort> nodes, GenericObjectPoolConfig poolConfig, final StatsCollector statsCollector,
       int connectionTimeout, int soTimeout, String password) {
     this(nodes, poolConfig, statsCollector, connectionTimeout, soTimeout, password, null);
@@ -46,6 +66,10 @@ public abstract class JedisClusterConnectionHandler implements Closeable {
     return cache.setupNodeIfNotExist(node).getResource();
   }
 
+  public JedisPool getJedisPoolFromNode(HostAndPort node) {
+    return cache.setupNodeIfNotExist(node);
+  }
+
   public void setupNodeIfNotExist(String hostPort){
       HostAndPort node = new HostAndPort(hostPort.split(":")[0],
               Integer.parseInt(hostPort.split(":")[1]));
@@ -66,6 +90,14 @@ public abstract class JedisClusterConnectionHandler implements Closeable {
     return cache.getNodes();
   }
 
+  public Map<String, NodeLatency> getNodeLatencies() {
+    return cache.getNodeLatencies();
+  }
+
+  public StatsCollector getStatsCollector() {
+    return cache.getStatsCollector();
+  }
+
   private void initializeSlotsCache(Set<HostAndPort> startNodes, StatsCollector statsCollector,
       int connectionTimeout, int soTimeout, String user, String password, String clientName,
       boolean ssl, SSLSocketFactory sslSocketFactory, SSLParameters sslParameters, HostnameVerifier hostnameVerifier) {
@@ -101,8 +133,114 @@ public abstract class JedisClusterConnectionHandler implements Closeable {
     cache.renewClusterSlots(jedis);
   }
 
+  public void setMinRefreshIntervalMillis(long minRefreshIntervalMillis) {
+    cache.setMinRefreshIntervalMillis(minRefreshIntervalMillis);
+  }
+
+  /**
+   * Quarantine nodes failing to connect or timing out several times in a row or failing most
+   * commands (see {@link #setNodeQuarantineThresholds(int, double, int)}): connections to them
+   * fail fast with JedisNodeQuarantinedException, reads with a replica {@link ReadFrom} avoid them,
+   * the slot cache is refreshed until they leave the slot table and they are released once they
+   * answer a PING. Disabled by default.
+   */
+  public void setNodeQuarantineEnabled(boolean enabled) {
+    cache.setQuarantineListener(enabled ? this::nodeQuarantined : null);
+  }
+
+  /**
+   * @see JedisClusterInfoCache#setQuarantineThresholds(int, double, int)
+   */
+  public void setNodeQuarantineThresholds(int consecutiveFailures, double errorRate, int minRequests) {
+    cache.setQuarantineThresholds(consecutiveFailures, errorRate, minRequests);
+  }
+
+  public Map<String, NodeHealth> getNodeHealths() {
+    return cache.getNodeHealths();
+  }
+
+  /**
+   * Number of sockets per node shared by all callers, 0 for a socket per borrowed connection.
+   *
+   * @see JedisClusterInfoCache#setMultiplexedConnections(int)
+   */
+  public void setMultiplexedConnections(int connections) {
+    cache.setMultiplexedConnections(connections);
+  }
+
+  /**
+   * @see JedisClusterInfoCache#setAutoBatch(long, int)
+   */
+  public void setAutoBatch(long windowMicros, int maxBatchCommands) {
+    cache.setAutoBatch(windowMicros, maxBatchCommands);
+  }
+
+  /**
+   * @see JedisClusterInfoCache#createConnection(HostAndPort, int)
+   */
+  public Jedis createConnection(HostAndPort node, int soTimeout) {
+    return cache.createConnection(node, soTimeout);
+  }
+
+  private void nodeQuarantined(NodeHealth health) {
+    logger.warn("cluster node {} quarantined, errorRate={} consecutiveFailures={}", health.getNode(),
+        health.getErrorRate(), health.getConsecutiveFailures());
+    ScheduledExecutorService probe = startHealthProbe();
+    if (probe != null) {
+      try {
+        // refresh in the background, the caller is on the command path
+        probe.execute(this::renewSlotCache);
+      } catch (RejectedExecutionException e) {
+        // closed
+      }
+    }
+  }
+
+  private synchronized ScheduledExecutorService startHealthProbe() {
+    if (closed) {
+      return null;
+    }
+    if (healthProbe == null) {
+      healthProbe = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("JedisClusterHealthProbe"));
+      healthProbe.scheduleWithFixedDelay(this::probeQuarantinedNodes, PROBE_INTERVAL_MILLIS,
+          PROBE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+    return healthProbe;
+  }
+
+  private void probeQuarantinedNodes() {
+    try {
+      boolean refresh = false;
+      for (JedisPool pool : cache.getNodes().values()) {
+        NodeHealth health = pool.getNodeHealth();
+        if (health == null || !health.isQuarantined()) {
+          continue;
+        }
+        if (pool.probe()) {
+          health.recover();
+          logger.warn("cluster node {} recovered", health.getNode());
+        } else if (cache.isInSlots(pool)) {
+          // still serving slots, wait for the failover to show up in the slot table
+          refresh = true;
+        }
+      }
+      if (refresh) {
+        renewSlotCache();
+      }
+    } catch (Exception e) {
+      logger.error("probe quarantined nodes error", e);
+    }
+  }
+
   @Override
   public void close() {
+    synchronized (this) {
+      closed = true;
+      if (healthProbe != null) {
+        healthProbe.shutdownNow();
+        healthProbe = null;
+      }
+    }
     cache.reset();
     cache.shutdownCollector();
   }
@@ -110,7 +248,62 @@ public abstract class JedisClusterConnectionHandler implements Closeable {
       return cache.getSlotPool(slot);
   }
 
+  public JedisPool[] getReplicaPoolsFromSlot(int slot) {
+      return cache.getSlotReplicaPools(slot);
+  }
+
+  /**
+   * @return the node serving reads of the slot, null if the slot has no master or readFrom is
+   *         {@link ReadFrom#REPLICA} and the slot has no replica
+   */
+  public JedisPool getReadPoolFromSlot(int slot, ReadFrom readFrom) {
+      return readFrom.select(cache.getSlotPool(slot), cache.getSlotReplicaPools(slot));
+  }
+
+  /**
+   * Connection for a read command, connections to a replica are switched to READONLY.
+   */
+  public Jedis getReadConnectionFromSlot(int slot, ReadFrom readFrom) {
+    JedisPool master = cache.getSlotPool(slot);
+    JedisPool readPool = readFrom.select(master, cache.getSlotReplicaPools(slot));
+    if (readPool == null) {
+      if (readFrom == ReadFrom.REPLICA && master != null) {
+        throw new JedisNoReachableClusterNodeException("No reachable replica in cluster for slot " + slot);
+      }
+      return getConnectionFromSlot(slot);
+    }
+    return getReadConnectionFromPool(slot, readPool);
+  }
+
+  /**
+   * @return the lowest cost node of the slot (master or replica) other than exclude, null if none
+   */
+  public JedisPool getHedgePoolFromSlot(int slot, JedisPool exclude) {
+      return ReadFrom.alternate(cache.getSlotPool(slot), cache.getSlotReplicaPools(slot), exclude);
+  }
+
+  /**
+   * Connection for a read command of the slot from the given node, switched to READONLY unless the
+   * node is the master of the slot.
+   */
+  public Jedis getReadConnectionFromPool(int slot, JedisPool readPool) {
+    Jedis jedis = readPool.getResource();
+    if (readPool != cache.getSlotPool(slot)) {
+      try {
+        jedis.getClient().setReadOnly(true);
+      } catch (RuntimeException e) {
+        jedis.close();
+        throw e;
+      }
+    }
+    return jedis;
+  }
+
   public Map<Integer, JedisPool> getSlots() {
       return cache.getSlots();
   }
+
+  public Map<JedisPool, List<int[]>> getSlotRanges() {
+      return cache.getSlotRanges();
+  }
 }
@@ -4,23 +4,58 @@ import com.sohu.tv.cc.client.spectator.StatsCollector;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import redis.clients.jedis.exceptions.JedisConnectionException;
 import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.util.NamedThreadFactory;
 import redis.clients.jedis.util.SafeEncoder;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLParameters;
 import javax.net.ssl.SSLSocketFactory;
 import java.util.*;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class JedisClusterInfoCache {
   private final Map<String, JedisPool> nodes = new HashMap<String, JedisPool>();
-  private final Map<Integer, JedisPool> slots = new HashMap<Integer, JedisPool>();
+
+  /**
+   * Immutable snapshot of the slot table, published through a volatile reference. Readers never
+   * lock; writers copy the table, modify the copy and publish it under the write lock.
+   */
+  private volatile SlotTable slotTable = SlotTable.EMPTY;
 
   private final ReentrantReadWriteLock rwl = new ReentrantReadWriteLock();
   private final Lock r = rwl.readLock();
   private final Lock w = rwl.writeLock();
-  private volatile boolean rediscovering;
+
+  /**
+   * Only one slot refresh is in flight, concurrent refresh requests are dropped
+   */
+  private final AtomicBoolean rediscovering = new AtomicBoolean();
+
+  /**
+   * Start time (System.nanoTime) of the last successful slot refresh, 0 if never refreshed
+   */
+  private volatile long lastRediscoverNanos;
+
+  /**
+   * A refresh is scheduled at the end of the current interval for the requests it dropped
+   */
+  private final AtomicBoolean trailingRefreshScheduled = new AtomicBoolean();
+
+  /**
+   * Runs the trailing refreshes of all caches, created on first use
+   */
+  private static volatile ScheduledThreadPoolExecutor refreshScheduler;
+
+  private volatile long minRefreshIntervalMillis = DEFAULT_MIN_REFRESH_INTERVAL_MILLIS;
+  private volatile Consumer<NodeHealth> quarantineListener;
+  private int quarantineConsecutiveFailures = NodeHealth.DEFAULT_CONSECUTIVE_FAILURES;
+  private double quarantineErrorRate = NodeHealth.DEFAULT_ERROR_RATE_THRESHOLD;
+  private int quarantineMinRequests = NodeHealth.DEFAULT_MIN_REQUESTS;
   private final GenericObjectPoolConfig poolConfig;
   private final StatsCollector statsCollector;
 
@@ -35,9 +70,21 @@ public class JedisClusterInfoCache {
   private SSLParameters sslParameters;
   private HostnameVerifier hostnameVerifier;
   private JedisClusterHostAndPortMap hostAndPortMap;
+  // sockets shared by all connections of a node, 0 for a pool of connections owning a socket each
+  private int multiplexedConnections;
+  // auto-batching window of the multiplexed connections, 0 to write only what is already queued
+  private long flushWindowMicros;
+  private int maxBatchCommands = MultiplexedConnection.DEFAULT_MAX_BATCH_COMMANDS;
 
   private static final int MASTER_NODE_INDEX = 2;
 
+  /**
+   * No minimum interval by default, only concurrent refresh requests are coalesced
+   */
+  public static final long DEFAULT_MIN_REFRESH_INTERVAL_MILLIS = 0;
+
+  private static final JedisPool[] NO_REPLICAS = new JedisPool[0];
+
   public JedisClusterInfoCache(final GenericObjectPoolConfig poolConfig, int timeout) {
     this(poolConfig, timeout, timeout, null, null);
   }
@@ -101,6 +148,9 @@ public class JedisClusterInfoCache {
     try {
       reset();
       List<Object> slots = jedis.clusterSlots();
+      JedisPool[] newSlots = new JedisPool[BinaryJedisCluster.HASHSLOTS];
+      JedisPool[][] newReplicas = new JedisPool[BinaryJedisCluster.HASHSLOTS][];
+      Arrays.fill(newReplicas, NO_REPLICAS);
 
       for (Object slotInfoObj : slots) {
         List<Object> slotInfo = (List<Object>) slotInfoObj;
@@ -109,10 +159,9 @@ public class JedisClusterInfoCache {
           continue;
         }
 
-        List<Integer> slotNums = getAssignedSlotArray(slotInfo);
-
         // hostInfos
         int size = slotInfo.size();
+        List<JedisPool> replicaPools = new ArrayList<JedisPool>(size - MASTER_NODE_INDEX - 1);
         for (int i = MASTER_NODE_INDEX; i < size; i++) {
           List<Object> hostInfos = (List<Object>) slotInfo.get(i);
           if (hostInfos.isEmpty()) {
@@ -120,62 +169,132 @@ public class JedisClusterInfoCache {
           }
 
           HostAndPort targetNode = generateHostAndPort(hostInfos);
-          setupNodeIfNotExist(targetNode);
+          JedisPool targetPool = setupNodeIfNotExist(targetNode);
           if (i == MASTER_NODE_INDEX) {
-            assignSlotsToNode(slotNums, targetNode);
+            fillSlots(newSlots, slotInfo, targetPool);
+          } else {
+            replicaPools.add(targetPool);
           }
         }
+        fillSlots(newReplicas, slotInfo, replicaPools.toArray(NO_REPLICAS));
       }
+      slotTable = new SlotTable(newSlots, newReplicas);
+      lastRediscoverNanos = System.nanoTime();
     } finally {
       w.unlock();
     }
   }
 
+  /**
+   * Refresh the slot table from CLUSTER SLOTS. Concurrent requests are coalesced into the one in
+   * flight and requests within {@link #setMinRefreshIntervalMillis(long)} of the last successful
+   * refresh are replaced by one refresh at the end of the interval; callers never block on a refresh started by another thread and keep routing with the
+   * current table (redirections still carry their target node).
+   */
   public void renewClusterSlots(Jedis jedis) {
     //If rediscovering is already in process - no need to start one more same rediscovering, just return
-    if (!rediscovering) {
-      try {
-        w.lock();
-        if (!rediscovering) {
-          rediscovering = true;
+    if (!rediscovering.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      long start = System.nanoTime();
+      long last = lastRediscoverNanos;
+      long remaining = TimeUnit.MILLISECONDS.toNanos(minRefreshIntervalMillis) - (start - last);
+      if (last != 0 && remaining > 0) {
+        scheduleTrailingRefresh(remaining);
+        return;
+      }
 
-          try {
-            if (jedis != null) {
-              try {
-                discoverClusterSlots(jedis);
-                return;
-              } catch (JedisException e) {
-                //try nodes from all pools
-              }
-            }
+      if (jedis != null) {
+        try {
+          discoverClusterSlots(jedis);
+          lastRediscoverNanos = start;
+          return;
+        } catch (JedisException e) {
+          //try nodes from all pools
+        }
+      }
 
-            for (JedisPool jp : getShuffledNodesPool()) {
-              Jedis j = null;
-              try {
-                j = jp.getResource();
-                discoverClusterSlots(j);
-                return;
-              } catch (JedisConnectionException e) {
-                // try next nodes
-              } finally {
-                if (j != null) {
-                  j.close();
-                }
-              }
-            }
-          } finally {
-            rediscovering = false;      
+      for (JedisPool jp : getShuffledNodesPool()) {
+        Jedis j = null;
+        try {
+          j = jp.getResource();
+          discoverClusterSlots(j);
+          lastRediscoverNanos = start;
+          return;
+        } catch (JedisConnectionException e) {
+          // try next nodes
+        } finally {
+          if (j != null) {
+            j.close();
           }
         }
-      } finally {
-        w.unlock();
       }
+    } finally {
+      rediscovering.set(false);
+    }
+  }
+
+  /**
+   * Run one refresh once the interval is over, so the last change seen within the interval is not
+   * lost. Requests dropped while it is pending share it.
+   */
+  private void scheduleTrailingRefresh(long delayNanos) {
+    if (!trailingRefreshScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      getRefreshScheduler().schedule(new Runnable() {
+        @Override
+        public void run() {
+          trailingRefreshScheduled.set(false);
+          try {
+            renewClusterSlots(null);
+          } catch (RuntimeException e) {
+            // the next MOVED or connection error requests another refresh
+          }
+        }
+      }, delayNanos, TimeUnit.NANOSECONDS);
+    } catch (RuntimeException e) {
+      trailingRefreshScheduled.set(false);
     }
   }
 
+  private static ScheduledThreadPoolExecutor getRefreshScheduler() {
+    ScheduledThreadPoolExecutor scheduler = refreshScheduler;
+    if (scheduler == null) {
+      synchronized (JedisClusterInfoCache.class) {
+        scheduler = refreshScheduler;
+        if (scheduler == null) {
+          scheduler = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("JedisClusterSlotRefresh"));
+          refreshScheduler = scheduler;
+        }
+      }
+    }
+    return scheduler;
+  }
+
+  /**
+   * Minimum interval between two successful slot refreshes. Requests within it are dropped and one
+   * refresh runs when it ends; a failed refresh does not start the interval. 0 (default) only
+   * coalesces concurrent requests.
+   */
+  public void setMinRefreshIntervalMillis(long minRefreshIntervalMillis) {
+    this.minRefreshIntervalMillis = minRefreshIntervalMillis;
+  }
+
+  public long getMinRefreshIntervalMillis() {
+    return minRefreshIntervalMillis;
+  }
+
+  /**
+   * Build the new slot view without holding the lock and publish it only when some slot changed.
+   */
   private void discoverClusterSlots(Jedis jedis) {
     List<Object> slots = jedis.clusterSlots();
-    this.slots.clear();
+    JedisPool[] newSlots = new JedisPool[BinaryJedisCluster.HASHSLOTS];
+    JedisPool[][] newReplicas = new JedisPool[BinaryJedisCluster.HASHSLOTS][];
+    Arrays.fill(newReplicas, NO_REPLICAS);
 
     for (Object slotInfoObj : slots) {
       List<Object> slotInfo = (List<Object>) slotInfoObj;
@@ -184,18 +303,55 @@ public class JedisClusterInfoCache {
         continue;
       }
 
-      List<Integer> slotNums = getAssignedSlotArray(slotInfo);
-
       // hostInfos
       List<Object> hostInfos = (List<Object>) slotInfo.get(MASTER_NODE_INDEX);
       if (hostInfos.isEmpty()) {
         continue;
       }
 
-      // at this time, we just use master, discard slave information
       HostAndPort targetNode = generateHostAndPort(hostInfos);
-      assignSlotsToNode(slotNums, targetNode);
+      fillSlots(newSlots, slotInfo, setupNodeIfNotExist(targetNode));
+
+      // replicas serve reads when PipelineCluster reads from replicas
+      int size = slotInfo.size();
+      List<JedisPool> replicaPools = new ArrayList<JedisPool>(size - MASTER_NODE_INDEX - 1);
+      for (int i = MASTER_NODE_INDEX + 1; i < size; i++) {
+        List<Object> replicaInfos = (List<Object>) slotInfo.get(i);
+        if (!replicaInfos.isEmpty()) {
+          replicaPools.add(setupNodeIfNotExist(generateHostAndPort(replicaInfos)));
+        }
+      }
+      fillSlots(newReplicas, slotInfo, replicaPools.toArray(NO_REPLICAS));
     }
+
+    w.lock();
+    try {
+      JedisPool[] currentSlots = slotTable.slots;
+      JedisPool[][] currentReplicas = slotTable.replicas;
+      int changed = 0;
+      int assigned = 0;
+      for (int slot = 0; slot < newSlots.length; slot++) {
+        if (newSlots[slot] != currentSlots[slot] || !Arrays.equals(newReplicas[slot], currentReplicas[slot])) {
+          changed++;
+        }
+        if (newSlots[slot] != null) {
+          assigned++;
+        }
+      }
+      // keep the current table if the node answers without any slot (e.g. just restarted)
+      if (changed > 0 && assigned > 0) {
+        // publish the whole table at once, readers never see a partially applied diff
+        slotTable = new SlotTable(newSlots, newReplicas);
+      }
+    } finally {
+      w.unlock();
+    }
+  }
+
+  private static <P> void fillSlots(P[] slots, List<Object> slotInfo, P targetPool) {
+    int start = ((Long) slotInfo.get(0)).intValue();
+    int end = ((Long) slotInfo.get(1)).intValue();
+    Arrays.fill(slots, start, end + 1, targetPool);
   }
 
   private HostAndPort generateHostAndPort(List<Object> hostInfos) {
@@ -211,15 +367,21 @@ public class JedisClusterInfoCache {
   }
 
   public JedisPool setupNodeIfNotExist(HostAndPort node) {
+    String nodeKey = getNodeKey(node);
+    JedisPool existingPool = getNode(nodeKey);
+    if (existingPool != null) return existingPool;
+
     w.lock();
     try {
-      String nodeKey = getNodeKey(node);
-      JedisPool existingPool = nodes.get(nodeKey);
+      existingPool = nodes.get(nodeKey);
       if (existingPool != null) return existingPool;
 
-      JedisPool nodePool = new JedisPool(poolConfig, statsCollector, node.getHost(), node.getPort(),
-          connectionTimeout, soTimeout, user, password, 0, clientName,
-          ssl, sslSocketFactory, sslParameters, hostnameVerifier);
+      JedisPool nodePool = createPool(node.getHost(), node.getPort());
+      nodePool.setNodeLatency(new NodeLatency());
+      Consumer<NodeHealth> listener = quarantineListener;
+      if (listener != null) {
+        nodePool.setNodeHealth(newNodeHealth(nodeKey, listener));
+      }
       nodes.put(nodeKey, nodePool);
       return nodePool;
     } finally {
@@ -227,6 +389,105 @@ public class JedisClusterInfoCache {
     }
   }
 
+  private JedisPool createPool(String host, int port) {
+    if (multiplexedConnections > 0) {
+      MultiplexedConnection multiplexedConnection = new MultiplexedConnection(
+          new DefaultJedisSocketFactory(host, port, connectionTimeout, soTimeout, ssl,
+              sslSocketFactory, sslParameters, hostnameVerifier),
+          user, password, clientName, multiplexedConnections);
+      multiplexedConnection.setFlushWindow(flushWindowMicros, maxBatchCommands);
+      return new JedisPool(poolConfig, statsCollector, multiplexedConnection);
+    }
+    return new JedisPool(poolConfig, statsCollector, host, port, connectionTimeout, soTimeout, user,
+        password, 0, clientName, ssl, sslSocketFactory, sslParameters, hostnameVerifier);
+  }
+
+  /**
+   * Open a connection to the node outside of its pool, authenticated and named like the pooled
+   * ones, e.g. for a long lived subscription. The caller closes it.
+   */
+  public Jedis createConnection(HostAndPort node, int soTimeout) {
+    Jedis jedis = new Jedis(node.getHost(), node.getPort(), connectionTimeout, soTimeout, ssl,
+        sslSocketFactory, sslParameters, hostnameVerifier);
+    try {
+      jedis.connect();
+      if (user != null) {
+        jedis.auth(user, password);
+      } else if (password != null) {
+        jedis.auth(password);
+      }
+      if (clientName != null) {
+        jedis.clientSetname(clientName);
+      }
+    } catch (JedisException e) {
+      jedis.close();
+      throw e;
+    }
+    return jedis;
+  }
+
+  /**
+   * Share a few sockets per node among all callers instead of one socket per borrowed connection,
+   * see {@link MultiplexedConnection}; 0 (default) for connections owning a socket each. Pools of
+   * known nodes are replaced, connections borrowed from them are closed when returned.
+   */
+  public void setMultiplexedConnections(int connections) {
+    connections = Math.max(connections, 0);
+    w.lock();
+    try {
+      if (connections == multiplexedConnections) {
+        return;
+      }
+      multiplexedConnections = connections;
+      Map<JedisPool, JedisPool> replaced = new HashMap<JedisPool, JedisPool>();
+      for (Map.Entry<String, JedisPool> entry : nodes.entrySet()) {
+        JedisPool oldPool = entry.getValue();
+        JedisPool newPool = createPool(oldPool.getHost(), oldPool.getPort());
+        newPool.setNodeLatency(oldPool.getNodeLatency());
+        newPool.setNodeHealth(oldPool.getNodeHealth());
+        entry.setValue(newPool);
+        replaced.put(oldPool, newPool);
+      }
+      slotTable = slotTable.replace(replaced);
+      for (JedisPool oldPool : replaced.keySet()) {
+        try {
+          oldPool.destroy();
+        } catch (Exception e) {
+          // pass
+        }
+      }
+    } finally {
+      w.unlock();
+    }
+  }
+
+  public int getMultiplexedConnections() {
+    return multiplexedConnections;
+  }
+
+  /**
+   * Auto-batching of the multiplexed connections, see
+   * {@link MultiplexedConnection#setFlushWindow(long, int)}. A positive window turns multiplexing
+   * on with one socket per node if it is off.
+   */
+  public void setAutoBatch(long windowMicros, int maxBatchCommands) {
+    w.lock();
+    try {
+      for (JedisPool pool : nodes.values()) {
+        if (pool.getMultiplexedConnection() != null) {
+          pool.getMultiplexedConnection().setFlushWindow(windowMicros, maxBatchCommands);
+        }
+      }
+      this.flushWindowMicros = windowMicros;
+      this.maxBatchCommands = maxBatchCommands;
+      if (windowMicros > 0 && multiplexedConnections == 0) {
+        setMultiplexedConnections(1);
+      }
+    } finally {
+      w.unlock();
+    }
+  }
+
   public void removeNodeIfExist(HostAndPort node){
      w.lock();
      try {
@@ -249,7 +510,11 @@ public class JedisClusterInfoCache {
     w.lock();
     try {
       JedisPool targetPool = setupNodeIfNotExist(targetNode);
-      slots.put(slot, targetPool);
+      JedisPool[] newSlots = slotTable.copySlots();
+      JedisPool[][] newReplicas = slotTable.copyReplicas();
+      newSlots[slot] = targetPool;
+      newReplicas[slot] = NO_REPLICAS;
+      slotTable = new SlotTable(newSlots, newReplicas);
     } finally {
       w.unlock();
     }
@@ -259,9 +524,13 @@ public class JedisClusterInfoCache {
     w.lock();
     try {
       JedisPool targetPool = setupNodeIfNotExist(targetNode);
+      JedisPool[] newSlots = slotTable.copySlots();
+      JedisPool[][] newReplicas = slotTable.copyReplicas();
       for (Integer slot : targetSlots) {
-        slots.put(slot, targetPool);
+        newSlots[slot] = targetPool;
+        newReplicas[slot] = NO_REPLICAS;
       }
+      slotTable = new SlotTable(newSlots, newReplicas);
     } finally {
       w.unlock();
     }
@@ -277,41 +546,132 @@ public class JedisClusterInfoCache {
   }
 
   public JedisPool getSlotPool(int slot) {
+    return slotTable.slots[slot];
+  }
+
+  /**
+   * @return replicas of the slot, an empty array if none; must not be modified
+   */
+  public JedisPool[] getSlotReplicaPools(int slot) {
+    return slotTable.replicas[slot];
+  }
+
+  public Map<String, JedisPool> getNodes() {
     r.lock();
     try {
-      return slots.get(slot);
+      return new HashMap<>(nodes);
     } finally {
       r.unlock();
     }
   }
 
-  public Map<String, JedisPool> getNodes() {
+  /**
+   * @return latency estimates of all known nodes, keyed by host:port
+   */
+  public Map<String, NodeLatency> getNodeLatencies() {
     r.lock();
     try {
-      return new HashMap<>(nodes);
+      Map<String, NodeLatency> latencies = new TreeMap<String, NodeLatency>();
+      for (Map.Entry<String, JedisPool> entry : nodes.entrySet()) {
+        if (entry.getValue().getNodeLatency() != null) {
+          latencies.put(entry.getKey(), entry.getValue().getNodeLatency());
+        }
+      }
+      return latencies;
     } finally {
       r.unlock();
     }
   }
 
-  public boolean isInSlots(JedisPool jedisPool){
+  /**
+   * Track the health of every node and quarantine failing nodes, the listener is called once each
+   * time a node gets quarantined. null to stop tracking and release quarantined nodes.
+   */
+  public void setQuarantineListener(Consumer<NodeHealth> quarantineListener) {
+    w.lock();
+    try {
+      this.quarantineListener = quarantineListener;
+      for (Map.Entry<String, JedisPool> entry : nodes.entrySet()) {
+        entry.getValue().setNodeHealth(quarantineListener == null ? null
+            : newNodeHealth(entry.getKey(), quarantineListener));
+      }
+    } finally {
+      w.unlock();
+    }
+  }
+
+  /**
+   * Thresholds of the node health created from now on, defaults are the NodeHealth.DEFAULT_*
+   * constants; nodes already tracked restart their statistics with the new thresholds.
+   *
+   * @param consecutiveFailures quarantine after that many connection failures in a row
+   * @param errorRate quarantine when the error rate of the sliding window reaches it, (0, 1]
+   * @param minRequests commands needed in the window before the error rate counts
+   */
+  public void setQuarantineThresholds(int consecutiveFailures, double errorRate, int minRequests) {
+    NodeHealth.checkThresholds(consecutiveFailures, errorRate, minRequests);
+    w.lock();
+    try {
+      this.quarantineConsecutiveFailures = consecutiveFailures;
+      this.quarantineErrorRate = errorRate;
+      this.quarantineMinRequests = minRequests;
+      if (quarantineListener != null) {
+        setQuarantineListener(quarantineListener);
+      }
+    } finally {
+      w.unlock();
+    }
+  }
+
+  private NodeHealth newNodeHealth(String nodeKey, Consumer<NodeHealth> listener) {
+    return new NodeHealth(nodeKey, quarantineConsecutiveFailures, quarantineErrorRate,
+        quarantineMinRequests, listener);
+  }
+
+  /**
+   * @return health of all known nodes, keyed by host:port
+   */
+  public Map<String, NodeHealth> getNodeHealths() {
     r.lock();
     try {
-      return slots.values().contains(jedisPool);
+      Map<String, NodeHealth> healths = new TreeMap<String, NodeHealth>();
+      for (Map.Entry<String, JedisPool> entry : nodes.entrySet()) {
+        if (entry.getValue().getNodeHealth() != null) {
+          healths.put(entry.getKey(), entry.getValue().getNodeHealth());
+        }
+      }
+      return healths;
     } finally {
       r.unlock();
     }
   }
 
+  public boolean isInSlots(JedisPool jedisPool){
+    return slotTable.ranges.containsKey(jedisPool);
+  }
 
+  /**
+   * @return a copy of the slot table, prefer {@link #getSlotRanges()} which does not copy
+   */
   public Map<Integer, JedisPool> getSlots() {
-      r.lock();
-      try {
-        return new HashMap<Integer, JedisPool>(slots);
-      } finally {
-        r.unlock();
+    Map<JedisPool, List<int[]>> ranges = slotTable.ranges;
+    Map<Integer, JedisPool> slots = new HashMap<Integer, JedisPool>(BinaryJedisCluster.HASHSLOTS * 4 / 3 + 1);
+    for (Map.Entry<JedisPool, List<int[]>> entry : ranges.entrySet()) {
+      for (int[] range : entry.getValue()) {
+        for (int slot = range[0]; slot <= range[1]; slot++) {
+          slots.put(slot, entry.getKey());
+        }
       }
     }
+    return slots;
+  }
+
+  /**
+   * @return unmodifiable index of master pool to its assigned slot ranges ({start, end} inclusive)
+   */
+  public Map<JedisPool, List<int[]>> getSlotRanges() {
+    return slotTable.ranges;
+  }
 
   public List<JedisPool> getShuffledNodesPool() {
     r.lock();
@@ -340,12 +700,16 @@ public class JedisClusterInfoCache {
         }
       }
       nodes.clear();
-      slots.clear();
+      slotTable = SlotTable.EMPTY;
     } finally {
       w.unlock();
     }
   }
 
+  public StatsCollector getStatsCollector() {
+    return statsCollector;
+  }
+
   public void shutdownCollector(){
     //关闭指标采集器
     if(statsCollector != null){
@@ -365,12 +729,81 @@ public class JedisClusterInfoCache {
     return getNodeKey(jedis.getClient());
   }
 
-  private List<Integer> getAssignedSlotArray(List<Object> slotInfo) {
-    List<Integer> slotNums = new ArrayList<>();
-    for (int slot = ((Long) slotInfo.get(0)).intValue(); slot <= ((Long) slotInfo.get(1))
-        .intValue(); slot++) {
-      slotNums.add(slot);
+  private static final class SlotTable {
+    private static final SlotTable EMPTY = new SlotTable(new JedisPool[BinaryJedisCluster.HASHSLOTS]);
+
+    private final JedisPool[] slots;
+    private final JedisPool[][] replicas;
+    private final Map<JedisPool, List<int[]>> ranges;
+
+    private SlotTable(JedisPool[] slots) {
+      this(slots, emptyReplicas());
+    }
+
+    private SlotTable(JedisPool[] slots, JedisPool[][] replicas) {
+      this.slots = slots;
+      this.replicas = replicas;
+      Map<JedisPool, List<int[]>> ranges = new HashMap<JedisPool, List<int[]>>();
+      int start = 0;
+      for (int slot = 1; slot <= slots.length; slot++) {
+        if (slot == slots.length || slots[slot] != slots[start]) {
+          if (slots[start] != null) {
+            List<int[]> poolRanges = ranges.get(slots[start]);
+            if (poolRanges == null) {
+              poolRanges = new ArrayList<int[]>();
+              ranges.put(slots[start], poolRanges);
+            }
+            poolRanges.add(new int[] { start, slot - 1 });
+          }
+          start = slot;
+        }
+      }
+      for (Map.Entry<JedisPool, List<int[]>> entry : ranges.entrySet()) {
+        entry.setValue(Collections.unmodifiableList(entry.getValue()));
+      }
+      this.ranges = Collections.unmodifiableMap(ranges);
+    }
+
+    private SlotTable replace(Map<JedisPool, JedisPool> replaced) {
+      JedisPool[] newSlots = copySlots();
+      for (int slot = 0; slot < newSlots.length; slot++) {
+        if (newSlots[slot] != null) {
+          newSlots[slot] = replaced.get(newSlots[slot]);
+        }
+      }
+      JedisPool[][] newReplicas = copyReplicas();
+      // slots of a range share their replicas array
+      Map<JedisPool[], JedisPool[]> replacedReplicas = new IdentityHashMap<JedisPool[], JedisPool[]>();
+      for (int slot = 0; slot < newReplicas.length; slot++) {
+        JedisPool[] oldPools = newReplicas[slot];
+        if (oldPools.length == 0) {
+          continue;
+        }
+        JedisPool[] pools = replacedReplicas.get(oldPools);
+        if (pools == null) {
+          pools = new JedisPool[oldPools.length];
+          for (int i = 0; i < pools.length; i++) {
+            pools[i] = replaced.get(oldPools[i]);
+          }
+          replacedReplicas.put(oldPools, pools);
+        }
+        newReplicas[slot] = pools;
+      }
+      return new SlotTable(newSlots, newReplicas);
+    }
+
+    private JedisPool[] copySlots() {
+      return Arrays.copyOf(slots, slots.length);
+    }
+
+    private JedisPool[][] copyReplicas() {
+      return Arrays.copyOf(replicas, replicas.length);
+    }
+
+    private static JedisPool[][] emptyReplicas() {
+      JedisPool[][] replicas = new JedisPool[BinaryJedisCluster.HASHSLOTS][];
+      Arrays.fill(replicas, NO_REPLICAS);
+      return replicas;
     }
-    return slotNums;
   }
 }
@@ -0,0 +1,288 @@
+package redis.clients.jedis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.commands.ProtocolCommand;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.jedis.exceptions.JedisNoReachableClusterNodeException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 集群pipeline: 任意单key命令按slot路由到对应节点的连接, 返回Response;
+ * sync时先将所有节点的命令发出再按命令顺序读取, MOVED/ASK的命令批量重发到目标节点(最多maxAttempts次),
+ * 最后按命令顺序填充Response.
+ * 非线程安全; 连接在第一条命令时从节点连接池获取, sync后归还, 未sync的pipeline需要close
+ */
+public class JedisClusterPipeline extends PipelineBase implements Closeable {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final JedisClusterConnectionHandler connectionHandler;
+
+    private final int maxAttempts;
+
+    /**
+     * 各节点已获取的连接
+     */
+    private final Map<JedisPool, Jedis> jedisMap = new LinkedHashMap<JedisPool, Jedis>();
+
+    /**
+     * 按发送顺序记录的命令
+     */
+    private final List<PipelineEntry> entries = new ArrayList<PipelineEntry>();
+
+    /**
+     * 连接上是否可能有未读取的回复, 是则归还前断开
+     */
+    private boolean unread;
+
+    private static class PipelineEntry {
+        private Client client;
+        private ProtocolCommand command;
+        private byte[][] args;
+        private boolean asking;
+        private Object reply;
+
+        private PipelineEntry(Client client) {
+            this.client = client;
+        }
+    }
+
+    JedisClusterPipeline(JedisClusterConnectionHandler connectionHandler, int maxAttempts) {
+        this.connectionHandler = connectionHandler;
+        this.maxAttempts = maxAttempts;
+    }
+
+    @Override
+    protected Client getClient(String key) {
+        return getClient(JedisClusterCRC16.getSlot(key));
+    }
+
+    @Override
+    protected Client getClient(byte[] key) {
+        return getClient(JedisClusterCRC16.getSlot(key));
+    }
+
+    private Client getClient(int slot) {
+        recordLastCommand();
+        JedisPool jedisPool = connectionHandler.getJedisPoolFromSlot(slot);
+        if (jedisPool == null) {
+            connectionHandler.renewSlotCache();
+            jedisPool = connectionHandler.getJedisPoolFromSlot(slot);
+            if (jedisPool == null) {
+                throw new JedisNoReachableClusterNodeException("No reachable node in cluster for slot " + slot);
+            }
+        }
+        Client client = getJedis(jedisPool).getClient();
+        entries.add(new PipelineEntry(client));
+        return client;
+    }
+
+    private Jedis getJedis(JedisPool jedisPool) {
+        Jedis jedis = jedisMap.get(jedisPool);
+        if (jedis == null) {
+            jedis = jedisPool.getResource();
+            jedis.getClient().setRecordLastCommand(true);
+            jedisMap.put(jedisPool, jedis);
+        }
+        return jedis;
+    }
+
+    /**
+     * 记录上一条命令(getClient之后才发送), 用于重定向时重发
+     */
+    private void recordLastCommand() {
+        if (entries.isEmpty()) {
+            return;
+        }
+        PipelineEntry entry = entries.get(entries.size() - 1);
+        if (entry.command == null) {
+            entry.command = entry.client.getLastCommand();
+            entry.args = entry.client.getLastArgs();
+        }
+    }
+
+    /**
+     * 读取所有节点的回复并填充Response. 某个节点连接异常时, 该节点的Response以JedisDataException结束,
+     * 其余节点正常填充后抛出该连接异常
+     */
+    public void sync() {
+        JedisConnectionException connectionException = execute();
+        try {
+            for (PipelineEntry entry : entries) {
+                generateResponse(entry.reply);
+            }
+        } finally {
+            release(false);
+        }
+        if (connectionException != null) {
+            throw connectionException;
+        }
+    }
+
+    /**
+     * 读取所有节点的回复, 按命令顺序返回格式化后的结果, 错误回复以异常对象返回
+     */
+    public List<Object> syncAndReturnAll() {
+        JedisConnectionException connectionException = execute();
+        List<Object> formatted = new ArrayList<Object>(entries.size());
+        try {
+            for (PipelineEntry entry : entries) {
+                try {
+                    formatted.add(generateResponse(entry.reply).get());
+                } catch (JedisDataException e) {
+                    formatted.add(e);
+                }
+            }
+        } finally {
+            release(false);
+        }
+        if (connectionException != null) {
+            throw connectionException;
+        }
+        return formatted;
+    }
+
+    /**
+     * 放弃未sync的命令并归还连接(有未读取回复的连接会先断开)
+     */
+    @Override
+    public void close() {
+        clean();
+        release(!entries.isEmpty());
+    }
+
+    private JedisConnectionException execute() {
+        if (entries.isEmpty()) {
+            return null;
+        }
+        recordLastCommand();
+        JedisConnectionException connectionException = read(entries);
+        for (int attempt = 1; attempt < maxAttempts; attempt++) {
+            List<PipelineEntry> redirectEntries = new ArrayList<PipelineEntry>();
+            boolean moved = false;
+            for (PipelineEntry entry : entries) {
+                if (entry.reply instanceof JedisRedirectionException && entry.command != null) {
+                    redirectEntries.add(entry);
+                    moved |= entry.reply instanceof JedisMovedDataException;
+                }
+            }
+            if (redirectEntries.isEmpty()) {
+                break;
+            }
+            logger.warn("JedisClusterPipeline redirect attempt={} commands={}", attempt, redirectEntries.size());
+            if (moved) {
+                // 一批MOVED只更新一次slot cache
+                connectionHandler.renewSlotCache();
+            }
+            try {
+                for (PipelineEntry entry : redirectEntries) {
+                    JedisRedirectionException redirection = (JedisRedirectionException) entry.reply;
+                    entry.client = getJedis(connectionHandler.getJedisPoolFromNode(redirection.getTargetNode())).getClient();
+                    entry.asking = redirection instanceof JedisAskDataException;
+                    if (entry.asking) {
+                        entry.client.asking();
+                    }
+                    entry.client.sendCommand(entry.command, entry.args);
+                }
+            } catch (JedisConnectionException e) {
+                // 重发失败时保留原重定向结果, 已重发的命令不再读取, 连接在release时断开
+                unread = true;
+                logger.error("JedisClusterPipeline redirect error", e);
+                return connectionException != null ? connectionException : e;
+            }
+            JedisConnectionException e = read(redirectEntries);
+            if (connectionException == null) {
+                connectionException = e;
+            }
+        }
+        return connectionException;
+    }
+
+    /**
+     * 先flush所有连接, 再按发送顺序读取回复(与CommandTracker的命令队列顺序一致)
+     */
+    private JedisConnectionException read(List<PipelineEntry> readEntries) {
+        JedisConnectionException connectionException = null;
+        Set<Client> failedClients = new HashSet<Client>();
+        Set<Client> clients = new HashSet<Client>();
+        for (PipelineEntry entry : readEntries) {
+            if (clients.add(entry.client)) {
+                try {
+                    entry.client.flush();
+                } catch (JedisConnectionException e) {
+                    failedClients.add(entry.client);
+                    connectionException = connectionException != null ? connectionException : e;
+                }
+            }
+        }
+        for (PipelineEntry entry : readEntries) {
+            if (failedClients.contains(entry.client)) {
+                entry.reply = new JedisDataException("JedisClusterPipeline connection error: "
+                        + entry.client.getHostPort(), connectionException);
+                continue;
+            }
+            try {
+                if (entry.asking) {
+                    readReply(entry.client);
+                }
+                entry.reply = readReply(entry.client);
+            } catch (JedisConnectionException e) {
+                failedClients.add(entry.client);
+                connectionException = connectionException != null ? connectionException : e;
+                entry.reply = new JedisDataException("JedisClusterPipeline connection error: "
+                        + entry.client.getHostPort(), e);
+            }
+        }
+        return connectionException;
+    }
+
+    private Object readReply(Client client) {
+        try {
+            return client.getOne();
+        } catch (JedisDataException e) {
+            return e;
+        }
+    }
+
+    /**
+     * 归还所有连接
+     *
+     * @param discard 是否断开连接(有未读取的回复时)
+     */
+    private void release(boolean discard) {
+        for (Jedis jedis : jedisMap.values()) {
+            try {
+                jedis.getClient().setRecordLastCommand(false);
+                if (discard || unread) {
+                    jedis.getClient().disconnect();
+                }
+            } catch (Exception e) {
+                logger.warn("JedisClusterPipeline release error: {}", e.getMessage());
+            } finally {
+                jedis.close();
+            }
+        }
+        jedisMap.clear();
+        entries.clear();
+        unread = false;
+    }
+
+    /**
+     * @return 当前未sync的命令数
+     */
+    public int size() {
+        return entries.size();
+    }
+}
@@ -113,9 +113,12 @@ class JedisFactory implements PooledObjectFactory<Jedis> {
     final BinaryJedis jedis = pooledJedis.getObject();
     if (jedis.isConnected()) {
       try {
-        try {
-          jedis.quit();
-        } catch (Exception e) {
+        // a broken connection (e.g. read timeout) would block on QUIT for another soTimeout
+        if (!jedis.getClient().isBroken()) {
+          try {
+            jedis.quit();
+          } catch (Exception e) {
+          }
         }
         jedis.disconnect();
       } catch (Exception e) {
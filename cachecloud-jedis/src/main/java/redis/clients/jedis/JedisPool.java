@@ -3,7 +3,9 @@ package redis.clients.jedis;
 import com.sohu.tv.cc.client.spectator.StatsCollector;
 import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.exceptions.JedisConnectionException;
 import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisNodeQuarantinedException;
 import redis.clients.jedis.util.JedisURIHelper;
 
 import javax.net.ssl.HostnameVerifier;
@@ -235,6 +237,19 @@ public class JedisPool extends JedisPoolAbstract {
     this.statsCollector = statsCollector;
   }
 
+  /**
+   * Pool of connections sharing the sockets of the multiplexed connection, which is closed along
+   * with the pool. The pool only bounds concurrent callers, borrowing never opens a socket.
+   */
+  public JedisPool(final GenericObjectPoolConfig poolConfig, final StatsCollector statsCollector,
+      final MultiplexedConnection multiplexedConnection) {
+    super(poolConfig, new MultiplexedJedisFactory(multiplexedConnection, statsCollector));
+    this.host = multiplexedConnection.getHost();
+    this.port = multiplexedConnection.getPort();
+    this.statsCollector = statsCollector;
+    this.multiplexedConnection = multiplexedConnection;
+  }
+
   public JedisPool(final GenericObjectPoolConfig poolConfig) {
     this(poolConfig, Protocol.DEFAULT_HOST, Protocol.DEFAULT_PORT);
   }
@@ -320,6 +335,9 @@ public class JedisPool extends JedisPoolAbstract {
 
   private final String host;
   private final int port;
+  private volatile NodeLatency nodeLatency;
+  private volatile NodeHealth nodeHealth;
+  private MultiplexedConnection multiplexedConnection;
 
   public String getHost() {
     return host;
@@ -329,13 +347,91 @@ public class JedisPool extends JedisPoolAbstract {
     return port;
   }
 
+  /**
+   * @throws JedisNodeQuarantinedException if the node is quarantined by its {@link NodeHealth}
+   */
   @Override
   public Jedis getResource() {
-    Jedis jedis = super.getResource();
+    NodeHealth health = nodeHealth;
+    if (health != null) {
+      health.checkAvailable();
+    }
+    Jedis jedis;
+    try {
+      jedis = super.getResource();
+    } catch (JedisConnectionException e) {
+      if (health != null) {
+        health.failure();
+      }
+      throw e;
+    }
     jedis.setDataSource(this);
+    jedis.getClient().setNodeLatency(nodeLatency);
+    jedis.getClient().setNodeHealth(health);
     return jedis;
   }
 
+  /**
+   * PING the node bypassing its quarantine.
+   *
+   * @return true if the node replied
+   */
+  boolean probe() {
+    Jedis jedis = null;
+    try {
+      jedis = super.getResource();
+      jedis.setDataSource(this);
+      return "PONG".equals(jedis.ping());
+    } catch (JedisException e) {
+      return false;
+    } finally {
+      if (jedis != null) {
+        jedis.close();
+      }
+    }
+  }
+
+  /**
+   * Track round trip latency and in flight commands of the connections borrowed from this pool,
+   * null to stop tracking.
+   */
+  public void setNodeLatency(NodeLatency nodeLatency) {
+    this.nodeLatency = nodeLatency;
+  }
+
+  public NodeLatency getNodeLatency() {
+    return nodeLatency;
+  }
+
+  /**
+   * Track errors of this node and fail fast while it is quarantined, null to stop tracking.
+   */
+  public void setNodeHealth(NodeHealth nodeHealth) {
+    this.nodeHealth = nodeHealth;
+  }
+
+  public NodeHealth getNodeHealth() {
+    return nodeHealth;
+  }
+
+  /**
+   * @return the sockets shared by the connections of this pool, null if each connection owns one
+   */
+  public MultiplexedConnection getMultiplexedConnection() {
+    return multiplexedConnection;
+  }
+
+  @Override
+  public void destroy() {
+    try {
+      super.destroy();
+    } finally {
+      if (multiplexedConnection != null) {
+        multiplexedConnection.close();
+      }
+    }
+  }
+
   @Override
   protected void returnBrokenResource(final Jedis resource) {
     if (resource != null) {
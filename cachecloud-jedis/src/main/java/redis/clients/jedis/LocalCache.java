@@ -0,0 +1,779 @@
+package redis.clients.jedis;
+
+import com.sohu.tv.cc.client.spectator.LocalCacheMetrics;
+import com.sohu.tv.cc.client.spectator.model.LocalCacheModel;
+import redis.clients.jedis.util.FrequencySketch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 客户端本地缓存: 读命令的结果按命令的ttl缓存在本地, 不随服务端的修改失效(ttl内可能读到旧数据),
+ * 适合能容忍短暂不一致的读多写少场景, 需要与服务端保持一致时使用{@link NearCache}; key不存在的结果可按单独的ttl缓存(负缓存)。
+ * <p>
+ * 容量按缓存项数或估计字节数限制, 淘汰采用W-TinyLFU: 新缓存项先进入占容量1%的窗口LRU, 被挤出窗口后与主区(SLRU,
+ * 80%为受保护区)试用区中最久未访问的项比较{@link FrequencySketch}估计的访问频率, 频率低者被淘汰;
+ * 按key分段加锁, 每段独立淘汰。命中, 未命中, 淘汰及过期数注册到{@link com.sohu.tv.cc.client.spectator.StatsCollector}后每分钟上报
+ *
+ * @see LocalCachedCluster
+ */
+public class LocalCache implements LocalCacheMetrics {
+
+    /**
+     * 默认ttl(毫秒)
+     */
+    public static final long DEFAULT_TTL_MILLIS = 1000;
+
+    /**
+     * 负缓存标记
+     */
+    static final Object NULL = new Object();
+
+    private static final byte GET = 0;
+
+    private static final byte HGET = 1;
+
+    private static final byte HGETALL = 2;
+
+    static final byte WINDOW = 0;
+
+    static final byte PROBATION = 1;
+
+    static final byte PROTECTED = 2;
+
+    private static final int MAX_SEGMENTS = 16;
+
+    /**
+     * 分段后每段的最小容量(项数或字节数), 容量过小时淘汰策略失效
+     */
+    private static final long MIN_SEGMENT_SIZE = 256;
+
+    private static final long MIN_SEGMENT_WEIGHT = 64 * 1024;
+
+    /**
+     * 按字节数限制容量时, 估算缓存项数(决定频率统计的计数器数量)使用的平均大小
+     */
+    private static final long AVERAGE_ENTRY_WEIGHT = 256;
+
+    /**
+     * 每个缓存项及hash每个field的估计额外开销(字节)
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private static final int FIELD_OVERHEAD = 32;
+
+    /**
+     * 不检查读取期间是否失效的令牌
+     */
+    static final long NO_TOKEN = Long.MAX_VALUE;
+
+    /**
+     * 每段最多记录的失效key数, 超出时清空记录, 之前开始的读取全部按已失效处理
+     */
+    private static final int MAX_INVALIDATED_KEYS = 1024;
+
+    private final boolean weighted;
+
+    private final long maximum;
+
+    private final Segment[] segments;
+
+    /**
+     * 时间源(纳秒), 测试时可替换
+     */
+    private final LongSupplier clock;
+
+    private final int segmentMask;
+
+    private volatile String name = "localCache";
+
+    private volatile long getTtlNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TTL_MILLIS);
+
+    private volatile long hgetTtlNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TTL_MILLIS);
+
+    private volatile long hgetAllTtlNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TTL_MILLIS);
+
+    private volatile long negativeTtlNanos = 0;
+
+    /**
+     * 上次上报时的命中, 未命中, 淘汰, 过期数
+     */
+    private final long[] reported = new long[4];
+
+    private LocalCache(long maximum, boolean weighted) {
+        this(maximum, weighted, System::nanoTime);
+    }
+
+    LocalCache(long maximum, boolean weighted, LongSupplier clock) {
+        if (maximum <= 0) {
+            throw new IllegalArgumentException("maximum must be positive: " + maximum);
+        }
+        this.maximum = maximum;
+        this.weighted = weighted;
+        this.clock = clock;
+        long minSegment = weighted ? MIN_SEGMENT_WEIGHT : MIN_SEGMENT_SIZE;
+        int count = 1;
+        while (count < MAX_SEGMENTS && maximum / (count * 2) >= minSegment) {
+            count <<= 1;
+        }
+        this.segments = new Segment[count];
+        this.segmentMask = count - 1;
+        for (int i = 0; i < count; i++) {
+            long segmentMaximum = Math.max(1, maximum / count);
+            segments[i] = new Segment(segmentMaximum, weighted ? segmentMaximum / AVERAGE_ENTRY_WEIGHT : segmentMaximum);
+        }
+    }
+
+    /**
+     * 按缓存项数限制容量
+     *
+     * @param maxSize 最多缓存项数, get, hget(每个field), hgetAll的结果各为一项
+     */
+    public static LocalCache maxSize(long maxSize) {
+        return new LocalCache(maxSize, false);
+    }
+
+    /**
+     * 按估计字节数(key, field, value的字符数之和加固定开销)限制容量
+     *
+     * @param maxBytes 最多缓存字节数
+     */
+    public static LocalCache maxWeight(long maxBytes) {
+        return new LocalCache(maxBytes, true);
+    }
+
+    /**
+     * 设置上报使用的名称, 默认localCache
+     *
+     * @param name
+     * @return
+     */
+    public LocalCache setName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 设置命令结果的缓存时间, 默认{@link #DEFAULT_TTL_MILLIS}毫秒; mget按get, mHgetAll按hgetAll的ttl缓存
+     *
+     * @param command GET, HGET或HGETALL
+     * @param ttl     小于等于0时不缓存该命令
+     * @param unit
+     * @return
+     */
+    public LocalCache setTtl(Protocol.Command command, long ttl, TimeUnit unit) {
+        long nanos = Math.max(0, unit.toNanos(ttl));
+        switch (command) {
+            case GET:
+                getTtlNanos = nanos;
+                break;
+            case HGET:
+                hgetTtlNanos = nanos;
+                break;
+            case HGETALL:
+                hgetAllTtlNanos = nanos;
+                break;
+            default:
+                throw new IllegalArgumentException("command not cacheable: " + command);
+        }
+        return this;
+    }
+
+    /**
+     * 设置key(hget为field)不存在时的缓存时间, 默认0(不缓存); 不超过对应命令的ttl
+     *
+     * @param ttl
+     * @param unit
+     * @return
+     */
+    public LocalCache setNegativeTtl(long ttl, TimeUnit unit) {
+        this.negativeTtlNanos = Math.max(0, unit.toNanos(ttl));
+        return this;
+    }
+
+    /**
+     * @return 缓存的值, key不存在时为{@link #NULL}, 未缓存时为null
+     */
+    Object get(String key) {
+        return lookup(GET, key, null, getTtlNanos);
+    }
+
+    Object hget(String key, String field) {
+        return lookup(HGET, key, field, hgetTtlNanos);
+    }
+
+    /**
+     * @return 缓存的hash(调用方不能修改), key不存在时为{@link #NULL}, 未缓存时为null
+     */
+    Object hgetAll(String key) {
+        return lookup(HGETALL, key, null, hgetAllTtlNanos);
+    }
+
+    /**
+     * 未命中后, 读取集群前获取key的令牌; 写入结果时带上令牌, 读取期间key被{@link #invalidate(String)}时丢弃读到的旧值
+     */
+    long loadToken(String key) {
+        if (key == null) {
+            return NO_TOKEN;
+        }
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.generation;
+        }
+    }
+
+    /**
+     * @param value 为null时按负缓存处理
+     */
+    void putGet(String key, String value) {
+        putGet(key, value, NO_TOKEN);
+    }
+
+    /**
+     * @param token {@link #loadToken(String)}的返回值
+     */
+    void putGet(String key, String value, long token) {
+        store(GET, key, null, value, getTtlNanos, token);
+    }
+
+    void putHget(String key, String field, String value) {
+        putHget(key, field, value, NO_TOKEN);
+    }
+
+    void putHget(String key, String field, String value, long token) {
+        store(HGET, key, field, value, hgetTtlNanos, token);
+    }
+
+    /**
+     * @param hash 为null或空时按负缓存处理, 保存其副本
+     */
+    void putHgetAll(String key, Map<String, String> hash) {
+        putHgetAll(key, hash, NO_TOKEN);
+    }
+
+    void putHgetAll(String key, Map<String, String> hash, long token) {
+        store(HGETALL, key, null, hash == null || hash.isEmpty() ? null : new HashMap<String, String>(hash),
+                hgetAllTtlNanos, token);
+    }
+
+    /**
+     * 移除key的所有缓存结果(get, hget, hgetAll)
+     */
+    public void invalidate(String key) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.invalidate(key);
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    private Object lookup(byte type, String key, String field, long ttlNanos) {
+        if (ttlNanos <= 0 || key == null || (type == HGET && field == null)) {
+            return null;
+        }
+        int hash = hash(type, key, field);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.lookup(type, key, field, hash, clock.getAsLong());
+        }
+    }
+
+    private void store(byte type, String key, String field, Object value, long ttlNanos, long token) {
+        if (ttlNanos <= 0 || key == null || (type == HGET && field == null)) {
+            return;
+        }
+        if (value == null) {
+            long negativeTtl = negativeTtlNanos;
+            if (negativeTtl <= 0) {
+                return;
+            }
+            value = NULL;
+            ttlNanos = Math.min(ttlNanos, negativeTtl);
+        }
+        int weight = weighted ? weigh(key, field, value) : 1;
+        int hash = hash(type, key, field);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            if (segment.isInvalidatedSince(key, token)) {
+                return;
+            }
+            long now = clock.getAsLong();
+            segment.store(type, key, field, hash, value, weight, now + ttlNanos, now);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int weigh(String key, String field, Object value) {
+        long weight = ENTRY_OVERHEAD + key.length();
+        if (field != null) {
+            weight += field.length();
+        }
+        if (value instanceof String) {
+            weight += ((String) value).length();
+        } else if (value instanceof Map) {
+            for (Map.Entry<String, String> entry : ((Map<String, String>) value).entrySet()) {
+                weight += FIELD_OVERHEAD + entry.getKey().length() + entry.getValue().length();
+            }
+        }
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    private static int hash(byte type, String key, String field) {
+        int hash = key.hashCode();
+        if (field != null) {
+            hash = hash * 31 + field.hashCode();
+        }
+        return hash * 31 + type;
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[(h ^ (h >>> 8)) & segmentMask];
+    }
+
+    public long size() {
+        return totals()[4];
+    }
+
+    /**
+     * @return get结果所在的队列({@link #WINDOW}, {@link #PROBATION}, {@link #PROTECTED}), 未缓存时为-1
+     */
+    byte queueOf(String key) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            Keys k = segment.keys.get(key);
+            return k == null || k.get == null ? -1 : k.get.queue;
+        }
+    }
+
+    /**
+     * @return 缓存项的估计字节数之和, 按项数限制容量时与{@link #size()}相同
+     */
+    public long weight() {
+        return totals()[5];
+    }
+
+    public long getHits() {
+        return totals()[0];
+    }
+
+    public long getMisses() {
+        return totals()[1];
+    }
+
+    public double getHitRatio() {
+        long[] totals = totals();
+        long requests = totals[0] + totals[1];
+        return requests == 0 ? 0 : (double) totals[0] / requests;
+    }
+
+    public long getEvictions() {
+        return totals()[2];
+    }
+
+    public long getExpirations() {
+        return totals()[3];
+    }
+
+    /**
+     * @return 命中, 未命中, 淘汰, 过期数, 缓存项数, 权重
+     */
+    private long[] totals() {
+        long[] totals = new long[6];
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                totals[0] += segment.hits;
+                totals[1] += segment.misses;
+                totals[2] += segment.evictions;
+                totals[3] += segment.expirations;
+                totals[4] += segment.size;
+                totals[5] += segment.totalWeight;
+            }
+        }
+        return totals;
+    }
+
+    @Override
+    public synchronized LocalCacheModel collect() {
+        long[] totals = totals();
+        LocalCacheModel model = new LocalCacheModel(name, totals[0] - reported[0], totals[1] - reported[1],
+                totals[2] - reported[2], totals[3] - reported[3], totals[4], totals[5]);
+        System.arraycopy(totals, 0, reported, 0, reported.length);
+        return model;
+    }
+
+    @Override
+    public String toString() {
+        long[] totals = totals();
+        return "LocalCache{name=" + name + ", maximum=" + maximum + ", weighted=" + weighted + ", size=" + totals[4]
+                + ", weight=" + totals[5] + ", hits=" + totals[0] + ", misses=" + totals[1] + ", evictions="
+                + totals[2] + ", expirations=" + totals[3] + "}";
+    }
+
+    /**
+     * 缓存项, 同时是所在队列(双向循环链表)的节点
+     */
+    private static final class Node {
+        final Keys keys;
+        final byte type;
+        final String field;
+        final int hash;
+        Object value;
+        long expireAt;
+        int weight;
+        byte queue;
+        Node prev;
+        Node next;
+
+        Node(Keys keys, byte type, String field, int hash) {
+            this.keys = keys;
+            this.type = type;
+            this.field = field;
+            this.hash = hash;
+            this.prev = this;
+            this.next = this;
+        }
+    }
+
+    /**
+     * 同一个key的所有缓存项, 用于按key失效
+     */
+    private static final class Keys {
+        final String key;
+        Node get;
+        Node hgetAll;
+        Map<String, Node> fields;
+
+        Keys(String key) {
+            this.key = key;
+        }
+
+        Node find(byte type, String field) {
+            if (type == GET) {
+                return get;
+            } else if (type == HGETALL) {
+                return hgetAll;
+            }
+            return fields == null ? null : fields.get(field);
+        }
+
+        void set(Node node) {
+            if (node.type == GET) {
+                get = node;
+            } else if (node.type == HGETALL) {
+                hgetAll = node;
+            } else {
+                if (fields == null) {
+                    fields = new HashMap<String, Node>(4);
+                }
+                fields.put(node.field, node);
+            }
+        }
+
+        void unset(Node node) {
+            if (node.type == GET) {
+                get = null;
+            } else if (node.type == HGETALL) {
+                hgetAll = null;
+            } else if (fields != null) {
+                fields.remove(node.field);
+            }
+        }
+
+        boolean isEmpty() {
+            return get == null && hgetAll == null && (fields == null || fields.isEmpty());
+        }
+    }
+
+    /**
+     * 一个分段的W-TinyLFU, 所有方法在持有分段锁时调用
+     */
+    private static final class Segment {
+        final Map<String, Keys> keys = new HashMap<String, Keys>();
+        final Node window = new Node(null, (byte) -1, null, 0);
+        final Node probation = new Node(null, (byte) -1, null, 0);
+        final Node protect = new Node(null, (byte) -1, null, 0);
+        final long maxWeight;
+        final long maxWindow;
+        final long maxProtected;
+        final FrequencySketch sketch;
+        long windowWeight;
+        long protectedWeight;
+        long totalWeight;
+        long size;
+        long hits;
+        long misses;
+        long evictions;
+        long expirations;
+
+        /**
+         * 每次失效加1, 读取开始时的值作为令牌
+         */
+        long generation;
+
+        /**
+         * 失效的key及失效后的generation
+         */
+        final Map<String, Long> invalidated = new HashMap<String, Long>();
+
+        /**
+         * 令牌小于该值的读取全部按已失效处理(清空或失效记录溢出时设置)
+         */
+        long invalidatedBefore;
+
+        /**
+         * @param maxWeight 容量
+         * @param maxSize   估计的最多缓存项数
+         */
+        Segment(long maxWeight, long maxSize) {
+            this.maxWeight = maxWeight;
+            this.maxWindow = Math.max(1, maxWeight / 100);
+            this.maxProtected = (maxWeight - maxWindow) * 80 / 100;
+            this.sketch = new FrequencySketch(maxSize);
+        }
+
+        Object lookup(byte type, String key, String field, int hash, long now) {
+            sketch.increment(hash);
+            Keys k = keys.get(key);
+            Node node = k == null ? null : k.find(type, field);
+            if (node == null) {
+                misses++;
+                return null;
+            }
+            if (node.expireAt - now <= 0) {
+                remove(node);
+                expirations++;
+                misses++;
+                return null;
+            }
+            hits++;
+            onHit(node);
+            return node.value;
+        }
+
+        void store(byte type, String key, String field, int hash, Object value, int weight, long expireAt, long now) {
+            Keys k = keys.get(key);
+            if (weight > maxWeight) {
+                // 超过分段容量的结果不缓存, 否则先淘汰其它所有项最后仍淘汰自身; 旧结果同时失效
+                Node stale = k == null ? null : k.find(type, field);
+                if (stale != null) {
+                    remove(stale);
+                }
+                return;
+            }
+            if (k == null) {
+                k = new Keys(key);
+                keys.put(key, k);
+            }
+            Node node = k.find(type, field);
+            if (node != null) {
+                int delta = weight - node.weight;
+                node.weight = weight;
+                totalWeight += delta;
+                if (node.queue == WINDOW) {
+                    windowWeight += delta;
+                } else if (node.queue == PROTECTED) {
+                    protectedWeight += delta;
+                }
+            } else {
+                node = new Node(k, type, field, hash);
+                node.weight = weight;
+                node.queue = WINDOW;
+                k.set(node);
+                addLast(window, node);
+                windowWeight += weight;
+                totalWeight += weight;
+                size++;
+            }
+            node.value = value;
+            node.expireAt = expireAt;
+            evict(now);
+        }
+
+        void onHit(Node node) {
+            if (node.queue == WINDOW) {
+                moveToLast(window, node);
+            } else if (node.queue == PROBATION) {
+                // 试用区再次命中, 晋升到受保护区, 受保护区超出容量时最久未访问的项降回试用区
+                unlink(node);
+                node.queue = PROTECTED;
+                addLast(protect, node);
+                protectedWeight += node.weight;
+                while (protectedWeight > maxProtected && protect.next != protect) {
+                    Node demoted = protect.next;
+                    unlink(demoted);
+                    protectedWeight -= demoted.weight;
+                    demoted.queue = PROBATION;
+                    addLast(probation, demoted);
+                }
+            } else {
+                moveToLast(protect, node);
+            }
+        }
+
+        /**
+         * 窗口超出容量的项移入试用区作为候选, 总量超出容量时候选与试用区最久未访问的项(受害者)按访问频率二选一淘汰
+         */
+        void evict(long now) {
+            Node candidate = null;
+            while (windowWeight > maxWindow && window.next != window) {
+                Node node = window.next;
+                unlink(node);
+                windowWeight -= node.weight;
+                node.queue = PROBATION;
+                addLast(probation, node);
+                if (candidate == null) {
+                    candidate = node;
+                }
+            }
+            while (totalWeight > maxWeight) {
+                Node victim = probation.next;
+                if (victim == probation) {
+                    victim = protect.next != protect ? protect.next : window.next;
+                    if (victim == window) {
+                        break;
+                    }
+                }
+                if (candidate == null || candidate == victim) {
+                    candidate = null;
+                    evict(victim, now);
+                } else if (candidate.expireAt - now > 0
+                        && (victim.expireAt - now <= 0 || admit(candidate.hash, victim.hash))) {
+                    evict(victim, now);
+                } else {
+                    Node next = candidate.next;
+                    evict(candidate, now);
+                    candidate = next == probation ? null : next;
+                }
+            }
+        }
+
+        private void evict(Node node, long now) {
+            remove(node);
+            if (node.expireAt - now <= 0) {
+                expirations++;
+            } else {
+                evictions++;
+            }
+        }
+
+        /**
+         * 候选的访问频率高于受害者时接纳; 频率较高(大于5)的候选有1/128的概率随机接纳, 避免热点受害者被hash碰撞的攻击长期保留
+         */
+        private boolean admit(int candidateHash, int victimHash) {
+            int victimFrequency = sketch.frequency(victimHash);
+            int candidateFrequency = sketch.frequency(candidateHash);
+            if (candidateFrequency > victimFrequency) {
+                return true;
+            } else if (candidateFrequency <= 5) {
+                return false;
+            }
+            return (ThreadLocalRandom.current().nextInt() & 127) == 0;
+        }
+
+        void remove(Node node) {
+            unlink(node);
+            if (node.queue == WINDOW) {
+                windowWeight -= node.weight;
+            } else if (node.queue == PROTECTED) {
+                protectedWeight -= node.weight;
+            }
+            totalWeight -= node.weight;
+            size--;
+            Keys k = node.keys;
+            k.unset(node);
+            if (k.isEmpty()) {
+                keys.remove(k.key);
+            }
+        }
+
+        boolean isInvalidatedSince(String key, long token) {
+            if (token < invalidatedBefore) {
+                return true;
+            }
+            Long invalidatedAt = invalidated.get(key);
+            return invalidatedAt != null && invalidatedAt > token;
+        }
+
+        void invalidate(String key) {
+            generation++;
+            if (invalidated.size() >= MAX_INVALIDATED_KEYS) {
+                invalidated.clear();
+                invalidatedBefore = generation;
+            } else {
+                invalidated.put(key, generation);
+            }
+            Keys k = keys.get(key);
+            if (k == null) {
+                return;
+            }
+            List<Node> nodes = new ArrayList<Node>(2);
+            if (k.get != null) {
+                nodes.add(k.get);
+            }
+            if (k.hgetAll != null) {
+                nodes.add(k.hgetAll);
+            }
+            if (k.fields != null) {
+                nodes.addAll(k.fields.values());
+            }
+            for (Node node : nodes) {
+                remove(node);
+            }
+        }
+
+        void clear() {
+            generation++;
+            invalidated.clear();
+            invalidatedBefore = generation;
+            keys.clear();
+            for (Node head : new Node[]{window, probation, protect}) {
+                head.prev = head;
+                head.next = head;
+            }
+            windowWeight = 0;
+            protectedWeight = 0;
+            totalWeight = 0;
+            size = 0;
+        }
+
+        private static void addLast(Node head, Node node) {
+            node.prev = head.prev;
+            node.next = head;
+            head.prev.next = node;
+            head.prev = node;
+        }
+
+        private static void moveToLast(Node head, Node node) {
+            unlink(node);
+            addLast(head, node);
+        }
+
+        private static void unlink(Node node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = node;
+            node.next = node;
+        }
+    }
+}
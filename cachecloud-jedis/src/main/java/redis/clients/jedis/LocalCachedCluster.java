@@ -0,0 +1,226 @@
+package redis.clients.jedis;
+
+import redis.clients.jedis.commands.JedisClusterCommands;
+import redis.clients.jedis.commands.SohuPipelineCommands;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link PipelineCluster}或{@link CrossRoomCluster}的本地缓存装饰: get, hget, hgetAll, mget, mHgetAll先查{@link LocalCache},
+ * 未命中时读取集群并按命令的ttl写入缓存, mget, mHgetAll只把未命中的key交给集群的批量命令读取,
+ * 批量命令的结果不区分不存在的key和读取失败(如节点故障)的key, 只缓存读到的key;
+ * 通过本类执行的写命令会移除该key在本地缓存中的结果, 并丢弃写入前已开始读取的该key的结果, 其他写入(其他客户端或直接通过集群)在ttl到期前不可见。
+ * 其他命令通过{@link #getCluster()}执行
+ *
+ * @param <C> 被装饰的集群客户端
+ */
+public class LocalCachedCluster<C extends JedisClusterCommands & SohuPipelineCommands> {
+
+    private final C cluster;
+
+    private final LocalCache cache;
+
+    /**
+     * @param cluster 被装饰的集群客户端, 由调用方负责关闭
+     * @param cache   本地缓存, 可以被多个装饰共享; 需要上报统计时注册到集群使用的StatsCollector
+     */
+    public LocalCachedCluster(C cluster, LocalCache cache) {
+        if (cluster == null || cache == null) {
+            throw new IllegalArgumentException("cluster and cache must not be null");
+        }
+        this.cluster = cluster;
+        this.cache = cache;
+    }
+
+    public C getCluster() {
+        return cluster;
+    }
+
+    public LocalCache getCache() {
+        return cache;
+    }
+
+    public String get(final String key) {
+        Object cached = cache.get(key);
+        if (cached != null) {
+            return cached == LocalCache.NULL ? null : (String) cached;
+        }
+        long token = cache.loadToken(key);
+        String value = cluster.get(key);
+        cache.putGet(key, value, token);
+        return value;
+    }
+
+    public String hget(final String key, final String field) {
+        Object cached = cache.hget(key, field);
+        if (cached != null) {
+            return cached == LocalCache.NULL ? null : (String) cached;
+        }
+        long token = cache.loadToken(key);
+        String value = cluster.hget(key, field);
+        cache.putHget(key, field, value, token);
+        return value;
+    }
+
+    /**
+     * @return key不存在时为空Map
+     */
+    public Map<String, String> hgetAll(final String key) {
+        Object cached = cache.hgetAll(key);
+        if (cached != null) {
+            return copy(cached);
+        }
+        long token = cache.loadToken(key);
+        Map<String, String> hash = cluster.hgetAll(key);
+        cache.putHgetAll(key, hash, token);
+        return hash;
+    }
+
+    /**
+     * 命中缓存的key直接返回, 其余key通过集群的mget读取; 结果中没有的key可能不存在也可能所在节点读取失败, 不缓存
+     *
+     * @return 不包含不存在的key
+     */
+    public Map<String, String> mget(final List<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return cluster.mget(keys);
+        }
+        Map<String, String> result = new HashMap<String, String>(keys.size() * 4 / 3 + 1);
+        List<String> missingKeys = new ArrayList<String>();
+        for (String key : keys) {
+            Object cached = cache.get(key);
+            if (cached == null) {
+                missingKeys.add(key);
+            } else if (cached != LocalCache.NULL) {
+                result.put(key, (String) cached);
+            }
+        }
+        if (missingKeys.isEmpty()) {
+            return result;
+        }
+        long[] tokens = loadTokens(missingKeys);
+        Map<String, String> loaded = cluster.mget(missingKeys);
+        if (loaded == null) {
+            return result;
+        }
+        for (int i = 0; i < missingKeys.size(); i++) {
+            String key = missingKeys.get(i);
+            String value = loaded.get(key);
+            if (value != null) {
+                result.put(key, value);
+                cache.putGet(key, value, tokens[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 命中缓存的key直接返回, 其余key通过集群的mHgetAll读取; 结果中没有的key可能不存在也可能所在节点读取失败, 不缓存
+     *
+     * @return 不包含不存在的key
+     */
+    public Map<String, Map<String, String>> mHgetAll(final List<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return cluster.mHgetAll(keys);
+        }
+        Map<String, Map<String, String>> result = new HashMap<String, Map<String, String>>(keys.size() * 4 / 3 + 1);
+        List<String> missingKeys = new ArrayList<String>();
+        for (String key : keys) {
+            Object cached = cache.hgetAll(key);
+            if (cached == null) {
+                missingKeys.add(key);
+            } else if (cached != LocalCache.NULL) {
+                result.put(key, copy(cached));
+            }
+        }
+        if (missingKeys.isEmpty()) {
+            return result;
+        }
+        long[] tokens = loadTokens(missingKeys);
+        Map<String, Map<String, String>> loaded = cluster.mHgetAll(missingKeys);
+        if (loaded == null) {
+            return result;
+        }
+        for (int i = 0; i < missingKeys.size(); i++) {
+            String key = missingKeys.get(i);
+            Map<String, String> hash = loaded.get(key);
+            if (hash != null && !hash.isEmpty()) {
+                result.put(key, hash);
+                cache.putHgetAll(key, hash, tokens[i]);
+            }
+        }
+        return result;
+    }
+
+    public String set(final String key, final String value) {
+        try {
+            return cluster.set(key, value);
+        } finally {
+            cache.invalidate(key);
+        }
+    }
+
+    public String setex(final String key, final int seconds, final String value) {
+        try {
+            return cluster.setex(key, seconds, value);
+        } finally {
+            cache.invalidate(key);
+        }
+    }
+
+    public Long del(final String key) {
+        try {
+            return cluster.del(key);
+        } finally {
+            cache.invalidate(key);
+        }
+    }
+
+    public Long hset(final String key, final String field, final String value) {
+        try {
+            return cluster.hset(key, field, value);
+        } finally {
+            cache.invalidate(key);
+        }
+    }
+
+    public String hmset(final String key, final Map<String, String> hash) {
+        try {
+            return cluster.hmset(key, hash);
+        } finally {
+            cache.invalidate(key);
+        }
+    }
+
+    public Long hdel(final String key, final String... fields) {
+        try {
+            return cluster.hdel(key, fields);
+        } finally {
+            cache.invalidate(key);
+        }
+    }
+
+    private long[] loadTokens(List<String> keys) {
+        long[] tokens = new long[keys.size()];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = cache.loadToken(keys.get(i));
+        }
+        return tokens;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> copy(Object cached) {
+        if (cached == LocalCache.NULL) {
+            return new HashMap<String, String>();
+        }
+        return new HashMap<String, String>((Map<String, String>) cached);
+    }
+
+    @Override
+    public String toString() {
+        return "LocalCachedCluster{cluster=" + cluster + ", cache=" + cache + "}";
+    }
+}
@@ -0,0 +1,655 @@
+package redis.clients.jedis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Protocol.Command;
+import redis.clients.jedis.commands.ProtocolCommand;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.util.IOUtils;
+import redis.clients.jedis.util.RedisInputStream;
+import redis.clients.jedis.util.RedisOutputStream;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 多路复用连接: 一个节点的所有线程共享少量socket, 命令在调用线程编码后入队, 由抢到写锁的线程把队列中的命令合并为一次flush写出
+ * (并发越高单次写出的命令越多), 每个socket一个读线程按FIFO把回复匹配给等待的命令;
+ * 通过{@link Connection#setMultiplexedConnection}绑定到不持有socket的连接上, 单条命令, pipeline及ASK重定向无需修改.
+ * 阻塞命令, 事务, 发布订阅及SELECT/AUTH/CLIENT/HELLO等改变连接状态的命令会影响共享socket的其它命令, 不支持
+ */
+public class MultiplexedConnection implements Closeable {
+
+    /**
+     * 自动批量时一次写出的默认命令数上限
+     */
+    public static final int DEFAULT_MAX_BATCH_COMMANDS = 128;
+
+    private static final Logger logger = LoggerFactory.getLogger(MultiplexedConnection.class);
+
+    private static final Set<Command> UNSUPPORTED_COMMANDS = EnumSet.of(Command.QUIT, Command.SELECT, Command.AUTH,
+            Command.CLIENT, Command.MULTI, Command.EXEC, Command.DISCARD, Command.WATCH, Command.UNWATCH,
+            Command.BLPOP, Command.BRPOP, Command.BRPOPLPUSH, Command.WAIT, Command.SUBSCRIBE, Command.UNSUBSCRIBE,
+            Command.PSUBSCRIBE, Command.PUNSUBSCRIBE, Command.MONITOR, Command.SYNC,
+            Command.HELLO);
+
+    private static final byte[] BLOCK = SafeEncoder.encode("BLOCK");
+
+    private static final byte[] READONLY_COMMAND = SafeEncoder.encode("*1\r\n$8\r\nREADONLY\r\n");
+
+    private static final int INITIAL_BATCH_BYTES = 256;
+
+    private final JedisSocketFactory socketFactory;
+
+    private final String user;
+
+    private final String password;
+
+    private final String clientName;
+
+    private final Channel[] channels;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * 发送过READONLY后所有socket(已建立的及之后重连的)在写出下一批命令前发送
+     */
+    private volatile boolean readOnly;
+
+    private volatile boolean closed;
+
+    /**
+     * 写出前等待更多命令的时间(纳秒), 0表示只合并已在队列中的命令
+     */
+    private volatile long flushWindowNanos;
+
+    private volatile int maxBatchCommands = DEFAULT_MAX_BATCH_COMMANDS;
+
+    private final LongAdder flushes = new LongAdder();
+
+    private final LongAdder flushedCommands = new LongAdder();
+
+    /**
+     * @param socketFactory 建连及握手使用其connectionTimeout和soTimeout, 建连后读线程不超时
+     * @param user          为null时只用password认证
+     * @param password      为null时不认证
+     * @param clientName    为null时不设置
+     * @param connections   共享的socket数
+     */
+    public MultiplexedConnection(JedisSocketFactory socketFactory, String user, String password, String clientName,
+            int connections) {
+        if (connections <= 0) {
+            throw new IllegalArgumentException("connections must be positive: " + connections);
+        }
+        this.socketFactory = socketFactory;
+        this.user = user;
+        this.password = password;
+        this.clientName = clientName;
+        this.channels = new Channel[connections];
+        for (int i = 0; i < connections; i++) {
+            channels[i] = new Channel();
+        }
+    }
+
+    public String getHost() {
+        return socketFactory.getHost();
+    }
+
+    public int getPort() {
+        return socketFactory.getPort();
+    }
+
+    public int getConnectionTimeout() {
+        return socketFactory.getConnectionTimeout();
+    }
+
+    public int getSoTimeout() {
+        return socketFactory.getSoTimeout();
+    }
+
+    /**
+     * @return 共享的socket数
+     */
+    public int getConnections() {
+        return channels.length;
+    }
+
+    /**
+     * @return 已写出等待回复的命令数
+     */
+    public int getPendingReplies() {
+        int pending = 0;
+        for (Channel channel : channels) {
+            Link link = channel.link;
+            if (link != null && !link.closed) {
+                pending += link.pending.get();
+            }
+        }
+        return pending;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 自动批量: 抢到写锁的线程先等待windowMicros, 或队列中的命令达到maxBatchCommands时提前, 再把队列中的命令一次写出,
+     * 以不超过windowMicros的延迟换取更少的写系统调用, 该socket没有在途命令时不等待; windowMicros为0(默认)时只合并已在队列中的命令
+     *
+     * @param windowMicros     等待时间(微秒), 通常50~200
+     * @param maxBatchCommands 达到该命令数时不再等待
+     */
+    public void setFlushWindow(long windowMicros, int maxBatchCommands) {
+        if (windowMicros < 0 || maxBatchCommands <= 0) {
+            throw new IllegalArgumentException("windowMicros must not be negative and maxBatchCommands must be positive: "
+                    + windowMicros + "," + maxBatchCommands);
+        }
+        this.maxBatchCommands = maxBatchCommands;
+        this.flushWindowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+    }
+
+    public long getFlushWindowMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(flushWindowNanos);
+    }
+
+    public int getMaxBatchCommands() {
+        return maxBatchCommands;
+    }
+
+    /**
+     * @return 写出(flush)次数
+     */
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    /**
+     * @return 写出的命令数, 除以{@link #getFlushes()}为平均每次写出的命令数
+     */
+    public long getFlushedCommands() {
+        return flushedCommands.sum();
+    }
+
+    /**
+     * 关闭所有socket, 等待中的命令以JedisConnectionException失败
+     */
+    @Override
+    public void close() {
+        closed = true;
+        JedisConnectionException e = new JedisConnectionException("Multiplexed connection to " + getHost() + ":"
+                + getPort() + " closed");
+        for (Channel channel : channels) {
+            channel.close(e);
+        }
+    }
+
+    /**
+     * 不能在共享socket上执行的命令抛出JedisDataException
+     */
+    static void checkCommand(ProtocolCommand cmd, byte[][] binaryArgs, Object[] args) {
+        if (!(cmd instanceof Command)) {
+            return;
+        }
+        Command command = (Command) cmd;
+        if (UNSUPPORTED_COMMANDS.contains(command)
+                || ((command == Command.XREAD || command == Command.XREADGROUP) && hasBlockOption(binaryArgs, args))) {
+            throw new JedisDataException(command + " is not supported on a multiplexed connection");
+        }
+    }
+
+    private static boolean hasBlockOption(byte[][] binaryArgs, Object[] args) {
+        if (binaryArgs != null) {
+            for (byte[] arg : binaryArgs) {
+                if (isBlock(arg)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (Object arg : args) {
+            if ((arg instanceof byte[] && isBlock((byte[]) arg)) || (arg instanceof String && "BLOCK".equalsIgnoreCase(
+                    (String) arg)) || arg == Protocol.Keyword.BLOCK) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isBlock(byte[] arg) {
+        if (arg == null || arg.length != BLOCK.length) {
+            return false;
+        }
+        for (int i = 0; i < BLOCK.length; i++) {
+            if ((arg[i] & 0xDF) != BLOCK[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 已发送READONLY, 在写出READONLY所在批次前调用: 其它已建立的socket在写出下一批命令前补发, 之后重连的socket在握手时发送,
+     * 之后的命令无论分到哪个socket都在READONLY之后执行
+     */
+    void readOnly() {
+        readOnly = true;
+    }
+
+    /**
+     * 发送一批连续编码的命令, 同一批命令在socket上不会被其它命令隔开(如ASKING及其后的命令)
+     */
+    void write(Batch batch) {
+        Channel channel = channels.length == 1 ? channels[0]
+                : channels[(next.getAndIncrement() & Integer.MAX_VALUE) % channels.length];
+        channel.submit(batch);
+    }
+
+    /**
+     * 等待回复, 超时时如果该socket在超时时间内没有读到任何回复则认为连接已失效并关闭
+     *
+     * @param timeoutMillis 小于等于0时一直等待
+     */
+    Object await(Reply reply, int timeoutMillis) {
+        try {
+            return timeoutMillis > 0 ? reply.get(timeoutMillis, TimeUnit.MILLISECONDS) : reply.get();
+        } catch (TimeoutException e) {
+            Link link = reply.link;
+            if (link != null) {
+                link.closeIfStalled(TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+            }
+            throw new JedisConnectionException(new SocketTimeoutException("Read timed out"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JedisConnectionException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new JedisConnectionException(cause);
+        }
+    }
+
+    private Link connect() {
+        Socket socket = null;
+        try {
+            socket = socketFactory.createSocket();
+            RedisOutputStream out = new RedisOutputStream(socket.getOutputStream());
+            RedisInputStream in = new RedisInputStream(socket.getInputStream());
+            if (user != null) {
+                handshake(out, in, Command.AUTH, user, password);
+            } else if (password != null) {
+                handshake(out, in, Command.AUTH, password);
+            }
+            if (clientName != null) {
+                handshake(out, in, Command.CLIENT, Protocol.Keyword.SETNAME.name(), clientName);
+            }
+            boolean sentReadOnly = readOnly;
+            if (sentReadOnly) {
+                handshake(out, in, Command.READONLY);
+            }
+            // 空闲时读线程一直阻塞, 命令的超时由调用线程判断
+            socket.setSoTimeout(0);
+            Link link = new Link(socket, out, in);
+            link.readOnly = sentReadOnly;
+            Thread reader = new Thread(link, "MultiplexedConnection-" + getHost() + ":" + getPort());
+            reader.setDaemon(true);
+            reader.start();
+            return link;
+        } catch (IOException e) {
+            IOUtils.closeQuietly(socket);
+            throw new JedisConnectionException("Failed connecting to " + socketFactory.getDescription(), e);
+        } catch (RuntimeException e) {
+            IOUtils.closeQuietly(socket);
+            throw e;
+        }
+    }
+
+    private static void handshake(RedisOutputStream out, RedisInputStream in, Command command, String... args)
+            throws IOException {
+        Protocol.sendCommand(out, command, args);
+        out.flush();
+        Protocol.read(in);
+    }
+
+    /**
+     * 一个共享socket的写队列, 断开后下一次写时重连
+     */
+    private final class Channel {
+
+        private final ConcurrentLinkedQueue<Batch> queue = new ConcurrentLinkedQueue<>();
+
+        private final ReentrantLock writeLock = new ReentrantLock();
+
+        private final AtomicInteger queuedCommands = new AtomicInteger();
+
+        /**
+         * 在自动批量窗口内等待的写线程
+         */
+        private volatile Thread waitingWriter;
+
+        private volatile Link link;
+
+        void submit(Batch batch) {
+            queue.offer(batch);
+            if (queuedCommands.addAndGet(batch.replies.size()) >= maxBatchCommands) {
+                Thread writer = waitingWriter;
+                if (writer != null) {
+                    LockSupport.unpark(writer);
+                }
+            }
+            // 持有写锁的线程释放前会再检查队列, 没抢到锁的命令由它写出, 此时自身的命令已写出, 不再等待
+            boolean first = true;
+            while (!queue.isEmpty() && writeLock.tryLock()) {
+                try {
+                    if (first) {
+                        awaitBatch();
+                        first = false;
+                    }
+                    drain();
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+        }
+
+        /**
+         * 没有在途命令时(并发低, 等待也凑不到更多命令)不等待
+         */
+        private void awaitBatch() {
+            long window = flushWindowNanos;
+            Link current = link;
+            if (window <= 0 || current == null || current.pending.get() == 0) {
+                return;
+            }
+            long deadline = System.nanoTime() + window;
+            waitingWriter = Thread.currentThread();
+            try {
+                while (queuedCommands.get() < maxBatchCommands && !Thread.currentThread().isInterrupted()) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+            } finally {
+                waitingWriter = null;
+            }
+        }
+
+        private void drain() {
+            Link current = link;
+            if (current == null || current.closed) {
+                if (closed) {
+                    failQueued(new JedisConnectionException("Multiplexed connection to " + getHost() + ":" + getPort()
+                            + " closed"));
+                    return;
+                }
+                try {
+                    current = connect();
+                } catch (RuntimeException e) {
+                    failQueued(e);
+                    return;
+                }
+                link = current;
+            }
+            try {
+                if (readOnly && !current.readOnly) {
+                    current.writeReadOnly();
+                }
+                int commands = 0;
+                Batch batch;
+                while ((batch = queue.poll()) != null) {
+                    queuedCommands.addAndGet(-batch.replies.size());
+                    commands += batch.replies.size();
+                    current.write(batch);
+                }
+                current.out.flush();
+                flushes.increment();
+                flushedCommands.add(commands);
+            } catch (IOException e) {
+                JedisConnectionException ex = new JedisConnectionException(e);
+                current.fail(ex);
+                failQueued(ex);
+            }
+        }
+
+        private void failQueued(RuntimeException e) {
+            Batch batch;
+            while ((batch = queue.poll()) != null) {
+                queuedCommands.addAndGet(-batch.replies.size());
+                for (Reply reply : batch.replies) {
+                    reply.completeExceptionally(e);
+                }
+            }
+        }
+
+        void close(JedisConnectionException e) {
+            Link current = link;
+            if (current != null) {
+                current.fail(e);
+            }
+            failQueued(e);
+        }
+    }
+
+    /**
+     * 一个socket及其读线程, 已写出的命令按顺序等待回复
+     */
+    private final class Link implements Runnable {
+
+        private final Socket socket;
+
+        private final RedisOutputStream out;
+
+        private final RedisInputStream in;
+
+        private final ConcurrentLinkedQueue<Reply> awaiting = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger pending = new AtomicInteger();
+
+        /**
+         * 最近一次读到回复, 或等待队列由空变为非空的时间
+         */
+        private volatile long progressNanos = System.nanoTime();
+
+        private volatile boolean closed;
+
+        /**
+         * 已发送READONLY, 只在持有写锁时访问
+         */
+        private boolean readOnly;
+
+        Link(Socket socket, RedisOutputStream out, RedisInputStream in) {
+            this.socket = socket;
+            this.out = out;
+            this.in = in;
+        }
+
+        /**
+         * 回复先入等待队列再写出, 读线程读到回复时对应的命令一定已在队列中
+         */
+        void write(Batch batch) throws IOException {
+            if (pending.get() == 0) {
+                progressNanos = System.nanoTime();
+            }
+            for (Reply reply : batch.replies) {
+                reply.link = this;
+                awaiting.offer(reply);
+            }
+            pending.addAndGet(batch.replies.size());
+            out.write(batch.bytes, 0, batch.length);
+        }
+
+        /**
+         * 补发READONLY, 其回复没有调用方等待, 错误回复只记录日志
+         */
+        void writeReadOnly() throws IOException {
+            Reply reply = new Reply();
+            reply.whenComplete((response, e) -> {
+                if (e != null) {
+                    logger.warn("multiplexed connection {}:{} READONLY failed: {}", getHost(), getPort(),
+                            e.getMessage());
+                }
+            });
+            write(new Batch(READONLY_COMMAND, READONLY_COMMAND.length, Collections.singletonList(reply)));
+            readOnly = true;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    long readBytes = in.getReadBytes();
+                    Object response = null;
+                    JedisDataException error = null;
+                    try {
+                        response = Protocol.read(in);
+                    } catch (JedisDataException e) {
+                        error = e;
+                    }
+                    progressNanos = System.nanoTime();
+                    Reply reply = awaiting.poll();
+                    if (reply == null) {
+                        throw new JedisConnectionException("Unexpected reply without command: " + response);
+                    }
+                    pending.decrementAndGet();
+                    reply.bytes = in.getReadBytes() - readBytes;
+                    if (error != null) {
+                        reply.completeExceptionally(error);
+                    } else {
+                        reply.complete(response);
+                    }
+                }
+            } catch (JedisConnectionException e) {
+                fail(e);
+            } catch (RuntimeException e) {
+                logger.error("multiplexed connection {}:{} reader error", getHost(), getPort(), e);
+                fail(new JedisConnectionException(e));
+            }
+        }
+
+        /**
+         * 先关闭socket再清空等待队列, 并发写入的命令要么被清空, 要么写socket失败后再次清空
+         */
+        void fail(JedisConnectionException e) {
+            closed = true;
+            IOUtils.closeQuietly(socket);
+            Reply reply;
+            while ((reply = awaiting.poll()) != null) {
+                pending.decrementAndGet();
+                reply.completeExceptionally(e);
+            }
+        }
+
+        void closeIfStalled(long timeoutNanos) {
+            if (!closed && pending.get() > 0 && System.nanoTime() - progressNanos >= timeoutNanos) {
+                logger.warn("multiplexed connection {}:{} has no reply in {}ms, reconnect", getHost(), getPort(),
+                        TimeUnit.NANOSECONDS.toMillis(timeoutNanos));
+                fail(new JedisConnectionException(new SocketTimeoutException("Read timed out")));
+            }
+        }
+    }
+
+    /**
+     * 一条命令的回复, 连接断开时以JedisConnectionException失败, 错误回复以JedisDataException失败
+     */
+    static final class Reply extends CompletableFuture<Object> {
+
+        /**
+         * 写出该命令的socket
+         */
+        private volatile Link link;
+
+        /**
+         * 回复的字节数, 在回复完成前写入
+         */
+        private long bytes;
+
+        long getBytes() {
+            return bytes;
+        }
+    }
+
+    /**
+     * 一次flush的连续编码的命令及其回复
+     */
+    static final class Batch {
+
+        private final byte[] bytes;
+
+        private final int length;
+
+        private final List<Reply> replies;
+
+        Batch(byte[] bytes, int length, List<Reply> replies) {
+            this.bytes = bytes;
+            this.length = length;
+            this.replies = replies;
+        }
+    }
+
+    /**
+     * 编码命令的缓冲区, 每次flush交出已写入的字节并换一个新数组, 不需要拷贝
+     */
+    static final class BatchBuffer extends OutputStream {
+
+        private byte[] bytes;
+
+        private int length;
+
+        @Override
+        public void write(int b) {
+            ensure(1);
+            bytes[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensure(len);
+            System.arraycopy(b, off, bytes, length, len);
+            length += len;
+        }
+
+        Batch take(List<Reply> replies) {
+            Batch batch = new Batch(bytes, length, replies);
+            bytes = null;
+            length = 0;
+            return batch;
+        }
+
+        private void ensure(int len) {
+            if (bytes == null) {
+                bytes = new byte[Math.max(INITIAL_BATCH_BYTES, len)];
+            } else if (length + len > bytes.length) {
+                byte[] grown = new byte[Math.max(length + len, bytes.length * 2)];
+                System.arraycopy(bytes, 0, grown, 0, length);
+                bytes = grown;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MultiplexedConnection{" + getHost() + ":" + getPort() + ", connections=" + channels.length
+                + ", flushWindowMicros=" + getFlushWindowMicros() + "}";
+    }
+}
@@ -0,0 +1,49 @@
+package redis.clients.jedis;
+
+import com.sohu.tv.cc.client.spectator.StatsCollector;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.PooledObjectFactory;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+
+/**
+ * 创建共享{@link MultiplexedConnection}的Jedis: 不持有socket, 创建及销毁不需要建连和关闭连接,
+ * 连接池只用于限制并发调用数及复用对象
+ */
+class MultiplexedJedisFactory implements PooledObjectFactory<Jedis> {
+
+    private final MultiplexedConnection multiplexedConnection;
+
+    private final StatsCollector statsCollector;
+
+    MultiplexedJedisFactory(MultiplexedConnection multiplexedConnection, StatsCollector statsCollector) {
+        this.multiplexedConnection = multiplexedConnection;
+        this.statsCollector = statsCollector;
+    }
+
+    @Override
+    public PooledObject<Jedis> makeObject() throws Exception {
+        Jedis jedis = new Jedis(multiplexedConnection.getHost(), multiplexedConnection.getPort(), statsCollector,
+                multiplexedConnection.getConnectionTimeout(), multiplexedConnection.getSoTimeout());
+        jedis.getClient().setMultiplexedConnection(multiplexedConnection);
+        return new DefaultPooledObject<>(jedis);
+    }
+
+    @Override
+    public void destroyObject(PooledObject<Jedis> pooledJedis) throws Exception {
+        // 只丢弃未读的回复, 共享的socket随连接池关闭
+        pooledJedis.getObject().getClient().disconnect();
+    }
+
+    @Override
+    public boolean validateObject(PooledObject<Jedis> pooledJedis) {
+        return !multiplexedConnection.isClosed();
+    }
+
+    @Override
+    public void activateObject(PooledObject<Jedis> pooledJedis) throws Exception {
+    }
+
+    @Override
+    public void passivateObject(PooledObject<Jedis> pooledJedis) throws Exception {
+    }
+}
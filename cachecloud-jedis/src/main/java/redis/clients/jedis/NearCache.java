@@ -0,0 +1,670 @@
+package redis.clients.jedis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Protocol.Keyword;
+import redis.clients.jedis.params.ClientTrackingParams;
+import redis.clients.jedis.util.IOUtils;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 近端缓存: 基于服务端CLIENT TRACKING的本地读缓存, 缓存get, hget, hgetAll, mget的结果, 按key及命令存放;
+ * 每个master一个跟踪连接(CLIENT TRACKING ON REDIRECT 自身 BCAST [PREFIX ...]后订阅__redis__:invalidate),
+ * 收到失效消息后删除对应key的缓存.
+ * <p>
+ * 未命中时先占位再从master读取, 读取期间到达的失效消息会删除占位, 读到的旧值不会写入缓存;
+ * 跟踪连接断开, 重新订阅及拓扑变化时清空全部缓存, 所有跟踪连接订阅成功前不使用缓存.
+ * 经PipelineCluster的单key写命令在执行前后同步删除对应key的缓存; 其它客户端(及批量写命令)的失效消息异步到达,
+ * 之后短时间内仍可能读到旧值
+ */
+public class NearCache implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(NearCache.class);
+
+    static final String INVALIDATE_CHANNEL = "__redis__:invalidate";
+
+    /**
+     * 跟踪连接的心跳间隔, 超过3个间隔没有任何消息视为连接断开
+     */
+    private static final long PING_INTERVAL_MILLIS = 1000;
+
+    private static final int READ_TIMEOUT_MILLIS = (int) (PING_INTERVAL_MILLIS * 3);
+
+    private static final long RECONNECT_DELAY_MILLIS = 500;
+
+    private static final Object NULL_VALUE = new Object();
+
+    private final JedisClusterConnectionHandler connectionHandler;
+
+    private final int maxEntries;
+
+    private final String[] prefixes;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * 缓存项数: 每个key计1, hget的每个field另计1
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    /**
+     * 节点(host:port)到跟踪连接, 由this保护
+     */
+    private final Map<String, Tracker> trackers = new HashMap<>();
+
+    /**
+     * 跟踪连接对应的slot分配, 与当前拓扑不是同一对象时说明拓扑已变化
+     */
+    private volatile Map<JedisPool, List<int[]>> trackedTopology;
+
+    private final AtomicBoolean syncRequested = new AtomicBoolean();
+
+    /**
+     * 所有master的跟踪连接都已订阅且拓扑未变化
+     */
+    private volatile boolean active;
+
+    private volatile boolean closed;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder flushes = new LongAdder();
+
+    /**
+     * @param maxEntries 最多缓存项数
+     * @param prefixes   只缓存并跟踪这些前缀的key, 为空时缓存所有key(每个写命令都会向所有客户端广播失效消息)
+     */
+    NearCache(JedisClusterConnectionHandler connectionHandler, int maxEntries, String... prefixes) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        this.connectionHandler = connectionHandler;
+        this.maxEntries = maxEntries;
+        this.prefixes = prefixes == null ? new String[0] : prefixes.clone();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "NearCache-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 建立各master的跟踪连接, 订阅成功后开始缓存
+     */
+    void start() {
+        syncTrackers();
+        scheduler.scheduleWithFixedDelay(this::tick, PING_INTERVAL_MILLIS, PING_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return key是否使用缓存: 缓存可用, 拓扑未变化且key匹配前缀
+     */
+    public boolean isCacheable(String key) {
+        if (!active) {
+            return false;
+        }
+        if (connectionHandler.getSlotRanges() != trackedTopology) {
+            requestSync();
+            return false;
+        }
+        if (prefixes.length == 0) {
+            return true;
+        }
+        for (String prefix : prefixes) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * GET, key须先经{@link #isCacheable(String)}判断
+     *
+     * @param loader 从master读取
+     */
+    String get(String key, Supplier<String> loader) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            Object value = entry.value;
+            if (value != null) {
+                hit(entry);
+                return value == NULL_VALUE ? null : (String) value;
+            }
+        }
+        misses.increment();
+        entry = acquire(key);
+        String value = loader.get();
+        synchronized (entry) {
+            if (!entry.removed) {
+                entry.value = value == null ? NULL_VALUE : value;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * HGET, key须先经{@link #isCacheable(String)}判断
+     */
+    String hget(String key, String field, Supplier<String> loader) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            Map<String, Object> fields = entry.fields;
+            Object value = fields == null ? null : fields.get(field);
+            if (value != null) {
+                hit(entry);
+                return value == NULL_VALUE ? null : (String) value;
+            }
+        }
+        misses.increment();
+        entry = acquire(key);
+        String value = loader.get();
+        boolean added = false;
+        synchronized (entry) {
+            if (!entry.removed) {
+                if (entry.fields == null) {
+                    entry.fields = new ConcurrentHashMap<>();
+                }
+                if (entry.fields.put(field, value == null ? NULL_VALUE : value) == null) {
+                    entry.weight++;
+                    added = true;
+                }
+            }
+        }
+        if (added && size.incrementAndGet() > maxEntries) {
+            evict();
+        }
+        return value;
+    }
+
+    /**
+     * HGETALL, key须先经{@link #isCacheable(String)}判断; 返回缓存的拷贝
+     */
+    Map<String, String> hgetAll(String key, Supplier<Map<String, String>> loader) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            Map<String, String> hash = entry.hash;
+            if (hash != null) {
+                hit(entry);
+                return new HashMap<>(hash);
+            }
+        }
+        misses.increment();
+        entry = acquire(key);
+        Map<String, String> hash = loader.get();
+        synchronized (entry) {
+            if (!entry.removed && hash != null) {
+                entry.hash = new HashMap<>(hash);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * MGET: 命中的key直接返回, 其余key(包括不使用缓存的key)由loader一次读取;
+     * loader的结果不区分不存在的key和读取失败的key, 只缓存存在的key
+     */
+    Map<String, String> mget(List<String> keys, Function<List<String>, Map<String, String>> loader) {
+        Map<String, String> result = new HashMap<>();
+        List<String> missingKeys = new ArrayList<>();
+        List<Entry> missingEntries = new ArrayList<>();
+        for (String key : keys) {
+            if (!isCacheable(key)) {
+                missingKeys.add(key);
+                missingEntries.add(null);
+                continue;
+            }
+            Entry entry = entries.get(key);
+            Object value = entry == null ? null : entry.value;
+            if (value != null) {
+                hit(entry);
+                if (value != NULL_VALUE) {
+                    result.put(key, (String) value);
+                }
+                continue;
+            }
+            misses.increment();
+            missingKeys.add(key);
+            missingEntries.add(acquire(key));
+        }
+        if (missingKeys.isEmpty()) {
+            return result;
+        }
+        Map<String, String> loaded = loader.apply(missingKeys);
+        if (loaded == null) {
+            return result;
+        }
+        result.putAll(loaded);
+        for (int i = 0; i < missingKeys.size(); i++) {
+            Entry entry = missingEntries.get(i);
+            String value = loaded.get(missingKeys.get(i));
+            if (entry != null && value != null) {
+                synchronized (entry) {
+                    if (!entry.removed) {
+                        entry.value = value;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 删除key的所有缓存
+     */
+    public void invalidate(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            detach(entry);
+            invalidations.increment();
+        }
+    }
+
+    /**
+     * 清空缓存, 读取中的结果不再写入
+     */
+    public void flush() {
+        for (String key : entries.keySet()) {
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                detach(entry);
+            }
+        }
+        flushes.increment();
+    }
+
+    private void hit(Entry entry) {
+        if (!entry.accessed) {
+            entry.accessed = true;
+        }
+        hits.increment();
+    }
+
+    /**
+     * 取得key的缓存项, 不存在时创建占位; 失效消息删除占位后, 之前读取的结果不会写入新的占位
+     */
+    private Entry acquire(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            return entry;
+        }
+        Entry created = new Entry();
+        entry = entries.putIfAbsent(key, created);
+        if (entry != null) {
+            return entry;
+        }
+        if (size.incrementAndGet() > maxEntries) {
+            evict();
+        }
+        return created;
+    }
+
+    private void detach(Entry entry) {
+        synchronized (entry) {
+            if (!entry.removed) {
+                entry.removed = true;
+                size.addAndGet(-entry.weight);
+            }
+        }
+    }
+
+    /**
+     * 近似CLOCK淘汰: 清除访问标记, 删除上一轮之后未被访问的项, 每次淘汰到容量的15/16, 同一时间只有一个线程淘汰
+     */
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int target = maxEntries - maxEntries / 16;
+            for (int pass = 0; pass < 2 && size.get() > target; pass++) {
+                Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+                while (size.get() > target && iterator.hasNext()) {
+                    Map.Entry<String, Entry> candidate = iterator.next();
+                    Entry entry = candidate.getValue();
+                    if (entry.accessed) {
+                        entry.accessed = false;
+                    } else if (entries.remove(candidate.getKey(), entry)) {
+                        detach(entry);
+                        evictions.increment();
+                    }
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private void invalidate(Object keys) {
+        if (keys == null) {
+            // FLUSHALL/FLUSHDB
+            flush();
+        } else if (keys instanceof List) {
+            for (Object key : (List<?>) keys) {
+                if (key instanceof byte[]) {
+                    invalidate(SafeEncoder.encode((byte[]) key));
+                }
+            }
+        } else if (keys instanceof byte[]) {
+            invalidate(SafeEncoder.encode((byte[]) keys));
+        }
+    }
+
+    private void requestSync() {
+        if (syncRequested.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(() -> {
+                    syncRequested.set(false);
+                    syncTrackers();
+                });
+            } catch (RuntimeException e) {
+                // closed
+                syncRequested.set(false);
+            }
+        }
+    }
+
+    private void tick() {
+        try {
+            if (connectionHandler.getSlotRanges() != trackedTopology) {
+                syncTrackers();
+            }
+            List<Tracker> current;
+            synchronized (this) {
+                current = new ArrayList<>(trackers.values());
+            }
+            for (Tracker tracker : current) {
+                tracker.ping();
+            }
+        } catch (Exception e) {
+            logger.error("near cache tick error", e);
+        }
+    }
+
+    /**
+     * 按当前拓扑为每个master保持一个跟踪连接, 并清空缓存
+     */
+    private synchronized void syncTrackers() {
+        if (closed) {
+            return;
+        }
+        active = false;
+        Map<JedisPool, List<int[]>> topology = connectionHandler.getSlotRanges();
+        Set<String> masters = new HashSet<>();
+        for (JedisPool pool : topology.keySet()) {
+            String nodeKey = pool.getHost() + ":" + pool.getPort();
+            masters.add(nodeKey);
+            if (!trackers.containsKey(nodeKey)) {
+                Tracker tracker = new Tracker(new HostAndPort(pool.getHost(), pool.getPort()));
+                trackers.put(nodeKey, tracker);
+                tracker.start();
+            }
+        }
+        Iterator<Map.Entry<String, Tracker>> iterator = trackers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Tracker> entry = iterator.next();
+            if (!masters.contains(entry.getKey())) {
+                entry.getValue().close();
+                iterator.remove();
+            }
+        }
+        trackedTopology = topology;
+        flush();
+        updateActive();
+    }
+
+    private synchronized void updateActive() {
+        boolean subscribed = !closed && !trackers.isEmpty()
+                && trackedTopology == connectionHandler.getSlotRanges();
+        for (Tracker tracker : trackers.values()) {
+            subscribed &= tracker.subscribed;
+        }
+        active = subscribed;
+    }
+
+    private synchronized void trackerSubscribed() {
+        // 断开期间的写命令没有失效消息
+        flush();
+        updateActive();
+    }
+
+    private synchronized void trackerLost() {
+        active = false;
+        flush();
+    }
+
+    /**
+     * 关闭跟踪连接并清空缓存
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            active = false;
+            for (Tracker tracker : trackers.values()) {
+                tracker.close();
+            }
+            trackers.clear();
+        }
+        scheduler.shutdownNow();
+        flush();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public List<String> getPrefixes() {
+        return Arrays.asList(prefixes);
+    }
+
+    /**
+     * @return 当前缓存项数
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * @return 所有master的跟踪连接是否都已订阅, 否则读命令不使用缓存
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return 收到失效消息删除的key数
+     */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return 清空次数(跟踪连接断开, 重新订阅, 拓扑变化及FLUSHALL)
+     */
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "NearCache{maxEntries=" + maxEntries + ", prefixes=" + Arrays.toString(prefixes) + ", size=" + size()
+                + ", active=" + active + ", hits=" + getHits() + ", misses=" + getMisses() + ", invalidations="
+                + getInvalidations() + ", evictions=" + getEvictions() + ", flushes=" + getFlushes() + "}";
+    }
+
+    /**
+     * 一个key的缓存, value/hash/fields分别对应GET, HGETALL, HGET; 为null表示未缓存
+     */
+    private static final class Entry {
+
+        private volatile Object value;
+
+        private volatile Map<String, String> hash;
+
+        private volatile Map<String, Object> fields;
+
+        private volatile boolean accessed;
+
+        /**
+         * 计入size的项数, 由this保护
+         */
+        private int weight = 1;
+
+        /**
+         * 已从缓存中删除, 读取中的结果不再写入, 由this保护
+         */
+        private boolean removed;
+    }
+
+    /**
+     * 一个master的跟踪连接, 独立线程读取失效消息, 断开后清空缓存并重连
+     */
+    private final class Tracker implements Runnable {
+
+        private final HostAndPort node;
+
+        private final Thread thread;
+
+        private volatile Jedis jedis;
+
+        private volatile boolean subscribed;
+
+        private volatile boolean closed;
+
+        Tracker(HostAndPort node) {
+            this.node = node;
+            this.thread = new Thread(this, "NearCache-tracker-" + node);
+            this.thread.setDaemon(true);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            while (!closed) {
+                try {
+                    track();
+                } catch (Exception e) {
+                    if (!closed) {
+                        logger.warn("near cache tracking connection to {} lost: {}", node, e.getMessage());
+                    }
+                } finally {
+                    boolean lost = subscribed;
+                    subscribed = false;
+                    Jedis current = jedis;
+                    jedis = null;
+                    if (current != null) {
+                        IOUtils.closeQuietly(current.getClient().getSocket());
+                    }
+                    // 未订阅时缓存本来就不可用; 关闭的连接由syncTrackers清空缓存
+                    if (lost && !closed) {
+                        trackerLost();
+                    }
+                }
+                if (!closed) {
+                    try {
+                        Thread.sleep(RECONNECT_DELAY_MILLIS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        private void track() {
+            Jedis current = connectionHandler.createConnection(node, READ_TIMEOUT_MILLIS);
+            jedis = current;
+            if (closed) {
+                return;
+            }
+            ClientTrackingParams params = new ClientTrackingParams().id(current.clientId()).bcast();
+            for (String prefix : prefixes) {
+                params.prefix(prefix);
+            }
+            current.clientTracking(ClientTrackingParams.Latch.ON, params);
+            Client client = current.getClient();
+            client.subscribe(INVALIDATE_CHANNEL);
+            client.flush();
+            while (!closed) {
+                List<Object> reply = client.getUnflushedObjectMultiBulkReply();
+                byte[] kind = (byte[]) reply.get(0);
+                if (Arrays.equals(Keyword.MESSAGE.raw, kind)) {
+                    invalidate(reply.get(2));
+                } else if (Arrays.equals(Keyword.SUBSCRIBE.raw, kind)) {
+                    subscribed = true;
+                    trackerSubscribed();
+                }
+                // PONG只用于检测连接
+            }
+        }
+
+        /**
+         * 在调度线程发送心跳, 回复由读线程读取
+         */
+        void ping() {
+            Jedis current = jedis;
+            if (subscribed && current != null) {
+                try {
+                    current.getClient().ping();
+                    current.getClient().flush();
+                } catch (Exception e) {
+                    // 读线程会发现连接断开
+                }
+            }
+        }
+
+        void close() {
+            closed = true;
+            Jedis current = jedis;
+            if (current != null) {
+                IOUtils.closeQuietly(current.getClient().getSocket());
+            }
+            thread.interrupt();
+        }
+    }
+}
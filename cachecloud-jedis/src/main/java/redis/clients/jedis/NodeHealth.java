@@ -0,0 +1,233 @@
+package redis.clients.jedis;
+
+import redis.clients.jedis.exceptions.JedisNodeQuarantinedException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * 节点健康统计(熔断器): 滑动窗口内的命令错误率及连续失败次数(建连失败或读写超时等连接异常, 期间没有成功的回复),
+ * 超过阈值时隔离(quarantine)节点, 隔离期间从该节点连接池获取连接立即抛出JedisNodeQuarantinedException,
+ * 不再等待connectionTimeout; 由后台探测成功后恢复. 阈值可配置, 默认值见DEFAULT_*常量
+ */
+public class NodeHealth {
+
+    /**
+     * 默认连续失败达到该次数时隔离: 节点宕机时各线程阻塞在连接超时上, 窗口内的错误率要等之前的成功样本过期后才升高
+     */
+    public static final int DEFAULT_CONSECUTIVE_FAILURES = 3;
+
+    /**
+     * 默认窗口内错误率达到该值时隔离
+     */
+    public static final double DEFAULT_ERROR_RATE_THRESHOLD = 0.5;
+
+    /**
+     * 默认按错误率隔离时窗口内需要的最少命令数
+     */
+    public static final int DEFAULT_MIN_REQUESTS = 20;
+
+    /**
+     * 滑动窗口: 10个1秒的桶
+     */
+    private static final int BUCKETS = 10;
+
+    private static final long BUCKET_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final String node;
+
+    private final int consecutiveFailureThreshold;
+
+    private final double errorRateThreshold;
+
+    private final int minRequests;
+
+    /**
+     * 时间源(纳秒), 测试时可替换
+     */
+    private final LongSupplier clock;
+
+    /**
+     * 节点被隔离时的回调, 可为null
+     */
+    private final Consumer<NodeHealth> quarantineListener;
+
+    private final AtomicLongArray bucketIds = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLongArray successes = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLongArray failures = new AtomicLongArray(BUCKETS);
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private final AtomicBoolean quarantined = new AtomicBoolean();
+
+    private final AtomicLong quarantineCount = new AtomicLong();
+
+    private volatile long quarantinedNanos;
+
+    public NodeHealth(String node, Consumer<NodeHealth> quarantineListener) {
+        this(node, DEFAULT_CONSECUTIVE_FAILURES, DEFAULT_ERROR_RATE_THRESHOLD, DEFAULT_MIN_REQUESTS,
+                quarantineListener);
+    }
+
+    /**
+     * @param consecutiveFailures 连续失败达到该次数时隔离
+     * @param errorRateThreshold  窗口内错误率达到该值时隔离, (0, 1]
+     * @param minRequests         按错误率隔离时窗口内需要的最少命令数
+     */
+    public NodeHealth(String node, int consecutiveFailures, double errorRateThreshold, int minRequests,
+                      Consumer<NodeHealth> quarantineListener) {
+        this(node, consecutiveFailures, errorRateThreshold, minRequests, quarantineListener, System::nanoTime);
+    }
+
+    NodeHealth(String node, int consecutiveFailures, double errorRateThreshold, int minRequests,
+               Consumer<NodeHealth> quarantineListener, LongSupplier clock) {
+        checkThresholds(consecutiveFailures, errorRateThreshold, minRequests);
+        this.node = node;
+        this.consecutiveFailureThreshold = consecutiveFailures;
+        this.errorRateThreshold = errorRateThreshold;
+        this.minRequests = minRequests;
+        this.quarantineListener = quarantineListener;
+        this.clock = clock;
+        for (int i = 0; i < BUCKETS; i++) {
+            bucketIds.set(i, -1);
+        }
+    }
+
+    static void checkThresholds(int consecutiveFailures, double errorRateThreshold, int minRequests) {
+        if (consecutiveFailures <= 0) {
+            throw new IllegalArgumentException("consecutiveFailures must be positive: " + consecutiveFailures);
+        }
+        if (errorRateThreshold <= 0 || errorRateThreshold > 1) {
+            throw new IllegalArgumentException("errorRateThreshold must be in (0, 1]: " + errorRateThreshold);
+        }
+        if (minRequests <= 0) {
+            throw new IllegalArgumentException("minRequests must be positive: " + minRequests);
+        }
+    }
+
+    /**
+     * 收到一条命令的回复
+     */
+    void success() {
+        add(successes);
+        if (consecutiveFailures.get() != 0) {
+            consecutiveFailures.set(0);
+        }
+    }
+
+    /**
+     * 建立连接失败或连接异常(读写超时, 连接被重置等)
+     */
+    void failure() {
+        add(failures);
+        if (consecutiveFailures.incrementAndGet() >= consecutiveFailureThreshold
+                || (getErrorRate() >= errorRateThreshold && getRequests() >= minRequests)) {
+            quarantine();
+        }
+    }
+
+    /**
+     * 探测成功, 解除隔离并清空统计
+     */
+    void recover() {
+        for (int i = 0; i < BUCKETS; i++) {
+            bucketIds.set(i, -1);
+            successes.set(i, 0);
+            failures.set(i, 0);
+        }
+        consecutiveFailures.set(0);
+        quarantined.set(false);
+    }
+
+    /**
+     * 节点被隔离时抛出JedisNodeQuarantinedException
+     */
+    void checkAvailable() {
+        if (quarantined.get()) {
+            throw new JedisNodeQuarantinedException("Node " + node + " is quarantined for "
+                    + TimeUnit.NANOSECONDS.toMillis(clock.getAsLong() - quarantinedNanos) + "ms");
+        }
+    }
+
+    private void quarantine() {
+        if (quarantined.compareAndSet(false, true)) {
+            quarantinedNanos = clock.getAsLong();
+            quarantineCount.incrementAndGet();
+            if (quarantineListener != null) {
+                quarantineListener.accept(this);
+            }
+        }
+    }
+
+    private void add(AtomicLongArray counts) {
+        long bucketId = clock.getAsLong() / BUCKET_NANOS;
+        int index = (int) (bucketId % BUCKETS);
+        long current = bucketIds.get(index);
+        if (current != bucketId && bucketIds.compareAndSet(index, current, bucketId)) {
+            // 桶已过期, 重置(并发时可能丢失少量计数)
+            successes.set(index, 0);
+            failures.set(index, 0);
+        }
+        counts.incrementAndGet(index);
+    }
+
+    private long sum(AtomicLongArray counts) {
+        long oldest = clock.getAsLong() / BUCKET_NANOS - BUCKETS;
+        long sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (bucketIds.get(i) > oldest) {
+                sum += counts.get(i);
+            }
+        }
+        return sum;
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    public boolean isQuarantined() {
+        return quarantined.get();
+    }
+
+    /**
+     * @return 窗口内的命令数(含失败)
+     */
+    public long getRequests() {
+        return sum(successes) + sum(failures);
+    }
+
+    /**
+     * @return 窗口内的错误率
+     */
+    public double getErrorRate() {
+        long failed = sum(failures);
+        long total = failed + sum(successes);
+        return total == 0 ? 0 : (double) failed / total;
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures.get();
+    }
+
+    /**
+     * @return 累计隔离次数
+     */
+    public long getQuarantineCount() {
+        return quarantineCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "NodeHealth{node=" + node + ", quarantined=" + isQuarantined() + ", requests=" + getRequests()
+                + ", errorRate=" + String.format("%.3f", getErrorRate()) + ", consecutiveFailures="
+                + getConsecutiveFailures() + ", quarantineCount=" + getQuarantineCount() + "}";
+    }
+}
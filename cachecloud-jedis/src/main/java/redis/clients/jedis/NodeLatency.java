@@ -0,0 +1,101 @@
+package redis.clients.jedis;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 节点延迟统计: 命令往返耗时的EWMA及执行中(已发送未收到回复)的命令数,
+ * 由从该节点连接池借出的Connection在收到回复时更新; 用于{@link ReadFrom}在多个可读节点间选择, 也可用于监控
+ */
+public class NodeLatency {
+
+    /**
+     * 新样本的权重
+     */
+    private static final double ALPHA = 0.1;
+
+    /**
+     * 超过该时间没有新样本时代价视为0, 使长时间未被选中的节点重新得到探测
+     */
+    private static final long PROBE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * EWMA(纳秒), 以double的bit存储
+     */
+    private final AtomicLong ewmaBits = new AtomicLong(Double.doubleToLongBits(0));
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicLong samples = new AtomicLong();
+
+    private volatile long lastSampleNanos = System.nanoTime();
+
+    void commandSent() {
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * 收到一条命令的回复
+     *
+     * @param rttNanos 命令发送到收到回复的耗时
+     */
+    void replyReceived(long rttNanos) {
+        inFlight.decrementAndGet();
+        boolean first = samples.getAndIncrement() == 0;
+        long prev;
+        long next;
+        do {
+            prev = ewmaBits.get();
+            double ewma = Double.longBitsToDouble(prev);
+            next = Double.doubleToLongBits(first ? rttNanos : ewma + ALPHA * (rttNanos - ewma));
+        } while (!ewmaBits.compareAndSet(prev, next));
+        lastSampleNanos = System.nanoTime();
+    }
+
+    /**
+     * 连接断开时释放其上未收到回复的命令
+     */
+    void release(int commands) {
+        if (commands > 0) {
+            inFlight.addAndGet(-commands);
+        }
+    }
+
+    /**
+     * @return 往返耗时的EWMA(毫秒)
+     */
+    public double getEwmaMillis() {
+        return Double.longBitsToDouble(ewmaBits.get()) / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return 已发送未收到回复的命令数
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return 累计样本数
+     */
+    public long getSamples() {
+        return samples.get();
+    }
+
+    /**
+     * 选择节点时的代价: EWMA * (执行中命令数 + 1), 越小越优先
+     */
+    public double getCost() {
+        if (System.nanoTime() - lastSampleNanos > PROBE_INTERVAL_NANOS) {
+            return 0;
+        }
+        return Double.longBitsToDouble(ewmaBits.get()) * (Math.max(0, inFlight.get()) + 1);
+    }
+
+    @Override
+    public String toString() {
+        return "NodeLatency{ewmaMillis=" + String.format("%.3f", getEwmaMillis()) + ", inFlight=" + getInFlight()
+                + ", samples=" + getSamples() + "}";
+    }
+}
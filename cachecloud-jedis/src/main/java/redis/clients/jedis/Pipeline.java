@@ -152,6 +152,11 @@ public class Pipeline extends MultiKeyPipelineBase implements Closeable {
     return response;
   }
 
+  public Response<String> asking() {
+    client.asking();
+    return getResponse(BuilderFactory.STRING);
+  }
+
   @Override
   public void close() {
     clear();
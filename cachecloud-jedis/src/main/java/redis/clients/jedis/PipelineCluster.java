@@ -4,21 +4,77 @@ import com.sohu.tv.cc.client.spectator.StatsCollector;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import redis.clients.jedis.commands.SohuPipelineCommands;
 import redis.clients.jedis.params.SetParams;
 import redis.clients.jedis.valueobject.BitOffsetValue;
 import redis.clients.jedis.valueobject.RangeRankVO;
 import redis.clients.jedis.valueobject.RangeScoreVO;
 import redis.clients.jedis.valueobject.SortedSetVO;
+import redis.clients.jedis.util.JedisClusterCRC16;
 import redis.clients.jedis.util.SafeEncoder;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Created by yijunzhang on 14-6-23.
  */
-public class PipelineCluster extends JedisCluster {
+public class PipelineCluster extends JedisCluster implements SohuPipelineCommands {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    /**
+     * 批量命令各节点并行执行的线程池, 为null时按节点顺序执行
+     */
+    private volatile ExecutorService pipelineExecutor;
+
+    /**
+     * pipelineExecutor是否由本实例负责关闭
+     */
+    private volatile boolean ownPipelineExecutor;
+
+    /**
+     * mget/mset/mdel等批量命令是否将同一slot的key合并为一条原生多key命令(MGET/MSET/DEL等)
+     */
+    private volatile boolean slotCommandEnabled = false;
+
+    /**
+     * 每条多key命令最多包含的key数量, 小于等于0时不限制
+     */
+    private volatile int slotCommandMaxKeys = 0;
+
+    /**
+     * 每个子pipeline最多发送的命令数, 达到后sync再发送下一批, 小于等于0时不限制
+     */
+    private volatile int pipelineMaxCommands = 0;
+
+    /**
+     * 每个子pipeline最多发送的请求字节数, 达到后sync再发送下一批, 小于等于0时不限制
+     */
+    private volatile long pipelineMaxBytes = 0;
+
+    /**
+     * 一次批量命令所有节点回复的总字节数上限, 超过时抛出JedisPipelineLimitException, 小于等于0时不限制
+     */
+    private volatile long pipelineMaxReplyBytes = 0;
+
+    /**
+     * 读命令(单key读命令及mget/mHgetAll等批量读命令)的节点选择策略
+     */
+    private volatile ReadFrom readFrom = ReadFrom.MASTER;
+
+    /**
+     * 读命令的对冲策略, 为null时不对冲
+     */
+    private volatile HedgePolicy hedgePolicy;
+
+    /**
+     * 近端缓存, 为null时关闭
+     */
+    private volatile NearCache nearCache;
+
     public PipelineCluster(GenericObjectPoolConfig poolConfig, Set<HostAndPort> nodes, int timeout) {
         super(nodes, timeout, poolConfig);
     }
@@ -67,74 +123,306 @@ public class PipelineCluster extends JedisCluster {
     }
 
     /**
-     * 为所有jedisPool初始化一些活的jedis
+     * 设置批量命令(mget/mset/mHgetAll等)的并行执行线程池, 为null时按节点顺序执行;
+     * 线程池由调用方创建并负责关闭, 可使用{@link redis.clients.jedis.util.PipelineExecutors}创建
      *
-     * @param poolConfig
+     * @param pipelineExecutor
      */
-    private void initCreateIdleJedisForPool(GenericObjectPoolConfig poolConfig) {
-        long start = System.currentTimeMillis();
-        logger.info("start to initCreateIdleJedisForPool");
-        // 最多初始化GenericObjectPoolConfig.DEFAULT_MAX_TOTAL个连接
-        int minIdle = poolConfig.getMinIdle();
-        //        if (minIdle > GenericObjectPoolConfig.DEFAULT_MAX_TOTAL) {
-        //            minIdle = GenericObjectPoolConfig.DEFAULT_MAX_TOTAL;
-        //        }
-        // 只初始化master，所以这里用的是<slot, JedisPool>
-        Map<Integer, JedisPool> jedisPoolMap = this.connectionHandler.getSlots();
-        // 过滤重复的JedisPool
-        Set<JedisPool> jedisPoolSet = new LinkedHashSet<JedisPool>();
-        for (JedisPool jedisPool : jedisPoolMap.values()) {
-            jedisPoolSet.add(jedisPool);
+    public void setPipelineExecutor(ExecutorService pipelineExecutor) {
+        setPipelineExecutor(pipelineExecutor, false);
+    }
+
+    /**
+     * 设置批量命令的并行执行线程池, 为null时按节点顺序执行
+     *
+     * @param pipelineExecutor
+     * @param shutdownOnClose  为true时线程池由本实例负责关闭, 在{@link #close()}或被替换时shutdown
+     */
+    public void setPipelineExecutor(ExecutorService pipelineExecutor, boolean shutdownOnClose) {
+        ExecutorService previous;
+        boolean ownPrevious;
+        synchronized (this) {
+            previous = this.pipelineExecutor;
+            ownPrevious = this.ownPipelineExecutor;
+            this.pipelineExecutor = pipelineExecutor;
+            this.ownPipelineExecutor = shutdownOnClose;
         }
-        // 遍历所有的jedisPool，使用maxTotal个Jedis，最后一起归还
-        for (JedisPool jedisPool : jedisPoolSet) {
-            List<Jedis> jedisList = new ArrayList<Jedis>(minIdle);
-            // 1. 借用maxTotal个Jedis，最后统一还
-            for (int i = 0; i < minIdle; i++) {
-                Jedis jedis = null;
-                try {
-                    jedis = jedisPool.getResource();
-                    logger.debug("{}:{} getResource()");
-                    if (jedis != null && "PONG".equalsIgnoreCase(jedis.ping())) {
-                        jedisList.add(jedis);
-                    }
-                } catch (Exception e) {
-                    if(jedis != null){
-                        logger.error("{}:{} init ping error" + e.getMessage(), jedis.getClient().getHost(),
-                                jedis.getClient().getPort(), e);
-                    }
-                }
+        if (ownPrevious && previous != null && previous != pipelineExecutor) {
+            previous.shutdown();
+        }
+    }
+
+    public ExecutorService getPipelineExecutor() {
+        return pipelineExecutor;
+    }
+
+    /**
+     * 设置mget/mgetBytes/mset/msetBytes/mdel/mexists/munlink是否按slot合并为原生多key命令, 默认关闭(按key逐条pipeline);
+     * 开启后单个key的结果与逐条执行不同, 如非string类型的key在MGET中返回nil而不是WRONGTYPE错误
+     *
+     * @param slotCommandEnabled
+     */
+    public void setSlotCommandEnabled(boolean slotCommandEnabled) {
+        this.slotCommandEnabled = slotCommandEnabled;
+    }
+
+    public boolean isSlotCommandEnabled() {
+        return slotCommandEnabled;
+    }
+
+    /**
+     * 设置每条多key命令最多包含的key数量, 小于等于0时不限制
+     *
+     * @param slotCommandMaxKeys
+     */
+    public void setSlotCommandMaxKeys(int slotCommandMaxKeys) {
+        this.slotCommandMaxKeys = slotCommandMaxKeys;
+    }
+
+    public int getSlotCommandMaxKeys() {
+        return slotCommandMaxKeys;
+    }
+
+    /**
+     * 设置批量命令每个子pipeline最多发送的命令数, 节点上的命令按此分片依次在同一连接上执行, 小于等于0时不限制
+     *
+     * @param pipelineMaxCommands
+     */
+    public void setPipelineMaxCommands(int pipelineMaxCommands) {
+        this.pipelineMaxCommands = pipelineMaxCommands;
+    }
+
+    public int getPipelineMaxCommands() {
+        return pipelineMaxCommands;
+    }
+
+    /**
+     * 设置批量命令每个子pipeline最多发送的请求字节数, 小于等于0时不限制
+     *
+     * @param pipelineMaxBytes
+     */
+    public void setPipelineMaxBytes(long pipelineMaxBytes) {
+        this.pipelineMaxBytes = pipelineMaxBytes;
+    }
+
+    public long getPipelineMaxBytes() {
+        return pipelineMaxBytes;
+    }
+
+    /**
+     * 设置一次批量命令所有节点回复的总字节数上限, 每个子pipeline sync后检查,
+     * 超过时抛出{@link redis.clients.jedis.exceptions.JedisPipelineLimitException}, 小于等于0时不限制
+     *
+     * @param pipelineMaxReplyBytes
+     */
+    public void setPipelineMaxReplyBytes(long pipelineMaxReplyBytes) {
+        this.pipelineMaxReplyBytes = pipelineMaxReplyBytes;
+    }
+
+    public long getPipelineMaxReplyBytes() {
+        return pipelineMaxReplyBytes;
+    }
+
+    /**
+     * 设置两次成功的slot拓扑刷新的最小间隔(毫秒), 间隔内的刷新请求(MOVED/连接异常触发)合并为间隔结束时的一次刷新,
+     * 刷新失败不计入间隔, 并发的刷新请求只执行一次; 默认0, 只合并并发请求
+     *
+     * @param minRefreshIntervalMillis
+     */
+    public void setTopologyRefreshIntervalMillis(long minRefreshIntervalMillis) {
+        connectionHandler.setMinRefreshIntervalMillis(minRefreshIntervalMillis);
+    }
+
+    /**
+     * 设置读命令的节点选择策略, 默认只读master; 读从节点时连接在第一次读前发送READONLY,
+     * 从节点连接异常时回退到master(REPLICA除外), 从节点的数据可能落后于master;
+     * REPLICA时有分片没有从节点则单key命令和批量读命令都抛出JedisNoReachableClusterNodeException
+     *
+     * @param readFrom
+     */
+    public void setReadFrom(ReadFrom readFrom) {
+        this.readFrom = readFrom == null ? ReadFrom.MASTER : readFrom;
+    }
+
+    public ReadFrom getReadFrom() {
+        return readFrom;
+    }
+
+    /**
+     * 设置读命令(单key读命令及mget/mHgetAll等批量读命令)的对冲策略, 默认不对冲;
+     * 首选节点超过对冲延迟未返回时向slot的另一个节点(master或从节点)发送相同的读请求, 返回先成功的结果
+     *
+     * @param hedgePolicy 为null时关闭对冲
+     */
+    public void setHedgePolicy(HedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+    }
+
+    public HedgePolicy getHedgePolicy() {
+        return hedgePolicy;
+    }
+
+    /**
+     * @return 构造时传入的指标收集器, 未传入时为null
+     */
+    public StatsCollector getStatsCollector() {
+        return connectionHandler.getStatsCollector();
+    }
+
+    /**
+     * 各节点(host:port)的延迟统计: 往返耗时EWMA及执行中的命令数, 用于监控
+     *
+     * @return
+     */
+    public Map<String, NodeLatency> getNodeLatencies() {
+        return connectionHandler.getNodeLatencies();
+    }
+
+    /**
+     * 各节点(host:port)的健康统计: 窗口内错误率, 连续建连失败次数及是否被隔离, 用于监控
+     *
+     * @return
+     */
+    public Map<String, NodeHealth> getNodeHealths() {
+        return connectionHandler.getNodeHealths();
+    }
+
+    /**
+     * 是否隔离故障节点(默认关闭): 连续建连失败或错误率过高的节点被隔离, 隔离期间该节点的命令立即失败
+     * (JedisNodeQuarantinedException), 不再等待connectionTimeout, 读从节点时改读其它节点;
+     * 后台探测节点恢复并刷新拓扑
+     *
+     * @param enabled
+     */
+    public void setNodeQuarantineEnabled(boolean enabled) {
+        connectionHandler.setNodeQuarantineEnabled(enabled);
+    }
+
+    /**
+     * 节点隔离阈值, 默认连续失败3次, 或10秒窗口内至少20条命令且错误率达到50%
+     *
+     * @param consecutiveFailures 连续建连失败或连接异常次数
+     * @param errorRate           窗口内错误率, (0, 1]
+     * @param minRequests         按错误率隔离时窗口内需要的最少命令数
+     */
+    public void setNodeQuarantineThresholds(int consecutiveFailures, double errorRate, int minRequests) {
+        connectionHandler.setNodeQuarantineThresholds(consecutiveFailures, errorRate, minRequests);
+    }
+
+    /**
+     * 多路复用连接: 每个节点只建立connections个socket, 所有线程的命令共享这些socket, 并发请求合并写出,
+     * 由读线程按顺序匹配回复(见{@link MultiplexedConnection}), 服务端连接数不再随连接池maxTotal增长;
+     * 连接池只限制并发调用数. 阻塞命令(BLPOP等), 事务, 发布订阅不可用. 默认0, 每个连接独占socket
+     *
+     * @param connections 每个节点的socket数, 通常1~4
+     */
+    public void setMultiplexedConnections(int connections) {
+        connectionHandler.setMultiplexedConnections(connections);
+    }
+
+    /**
+     * 自动批量: 各线程的单key命令按节点排队, 等待windowMicros或排队命令数达到maxBatchCommands后合并为一次写出,
+     * 回复按顺序交回各调用线程; 适合大量并发小命令(incr/expire等)系统调用开销为主的场景, 每条命令最多增加windowMicros延迟.
+     * 基于多路复用连接实现, 未开启多路复用时自动以每个节点1个socket开启
+     *
+     * @param windowMicros     等待时间(微秒), 通常50~200, 0表示关闭(只合并已排队的命令)
+     * @param maxBatchCommands 一次写出的命令数达到该值时不再等待, 默认{@link MultiplexedConnection#DEFAULT_MAX_BATCH_COMMANDS}
+     */
+    public void setAutoBatch(long windowMicros, int maxBatchCommands) {
+        connectionHandler.setAutoBatch(windowMicros, maxBatchCommands);
+    }
+
+    /**
+     * 近端缓存: get, hget, hgetAll, mget的结果缓存在本地, 由服务端CLIENT TRACKING(BCAST)推送的失效消息删除,
+     * 适合读多写少的热点key; 未命中时从master读取(不受readFrom影响), 见{@link NearCache}.
+     * 每个master增加一个跟踪连接, 前缀内的每个写命令都会向所有开启近端缓存的客户端发送失效消息, 应尽量指定前缀;
+     * 本客户端的单key写命令(set, hset, del, expire等)同步删除该key的缓存
+     *
+     * @param maxEntries 最多缓存项数(每个key计1, hget的每个field另计1), 小于等于0时关闭
+     * @param prefixes   只缓存这些前缀的key, 不指定时缓存所有key
+     */
+    public synchronized void setNearCache(int maxEntries, String... prefixes) {
+        NearCache old = nearCache;
+        if (maxEntries > 0) {
+            NearCache cache = new NearCache(connectionHandler, maxEntries, prefixes);
+            cache.start();
+            nearCache = cache;
+        } else {
+            nearCache = null;
+        }
+        if (old != null) {
+            old.close();
+        }
+    }
+
+    /**
+     * @return 近端缓存, 用于查看命中率等统计, 未开启时为null
+     */
+    public NearCache getNearCache() {
+        return nearCache;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (nearCache != null) {
+                nearCache.close();
+                nearCache = null;
             }
-            // 2. 归还Jedis
-            for (int i = 0; i < jedisList.size(); i++) {
-                Jedis jedis = null;
-                try {
-                    jedis = jedisList.get(i);
-                    jedis.close();
-                } catch (Exception e) {
-                    if(jedis != null){
-                        logger.error("{}:{} init close error" + e.getMessage(), jedis.getClient().getHost(),
-                                jedis.getClient().getPort(), e);
-                    }
-                }
+            if (ownPipelineExecutor && pipelineExecutor != null) {
+                pipelineExecutor.shutdown();
+                ownPipelineExecutor = false;
             }
         }
-        logger.info("end to initCreateIdleJedisForPool size {}, cost time {} ms", jedisPoolSet.size(),
-                (System.currentTimeMillis() - start));
+        super.close();
+    }
+
+    /**
+     * 创建集群pipeline, 可混合任意单key命令, sync时各节点一次往返批量执行并处理MOVED/ASK;
+     * 非线程安全, 未sync时需要close归还连接
+     *
+     * @return
+     */
+    public JedisClusterPipeline pipelined() {
+        return new JedisClusterPipeline(connectionHandler, maxAttempts);
+    }
+
+    /**
+     * 为所有master的jedisPool初始化minIdle个连接
+     *
+     * @param poolConfig
+     */
+    private void initCreateIdleJedisForPool(GenericObjectPoolConfig poolConfig) {
+        warmUp(false, poolConfig.getMinIdle(), PoolWarmer.DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * 并行预热各节点连接池, 每个节点补足connectionsPerNode个空闲连接
+     *
+     * @param includeReplicas    是否同时预热从节点(读命令从从节点读取时开启)
+     * @param connectionsPerNode 每个节点的空闲连接数, 一般为minIdle
+     * @param timeoutMillis      预热时间上限(毫秒)
+     * @return 预热结果
+     */
+    public PoolWarmer.Report warmUp(boolean includeReplicas, int connectionsPerNode, long timeoutMillis) {
+        // getSlotRanges的key为master
+        Collection<JedisPool> pools = includeReplicas ? this.connectionHandler.getNodes().values()
+                : this.connectionHandler.getSlotRanges().keySet();
+        return PoolWarmer.warmUp(new ArrayList<JedisPool>(pools), connectionsPerNode, timeoutMillis);
     }
 
     public String set(final String key, final byte[] value) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<String>(connectionHandler, maxAttempts) {
+        return write(key, () -> new JedisClusterCommand<String>(connectionHandler, maxAttempts) {
             public String execute(Jedis connection) {
                 return connection.set(keyByte, value);
             }
-        }.runBinary(keyByte);
+        }.runBinary(keyByte));
     }
 
     public String set(final String key, final byte[] value, final String expx, final long time) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<String>(connectionHandler, maxAttempts) {
+        return write(key, () -> new JedisClusterCommand<String>(connectionHandler, maxAttempts) {
             @Override
             public String execute(Jedis connection) {
                 SetParams params = SetParams.setParams();
@@ -145,41 +433,36 @@ public class PipelineCluster extends JedisCluster {
                 }
                 return connection.set(keyByte, value, params);
             }
-        }.runBinary(keyByte);
+        }.runBinary(keyByte));
     }
 
     public byte[] getBytes(final String key) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<byte[]>(connectionHandler, maxAttempts) {
-            @Override
-            public byte[] execute(Jedis connection) {
-                return connection.get(keyByte);
-            }
-        }.runBinary(keyByte);
+        return readBinary("get", keyByte, connection -> connection.get(keyByte));
     }
 
     public Boolean setbit(final String key, final long offset,
                           final byte[] value) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<Boolean>(connectionHandler, maxAttempts) {
+        return write(key, () -> new JedisClusterCommand<Boolean>(connectionHandler, maxAttempts) {
             public Boolean execute(Jedis connection) {
                 return connection.setbit(keyByte, offset, value);
             }
-        }.runBinary(keyByte);
+        }.runBinary(keyByte));
     }
 
     public Long setrange(final String key, final long offset, final byte[] value) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<Long>(connectionHandler, maxAttempts) {
+        return write(key, () -> new JedisClusterCommand<Long>(connectionHandler, maxAttempts) {
             public Long execute(Jedis connection) {
                 return connection.setrange(keyByte, offset, value);
             }
-        }.runBinary(keyByte);
+        }.runBinary(keyByte));
     }
 
     public byte[] getrangeBytes(final String key, final long startOffset, final long endOffset) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<byte[]>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<byte[]>(connectionHandler, maxAttempts, readFrom) {
             public byte[] execute(Jedis connection) {
                 return connection.getrange(keyByte, startOffset, endOffset);
             }
@@ -188,34 +471,34 @@ public class PipelineCluster extends JedisCluster {
 
     public byte[] getSetBytes(final String key, final byte[] value) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<byte[]>(connectionHandler, maxAttempts) {
+        return write(key, () -> new JedisClusterCommand<byte[]>(connectionHandler, maxAttempts) {
             public byte[] execute(Jedis connection) {
                 return connection.getSet(keyByte, value);
             }
-        }.runBinary(keyByte);
+        }.runBinary(keyByte));
     }
 
     public Long setnx(final String key, final byte[] value) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<Long>(connectionHandler, maxAttempts) {
+        return write(key, () -> new JedisClusterCommand<Long>(connectionHandler, maxAttempts) {
             public Long execute(Jedis connection) {
                 return connection.setnx(keyByte, value);
             }
-        }.runBinary(keyByte);
+        }.runBinary(keyByte));
     }
 
     public String setex(final String key, final int seconds, final byte[] value) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<String>(connectionHandler, maxAttempts) {
+        return write(key, () -> new JedisClusterCommand<String>(connectionHandler, maxAttempts) {
             public String execute(Jedis connection) {
                 return connection.setex(keyByte, seconds, value);
             }
-        }.runBinary(keyByte);
+        }.runBinary(keyByte));
     }
 
     public byte[] substrBytes(final String key, final int start, final int end) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<byte[]>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<byte[]>(connectionHandler, maxAttempts, readFrom) {
             public byte[] execute(Jedis connection) {
                 return connection.substr(keyByte, start, end);
             }
@@ -224,43 +507,39 @@ public class PipelineCluster extends JedisCluster {
 
     public Long hset(final String key, final String field, final byte[] value) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<Long>(connectionHandler, maxAttempts) {
+        return write(key, () -> new JedisClusterCommand<Long>(connectionHandler, maxAttempts) {
             public Long execute(Jedis connection) {
                 return connection.hset(keyByte, SafeEncoder.encode(field), value);
             }
-        }.runBinary(keyByte);
+        }.runBinary(keyByte));
     }
 
     public byte[] hgetBytes(final String key, final String field) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<byte[]>(connectionHandler, maxAttempts) {
-            public byte[] execute(Jedis connection) {
-                return connection.hget(keyByte, SafeEncoder.encode(field));
-            }
-        }.runBinary(keyByte);
+        return readBinary("hget", keyByte, connection -> connection.hget(keyByte, SafeEncoder.encode(field)));
     }
 
     public Long hsetnx(final String key, final String field, final byte[] value) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<Long>(connectionHandler, maxAttempts) {
+        return write(key, () -> new JedisClusterCommand<Long>(connectionHandler, maxAttempts) {
             public Long execute(Jedis connection) {
                 return connection.hsetnx(keyByte, SafeEncoder.encode(field), value);
             }
-        }.runBinary(keyByte);
+        }.runBinary(keyByte));
     }
 
     public String hmsetBytes(final String key, final Map<byte[], byte[]> hash) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<String>(connectionHandler, maxAttempts) {
+        return write(key, () -> new JedisClusterCommand<String>(connectionHandler, maxAttempts) {
             public String execute(Jedis connection) {
                 return connection.hmset(keyByte, hash);
             }
-        }.runBinary(keyByte);
+        }.runBinary(keyByte));
     }
 
     public List<byte[]> hmget(final String key, final byte[]... fields) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<List<byte[]>>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<List<byte[]>>(connectionHandler, maxAttempts, readFrom) {
             public List<byte[]> execute(Jedis connection) {
                 return connection.hmget(keyByte, fields);
             }
@@ -269,7 +548,7 @@ public class PipelineCluster extends JedisCluster {
 
     public Set<byte[]> hkeysBytes(final String key) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<Set<byte[]>>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<Set<byte[]>>(connectionHandler, maxAttempts, readFrom) {
             public Set<byte[]> execute(Jedis connection) {
                 return connection.hkeys(SafeEncoder.encode(key));
             }
@@ -278,7 +557,7 @@ public class PipelineCluster extends JedisCluster {
 
     public List<byte[]> hvalsBytes(final String key) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<List<byte[]>>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<List<byte[]>>(connectionHandler, maxAttempts, readFrom) {
             public List<byte[]> execute(Jedis connection) {
                 return connection.hvals(keyByte);
             }
@@ -287,11 +566,7 @@ public class PipelineCluster extends JedisCluster {
 
     public Map<byte[], byte[]> hgetAllBytes(final String key) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<Map<byte[], byte[]>>(connectionHandler, maxAttempts) {
-            public Map<byte[], byte[]> execute(Jedis connection) {
-                return connection.hgetAll(keyByte);
-            }
-        }.runBinary(keyByte);
+        return readBinary("hgetAll", keyByte, connection -> connection.hgetAll(keyByte));
     }
 
     public Long rpush(final String key, final byte[]... string) {
@@ -314,7 +589,7 @@ public class PipelineCluster extends JedisCluster {
 
     public List<byte[]> lrangeBytes(final String key, final long start, final long end) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<List<byte[]>>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<List<byte[]>>(connectionHandler, maxAttempts, readFrom) {
             public List<byte[]> execute(Jedis connection) {
                 return connection.lrange(keyByte, start, end);
             }
@@ -323,7 +598,7 @@ public class PipelineCluster extends JedisCluster {
 
     public byte[] lindexBytes(final String key, final long index) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<byte[]>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<byte[]>(connectionHandler, maxAttempts, readFrom) {
             public byte[] execute(Jedis connection) {
                 return connection.lindex(keyByte, index);
             }
@@ -377,7 +652,7 @@ public class PipelineCluster extends JedisCluster {
 
     public Set<byte[]> smembersBytes(final String key) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<Set<byte[]>>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<Set<byte[]>>(connectionHandler, maxAttempts, readFrom) {
             public Set<byte[]> execute(Jedis connection) {
                 return connection.smembers(keyByte);
             }
@@ -404,7 +679,7 @@ public class PipelineCluster extends JedisCluster {
 
     public Boolean sismember(final String key, final byte[] member) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<Boolean>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<Boolean>(connectionHandler, maxAttempts, readFrom) {
             public Boolean execute(Jedis connection) {
                 return connection.sismember(keyByte, member);
             }
@@ -413,7 +688,7 @@ public class PipelineCluster extends JedisCluster {
 
     public byte[] srandmemberBytes(final String key) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<byte[]>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<byte[]>(connectionHandler, maxAttempts, readFrom) {
             public byte[] execute(Jedis connection) {
                 return connection.srandmember(keyByte);
             }
@@ -431,7 +706,7 @@ public class PipelineCluster extends JedisCluster {
 
     public Set<byte[]> zrangeBytes(final String key, final long start, final long end) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<Set<byte[]>>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<Set<byte[]>>(connectionHandler, maxAttempts, readFrom) {
             public Set<byte[]> execute(Jedis connection) {
                 return connection.zrange(keyByte, start, end);
             }
@@ -459,7 +734,7 @@ public class PipelineCluster extends JedisCluster {
 
     public Long zrank(final String key, final byte[] member) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<Long>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<Long>(connectionHandler, maxAttempts, readFrom) {
             public Long execute(Jedis connection) {
                 return connection.zrank(keyByte, member);
             }
@@ -468,7 +743,7 @@ public class PipelineCluster extends JedisCluster {
 
     public Long zrevrank(final String key, final byte[] member) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<Long>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<Long>(connectionHandler, maxAttempts, readFrom) {
             public Long execute(Jedis connection) {
                 return connection.zrevrank(keyByte, member);
             }
@@ -478,7 +753,7 @@ public class PipelineCluster extends JedisCluster {
     public Set<byte[]> zrevrangeBytes(final String key, final long start,
                                       final long end) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<Set<byte[]>>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<Set<byte[]>>(connectionHandler, maxAttempts, readFrom) {
             public Set<byte[]> execute(Jedis connection) {
                 return connection.zrevrange(keyByte, start, end);
             }
@@ -487,7 +762,7 @@ public class PipelineCluster extends JedisCluster {
 
     public Set<Tuple> zrangeWithScoresBytes(final String key, final long start, final long end) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<Set<Tuple>>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<Set<Tuple>>(connectionHandler, maxAttempts, readFrom) {
             @Override
             public Set<Tuple> execute(Jedis connection) {
                 return connection.zrangeWithScores(keyByte, start, end);
@@ -497,7 +772,7 @@ public class PipelineCluster extends JedisCluster {
 
     public Set<Tuple> zrevrangeWithScoresBytes(final String key, final long start, final long end) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<Set<Tuple>>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<Set<Tuple>>(connectionHandler, maxAttempts, readFrom) {
             @Override
             public Set<Tuple> execute(Jedis connection) {
                 return connection.zrevrangeWithScores(keyByte, start, end);
@@ -507,7 +782,7 @@ public class PipelineCluster extends JedisCluster {
 
     public Double zscore(final String key, final byte[] member) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<Double>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<Double>(connectionHandler, maxAttempts, readFrom) {
             public Double execute(Jedis connection) {
                 return connection.zscore(keyByte, member);
             }
@@ -519,6 +794,11 @@ public class PipelineCluster extends JedisCluster {
             return null;
         }
         return new PipelineClusterCommand<Map<String, Double>>(this, connectionHandler) {
+            @Override
+            protected boolean isReadCommand() {
+                return true;
+            }
+
             @Override
             public void pipelineCommand(Pipeline pipeline, List<String> pipelineKeys) {
                 for (String key : pipelineKeys) {
@@ -579,7 +859,7 @@ public class PipelineCluster extends JedisCluster {
 
     public Set<byte[]> zrangeByScoreBytes(final String key, final double min, final double max) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<Set<byte[]>>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<Set<byte[]>>(connectionHandler, maxAttempts, readFrom) {
 
             public Set<byte[]> execute(Jedis connection) {
                 return connection.zrangeByScore(keyByte, min, max);
@@ -589,7 +869,7 @@ public class PipelineCluster extends JedisCluster {
 
     public Set<byte[]> zrangeByScoreBytes(final String key, final String min, final String max) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<Set<byte[]>>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<Set<byte[]>>(connectionHandler, maxAttempts, readFrom) {
 
             public Set<byte[]> execute(Jedis connection) {
                 return connection.zrangeByScore(keyByte, SafeEncoder.encode(min), SafeEncoder.encode(max));
@@ -599,7 +879,7 @@ public class PipelineCluster extends JedisCluster {
 
     public Set<byte[]> zrevrangeByScoreBytes(final String key, final double max, final double min) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<Set<byte[]>>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<Set<byte[]>>(connectionHandler, maxAttempts, readFrom) {
             public Set<byte[]> execute(Jedis connection) {
                 return connection.zrevrangeByScore(SafeEncoder.encode(key), max, min);
             }
@@ -609,7 +889,7 @@ public class PipelineCluster extends JedisCluster {
     public Set<byte[]> zrangeByScoreBytes(final String key, final double min,
                                           final double max, final int offset, final int count) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<Set<byte[]>>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<Set<byte[]>>(connectionHandler, maxAttempts, readFrom) {
             public Set<byte[]> execute(Jedis connection) {
                 return connection.zrangeByScore(keyByte, min, max, offset, count);
             }
@@ -618,7 +898,7 @@ public class PipelineCluster extends JedisCluster {
 
     public Set<byte[]> zrevrangeByScoreBytes(final String key, final String max, final String min) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<Set<byte[]>>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<Set<byte[]>>(connectionHandler, maxAttempts, readFrom) {
             public Set<byte[]> execute(Jedis connection) {
                 return connection.zrevrangeByScore(keyByte,
                         SafeEncoder.encode(max), SafeEncoder.encode(min));
@@ -629,7 +909,7 @@ public class PipelineCluster extends JedisCluster {
     public Set<byte[]> zrangeByScoreBytes(final String key, final String min,
                                           final String max, final int offset, final int count) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<Set<byte[]>>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<Set<byte[]>>(connectionHandler, maxAttempts, readFrom) {
 
             public Set<byte[]> execute(Jedis connection) {
                 return connection.zrangeByScore(keyByte,
@@ -641,7 +921,7 @@ public class PipelineCluster extends JedisCluster {
     public Set<byte[]> zrevrangeByScoreBytes(final String key, final double max,
                                              final double min, final int offset, final int count) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<Set<byte[]>>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<Set<byte[]>>(connectionHandler, maxAttempts, readFrom) {
             public Set<byte[]> execute(Jedis connection) {
                 return connection.zrevrangeByScore(keyByte, max, min, offset, count);
             }
@@ -651,7 +931,7 @@ public class PipelineCluster extends JedisCluster {
     public Set<byte[]> zrevrangeByScoreBytes(final String key, final String max,
                                              final String min, final int offset, final int count) {
         final byte[] keyByte = SafeEncoder.encode(key);
-        return new JedisClusterCommand<Set<byte[]>>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<Set<byte[]>>(connectionHandler, maxAttempts, readFrom) {
             public Set<byte[]> execute(Jedis connection) {
                 return connection.zrevrangeByScore(keyByte,
                         SafeEncoder.encode(max), SafeEncoder.encode(min), offset, count);
@@ -705,11 +985,552 @@ public class PipelineCluster extends JedisCluster {
         }.runBinary(keyByte);
     }
 
-    public Map<String, String> mget(final List<String> keys) {
-        if (keys == null || keys.isEmpty()) {
+    /**
+     * 单key读命令, 设置了对冲策略时超过对冲延迟未返回则向slot的另一个节点发送相同的读请求
+     *
+     * @param name    命令名, 用于对冲延迟的分位数统计
+     * @param key
+     * @param command
+     */
+    private <T> T read(final String name, final String key, final Function<Jedis, T> command) {
+        final ReadFrom readFrom = this.readFrom;
+        HedgePolicy policy = hedgePolicy;
+        if (policy == null) {
+            return newReadCommand(readFrom, command).run(key);
+        }
+        int slot = JedisClusterCRC16.getSlot(key);
+        final JedisPool primary = connectionHandler.getReadPoolFromSlot(slot, readFrom);
+        final JedisPool alternate = primary == null ? null : connectionHandler.getHedgePoolFromSlot(slot, primary);
+        if (alternate == null) {
+            return policy.execute(name, () -> newReadCommand(readFrom, command).run(key), null);
+        }
+        return policy.execute(name, () -> newReadCommand(readFrom, command).run(primary, key),
+                () -> newReadCommand(readFrom, command).run(alternate, key));
+    }
+
+    /**
+     * @see #read(String, String, Function)
+     */
+    private <T> T readBinary(final String name, final byte[] key, final Function<Jedis, T> command) {
+        final ReadFrom readFrom = this.readFrom;
+        HedgePolicy policy = hedgePolicy;
+        if (policy == null) {
+            return newReadCommand(readFrom, command).runBinary(key);
+        }
+        int slot = JedisClusterCRC16.getSlot(key);
+        final JedisPool primary = connectionHandler.getReadPoolFromSlot(slot, readFrom);
+        final JedisPool alternate = primary == null ? null : connectionHandler.getHedgePoolFromSlot(slot, primary);
+        if (alternate == null) {
+            return policy.execute(name, () -> newReadCommand(readFrom, command).runBinary(key), null);
+        }
+        return policy.execute(name, () -> newReadCommand(readFrom, command).runBinary(primary, key),
+                () -> newReadCommand(readFrom, command).runBinary(alternate, key));
+    }
+
+    private <T> JedisClusterCommand<T> newReadCommand(ReadFrom readFrom, final Function<Jedis, T> command) {
+        return new JedisClusterCommand<T>(connectionHandler, maxAttempts, readFrom) {
+            @Override
+            public T execute(Jedis connection) {
+                return command.apply(connection);
+            }
+        };
+    }
+
+    /**
+     * 近端缓存未命中时从master读取: 从节点可能在失效消息之后才应用写命令, 读到的旧值会一直留在缓存中
+     */
+    private <T> T readMaster(final String key, final Function<Jedis, T> command) {
+        return newReadCommand(ReadFrom.MASTER, command).run(key);
+    }
+
+    /**
+     * 单key写命令: 开启近端缓存时执行前后各删除一次该key的缓存, 不依赖异步到达的失效消息,
+     * 写入期间并发读取装入的旧值也在返回前删除, 之后的读取一定读到本次写入
+     */
+    private <T> T write(final String key, final Supplier<T> command) {
+        NearCache cache = nearCache;
+        if (cache == null) {
+            return command.get();
+        }
+        cache.invalidate(key);
+        try {
+            return command.get();
+        } finally {
+            cache.invalidate(key);
+        }
+    }
+
+    private <T> T write(final String[] keys, final Supplier<T> command) {
+        NearCache cache = nearCache;
+        if (cache == null) {
+            return command.get();
+        }
+        for (String key : keys) {
+            cache.invalidate(key);
+        }
+        try {
+            return command.get();
+        } finally {
+            for (String key : keys) {
+                cache.invalidate(key);
+            }
+        }
+    }
+
+    @Override
+    public String set(final String key, final String value) {
+        return write(key, () -> super.set(key, value));
+    }
+
+    @Override
+    public String set(final String key, final String value, final SetParams params) {
+        return write(key, () -> super.set(key, value, params));
+    }
+
+    @Override
+    public String restore(final String key, final int ttl, final byte[] serializedValue) {
+        return write(key, () -> super.restore(key, ttl, serializedValue));
+    }
+
+    @Override
+    public Long expire(final String key, final int seconds) {
+        return write(key, () -> super.expire(key, seconds));
+    }
+
+    @Override
+    public Long pexpire(final String key, final long milliseconds) {
+        return write(key, () -> super.pexpire(key, milliseconds));
+    }
+
+    @Override
+    public Long expireAt(final String key, final long unixTime) {
+        return write(key, () -> super.expireAt(key, unixTime));
+    }
+
+    @Override
+    public Long pexpireAt(final String key, final long millisecondsTimestamp) {
+        return write(key, () -> super.pexpireAt(key, millisecondsTimestamp));
+    }
+
+    @Override
+    public Boolean setbit(final String key, final long offset, final boolean value) {
+        return write(key, () -> super.setbit(key, offset, value));
+    }
+
+    @Override
+    public Boolean setbit(final String key, final long offset, final String value) {
+        return write(key, () -> super.setbit(key, offset, value));
+    }
+
+    @Override
+    public Long setrange(final String key, final long offset, final String value) {
+        return write(key, () -> super.setrange(key, offset, value));
+    }
+
+    @Override
+    public String getSet(final String key, final String value) {
+        return write(key, () -> super.getSet(key, value));
+    }
+
+    @Override
+    public Long setnx(final String key, final String value) {
+        return write(key, () -> super.setnx(key, value));
+    }
+
+    @Override
+    public String setex(final String key, final int seconds, final String value) {
+        return write(key, () -> super.setex(key, seconds, value));
+    }
+
+    @Override
+    public String psetex(final String key, final long milliseconds, final String value) {
+        return write(key, () -> super.psetex(key, milliseconds, value));
+    }
+
+    @Override
+    public Long decrBy(final String key, final long decrement) {
+        return write(key, () -> super.decrBy(key, decrement));
+    }
+
+    @Override
+    public Long decr(final String key) {
+        return write(key, () -> super.decr(key));
+    }
+
+    @Override
+    public Long incrBy(final String key, final long increment) {
+        return write(key, () -> super.incrBy(key, increment));
+    }
+
+    @Override
+    public Double incrByFloat(final String key, final double increment) {
+        return write(key, () -> super.incrByFloat(key, increment));
+    }
+
+    @Override
+    public Long incr(final String key) {
+        return write(key, () -> super.incr(key));
+    }
+
+    @Override
+    public Long append(final String key, final String value) {
+        return write(key, () -> super.append(key, value));
+    }
+
+    @Override
+    public Long hset(final String key, final String field, final String value) {
+        return write(key, () -> super.hset(key, field, value));
+    }
+
+    @Override
+    public Long hset(final String key, final Map<String, String> hash) {
+        return write(key, () -> super.hset(key, hash));
+    }
+
+    @Override
+    public Long hsetnx(final String key, final String field, final String value) {
+        return write(key, () -> super.hsetnx(key, field, value));
+    }
+
+    @Override
+    public String hmset(final String key, final Map<String, String> hash) {
+        return write(key, () -> super.hmset(key, hash));
+    }
+
+    @Override
+    public Long hincrBy(final String key, final String field, final long value) {
+        return write(key, () -> super.hincrBy(key, field, value));
+    }
+
+    @Override
+    public Long hdel(final String key, final String... field) {
+        return write(key, () -> super.hdel(key, field));
+    }
+
+    @Override
+    public Long del(final String key) {
+        return write(key, () -> super.del(key));
+    }
+
+    @Override
+    public Long del(final String... keys) {
+        return write(keys, () -> super.del(keys));
+    }
+
+    @Override
+    public Long unlink(final String key) {
+        return write(key, () -> super.unlink(key));
+    }
+
+    @Override
+    public Long unlink(final String... keys) {
+        return write(keys, () -> super.unlink(keys));
+    }
+
+    @Override
+    public String rename(final String oldkey, final String newkey) {
+        return write(new String[] { oldkey, newkey }, () -> super.rename(oldkey, newkey));
+    }
+
+    @Override
+    public Long renamenx(final String oldkey, final String newkey) {
+        return write(new String[] { oldkey, newkey }, () -> super.renamenx(oldkey, newkey));
+    }
+
+    @Override
+    public String get(final String key) {
+        NearCache cache = nearCache;
+        if (cache != null && cache.isCacheable(key)) {
+            return cache.get(key, () -> readMaster(key, connection -> connection.get(key)));
+        }
+        return read("get", key, connection -> connection.get(key));
+    }
+
+    @Override
+    public Boolean exists(final String key) {
+        return read("exists", key, connection -> connection.exists(key));
+    }
+
+    @Override
+    public String type(final String key) {
+        return read("type", key, connection -> connection.type(key));
+    }
+
+    @Override
+    public Long ttl(final String key) {
+        return read("ttl", key, connection -> connection.ttl(key));
+    }
+
+    @Override
+    public Long pttl(final String key) {
+        return read("pttl", key, connection -> connection.pttl(key));
+    }
+
+    @Override
+    public Boolean getbit(final String key, final long offset) {
+        return read("getbit", key, connection -> connection.getbit(key, offset));
+    }
+
+    @Override
+    public String getrange(final String key, final long startOffset, final long endOffset) {
+        return read("getrange", key, connection -> connection.getrange(key, startOffset, endOffset));
+    }
+
+    @Override
+    public String substr(final String key, final int start, final int end) {
+        return read("substr", key, connection -> connection.substr(key, start, end));
+    }
+
+    @Override
+    public Long strlen(final String key) {
+        return read("strlen", key, connection -> connection.strlen(key));
+    }
+
+    @Override
+    public Long bitcount(final String key) {
+        return read("bitcount", key, connection -> connection.bitcount(key));
+    }
+
+    @Override
+    public Long bitcount(final String key, final long start, final long end) {
+        return read("bitcount", key, connection -> connection.bitcount(key, start, end));
+    }
+
+    @Override
+    public String hget(final String key, final String field) {
+        NearCache cache = nearCache;
+        if (cache != null && cache.isCacheable(key)) {
+            return cache.hget(key, field, () -> readMaster(key, connection -> connection.hget(key, field)));
+        }
+        return read("hget", key, connection -> connection.hget(key, field));
+    }
+
+    @Override
+    public List<String> hmget(final String key, final String... fields) {
+        return read("hmget", key, connection -> connection.hmget(key, fields));
+    }
+
+    @Override
+    public Boolean hexists(final String key, final String field) {
+        return read("hexists", key, connection -> connection.hexists(key, field));
+    }
+
+    @Override
+    public Long hlen(final String key) {
+        return read("hlen", key, connection -> connection.hlen(key));
+    }
+
+    @Override
+    public Set<String> hkeys(final String key) {
+        return read("hkeys", key, connection -> connection.hkeys(key));
+    }
+
+    @Override
+    public List<String> hvals(final String key) {
+        return read("hvals", key, connection -> connection.hvals(key));
+    }
+
+    @Override
+    public Map<String, String> hgetAll(final String key) {
+        NearCache cache = nearCache;
+        if (cache != null && cache.isCacheable(key)) {
+            return cache.hgetAll(key, () -> readMaster(key, connection -> connection.hgetAll(key)));
+        }
+        return read("hgetAll", key, connection -> connection.hgetAll(key));
+    }
+
+    @Override
+    public Long hstrlen(final String key, final String field) {
+        return read("hstrlen", key, connection -> connection.hstrlen(key, field));
+    }
+
+    @Override
+    public Long llen(final String key) {
+        return read("llen", key, connection -> connection.llen(key));
+    }
+
+    @Override
+    public List<String> lrange(final String key, final long start, final long stop) {
+        return read("lrange", key, connection -> connection.lrange(key, start, stop));
+    }
+
+    @Override
+    public String lindex(final String key, final long index) {
+        return read("lindex", key, connection -> connection.lindex(key, index));
+    }
+
+    @Override
+    public Set<String> smembers(final String key) {
+        return read("smembers", key, connection -> connection.smembers(key));
+    }
+
+    @Override
+    public Long scard(final String key) {
+        return read("scard", key, connection -> connection.scard(key));
+    }
+
+    @Override
+    public Boolean sismember(final String key, final String member) {
+        return read("sismember", key, connection -> connection.sismember(key, member));
+    }
+
+    @Override
+    public String srandmember(final String key) {
+        return read("srandmember", key, connection -> connection.srandmember(key));
+    }
+
+    @Override
+    public List<String> srandmember(final String key, final int count) {
+        return read("srandmember", key, connection -> connection.srandmember(key, count));
+    }
+
+    @Override
+    public Set<String> zrange(final String key, final long start, final long stop) {
+        return read("zrange", key, connection -> connection.zrange(key, start, stop));
+    }
+
+    @Override
+    public Set<String> zrevrange(final String key, final long start, final long stop) {
+        return read("zrevrange", key, connection -> connection.zrevrange(key, start, stop));
+    }
+
+    @Override
+    public Set<Tuple> zrangeWithScores(final String key, final long start, final long stop) {
+        return read("zrangeWithScores", key, connection -> connection.zrangeWithScores(key, start, stop));
+    }
+
+    @Override
+    public Set<Tuple> zrevrangeWithScores(final String key, final long start, final long stop) {
+        return read("zrevrangeWithScores", key, connection -> connection.zrevrangeWithScores(key, start, stop));
+    }
+
+    @Override
+    public Long zrank(final String key, final String member) {
+        return read("zrank", key, connection -> connection.zrank(key, member));
+    }
+
+    @Override
+    public Long zrevrank(final String key, final String member) {
+        return read("zrevrank", key, connection -> connection.zrevrank(key, member));
+    }
+
+    @Override
+    public Long zcard(final String key) {
+        return read("zcard", key, connection -> connection.zcard(key));
+    }
+
+    @Override
+    public Double zscore(final String key, final String member) {
+        return read("zscore", key, connection -> connection.zscore(key, member));
+    }
+
+    @Override
+    public Long zcount(final String key, final double min, final double max) {
+        return read("zcount", key, connection -> connection.zcount(key, min, max));
+    }
+
+    @Override
+    public Long zcount(final String key, final String min, final String max) {
+        return read("zcount", key, connection -> connection.zcount(key, min, max));
+    }
+
+    @Override
+    public Set<String> zrangeByScore(final String key, final double min, final double max) {
+        return read("zrangeByScore", key, connection -> connection.zrangeByScore(key, min, max));
+    }
+
+    @Override
+    public Set<String> zrangeByScore(final String key, final String min, final String max) {
+        return read("zrangeByScore", key, connection -> connection.zrangeByScore(key, min, max));
+    }
+
+    @Override
+    public Set<String> zrevrangeByScore(final String key, final double max, final double min) {
+        return read("zrevrangeByScore", key, connection -> connection.zrevrangeByScore(key, max, min));
+    }
+
+    @Override
+    public Set<String> zrevrangeByScore(final String key, final String max, final String min) {
+        return read("zrevrangeByScore", key, connection -> connection.zrevrangeByScore(key, max, min));
+    }
+
+    @Override
+    public Set<Tuple> zrangeByScoreWithScores(final String key, final double min, final double max) {
+        return read("zrangeByScoreWithScores", key, connection -> connection.zrangeByScoreWithScores(key, min, max));
+    }
+
+    @Override
+    public Set<Tuple> zrevrangeByScoreWithScores(final String key, final double max, final double min) {
+        return read("zrevrangeByScoreWithScores", key, connection -> connection.zrevrangeByScoreWithScores(key, max, min));
+    }
+
+    @Override
+    public long pfcount(final String key) {
+        return read("pfcount", key, connection -> connection.pfcount(key));
+    }
+
+    public Map<String, String> mget(final List<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return null;
+        }
+        NearCache cache = nearCache;
+        if (cache != null) {
+            // 未命中的key从master读取
+            return cache.mget(keys, missingKeys -> mgetCommand(false).run(missingKeys));
+        }
+        return mgetCommand(true).run(keys);
+    }
+
+    /**
+     * 流式mget: 每个节点的pipeline返回后立即回调, 不生成完整的结果Map; 回调在调用线程执行, 不存在的key不回调
+     *
+     * @param keys
+     * @param consumer
+     */
+    public void mget(final List<String> keys, final BiConsumer<String, String> consumer) {
+        final PipelineClusterCommand<Map<String, String>> command = mgetCommand(true);
+        command.stream(keys, (key, object) -> decodeString(command, key, object), consumer);
+    }
+
+    /**
+     * 迭代器形式的流式mget, 迭代时才执行对应节点的pipeline, 不存在的key被跳过
+     *
+     * @param keys
+     * @return
+     */
+    public Iterator<Map.Entry<String, String>> mgetIterator(final List<String> keys) {
+        final PipelineClusterCommand<Map<String, String>> command = mgetCommand(true);
+        return command.iterator(keys, (key, object) -> decodeString(command, key, object));
+    }
+
+    /**
+     * mget单个key结果的解码, 重定向的key单独get, 不存在或读取失败时为null
+     */
+    private String decodeString(PipelineClusterCommand<?> command, String key, Object object) {
+        if (object == null) {
             return null;
         }
-        return new PipelineClusterCommand<Map<String, String>>(this, connectionHandler) {
+        if (command.checkRedirectException(object)) {
+            try {
+                return get(key);
+            } catch (Exception e) {
+                logger.error(e.getMessage(), e);
+                return null;
+            }
+        }
+        return object.toString();
+    }
+
+    /**
+     * @param readCommand 是否按readFrom选择读节点, 否则只读master
+     */
+    private PipelineClusterCommand<Map<String, String>> mgetCommand(final boolean readCommand) {
+        return new PipelineClusterSlotCommand<Map<String, String>>(this, connectionHandler) {
+            @Override
+            protected boolean isReadCommand() {
+                return readCommand;
+            }
+
             @Override
             public void pipelineCommand(Pipeline pipeline, List<String> pipelineKeys) {
                 for (String key : pipelineKeys) {
@@ -717,6 +1538,11 @@ public class PipelineCluster extends JedisCluster {
                 }
             }
 
+            @Override
+            public void pipelineSlotCommand(Pipeline pipeline, List<String> slotKeys) {
+                pipeline.mget(slotKeys.toArray(new String[slotKeys.size()]));
+            }
+
             @Override
             public Map<String, String> getResult(Map<String, Object> resultMap) {
                 Map<String, String> result = new HashMap<String, String>();
@@ -724,27 +1550,14 @@ public class PipelineCluster extends JedisCluster {
                     return result;
                 }
                 for (Map.Entry<String, Object> entry : resultMap.entrySet()) {
-                    String key = entry.getKey();
-                    Object object = entry.getValue();
-                    if (object == null) {
-                        continue;
-                    }
-                    if (checkRedirectException(object)) {
-                        try {
-                            String value = pipelineCluster.get(key);
-                            if (value != null) {
-                                result.put(key, value);
-                            }
-                        } catch (Exception e) {
-                            logger.error(e.getMessage(), e);
-                        }
-                    } else {
-                        result.put(key, object.toString());
+                    String value = decodeString(this, entry.getKey(), entry.getValue());
+                    if (value != null) {
+                        result.put(entry.getKey(), value);
                     }
                 }
                 return result;
             }
-        }.run(keys);
+        };
     }
 
     public Map<String, Boolean> mGetbit(final Map<String, Long> keyOffsetMap) {
@@ -752,6 +1565,11 @@ public class PipelineCluster extends JedisCluster {
             return null;
         }
         return new PipelineClusterCommand<Map<String, Boolean>>(this, connectionHandler) {
+            @Override
+            protected boolean isReadCommand() {
+                return true;
+            }
+
             @Override
             public void pipelineCommand(Pipeline pipeline, List<String> pipelineKeys) {
                 for (String key : pipelineKeys) {
@@ -885,7 +1703,61 @@ public class PipelineCluster extends JedisCluster {
         if (keys == null || keys.isEmpty()) {
             return null;
         }
+        return mHgetAllCommand().run(keys);
+    }
+
+    /**
+     * 流式mHgetAll: 每个节点的pipeline返回后立即回调, 不生成完整的结果Map; 回调在调用线程执行, 不存在的key不回调
+     *
+     * @param keys
+     * @param consumer
+     */
+    public void mHgetAll(final List<String> keys, final BiConsumer<String, Map<String, String>> consumer) {
+        final PipelineClusterCommand<Map<String, Map<String, String>>> command = mHgetAllCommand();
+        command.stream(keys, (key, object) -> decodeHash(command, key, object), consumer);
+    }
+
+    /**
+     * 迭代器形式的流式mHgetAll, 迭代时才执行对应节点的pipeline, 不存在的key被跳过
+     *
+     * @param keys
+     * @return
+     */
+    public Iterator<Map.Entry<String, Map<String, String>>> mHgetAllIterator(final List<String> keys) {
+        final PipelineClusterCommand<Map<String, Map<String, String>>> command = mHgetAllCommand();
+        return command.iterator(keys, (key, object) -> decodeHash(command, key, object));
+    }
+
+    /**
+     * mHgetAll单个key结果的解码, 重定向的key单独hgetAll, 不存在(空hash)或读取失败时为null
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, String> decodeHash(PipelineClusterCommand<?> command, String key, Object object) {
+        if (object == null) {
+            return null;
+        }
+        if (command.checkRedirectException(object)) {
+            try {
+                Map<String, String> exceptionHgetAllMap = hgetAll(key);
+                if (exceptionHgetAllMap != null && !exceptionHgetAllMap.isEmpty()) {
+                    return exceptionHgetAllMap;
+                }
+            } catch (Exception e) {
+                logger.error(e.getMessage(), e);
+            }
+            return null;
+        }
+        Map<String, String> map = (Map<String, String>) object;
+        return map.size() > 0 ? map : null;
+    }
+
+    private PipelineClusterCommand<Map<String, Map<String, String>>> mHgetAllCommand() {
         return new PipelineClusterCommand<Map<String, Map<String, String>>>(this, connectionHandler) {
+            @Override
+            protected boolean isReadCommand() {
+                return true;
+            }
+
             @Override
             public void pipelineCommand(Pipeline pipeline, List<String> pipelineKeys) {
                 for (String key : pipelineKeys) {
@@ -897,30 +1769,14 @@ public class PipelineCluster extends JedisCluster {
             public Map<String, Map<String, String>> getResult(Map<String, Object> resultMap) {
                 Map<String, Map<String, String>> result = new HashMap<String, Map<String, String>>();
                 for (Map.Entry<String, Object> entry : resultMap.entrySet()) {
-                    String key = entry.getKey();
-                    Object object = entry.getValue();
-                    if (object == null) {
-                        continue;
-                    }
-                    if (checkRedirectException(object)) {
-                        try {
-                            Map<String, String> exceptionHgetAllMap = pipelineCluster.hgetAll(key);
-                            if (exceptionHgetAllMap != null && !exceptionHgetAllMap.isEmpty()) {
-                                result.put(key, exceptionHgetAllMap);
-                            }
-                        } catch (Exception e) {
-                            logger.error(e.getMessage(), e);
-                        }
-                    } else {
-                        Map<String, String> map = (Map<String, String>) object;
-                        if (map.size() > 0) {
-                            result.put(key, map);
-                        }
+                    Map<String, String> value = decodeHash(this, entry.getKey(), entry.getValue());
+                    if (value != null) {
+                        result.put(entry.getKey(), value);
                     }
                 }
                 return result;
             }
-        }.run(keys);
+        };
     }
 
     public Map<String, List<String>> mhmget(final Map<String, List<String>> keyValueMap) {
@@ -928,6 +1784,11 @@ public class PipelineCluster extends JedisCluster {
             return null;
         }
         return new PipelineClusterCommand<Map<String, List<String>>>(this, connectionHandler) {
+            @Override
+            protected boolean isReadCommand() {
+                return true;
+            }
+
             @Override
             public void pipelineCommand(Pipeline pipeline, List<String> pipelineKeys) {
                 for (String key : pipelineKeys) {
@@ -1011,7 +1872,7 @@ public class PipelineCluster extends JedisCluster {
         if (keyValueMap == null || keyValueMap.isEmpty()) {
             return null;
         }
-        return new PipelineClusterCommand<String>(this, connectionHandler) {
+        return new PipelineClusterSlotCommand<String>(this, connectionHandler) {
             @Override
             public void pipelineCommand(Pipeline pipeline, List<String> pipelineKeys) {
                 for (String key : pipelineKeys) {
@@ -1020,6 +1881,17 @@ public class PipelineCluster extends JedisCluster {
                 }
             }
 
+            @Override
+            public void pipelineSlotCommand(Pipeline pipeline, List<String> slotKeys) {
+                String[] keysvalues = new String[slotKeys.size() * 2];
+                for (int i = 0; i < slotKeys.size(); i++) {
+                    String key = slotKeys.get(i);
+                    keysvalues[2 * i] = key;
+                    keysvalues[2 * i + 1] = keyValueMap.get(key);
+                }
+                pipeline.mset(keysvalues);
+            }
+
             @Override
             public String getResult(Map<String, Object> resultMap) {
                 String result = "OK";
@@ -1313,7 +2185,7 @@ public class PipelineCluster extends JedisCluster {
         if (keys == null || keys.isEmpty()) {
             return null;
         }
-        return new PipelineClusterCommand<Long>(this, connectionHandler) {
+        return new PipelineClusterSlotCommand<Long>(this, connectionHandler) {
             @Override
             public void pipelineCommand(Pipeline pipeline, List<String> pipelineKeys) {
                 for (String key : pipelineKeys) {
@@ -1321,6 +2193,16 @@ public class PipelineCluster extends JedisCluster {
                 }
             }
 
+            @Override
+            public void pipelineSlotCommand(Pipeline pipeline, List<String> slotKeys) {
+                pipeline.del(slotKeys.toArray(new String[slotKeys.size()]));
+            }
+
+            @Override
+            protected List<Object> splitSlotResult(List<String> slotKeys, Object result) {
+                return splitCountResult(slotKeys, result);
+            }
+
             @Override
             public Long getResult(Map<String, Object> resultMap) {
                 Long result = 0L;
@@ -1351,6 +2233,127 @@ public class PipelineCluster extends JedisCluster {
         }.run(keys);
     }
 
+    /**
+     * 批量判断key是否存在
+     *
+     * @param keys
+     * @return 存在的key数量
+     */
+    public Long mexists(final List<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return null;
+        }
+        return new PipelineClusterSlotCommand<Long>(this, connectionHandler) {
+            @Override
+            protected boolean isReadCommand() {
+                return true;
+            }
+
+            @Override
+            public void pipelineCommand(Pipeline pipeline, List<String> pipelineKeys) {
+                for (String key : pipelineKeys) {
+                    pipeline.exists(key);
+                }
+            }
+
+            @Override
+            public void pipelineSlotCommand(Pipeline pipeline, List<String> slotKeys) {
+                pipeline.exists(slotKeys.toArray(new String[slotKeys.size()]));
+            }
+
+            @Override
+            protected List<Object> splitSlotResult(List<String> slotKeys, Object result) {
+                return splitCountResult(slotKeys, result);
+            }
+
+            @Override
+            public Long getResult(Map<String, Object> resultMap) {
+                Long result = 0L;
+                if (resultMap == null || resultMap.isEmpty()) {
+                    return result;
+                }
+                for (Map.Entry<String, Object> entry : resultMap.entrySet()) {
+                    String key = entry.getKey();
+                    Object object = entry.getValue();
+                    if (object == null) {
+                        continue;
+                    }
+                    if (checkRedirectException(object)) {
+                        try {
+                            Boolean value = pipelineCluster.exists(key);
+                            if (value != null && value) {
+                                result++;
+                            }
+                        } catch (Exception e) {
+                            logger.error(e.getMessage(), e);
+                        }
+                    } else {
+                        result += toCount(object);
+                    }
+                }
+                return result;
+            }
+        }.run(keys);
+    }
+
+    /**
+     * 批量异步删除key
+     *
+     * @param keys
+     * @return 删除的key数量
+     */
+    public Long munlink(final List<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return null;
+        }
+        return new PipelineClusterSlotCommand<Long>(this, connectionHandler) {
+            @Override
+            public void pipelineCommand(Pipeline pipeline, List<String> pipelineKeys) {
+                for (String key : pipelineKeys) {
+                    pipeline.unlink(key);
+                }
+            }
+
+            @Override
+            public void pipelineSlotCommand(Pipeline pipeline, List<String> slotKeys) {
+                pipeline.unlink(slotKeys.toArray(new String[slotKeys.size()]));
+            }
+
+            @Override
+            protected List<Object> splitSlotResult(List<String> slotKeys, Object result) {
+                return splitCountResult(slotKeys, result);
+            }
+
+            @Override
+            public Long getResult(Map<String, Object> resultMap) {
+                Long result = 0L;
+                if (resultMap == null || resultMap.isEmpty()) {
+                    return result;
+                }
+                for (Map.Entry<String, Object> entry : resultMap.entrySet()) {
+                    String key = entry.getKey();
+                    Object object = entry.getValue();
+                    if (object == null) {
+                        continue;
+                    }
+                    if (checkRedirectException(object)) {
+                        try {
+                            Long value = pipelineCluster.unlink(key);
+                            if (value != null) {
+                                result += value;
+                            }
+                        } catch (Exception e) {
+                            logger.error(e.getMessage(), e);
+                        }
+                    } else {
+                        result += toCount(object);
+                    }
+                }
+                return result;
+            }
+        }.run(keys);
+    }
+
     public Map<String, Long> mzadd(final Map<String, SortedSetVO> map) {
         if (map == null || map.isEmpty()) {
             return null;
@@ -1495,6 +2498,11 @@ public class PipelineCluster extends JedisCluster {
             return null;
         }
         return new PipelineClusterCommand<Map<String, Long>>(this, connectionHandler) {
+            @Override
+            protected boolean isReadCommand() {
+                return true;
+            }
+
 
             @Override
             public void pipelineCommand(Pipeline pipeline, List<String> pipelineKeys) {
@@ -1536,6 +2544,11 @@ public class PipelineCluster extends JedisCluster {
             return null;
         }
         return new PipelineClusterCommand<Map<String,Long>>(this, connectionHandler) {
+            @Override
+            protected boolean isReadCommand() {
+                return true;
+            }
+
 
             @Override
             public void pipelineCommand(Pipeline pipeline, List<String> pipelineKeys) {
@@ -1579,6 +2592,11 @@ public class PipelineCluster extends JedisCluster {
             return null;
         }
         return new PipelineClusterCommand<Map<String,Boolean>>(this, connectionHandler) {
+            @Override
+            protected boolean isReadCommand() {
+                return true;
+            }
+
 
             @Override
             public void pipelineCommand(Pipeline pipeline, List<String> pipelineKeys) {
@@ -1624,6 +2642,11 @@ public class PipelineCluster extends JedisCluster {
     public Map<String, Set<String>> mzrangeByScore(final List<String> keys, final double min,
                                                    final double max) {
         return new PipelineClusterCommand<Map<String, Set<String>>>(this, connectionHandler) {
+            @Override
+            protected boolean isReadCommand() {
+                return true;
+            }
+
 
             @Override
             public void pipelineCommand(Pipeline pipeline, List<String> pipelineKeys) {
@@ -1662,6 +2685,11 @@ public class PipelineCluster extends JedisCluster {
 
     public Map<String, Set<Tuple>> mzrevrangeWithScores(final Map<String, RangeRankVO> keyRankMap) {
         return new PipelineClusterCommand<Map<String, Set<Tuple>>>(this, connectionHandler) {
+            @Override
+            protected boolean isReadCommand() {
+                return true;
+            }
+
 
             @Override
             public void pipelineCommand(Pipeline pipeline, List<String> pipelineKeys) {
@@ -1702,6 +2730,11 @@ public class PipelineCluster extends JedisCluster {
 
     public Map<String, Set<String>> mzrangeByScore(final Map<String, RangeScoreVO> keyScoreMap) {
         return new PipelineClusterCommand<Map<String, Set<String>>>(this, connectionHandler) {
+            @Override
+            protected boolean isReadCommand() {
+                return true;
+            }
+
 
             @Override
             public void pipelineCommand(Pipeline pipeline, List<String> pipelineKeys) {
@@ -1744,6 +2777,11 @@ public class PipelineCluster extends JedisCluster {
     public Map<String, Set<String>> mzrangeByScore(final List<String> keys, final String min,
                                                    final String max) {
         return new PipelineClusterCommand<Map<String, Set<String>>>(this, connectionHandler) {
+            @Override
+            protected boolean isReadCommand() {
+                return true;
+            }
+
 
             @Override
             public void pipelineCommand(Pipeline pipeline, List<String> pipelineKeys) {
@@ -1825,7 +2863,56 @@ public class PipelineCluster extends JedisCluster {
         if (keys == null || keys.isEmpty()) {
             return null;
         }
-        return new PipelineClusterCommand<Map<String, byte[]>>(this, connectionHandler) {
+        return mgetBytesCommand().run(keys);
+    }
+
+    /**
+     * 流式mgetBytes: 每个节点的pipeline返回后立即回调, 不生成完整的结果Map; 回调在调用线程执行, 不存在的key不回调
+     *
+     * @param keys
+     * @param consumer
+     */
+    public void mgetBytes(final List<String> keys, final BiConsumer<String, byte[]> consumer) {
+        final PipelineClusterCommand<Map<String, byte[]>> command = mgetBytesCommand();
+        command.stream(keys, (key, object) -> decodeBytes(command, key, object), consumer);
+    }
+
+    /**
+     * 迭代器形式的流式mgetBytes, 迭代时才执行对应节点的pipeline, 不存在的key被跳过
+     *
+     * @param keys
+     * @return
+     */
+    public Iterator<Map.Entry<String, byte[]>> mgetBytesIterator(final List<String> keys) {
+        final PipelineClusterCommand<Map<String, byte[]>> command = mgetBytesCommand();
+        return command.iterator(keys, (key, object) -> decodeBytes(command, key, object));
+    }
+
+    /**
+     * mgetBytes单个key结果的解码, 重定向的key单独get, 不存在或读取失败时为null
+     */
+    private byte[] decodeBytes(PipelineClusterCommand<?> command, String key, Object object) {
+        if (object == null) {
+            return null;
+        }
+        if (command.checkRedirectException(object)) {
+            try {
+                return getBytes(key);
+            } catch (Exception e) {
+                logger.error(e.getMessage(), e);
+                return null;
+            }
+        }
+        return (byte[]) object;
+    }
+
+    private PipelineClusterCommand<Map<String, byte[]>> mgetBytesCommand() {
+        return new PipelineClusterSlotCommand<Map<String, byte[]>>(this, connectionHandler) {
+            @Override
+            protected boolean isReadCommand() {
+                return true;
+            }
+
 
             @Override
             public void pipelineCommand(Pipeline pipeline, List<String> pipelineKeys) {
@@ -1834,6 +2921,15 @@ public class PipelineCluster extends JedisCluster {
                 }
             }
 
+            @Override
+            public void pipelineSlotCommand(Pipeline pipeline, List<String> slotKeys) {
+                byte[][] keys = new byte[slotKeys.size()][];
+                for (int i = 0; i < slotKeys.size(); i++) {
+                    keys[i] = SafeEncoder.encode(slotKeys.get(i));
+                }
+                pipeline.mget(keys);
+            }
+
             @Override
             public Map<String, byte[]> getResult(Map<String, Object> resultMap) {
                 Map<String, byte[]> result = new HashMap<String, byte[]>();
@@ -1841,34 +2937,21 @@ public class PipelineCluster extends JedisCluster {
                     return result;
                 }
                 for (Map.Entry<String, Object> entry : resultMap.entrySet()) {
-                    String key = entry.getKey();
-                    Object object = entry.getValue();
-                    if (object == null) {
-                        continue;
-                    }
-                    if (checkRedirectException(object)) {
-                        try {
-                            byte[] value = pipelineCluster.getBytes(key);
-                            if (value != null) {
-                                result.put(key, value);
-                            }
-                        } catch (Exception e) {
-                            logger.error(e.getMessage(), e);
-                        }
-                    } else {
-                        result.put(key, (byte[]) object);
+                    byte[] value = decodeBytes(this, entry.getKey(), entry.getValue());
+                    if (value != null) {
+                        result.put(entry.getKey(), value);
                     }
                 }
                 return result;
             }
-        }.run(keys);
+        };
     }
 
     public String msetBytes(final Map<String, byte[]> keyValueMap) {
         if (keyValueMap == null || keyValueMap.isEmpty()) {
             return null;
         }
-        return new PipelineClusterCommand<String>(this, connectionHandler) {
+        return new PipelineClusterSlotCommand<String>(this, connectionHandler) {
 
             @Override
             public void pipelineCommand(Pipeline pipeline, List<String> pipelineKeys) {
@@ -1878,6 +2961,17 @@ public class PipelineCluster extends JedisCluster {
                 }
             }
 
+            @Override
+            public void pipelineSlotCommand(Pipeline pipeline, List<String> slotKeys) {
+                byte[][] keysvalues = new byte[slotKeys.size() * 2][];
+                for (int i = 0; i < slotKeys.size(); i++) {
+                    String key = slotKeys.get(i);
+                    keysvalues[2 * i] = SafeEncoder.encode(key);
+                    keysvalues[2 * i + 1] = keyValueMap.get(key);
+                }
+                pipeline.mset(keysvalues);
+            }
+
             @Override
             public String getResult(Map<String, Object> resultMap) {
                 String result = "OK";
@@ -2058,7 +3152,7 @@ public class PipelineCluster extends JedisCluster {
     }
 
     public ScanResult<String> sscan(final String key, final String cursor, final ScanParams params) {
-        return new JedisClusterCommand<ScanResult<String>>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<ScanResult<String>>(connectionHandler, maxAttempts, readFrom) {
             @Override
             public ScanResult<String> execute(Jedis connection) {
                 return connection.sscan(key, cursor, params);
@@ -2067,7 +3161,7 @@ public class PipelineCluster extends JedisCluster {
     }
 
     public ScanResult<byte[]> sscan(final byte[] key, final byte[] cursor, final ScanParams params) {
-        return new JedisClusterCommand<ScanResult<byte[]>>(connectionHandler, maxAttempts) {
+        return new JedisClusterCommand<ScanResult<byte[]>>(connectionHandler, maxAttempts, readFrom) {
             @Override
             public ScanResult<byte[]> execute(Jedis connection) {
                 return connection.sscan(key, cursor, params);
@@ -4,12 +4,26 @@ import com.sohu.tv.cc.client.spectator.util.AtomicLongMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisDataException;
 import redis.clients.jedis.exceptions.JedisException;
 import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.jedis.exceptions.JedisNoReachableClusterNodeException;
+import redis.clients.jedis.exceptions.JedisNodeQuarantinedException;
+import redis.clients.jedis.exceptions.JedisPipelineLimitException;
 import redis.clients.jedis.exceptions.JedisRedirectionException;
 import redis.clients.jedis.util.JedisClusterCRC16;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 
 /**
  * Created by yijunzhang on 14-5-26.
@@ -23,6 +37,11 @@ public abstract class PipelineClusterCommand<T> {
 
     protected final PipelineCluster pipelineCluster;
 
+    /**
+     * 本次批处理各节点累计的回复字节数
+     */
+    private final AtomicLong replyBytes = new AtomicLong();
+
     public PipelineClusterCommand(PipelineCluster pipelineCluster, JedisClusterConnectionHandler connectionHandler) {
         this.pipelineCluster = pipelineCluster;
         this.connectionHandler = connectionHandler;
@@ -37,74 +56,700 @@ public abstract class PipelineClusterCommand<T> {
 
     public abstract T getResult(Map<String, Object> resultMap);
 
+    /**
+     * 是否为只读命令, 只读命令按{@link PipelineCluster#getReadFrom()}选择读节点, 从节点异常时回退到master
+     */
+    protected boolean isReadCommand() {
+        return false;
+    }
+
+    /**
+     * 流式执行: 每个节点(配置pipelineMaxCommands时为每个分片)的pipeline返回后, 立即将其中的key解码并回调consumer,
+     * 不再生成完整的结果Map; 回调都在调用线程执行, MOVED/ASK的key在最后批量重定向后回调
+     *
+     * @param keys
+     * @param decoder  单个key结果的解码, 结果可能为异常, 返回null时跳过该key
+     * @param consumer key和解码后的值, 值为null的key不回调
+     */
+    public <V> void stream(List<String> keys, BiFunction<String, Object, V> decoder, BiConsumer<String, V> consumer) {
+        if (keys == null || keys.isEmpty()) {
+            return;
+        }
+        ResultStream stream = new ResultStream(keys);
+        Map<String, Object> batch;
+        while ((batch = stream.nextBatch()) != null) {
+            for (Map.Entry<String, Object> entry : batch.entrySet()) {
+                V value = decoder.apply(entry.getKey(), entry.getValue());
+                if (value != null) {
+                    consumer.accept(entry.getKey(), value);
+                }
+            }
+        }
+    }
+
+    /**
+     * 流式执行的迭代器形式: 迭代到下一批时才执行对应节点(分片)的pipeline, 配置线程池时最多预取每个节点一批
+     *
+     * @param keys
+     * @param decoder 单个key结果的解码, 见{@link #stream(List, BiFunction, BiConsumer)}
+     * @return key和解码后的值, 值为null的key被跳过
+     */
+    public <V> Iterator<Map.Entry<String, V>> iterator(List<String> keys, final BiFunction<String, Object, V> decoder) {
+        if (keys == null || keys.isEmpty()) {
+            return Collections.<Map.Entry<String, V>>emptyList().iterator();
+        }
+        final ResultStream stream = new ResultStream(keys);
+        return new Iterator<Map.Entry<String, V>>() {
+            private Iterator<Map.Entry<String, Object>> batchIterator = Collections.<Map.Entry<String, Object>>emptyList().iterator();
+            private Map.Entry<String, V> next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null) {
+                    if (batchIterator.hasNext()) {
+                        Map.Entry<String, Object> entry = batchIterator.next();
+                        V value = decoder.apply(entry.getKey(), entry.getValue());
+                        if (value != null) {
+                            next = new AbstractMap.SimpleImmutableEntry<String, V>(entry.getKey(), value);
+                        }
+                    } else {
+                        Map<String, Object> batch = stream.nextBatch();
+                        if (batch == null) {
+                            return false;
+                        }
+                        batchIterator = batch.entrySet().iterator();
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public Map.Entry<String, V> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<String, V> result = next;
+                next = null;
+                return result;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("remove");
+            }
+        };
+    }
+
     public T run(List<String> keys) {
         if (keys == null || keys.isEmpty()) {
             return null;
         }
         Map<JedisPool, List<String>> poolKeysMap = getPoolKeyMap(keys);
         Map<String, Object> resultMap = new HashMap<String, Object>();
+        dispatch(poolKeysMap, false, resultMap);
+        redirect(resultMap);
+        return getResult(resultMap);
+    }
+
+    /**
+     * 按节点执行pipeline, 配置了线程池时各节点并行执行
+     *
+     * @param asking 每条命令前是否追加ASKING
+     */
+    private void dispatch(Map<JedisPool, List<String>> poolKeysMap, boolean asking, Map<String, Object> resultMap) {
+        ExecutorService executor = pipelineCluster.getPipelineExecutor();
+        if (executor == null || poolKeysMap.size() <= 1) {
+            for (Map.Entry<JedisPool, List<String>> entry : poolKeysMap.entrySet()) {
+                List<String> subkeys = entry.getValue();
+                putResult(resultMap, subkeys, runPipeline(entry.getKey(), subkeys, asking));
+            }
+        } else {
+            runParallel(executor, poolKeysMap, asking, resultMap);
+        }
+    }
+
+    /**
+     * 批量重定向: 将结果中MOVED/ASK的key按目标节点分组后再次以pipeline执行(ASK时追加ASKING),
+     * 最多重试maxAttempts次, 仍未成功的key保留重定向异常, 由getResult单独处理
+     */
+    private void redirect(Map<String, Object> resultMap) {
+        for (int attempt = 1; attempt < pipelineCluster.maxAttempts; attempt++) {
+            Map<HostAndPort, List<String>> movedKeysMap = new LinkedHashMap<HostAndPort, List<String>>();
+            Map<HostAndPort, List<String>> askKeysMap = new LinkedHashMap<HostAndPort, List<String>>();
+            for (Map.Entry<String, Object> entry : resultMap.entrySet()) {
+                Object object = entry.getValue();
+                if (object instanceof JedisMovedDataException) {
+                    addRedirectKey(movedKeysMap, ((JedisMovedDataException) object).getTargetNode(), entry.getKey());
+                } else if (object instanceof JedisAskDataException) {
+                    addRedirectKey(askKeysMap, ((JedisAskDataException) object).getTargetNode(), entry.getKey());
+                }
+            }
+            if (movedKeysMap.isEmpty() && askKeysMap.isEmpty()) {
+                return;
+            }
+            if (!movedKeysMap.isEmpty()) {
+                logger.warn("PipelineClusterCommand redirect attempt={} moved nodes={}", attempt, movedKeysMap.keySet());
+                // 一批MOVED只更新一次slot cache
+                connectionHandler.renewSlotCache();
+                dispatch(getNodePoolKeyMap(movedKeysMap), false, resultMap);
+            }
+            if (!askKeysMap.isEmpty()) {
+                logger.warn("PipelineClusterCommand redirect attempt={} ask nodes={}", attempt, askKeysMap.keySet());
+                dispatch(getNodePoolKeyMap(askKeysMap), true, resultMap);
+            }
+        }
+    }
+
+    /**
+     * 流式执行的结果流: key按节点及pipelineMaxCommands拆分为分片, 各节点的分片交替排列;
+     * 未配置线程池时在调用线程依次执行, 否则最多同时执行节点数个分片, 按完成顺序返回
+     */
+    private class ResultStream {
+        private final Iterator<Map.Entry<JedisPool, List<String>>> chunkIterator;
+        private final CompletionService<Map<String, Object>> completionService;
+        private final int window;
+        private final Set<Future<Map<String, Object>>> running = new HashSet<Future<Map<String, Object>>>();
+        private final Map<String, Object> redirectMap = new HashMap<String, Object>();
+        private boolean redirected;
+
+        ResultStream(List<String> keys) {
+            Map<JedisPool, List<String>> poolKeysMap = getPoolKeyMap(keys);
+            int maxCommands = pipelineCluster.getPipelineMaxCommands();
+            List<Map.Entry<JedisPool, List<String>>> chunks = new ArrayList<Map.Entry<JedisPool, List<String>>>();
+            for (int from = 0; ; from += maxCommands) {
+                boolean added = false;
+                for (Map.Entry<JedisPool, List<String>> entry : poolKeysMap.entrySet()) {
+                    List<String> subkeys = entry.getValue();
+                    if (maxCommands <= 0) {
+                        chunks.add(entry);
+                    } else if (from < subkeys.size()) {
+                        chunks.add(new AbstractMap.SimpleImmutableEntry<JedisPool, List<String>>(entry.getKey(),
+                                subkeys.subList(from, Math.min(from + maxCommands, subkeys.size()))));
+                        added = true;
+                    }
+                }
+                if (!added) {
+                    break;
+                }
+            }
+            this.chunkIterator = chunks.iterator();
+            ExecutorService executor = pipelineCluster.getPipelineExecutor();
+            this.completionService = executor == null || chunks.size() <= 1 ? null
+                    : new ExecutorCompletionService<Map<String, Object>>(executor);
+            this.window = Math.max(1, poolKeysMap.size());
+        }
+
+        /**
+         * 返回下一批(一个分片)的结果, 其中重定向的key留到最后批量处理; 全部结束时返回null
+         */
+        Map<String, Object> nextBatch() {
+            while (true) {
+                Map<String, Object> batch = nextChunk();
+                if (batch == null) {
+                    if (redirected || redirectMap.isEmpty()) {
+                        return null;
+                    }
+                    redirected = true;
+                    redirect(redirectMap);
+                    return redirectMap;
+                }
+                Iterator<Map.Entry<String, Object>> iterator = batch.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<String, Object> entry = iterator.next();
+                    if (entry.getValue() instanceof JedisRedirectionException) {
+                        redirectMap.put(entry.getKey(), entry.getValue());
+                        iterator.remove();
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    return batch;
+                }
+            }
+        }
+
+        private Map<String, Object> nextChunk() {
+            if (completionService == null) {
+                return chunkIterator.hasNext() ? runChunk(chunkIterator.next()) : null;
+            }
+            while (running.size() < window && chunkIterator.hasNext()) {
+                final Map.Entry<JedisPool, List<String>> chunk = chunkIterator.next();
+                try {
+                    running.add(completionService.submit(new Callable<Map<String, Object>>() {
+                        @Override
+                        public Map<String, Object> call() {
+                            return runChunk(chunk);
+                        }
+                    }));
+                } catch (RejectedExecutionException e) {
+                    // 线程池拒绝时退化为调用线程执行
+                    return runChunk(chunk);
+                }
+            }
+            if (running.isEmpty()) {
+                return null;
+            }
+            try {
+                Future<Map<String, Object>> future = completionService.take();
+                running.remove(future);
+                return future.get();
+            } catch (InterruptedException e) {
+                cancelRunning();
+                Thread.currentThread().interrupt();
+                throw new JedisException("PipelineClusterCommand interrupted", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof JedisPipelineLimitException) {
+                    cancelRunning();
+                    throw (JedisPipelineLimitException) e.getCause();
+                }
+                logger.error("PipelineClusterCommand stream error", e.getCause());
+                return new HashMap<String, Object>();
+            }
+        }
+
+        private Map<String, Object> runChunk(Map.Entry<JedisPool, List<String>> chunk) {
+            Map<String, Object> resultMap = new HashMap<String, Object>(chunk.getValue().size() * 4 / 3 + 1);
+            putResult(resultMap, chunk.getValue(), runPipeline(chunk.getKey(), chunk.getValue(), false));
+            return resultMap;
+        }
+
+        private void cancelRunning() {
+            for (Future<Map<String, Object>> future : running) {
+                future.cancel(true);
+            }
+            running.clear();
+        }
+    }
+
+    private void addRedirectKey(Map<HostAndPort, List<String>> redirectKeysMap, HostAndPort targetNode, String key) {
+        List<String> redirectKeys = redirectKeysMap.get(targetNode);
+        if (redirectKeys == null) {
+            redirectKeys = new ArrayList<String>();
+            redirectKeysMap.put(targetNode, redirectKeys);
+        }
+        redirectKeys.add(key);
+    }
+
+    private Map<JedisPool, List<String>> getNodePoolKeyMap(Map<HostAndPort, List<String>> nodeKeysMap) {
+        Map<JedisPool, List<String>> poolKeysMap = new LinkedHashMap<JedisPool, List<String>>();
+        for (Map.Entry<HostAndPort, List<String>> entry : nodeKeysMap.entrySet()) {
+            poolKeysMap.put(connectionHandler.getJedisPoolFromNode(entry.getKey()), entry.getValue());
+        }
+        return poolKeysMap;
+    }
+
+    /**
+     * 各节点的pipeline并行执行, 第一个节点由调用线程执行, 其余节点提交到线程池
+     */
+    private void runParallel(ExecutorService executor, Map<JedisPool, List<String>> poolKeysMap,
+                             final boolean asking, Map<String, Object> resultMap) {
+        List<List<String>> subkeysList = new ArrayList<List<String>>(poolKeysMap.size());
+        List<Future<List<Object>>> futures = new ArrayList<Future<List<Object>>>(poolKeysMap.size());
+        Map.Entry<JedisPool, List<String>> localEntry = null;
         for (Map.Entry<JedisPool, List<String>> entry : poolKeysMap.entrySet()) {
-            JedisPool jedisPool = entry.getKey();
-            List<String> subkeys = entry.getValue();
-            if (subkeys == null || subkeys.isEmpty()) {
+            if (localEntry == null) {
+                localEntry = entry;
                 continue;
             }
-            //申请jedis对象
-            Jedis jedis = null;
-            Pipeline pipeline = null;
-            List<Object> subResultList = null;
+            final JedisPool jedisPool = entry.getKey();
+            final List<String> subkeys = entry.getValue();
+            Future<List<Object>> future;
             try {
-                jedis = jedisPool.getResource();
-                jedis.getClient().connect();
-                pipeline = jedis.pipelined();
-                pipelineCommand(pipeline, subkeys);
-                subResultList = pipeline.syncAndReturnAll();
-            } catch (JedisException e) {
-                if (jedisPool != null) {
-                    // add-code:记录节点错误，当超过5次时，更新对应slot-node关系
-                    String node = jedisPool.getHost() + ":" + jedisPool.getPort();
-                    long count = NODE_JEDIS_EXCEPTION_MAP.incrementAndGet(node);
-                    // DEFAULT_MAX_ATTEMPTS = 5
-                    if (count >= BinaryJedisCluster.DEFAULT_MAX_ATTEMPTS) {
-                        // renewSlotCache
-                        connectionHandler.renewSlotCache();
-                        NODE_JEDIS_EXCEPTION_MAP.remove(node);
+                future = executor.submit(new Callable<List<Object>>() {
+                    @Override
+                    public List<Object> call() {
+                        return runPipeline(jedisPool, subkeys, asking);
                     }
-                    logger.error("RedisConnectionError-{}:{} keys={}", jedisPool.getHost(), jedisPool.getPort(), subkeys, e.getMessage(), e);
+                });
+            } catch (RejectedExecutionException e) {
+                // 线程池拒绝时退化为调用线程执行
+                putResult(resultMap, subkeys, runPipeline(jedisPool, subkeys, asking));
+                continue;
+            }
+            subkeysList.add(subkeys);
+            futures.add(future);
+        }
+        try {
+            putResult(resultMap, localEntry.getValue(), runPipeline(localEntry.getKey(), localEntry.getValue(), asking));
+        } catch (JedisPipelineLimitException e) {
+            cancel(futures, 0);
+            throw e;
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            List<String> subkeys = subkeysList.get(i);
+            try {
+                putResult(resultMap, subkeys, futures.get(i).get());
+            } catch (InterruptedException e) {
+                cancel(futures, i);
+                Thread.currentThread().interrupt();
+                throw new JedisException("PipelineClusterCommand interrupted", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof JedisPipelineLimitException) {
+                    cancel(futures, i + 1);
+                    throw (JedisPipelineLimitException) e.getCause();
+                }
+                logger.error("PipelineClusterCommand:subkeys={} error", subkeys, e.getCause());
+            }
+        }
+    }
+
+    private void cancel(List<? extends Future<?>> futures, int from) {
+        for (int i = from; i < futures.size(); i++) {
+            futures.get(i).cancel(true);
+        }
+    }
+
+    /**
+     * 在指定节点上执行pipeline, 异常时返回null, 回复字节数超过上限时抛出JedisPipelineLimitException;
+     * 只读命令设置了对冲策略时, 超过对冲延迟未返回则在分片的另一个节点上执行相同的pipeline, 返回先成功的结果
+     *
+     * @param asking 每条命令前是否追加ASKING, 结果中去掉ASKING的回复
+     */
+    private List<Object> runPipeline(final JedisPool jedisPool, final List<String> subkeys, boolean asking) {
+        HedgePolicy policy = pipelineCluster.getHedgePolicy();
+        if (policy == null || asking || !isReadCommand() || subkeys == null || subkeys.isEmpty()) {
+            return runPipeline(jedisPool, subkeys, asking, false);
+        }
+        final JedisPool alternate = connectionHandler.getHedgePoolFromSlot(JedisClusterCRC16.getSlot(subkeys.get(0)), jedisPool);
+        if (alternate == null) {
+            return runPipeline(jedisPool, subkeys, false, false);
+        }
+        try {
+            // 失败(结果为null)以异常返回, 使另一个节点的结果可以胜出
+            return policy.execute(getClass().getName(),
+                    () -> requireResult(runPipeline(jedisPool, subkeys, false, false)),
+                    () -> requireResult(runPipeline(alternate, subkeys, false, true)));
+        } catch (JedisPipelineLimitException e) {
+            throw e;
+        } catch (JedisException e) {
+            return null;
+        }
+    }
+
+    private static List<Object> requireResult(List<Object> subResultList) {
+        if (subResultList == null) {
+            throw new JedisException("PipelineClusterCommand hedge attempt failed");
+        }
+        return subResultList;
+    }
+
+    /**
+     * @param hedge 是否为对冲请求, 对冲请求的节点不是slot的master时发送READONLY, 失败时不回退到master
+     */
+    private List<Object> runPipeline(JedisPool jedisPool, List<String> subkeys, boolean asking, boolean hedge) {
+        if (subkeys == null || subkeys.isEmpty()) {
+            return null;
+        }
+        //申请jedis对象
+        Jedis jedis = null;
+        Pipeline pipeline = null;
+        List<Object> subResultList = null;
+        boolean replica = !asking && (hedge ? isNotSlotMaster(jedisPool, subkeys) : isReplica(jedisPool, subkeys));
+        boolean fallback = false;
+        try {
+            jedis = jedisPool.getResource();
+            jedis.getClient().connect();
+            if (replica) {
+                jedis.getClient().setReadOnly(true);
+            }
+            pipeline = jedis.pipelined();
+            PipelineChunker chunker = new PipelineChunker(pipeline, jedis.getClient());
+            if (asking) {
+                for (String key : subkeys) {
+                    pipeline.asking();
+                    pipelineCommand(pipeline, Collections.singletonList(key));
+                    chunker.check();
                 }
-            } catch (Exception e) {
-                logger.error(e.getMessage(), e);
-            } finally {
-                if (pipeline != null)
-                    pipeline.clean();
-                //释放jedis对象
-                if (jedis != null) {
-                    jedis.close();
+                List<Object> askResultList = chunker.finish();
+                subResultList = new ArrayList<Object>(subkeys.size());
+                for (int i = 1; i < askResultList.size(); i += 2) {
+                    subResultList.add(askResultList.get(i));
                 }
+            } else if (this instanceof PipelineClusterSlotCommand && pipelineCluster.isSlotCommandEnabled()) {
+                subResultList = runSlotPipeline(chunker, (PipelineClusterSlotCommand<?>) this, subkeys);
+            } else {
+                subResultList = runKeyPipeline(chunker, subkeys);
+            }
+        } catch (JedisPipelineLimitException e) {
+            throw e;
+        } catch (JedisNodeQuarantinedException e) {
+            // 节点已隔离, 由后台探测及刷新拓扑, 不再计数
+            logger.warn("PipelineClusterCommand {} keys={}", e.getMessage(), subkeys.size());
+            fallback = replica && !hedge && getReadFrom().fallback() == ReadFrom.MASTER;
+        } catch (JedisException e) {
+            if (jedisPool != null) {
+                // add-code:记录节点错误，当超过5次时，更新对应slot-node关系
+                String node = jedisPool.getHost() + ":" + jedisPool.getPort();
+                long count = NODE_JEDIS_EXCEPTION_MAP.incrementAndGet(node);
+                // DEFAULT_MAX_ATTEMPTS = 5
+                if (count >= BinaryJedisCluster.DEFAULT_MAX_ATTEMPTS) {
+                    // renewSlotCache
+                    connectionHandler.renewSlotCache();
+                    NODE_JEDIS_EXCEPTION_MAP.remove(node);
+                }
+                logger.error("RedisConnectionError-{}:{} keys={}", jedisPool.getHost(), jedisPool.getPort(), subkeys, e.getMessage(), e);
+            }
+            fallback = replica && !hedge && getReadFrom().fallback() == ReadFrom.MASTER;
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+        } finally {
+            if (pipeline != null)
+                pipeline.clean();
+            //释放jedis对象
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+        if (fallback) {
+            return runOnMaster(subkeys);
+        }
+        return subResultList;
+    }
+
+    /**
+     * 本次批处理的读节点选择策略, 非只读命令只读master
+     */
+    private ReadFrom getReadFrom() {
+        return isReadCommand() ? pipelineCluster.getReadFrom() : ReadFrom.MASTER;
+    }
+
+    /**
+     * jedisPool是否为subkeys所在slot的从节点(同一pipeline的key属于同一分片)
+     */
+    private boolean isReplica(JedisPool jedisPool, List<String> subkeys) {
+        return getReadFrom() != ReadFrom.MASTER && isNotSlotMaster(jedisPool, subkeys);
+    }
+
+    private boolean isNotSlotMaster(JedisPool jedisPool, List<String> subkeys) {
+        return connectionHandler.getJedisPoolFromSlot(JedisClusterCRC16.getSlot(subkeys.get(0))) != jedisPool;
+    }
+
+    /**
+     * 从节点执行失败时, key改由slot的master执行, 仍失败的key结果为null
+     */
+    private List<Object> runOnMaster(List<String> subkeys) {
+        Map<JedisPool, List<String>> poolKeysMap = new LinkedHashMap<JedisPool, List<String>>();
+        for (String key : subkeys) {
+            JedisPool jedisPool = connectionHandler.getJedisPoolFromSlot(JedisClusterCRC16.getSlot(key));
+            List<String> poolKeys = poolKeysMap.get(jedisPool);
+            if (poolKeys == null) {
+                poolKeys = new ArrayList<String>();
+                poolKeysMap.put(jedisPool, poolKeys);
+            }
+            poolKeys.add(key);
+        }
+        logger.warn("PipelineClusterCommand replica error, fallback to master nodes={} keys={}", poolKeysMap.size(), subkeys.size());
+        Map<String, Object> resultMap = new HashMap<String, Object>(subkeys.size() * 4 / 3 + 1);
+        for (Map.Entry<JedisPool, List<String>> entry : poolKeysMap.entrySet()) {
+            if (entry.getKey() != null) {
+                putResult(resultMap, entry.getValue(), runPipeline(entry.getKey(), entry.getValue(), false, false));
+            }
+        }
+        List<Object> subResultList = new ArrayList<Object>(subkeys.size());
+        for (String key : subkeys) {
+            subResultList.add(resultMap.get(key));
+        }
+        return subResultList;
+    }
+
+    /**
+     * 同slot的key合并为一条多key命令(每条最多slotCommandMaxKeys个key), 结果按subkeys顺序拆分到每个key;
+     * 多key命令返回MOVED以外的错误时(slot迁移中只要有key不在源节点就返回ASK), 这些key在同一连接上按key逐条重试
+     */
+    private List<Object> runSlotPipeline(PipelineChunker chunker, PipelineClusterSlotCommand<?> slotCommand,
+                                         List<String> subkeys) {
+        Pipeline pipeline = chunker.pipeline;
+        int maxKeys = pipelineCluster.getSlotCommandMaxKeys();
+        Map<Integer, List<Integer>> slotIndexMap = new LinkedHashMap<Integer, List<Integer>>();
+        for (int i = 0; i < subkeys.size(); i++) {
+            int slot = JedisClusterCRC16.getSlot(subkeys.get(i));
+            List<Integer> indexes = slotIndexMap.get(slot);
+            if (indexes == null) {
+                indexes = new ArrayList<Integer>();
+                slotIndexMap.put(slot, indexes);
             }
-            if (subResultList == null || subResultList.isEmpty()) {
+            indexes.add(i);
+        }
+        List<List<Integer>> indexesList = new ArrayList<List<Integer>>();
+        for (List<Integer> indexes : slotIndexMap.values()) {
+            if (maxKeys <= 0 || indexes.size() <= maxKeys) {
+                indexesList.add(indexes);
                 continue;
             }
-            if (subResultList.size() == subkeys.size()) {
-                for (int i = 0; i < subkeys.size(); i++) {
-                    String key = subkeys.get(i);
-                    Object result = subResultList.get(i);
-                    resultMap.put(key, result);
+            for (int from = 0; from < indexes.size(); from += maxKeys) {
+                indexesList.add(indexes.subList(from, Math.min(from + maxKeys, indexes.size())));
+            }
+        }
+        List<List<String>> slotKeysList = new ArrayList<List<String>>(indexesList.size());
+        for (List<Integer> indexes : indexesList) {
+            List<String> slotKeys = new ArrayList<String>(indexes.size());
+            for (Integer index : indexes) {
+                slotKeys.add(subkeys.get(index));
+            }
+            slotKeysList.add(slotKeys);
+            slotCommand.pipelineSlotCommand(pipeline, slotKeys);
+            chunker.check();
+        }
+        List<Object> slotResultList = chunker.finish();
+        if (slotResultList.size() != slotKeysList.size()) {
+            logger.error("PipelineClusterCommand:slotKeys={} slotResultList={}", slotKeysList, slotResultList);
+            return null;
+        }
+
+        Object[] subResults = new Object[subkeys.size()];
+        List<Integer> retryIndexes = null;
+        for (int i = 0; i < slotKeysList.size(); i++) {
+            List<String> slotKeys = slotKeysList.get(i);
+            List<Integer> indexes = indexesList.get(i);
+            Object slotResult = slotResultList.get(i);
+            if (slotKeys.size() > 1 && slotResult instanceof JedisDataException
+                    && !(slotResult instanceof JedisMovedDataException)) {
+                if (retryIndexes == null) {
+                    retryIndexes = new ArrayList<Integer>();
+                }
+                retryIndexes.addAll(indexes);
+            }
+            List<Object> keyResults = slotCommand.splitSlotResult(slotKeys, slotResult);
+            for (int j = 0; j < indexes.size(); j++) {
+                subResults[indexes.get(j)] = keyResults.get(j);
+            }
+        }
+        if (retryIndexes != null) {
+            List<String> retryKeys = new ArrayList<String>(retryIndexes.size());
+            for (Integer index : retryIndexes) {
+                retryKeys.add(subkeys.get(index));
+            }
+            logger.warn("PipelineClusterCommand slot command error, retry by key: keys={}", retryKeys.size());
+            List<Object> retryResultList = runKeyPipeline(chunker, retryKeys);
+            if (retryResultList.size() == retryKeys.size()) {
+                for (int i = 0; i < retryIndexes.size(); i++) {
+                    subResults[retryIndexes.get(i)] = retryResultList.get(i);
                 }
             } else {
-                logger.error("PipelineClusterCommand:subkeys={} subResultList={}", subkeys, subResultList);
+                logger.error("PipelineClusterCommand:retryKeys={} retryResultList={}", retryKeys, retryResultList);
             }
         }
-        return getResult(resultMap);
+        return Arrays.asList(subResults);
+    }
+
+    /**
+     * 按key执行pipelineCommand, 未配置分片上限时所有key一次发送
+     */
+    private List<Object> runKeyPipeline(PipelineChunker chunker, List<String> keys) {
+        if (!chunker.isChunked()) {
+            pipelineCommand(chunker.pipeline, keys);
+        } else {
+            for (String key : keys) {
+                pipelineCommand(chunker.pipeline, Collections.singletonList(key));
+                chunker.check();
+            }
+        }
+        return chunker.finish();
+    }
+
+    /**
+     * 子pipeline分片: 已发送的命令数或请求字节数达到上限时sync一次, 各分片在同一连接上依次执行;
+     * 每次sync后累计本次批处理的回复字节数, 超过上限时抛出JedisPipelineLimitException
+     */
+    private class PipelineChunker {
+        private final Pipeline pipeline;
+        private final Client client;
+        private final int maxCommands;
+        private final long maxBytes;
+        private List<Object> resultList = new ArrayList<Object>();
+        private long writtenBytes;
+        private long readBytes;
+
+        PipelineChunker(Pipeline pipeline, Client client) {
+            this.pipeline = pipeline;
+            this.client = client;
+            this.maxCommands = pipelineCluster.getPipelineMaxCommands();
+            this.maxBytes = pipelineCluster.getPipelineMaxBytes();
+            this.writtenBytes = client.getWrittenBytes();
+            this.readBytes = client.getReadBytes();
+        }
+
+        boolean isChunked() {
+            return maxCommands > 0 || maxBytes > 0;
+        }
+
+        /**
+         * 每追加一组命令后调用, 达到分片上限时sync
+         */
+        void check() {
+            if ((maxCommands > 0 && pipeline.getPipelinedResponseLength() >= maxCommands)
+                    || (maxBytes > 0 && client.getWrittenBytes() - writtenBytes >= maxBytes)) {
+                sync();
+            }
+        }
+
+        /**
+         * sync剩余命令, 返回所有分片的结果
+         */
+        List<Object> finish() {
+            if (pipeline.getPipelinedResponseLength() > 0) {
+                sync();
+            }
+            List<Object> result = resultList;
+            resultList = new ArrayList<Object>();
+            return result;
+        }
+
+        private void sync() {
+            resultList.addAll(pipeline.syncAndReturnAll());
+            writtenBytes = client.getWrittenBytes();
+            long currentReadBytes = client.getReadBytes();
+            addReplyBytes(currentReadBytes - readBytes);
+            readBytes = currentReadBytes;
+        }
+    }
+
+    private void addReplyBytes(long bytes) {
+        long maxReplyBytes = pipelineCluster.getPipelineMaxReplyBytes();
+        long total = replyBytes.addAndGet(bytes);
+        if (maxReplyBytes > 0 && total > maxReplyBytes) {
+            throw new JedisPipelineLimitException("PipelineClusterCommand reply bytes " + total
+                    + " exceed pipelineMaxReplyBytes " + maxReplyBytes);
+        }
+    }
+
+    private void putResult(Map<String, Object> resultMap, List<String> subkeys, List<Object> subResultList) {
+        if (subResultList == null || subResultList.isEmpty()) {
+            return;
+        }
+        if (subResultList.size() == subkeys.size()) {
+            for (int i = 0; i < subkeys.size(); i++) {
+                String key = subkeys.get(i);
+                Object result = subResultList.get(i);
+                resultMap.put(key, result);
+            }
+        } else {
+            logger.error("PipelineClusterCommand:subkeys={} subResultList={}", subkeys, subResultList);
+        }
     }
 
     private Map<JedisPool, List<String>> getPoolKeyMap(List<String> keys) {
         Map<JedisPool, List<String>> poolKeysMap = new LinkedHashMap<JedisPool, List<String>>();
+        ReadFrom readFrom = getReadFrom();
+        // 只读命令每个master在本次批处理中只选择一次读节点, 同一分片的key在同一个pipeline中执行
+        Map<JedisPool, JedisPool> readPoolMap = readFrom == ReadFrom.MASTER ? null : new HashMap<JedisPool, JedisPool>();
         try {
             for (String key : keys) {
                 JedisPool jedisPool;
                 int slot = JedisClusterCRC16.getSlot(key);
                 jedisPool = connectionHandler.getJedisPoolFromSlot(slot);
+                if (readPoolMap != null && jedisPool != null) {
+                    if (!readPoolMap.containsKey(jedisPool)) {
+                        JedisPool readPool = connectionHandler.getReadPoolFromSlot(slot, readFrom);
+                        if (readPool == null) {
+                            // 与单key命令一致, 不能把该分片的key当作不存在而从结果中丢弃
+                            throw new JedisNoReachableClusterNodeException("No reachable replica in cluster for slot "
+                                    + slot + ", master " + jedisPool.getHost() + ":" + jedisPool.getPort());
+                        }
+                        readPoolMap.put(jedisPool, readPool);
+                    }
+                    jedisPool = readPoolMap.get(jedisPool);
+                }
 
                 if (poolKeysMap.containsKey(jedisPool)) {
                     poolKeysMap.get(jedisPool).add(key);
@@ -114,6 +759,8 @@ public abstract class PipelineClusterCommand<T> {
                     poolKeysMap.put(jedisPool, subKeyList);
                 }
             }
+        } catch (JedisNoReachableClusterNodeException e) {
+            throw e;
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
         }
@@ -0,0 +1,67 @@
+package redis.clients.jedis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 支持按slot合并为原生多key命令(MGET/MSET/DEL/EXISTS/UNLINK)的批处理命令:
+ * 同一节点内同一slot的key合并为一条命令发送, 未开启slot合并或重定向(ASK)时仍按key逐条执行pipelineCommand
+ */
+public abstract class PipelineClusterSlotCommand<T> extends PipelineClusterCommand<T> {
+
+    public PipelineClusterSlotCommand(PipelineCluster pipelineCluster, JedisClusterConnectionHandler connectionHandler) {
+        super(pipelineCluster, connectionHandler);
+    }
+
+    /**
+     * 对同一slot内的一组key执行一条多key命令
+     *
+     * @param pipeline
+     * @param slotKeys 同一slot的key
+     */
+    public abstract void pipelineSlotCommand(Pipeline pipeline, List<String> slotKeys);
+
+    /**
+     * 将多key命令的结果拆分为每个key的结果, 默认:
+     * 结果为与key数量相同的列表时(MGET)逐个对应, 否则每个key使用相同结果(MSET的OK/异常)
+     *
+     * @param slotKeys 同一slot的key
+     * @param result   多key命令的结果
+     */
+    @SuppressWarnings("unchecked")
+    protected List<Object> splitSlotResult(List<String> slotKeys, Object result) {
+        if (result instanceof List && ((List<Object>) result).size() == slotKeys.size()) {
+            return (List<Object>) result;
+        }
+        return Collections.nCopies(slotKeys.size(), result);
+    }
+
+    /**
+     * 计数类命令(DEL/EXISTS/UNLINK)的结果拆分: 计数记在第一个key上, 其余key记0
+     */
+    protected static List<Object> splitCountResult(List<String> slotKeys, Object result) {
+        if (!(result instanceof Long)) {
+            return Collections.nCopies(slotKeys.size(), result);
+        }
+        List<Object> resultList = new ArrayList<Object>(slotKeys.size());
+        resultList.add(result);
+        for (int i = 1; i < slotKeys.size(); i++) {
+            resultList.add(0L);
+        }
+        return resultList;
+    }
+
+    /**
+     * 计数结果求和, 兼容逐key执行时EXISTS返回的Boolean
+     */
+    protected static long toCount(Object object) {
+        if (object instanceof Long) {
+            return (Long) object;
+        }
+        if (object instanceof Boolean) {
+            return (Boolean) object ? 1 : 0;
+        }
+        return 0;
+    }
+}
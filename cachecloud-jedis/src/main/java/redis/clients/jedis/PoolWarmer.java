@@ -0,0 +1,265 @@
+package redis.clients.jedis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.util.NamedThreadFactory;
+import redis.clients.jedis.util.Pool;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 连接预热: 启动时为连接池(JedisPool, JedisSentinelPool, ShardedJedisPool及集群各节点的JedisPool)并行创建空闲连接
+ * (建连, AUTH, SELECT), 避免上线后第一波请求承担建连耗时; 预热总耗时不超过timeoutMillis,
+ * 超时未完成的连接不再等待
+ */
+public final class PoolWarmer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PoolWarmer.class);
+
+    /**
+     * 默认预热时间上限
+     */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * 预热线程数上限
+     */
+    private static final int MAX_THREADS = 64;
+
+    private static final String THREAD_NAME_PREFIX = "JedisPoolWarmer";
+
+    private PoolWarmer() {
+    }
+
+    /**
+     * 并行预热连接池, 每个连接池补足connectionsPerPool个空闲连接(已有的空闲连接计算在内, 不超过maxTotal)
+     *
+     * @param pools              连接池
+     * @param connectionsPerPool 每个连接池的空闲连接数, 一般为minIdle
+     * @param timeoutMillis      预热时间上限(毫秒)
+     * @return 预热结果
+     */
+    public static Report warmUp(Collection<? extends Pool<?>> pools, int connectionsPerPool, long timeoutMillis) {
+        long start = System.nanoTime();
+        List<WarmTask> tasks = new ArrayList<WarmTask>();
+        for (Pool<?> pool : pools) {
+            int count = connectionsPerPool;
+            if (pool.getMaxTotal() >= 0) {
+                // 连接数达到maxTotal时addObject不再创建连接
+                count = Math.min(count, pool.getMaxTotal() - Math.max(pool.getNumActive(), 0));
+            }
+            count -= Math.max(pool.getNumIdle(), 0);
+            for (int i = 0; i < count; i++) {
+                if (pool instanceof ShardedJedisPool) {
+                    // ShardedJedis创建时不建连, 借出后连接各分片再归还
+                    ShardedJedis shardedJedis;
+                    try {
+                        shardedJedis = ((ShardedJedisPool) pool).getResource();
+                    } catch (Exception e) {
+                        logger.warn("warm up sharded pool error: {}", e.getMessage());
+                        break;
+                    }
+                    tasks.add(new ShardedWarmTask(shardedJedis));
+                } else {
+                    tasks.add(new AddObjectTask(pool));
+                }
+            }
+        }
+        Report report = new Report(pools.size(), tasks.size());
+        if (!tasks.isEmpty()) {
+            int threads = Math.min(tasks.size(), MAX_THREADS);
+            ExecutorService executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory(THREAD_NAME_PREFIX));
+            try {
+                List<Future<Boolean>> futures = executor.invokeAll(tasks, timeoutMillis, TimeUnit.MILLISECONDS);
+                for (int i = 0; i < futures.size(); i++) {
+                    collect(report, futures.get(i));
+                    tasks.get(i).release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (WarmTask task : tasks) {
+                    task.release();
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        report.costMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        logger.info("warm up {}", report);
+        return report;
+    }
+
+    private static void collect(Report report, Future<Boolean> future) {
+        try {
+            if (future.get()) {
+                report.warmed++;
+            } else {
+                report.failed++;
+            }
+        } catch (CancellationException e) {
+            report.timedOut++;
+        } catch (ExecutionException e) {
+            report.failed++;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            report.timedOut++;
+        }
+    }
+
+    private abstract static class WarmTask implements Callable<Boolean> {
+        /**
+         * 任务开始执行或被回收, 二者只发生一个
+         */
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        @Override
+        public Boolean call() {
+            if (!claimed.compareAndSet(false, true)) {
+                return false;
+            }
+            return warm();
+        }
+
+        /**
+         * 超时取消且未开始执行时回收借出的资源
+         */
+        void release() {
+            if (claimed.compareAndSet(false, true)) {
+                cancel();
+            }
+        }
+
+        abstract boolean warm();
+
+        abstract void cancel();
+    }
+
+    private static class AddObjectTask extends WarmTask {
+        private final Pool<?> pool;
+
+        AddObjectTask(Pool<?> pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        boolean warm() {
+            try {
+                pool.addObjects(1);
+                return true;
+            } catch (Exception e) {
+                logger.warn("warm up connection error: {}", e.getMessage());
+                return false;
+            }
+        }
+
+        @Override
+        void cancel() {
+        }
+    }
+
+    private static class ShardedWarmTask extends WarmTask {
+        private final ShardedJedis shardedJedis;
+
+        ShardedWarmTask(ShardedJedis shardedJedis) {
+            this.shardedJedis = shardedJedis;
+        }
+
+        @Override
+        boolean warm() {
+            boolean warmed = true;
+            try {
+                for (Jedis shard : shardedJedis.getAllShards()) {
+                    try {
+                        shard.connect();
+                    } catch (Exception e) {
+                        logger.warn("warm up {}:{} error: {}", shard.getClient().getHost(), shard.getClient().getPort(),
+                                e.getMessage());
+                        warmed = false;
+                    }
+                }
+            } finally {
+                shardedJedis.close();
+            }
+            return warmed;
+        }
+
+        @Override
+        void cancel() {
+            shardedJedis.close();
+        }
+    }
+
+    /**
+     * 预热结果
+     */
+    public static class Report {
+        private final int pools;
+        private final int requested;
+        private int warmed;
+        private int failed;
+        private int timedOut;
+        private long costMillis;
+
+        Report(int pools, int requested) {
+            this.pools = pools;
+            this.requested = requested;
+        }
+
+        /**
+         * @return 预热的连接池数
+         */
+        public int getPools() {
+            return pools;
+        }
+
+        /**
+         * @return 需要创建的连接数
+         */
+        public int getRequested() {
+            return requested;
+        }
+
+        /**
+         * @return 创建成功的连接数
+         */
+        public int getWarmed() {
+            return warmed;
+        }
+
+        /**
+         * @return 创建失败的连接数
+         */
+        public int getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return 超时未完成的连接数
+         */
+        public int getTimedOut() {
+            return timedOut;
+        }
+
+        public long getCostMillis() {
+            return costMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "Report{pools=" + pools + ", requested=" + requested + ", warmed=" + warmed + ", failed=" + failed
+                    + ", timedOut=" + timedOut + ", costMillis=" + costMillis + "}";
+        }
+    }
+}
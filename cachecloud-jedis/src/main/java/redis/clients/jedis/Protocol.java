@@ -30,12 +30,32 @@ public final class Protocol {
 
   public static final String CHARSET = "UTF-8";
 
+  public static final int RESP2 = 2;
+  public static final int RESP3 = 3;
+
   public static final byte DOLLAR_BYTE = '$';
   public static final byte ASTERISK_BYTE = '*';
   public static final byte PLUS_BYTE = '+';
   public static final byte MINUS_BYTE = '-';
   public static final byte COLON_BYTE = ':';
 
+  // RESP3 types, see HELLO
+  public static final byte UNDERSCORE_BYTE = '_';
+  public static final byte COMMA_BYTE = ',';
+  public static final byte HASH_BYTE = '#';
+  public static final byte LEFT_BRACE_BYTE = '(';
+  public static final byte EXCLAMATION_BYTE = '!';
+  public static final byte EQUAL_BYTE = '=';
+  public static final byte PERCENT_BYTE = '%';
+  public static final byte TILDE_BYTE = '~';
+  public static final byte PIPE_BYTE = '|';
+  public static final byte GREATER_THAN_BYTE = '>';
+
+  /**
+   * Length of the format prefix of a verbatim string, e.g. "txt:".
+   */
+  static final int VERBATIM_PREFIX_LENGTH = 4;
+
   public static final String SENTINEL_MASTERS = "masters";
   public static final String SENTINEL_GET_MASTER_ADDR_BY_NAME = "get-master-addr-by-name";
   public static final String SENTINEL_RESET = "reset";
@@ -109,34 +129,202 @@ public final class Protocol {
     }
   }
 
+  /**
+   * Send a command with string arguments, encoding them as UTF-8 straight into the output buffer
+   * instead of building a byte[] per argument.
+   */
+  public static void sendCommand(final RedisOutputStream os, final ProtocolCommand command,
+      final String... args) {
+    // check before writing anything, a half written command would corrupt the stream
+    for (final String arg : args) {
+      checkArgument(arg);
+    }
+    try {
+      writeCommandHeader(os, command.getRaw(), args.length);
+      for (final String arg : args) {
+        writeArgument(os, arg);
+      }
+    } catch (IOException e) {
+      throw new JedisConnectionException(e);
+    }
+  }
+
+  /**
+   * Send a command with mixed arguments: byte[], String, Byte/Short/Integer/Long, Float/Double,
+   * ProtocolCommand and Keyword. Strings and numbers are encoded straight into the output buffer.
+   */
+  public static void sendCommand(final RedisOutputStream os, final ProtocolCommand command,
+      final Object... args) {
+    for (final Object arg : args) {
+      checkArgument(arg);
+    }
+    try {
+      writeCommandHeader(os, command.getRaw(), args.length);
+      for (final Object arg : args) {
+        if (arg instanceof byte[]) {
+          writeArgument(os, (byte[]) arg);
+        } else if (arg instanceof String) {
+          writeArgument(os, (String) arg);
+        } else if (arg instanceof Long || arg instanceof Integer || arg instanceof Short
+            || arg instanceof Byte) {
+          writeArgument(os, ((Number) arg).longValue());
+        } else if (arg instanceof Double || arg instanceof Float) {
+          writeArgument(os, ((Number) arg).doubleValue());
+        } else {
+          writeArgument(os, rawArgument(arg));
+        }
+      }
+    } catch (IOException e) {
+      throw new JedisConnectionException(e);
+    }
+  }
+
+  /**
+   * Encode one argument accepted by {@link #sendCommand(RedisOutputStream, ProtocolCommand, Object...)}.
+   */
+  static byte[] encodeArgument(final Object arg) {
+    checkArgument(arg);
+    if (arg instanceof byte[]) {
+      return (byte[]) arg;
+    } else if (arg instanceof String) {
+      return SafeEncoder.encode((String) arg);
+    } else if (arg instanceof Long || arg instanceof Integer || arg instanceof Short
+        || arg instanceof Byte) {
+      return toByteArray(((Number) arg).longValue());
+    } else if (arg instanceof Double || arg instanceof Float) {
+      return toByteArray(((Number) arg).doubleValue());
+    }
+    return rawArgument(arg);
+  }
+
+  /**
+   * @return total encoded size of the arguments, without the RESP framing; null and unsupported
+   *         arguments count as empty
+   */
+  static long argumentsLength(final Object[] args) {
+    long length = 0;
+    for (final Object arg : args) {
+      if (arg instanceof byte[]) {
+        length += ((byte[]) arg).length;
+      } else if (arg instanceof String) {
+        length += RedisOutputStream.utf8Length((String) arg);
+      } else if (arg instanceof Long || arg instanceof Integer || arg instanceof Short
+          || arg instanceof Byte) {
+        length += RedisOutputStream.longSize(((Number) arg).longValue());
+      } else if (arg instanceof Double || arg instanceof Float) {
+        length += toByteArray(((Number) arg).doubleValue()).length;
+      } else if (arg instanceof ProtocolCommand) {
+        length += ((ProtocolCommand) arg).getRaw().length;
+      } else if (arg instanceof Keyword) {
+        length += ((Keyword) arg).raw.length;
+      }
+    }
+    return length;
+  }
+
+  private static void checkArgument(final Object arg) {
+    if (arg == null) {
+      throw new JedisDataException("value sent to redis cannot be null");
+    }
+    if (!(arg instanceof byte[] || arg instanceof String || arg instanceof Long
+        || arg instanceof Integer || arg instanceof Short || arg instanceof Byte
+        || arg instanceof Double || arg instanceof Float || arg instanceof ProtocolCommand
+        || arg instanceof Keyword)) {
+      throw new JedisDataException("unsupported argument type " + arg.getClass().getName());
+    }
+  }
+
+  private static byte[] rawArgument(final Object arg) {
+    if (arg instanceof ProtocolCommand) {
+      return ((ProtocolCommand) arg).getRaw();
+    }
+    return ((Keyword) arg).raw;
+  }
+
+  private static void writeCommandHeader(final RedisOutputStream os, final byte[] command,
+      final int argCount) throws IOException {
+    os.write(ASTERISK_BYTE);
+    os.writeIntCrLf(argCount + 1);
+    writeArgument(os, command);
+  }
+
+  private static void writeArgument(final RedisOutputStream os, final byte[] arg)
+      throws IOException {
+    os.write(DOLLAR_BYTE);
+    os.writeIntCrLf(arg.length);
+    os.write(arg);
+    os.writeCrLf();
+  }
+
+  private static void writeArgument(final RedisOutputStream os, final String arg)
+      throws IOException {
+    os.write(DOLLAR_BYTE);
+    os.writeIntCrLf(RedisOutputStream.utf8Length(arg));
+    os.writeUtf8(arg);
+    os.writeCrLf();
+  }
+
+  private static void writeArgument(final RedisOutputStream os, final long arg)
+      throws IOException {
+    os.write(DOLLAR_BYTE);
+    os.writeIntCrLf(RedisOutputStream.longSize(arg));
+    os.writeLong(arg);
+    os.writeCrLf();
+  }
+
+  private static void writeArgument(final RedisOutputStream os, final double arg)
+      throws IOException {
+    if (isExactLong(arg)) {
+      writeArgument(os, (long) arg);
+    } else {
+      writeArgument(os, toByteArray(arg));
+    }
+  }
+
+  /**
+   * Integral doubles (e.g. timestamp scores) are sent like longs ("3" instead of "3.0"), both parse
+   * to the same value on the server and the former needs no String.
+   */
+  private static boolean isExactLong(final double value) {
+    return value == (long) value && Math.abs(value) < 1e15
+        && (value != 0 || 1 / value > 0);
+  }
+
   private static void processError(final RedisInputStream is) {
-    String message = is.readLine();
+    throw errorReply(is.readLine());
+  }
+
+  /**
+   * Map an error reply to the exception thrown for it, shared by the classic parser and
+   * {@link FlatReply}.
+   */
+  static RuntimeException errorReply(final String message) {
     // TODO: I'm not sure if this is the best way to do this.
     // Maybe Read only first 5 bytes instead?
     if (message.startsWith(MOVED_PREFIX)) {
       String[] movedInfo = parseTargetHostAndSlot(message);
-      throw new JedisMovedDataException(message, new HostAndPort(movedInfo[1],
+      return new JedisMovedDataException(message, new HostAndPort(movedInfo[1],
           Integer.parseInt(movedInfo[2])), Integer.parseInt(movedInfo[0]));
     } else if (message.startsWith(ASK_PREFIX)) {
       String[] askInfo = parseTargetHostAndSlot(message);
-      throw new JedisAskDataException(message, new HostAndPort(askInfo[1],
+      return new JedisAskDataException(message, new HostAndPort(askInfo[1],
           Integer.parseInt(askInfo[2])), Integer.parseInt(askInfo[0]));
     } else if (message.startsWith(CLUSTERDOWN_PREFIX)) {
-      throw new JedisClusterException(message);
+      return new JedisClusterException(message);
     } else if (message.startsWith(BUSY_PREFIX)) {
-      throw new JedisBusyException(message);
+      return new JedisBusyException(message);
     } else if (message.startsWith(NOSCRIPT_PREFIX)) {
-      throw new JedisNoScriptException(message);
+      return new JedisNoScriptException(message);
     } else if (message.startsWith(WRONGPASS_PREFIX)) {
-      throw new JedisAccessControlException(message);
+      return new JedisAccessControlException(message);
     } else if (message.startsWith(NOPERM_PREFIX)) {
-      throw new JedisAccessControlException(message);
+      return new JedisAccessControlException(message);
     }
     //权限错误，认为当前连接不可用
     if (message != null && message.contains("NOAUTH Authentication")) {
-      throw new JedisConnectionException(message);
+      return new JedisConnectionException(message);
     }
-    throw new JedisDataException(message);
+    return new JedisDataException(message);
   }
 
   public static String readErrorLineIfPossible(RedisInputStream is) {
@@ -172,11 +360,72 @@ public final class Protocol {
     case MINUS_BYTE:
       processError(is);
       return null;
+    case UNDERSCORE_BYTE:
+      is.readLineBytes();
+      return null;
+    case COMMA_BYTE:
+    case LEFT_BRACE_BYTE:
+      // doubles and big numbers are sent as text, like the bulk replies of RESP2
+      return is.readLineBytes();
+    case HASH_BYTE:
+      return processBoolean(is);
+    case EQUAL_BYTE:
+      return processVerbatimReply(is);
+    case EXCLAMATION_BYTE:
+      throw errorReply(SafeEncoder.encode(processBulkReply(is)));
+    case PERCENT_BYTE:
+      return processMapReply(is);
+    case TILDE_BYTE:
+    case GREATER_THAN_BYTE:
+      return processMultiBulkReply(is);
+    case PIPE_BYTE:
+      // attributes only annotate the reply that follows
+      processMapReply(is);
+      return process(is);
     default:
       throw new JedisConnectionException("Unknown reply: " + (char) b);
     }
   }
 
+  /**
+   * RESP3 booleans are read as the 1/0 integers the same commands reply with in RESP2.
+   */
+  private static Long processBoolean(final RedisInputStream is) {
+    final byte value = is.readByte();
+    is.readLineBytes();
+    return value == 't' ? 1L : 0L;
+  }
+
+  private static byte[] processVerbatimReply(final RedisInputStream is) {
+    final byte[] read = processBulkReply(is);
+    if (read == null || read.length < VERBATIM_PREFIX_LENGTH) {
+      return read;
+    }
+    final byte[] text = new byte[read.length - VERBATIM_PREFIX_LENGTH];
+    System.arraycopy(read, VERBATIM_PREFIX_LENGTH, text, 0, text.length);
+    return text;
+  }
+
+  /**
+   * RESP3 maps are read as the alternating key, value multi bulk of RESP2, so the existing builders
+   * (e.g. for HGETALL) decode them unchanged.
+   */
+  private static List<Object> processMapReply(final RedisInputStream is) {
+    final int num = is.readIntCrLf();
+    if (num == -1) {
+      return null;
+    }
+    final List<Object> ret = new ArrayList<>(num * 2);
+    for (int i = 0; i < num * 2; i++) {
+      try {
+        ret.add(process(is));
+      } catch (JedisDataException e) {
+        ret.add(e);
+      }
+    }
+    return ret;
+  }
+
   private static byte[] processStatusCodeReply(final RedisInputStream is) {
     return is.readLineBytes();
   }
@@ -227,16 +476,46 @@ public final class Protocol {
     return process(is);
   }
 
+  /**
+   * Read the next reply, handing the RESP3 push frames received before it to the listener. Without
+   * a listener push frames are returned like replies (e.g. pub/sub messages over RESP3).
+   */
+  public static Object read(final RedisInputStream is, final PushListener listener) {
+    readPushes(is, listener);
+    return process(is);
+  }
+
+  /**
+   * Hand the push frames at the head of the stream to the listener, blocking until the first byte
+   * of the next frame is available. Does nothing without a listener.
+   */
+  public static void readPushes(final RedisInputStream is, final PushListener listener) {
+    if (listener == null) {
+      return;
+    }
+    while (is.peekByte() == GREATER_THAN_BYTE) {
+      is.readByte();
+      final List<Object> push = processMultiBulkReply(is);
+      try {
+        listener.onPush(push);
+      } catch (RuntimeException e) {
+        // the push is consumed, the reply it preceded must still be read
+      }
+    }
+  }
+
   public static final byte[] toByteArray(final boolean value) {
     return value ? BYTES_TRUE : BYTES_FALSE;
   }
 
   public static final byte[] toByteArray(final int value) {
-    return SafeEncoder.encode(String.valueOf(value));
+    return toByteArray((long) value);
   }
 
   public static final byte[] toByteArray(final long value) {
-    return SafeEncoder.encode(String.valueOf(value));
+    final byte[] bytes = new byte[RedisOutputStream.longSize(value)];
+    RedisOutputStream.putLong(value, bytes.length, bytes);
+    return bytes;
   }
 
   public static final byte[] toByteArray(final double value) {
@@ -244,6 +523,8 @@ public final class Protocol {
       return POSITIVE_INFINITY_BYTES;
     } else if (value == Double.NEGATIVE_INFINITY) {
       return NEGATIVE_INFINITY_BYTES;
+    } else if (isExactLong(value)) {
+      return toByteArray((long) value);
     } else {
       return SafeEncoder.encode(String.valueOf(value));
     }
@@ -267,7 +548,7 @@ public final class Protocol {
     PFADD, PFCOUNT, PFMERGE, READONLY, GEOADD, GEODIST, GEOHASH, GEOPOS, GEORADIUS, GEORADIUS_RO,
     GEORADIUSBYMEMBER, GEORADIUSBYMEMBER_RO, MODULE, BITFIELD, HSTRLEN, TOUCH, SWAPDB, MEMORY,
     XADD, XLEN, XDEL, XTRIM, XRANGE, XREVRANGE, XREAD, XACK, XGROUP, XREADGROUP, XPENDING, XCLAIM, LATENCY,
-    ACL, XINFO, BITFIELD_RO;
+    ACL, XINFO, BITFIELD_RO, HELLO;
 
     private final byte[] raw;
 
@@ -0,0 +1,19 @@
+package redis.clients.jedis;
+
+import java.util.List;
+
+/**
+ * RESP3推送消息监听器: 连接在读取回复前遇到的推送帧(如CLIENT TRACKING的invalidate消息)交给监听器处理,
+ * 不作为命令的回复返回
+ *
+ * @see Connection#setPushListener(PushListener)
+ */
+public interface PushListener {
+
+    /**
+     * 在读取回复的线程中回调, 应尽快返回; 抛出的异常被忽略, 不影响后续回复的读取
+     *
+     * @param push 推送内容, 第一个元素为推送类型(如"invalidate"), 其余元素按与回复相同的规则解码
+     */
+    void onPush(List<Object> push);
+}
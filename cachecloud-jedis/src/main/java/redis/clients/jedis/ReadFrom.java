@@ -0,0 +1,121 @@
+package redis.clients.jedis;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 集群读命令的节点选择策略, 从节点的连接在第一次读时发送READONLY, 被隔离的节点(见{@link NodeHealth})不参与选择;
+ * 从节点的数据可能落后于master, slot迁移过程中从节点对已迁出的key返回nil(不返回ASK)
+ */
+public enum ReadFrom {
+
+    /**
+     * 只读master(默认)
+     */
+    MASTER,
+
+    /**
+     * 优先读从节点, 没有可用从节点或从节点连接异常时读master
+     */
+    REPLICA_PREFERRED,
+
+    /**
+     * 只读从节点, 分片没有从节点时抛出JedisNoReachableClusterNodeException, 不回退到master
+     */
+    REPLICA,
+
+    /**
+     * 在master和从节点中选择延迟最低的节点, 连接异常时读master
+     */
+    NEAREST;
+
+    /**
+     * 选择读节点
+     *
+     * @param master   slot的master节点, 可能为null
+     * @param replicas slot的从节点, 不可修改
+     * @return 读节点, REPLICA且没有从节点时返回null
+     */
+    public JedisPool select(JedisPool master, JedisPool[] replicas) {
+        switch (this) {
+            case REPLICA_PREFERRED:
+                JedisPool replica = available(choose(null, replicas), null, replicas);
+                return replica == null || isQuarantined(replica) ? master : replica;
+            case REPLICA:
+                return available(choose(null, replicas), null, replicas);
+            case NEAREST:
+                return available(choose(master, replicas), master, replicas);
+            default:
+                return master;
+        }
+    }
+
+    /**
+     * 选中的节点被隔离时改用其它未被隔离的节点, 都被隔离时仍返回选中的节点
+     */
+    private static JedisPool available(JedisPool chosen, JedisPool master, JedisPool[] replicas) {
+        if (chosen == null || !isQuarantined(chosen)) {
+            return chosen;
+        }
+        JedisPool alternate = alternate(master, replicas, chosen);
+        return alternate == null ? chosen : alternate;
+    }
+
+    private static boolean isQuarantined(JedisPool pool) {
+        NodeHealth nodeHealth = pool.getNodeHealth();
+        return nodeHealth != null && nodeHealth.isQuarantined();
+    }
+
+    /**
+     * power of two choices: 随机取两个候选节点, 选择{@link NodeLatency#getCost()}较小的一个
+     *
+     * @param master   为null时只在replicas中选择
+     * @param replicas
+     */
+    private static JedisPool choose(JedisPool master, JedisPool[] replicas) {
+        int size = master == null ? replicas.length : replicas.length + 1;
+        if (size <= 1) {
+            return size == 0 ? null : candidate(master, replicas, 0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        JedisPool firstPool = candidate(master, replicas, first);
+        JedisPool secondPool = candidate(master, replicas, second);
+        return cost(secondPool) < cost(firstPool) ? secondPool : firstPool;
+    }
+
+    /**
+     * 对冲读使用的节点: master和从节点中除exclude及被隔离节点外代价最小的节点
+     *
+     * @return 没有其它节点时返回null
+     */
+    static JedisPool alternate(JedisPool master, JedisPool[] replicas, JedisPool exclude) {
+        JedisPool alternate = null;
+        for (int i = 0; i <= replicas.length; i++) {
+            JedisPool pool = candidate(master, replicas, i);
+            if (pool != null && pool != exclude && !isQuarantined(pool) && (alternate == null || cost(pool) < cost(alternate))) {
+                alternate = pool;
+            }
+        }
+        return alternate;
+    }
+
+    private static JedisPool candidate(JedisPool master, JedisPool[] replicas, int index) {
+        return index < replicas.length ? replicas[index] : master;
+    }
+
+    private static double cost(JedisPool pool) {
+        NodeLatency nodeLatency = pool.getNodeLatency();
+        return nodeLatency == null ? 0 : nodeLatency.getCost();
+    }
+
+    /**
+     * 读节点连接异常后重试使用的策略: REPLICA仍只读从节点, 其余回退到master
+     */
+    public ReadFrom fallback() {
+        return this == REPLICA ? REPLICA : MASTER;
+    }
+}
@@ -17,7 +17,7 @@ public class SubPubClusterCommand {
 
     private final int redirections;
 
-    private ThreadLocal<Jedis> askConnection = new ThreadLocal<Jedis>();
+    final ThreadLocal<Jedis> askConnection = new ThreadLocal<Jedis>();
 
     public SubPubClusterCommand(PipelineCluster pipelineCluster, JedisClusterConnectionHandler connectionHandler,
             int redirections) {
@@ -26,7 +26,7 @@ public class SubPubClusterCommand {
         this.redirections = redirections;
     }
 
-    private Jedis returnRetriesJedis(String key, int redirections,
+    Jedis returnRetriesJedis(String key, int redirections,
             boolean tryRandomNode, boolean asking) {
         if (redirections <= 0) {
             throw new JedisClusterMaxAttemptsException("No more cluster attempts left.? key=" + key);
@@ -35,10 +35,9 @@ public class SubPubClusterCommand {
         Jedis jedis = null;
         try {
             if (asking) {
-                // TODO: Pipeline asking with the original command to make it
-                // faster....
+                // sent in one flush with the next command of the connection
                 jedis = askConnection.get();
-                jedis.asking();
+                jedis.getClient().askingWithNextCommand();
 
                 // if asking success, reset asking flag
                 asking = false;
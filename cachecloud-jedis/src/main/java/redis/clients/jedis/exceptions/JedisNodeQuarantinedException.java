@@ -0,0 +1,21 @@
+package redis.clients.jedis.exceptions;
+
+/**
+ * This exception will be thrown when a connection is requested from a node quarantined by its
+ * circuit breaker, instead of waiting for the connect timeout of a node that is known to be down.
+ */
+public class JedisNodeQuarantinedException extends JedisConnectionException {
+  private static final long serialVersionUID = -2740567125862409217L;
+
+  public JedisNodeQuarantinedException(String message) {
+    super(message);
+  }
+
+  public JedisNodeQuarantinedException(Throwable cause) {
+    super(cause);
+  }
+
+  public JedisNodeQuarantinedException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -0,0 +1,20 @@
+package redis.clients.jedis.exceptions;
+
+/**
+ * This exception will be thrown when a cluster pipeline exceeds its configured reply size limit.
+ */
+public class JedisPipelineLimitException extends JedisException {
+  private static final long serialVersionUID = 5386263479417521902L;
+
+  public JedisPipelineLimitException(String message) {
+    super(message);
+  }
+
+  public JedisPipelineLimitException(Throwable e) {
+    super(e);
+  }
+
+  public JedisPipelineLimitException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -0,0 +1,75 @@
+package redis.clients.jedis.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PipelineCluster批量命令并行执行及异步命令的线程池工厂
+ */
+public final class PipelineExecutors {
+
+    private static final Logger logger = LoggerFactory.getLogger(PipelineExecutors.class);
+
+    private static final String THREAD_NAME_PREFIX = "PipelineClusterExecutor";
+
+    private static final String ASYNC_THREAD_NAME_PREFIX = "AsyncPipelineCluster";
+
+    private PipelineExecutors() {
+    }
+
+    /**
+     * 创建固定大小的线程池, 队列满时由调用线程执行(退化为顺序执行)
+     *
+     * @param threads 线程数
+     */
+    public static ExecutorService newFixedExecutor(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(threads * 16), new NamedThreadFactory(THREAD_NAME_PREFIX),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 创建异步命令使用的有界线程池, 队列满时拒绝(由调用方返回失败的Future), 不阻塞调用线程
+     *
+     * @param threads   线程数
+     * @param queueSize 等待队列长度
+     */
+    public static ExecutorService newAsyncExecutor(int threads, int queueSize) {
+        if (threads <= 0 || queueSize <= 0) {
+            throw new IllegalArgumentException("threads and queueSize must be positive: " + threads + "," + queueSize);
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new NamedThreadFactory(ASYNC_THREAD_NAME_PREFIX),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * JDK21+使用虚拟线程, 否则退化为固定大小的线程池
+     *
+     * @param threads 不支持虚拟线程时的线程数
+     */
+    public static ExecutorService newExecutor(int threads) {
+        try {
+            Method method = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (NoSuchMethodException e) {
+            // JDK21以下
+        } catch (Exception e) {
+            logger.warn("create virtual thread executor error, fallback to fixed executor: {}", e.getMessage());
+        }
+        return newFixedExecutor(threads);
+    }
+}
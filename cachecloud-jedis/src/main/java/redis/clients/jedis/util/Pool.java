@@ -169,6 +169,15 @@ public abstract class Pool<T> implements Closeable {
     return this.internalPool.getMaxBorrowWaitTimeMillis();
   }
 
+  /**
+   * Returns the cap on the number of instances managed by this pool.
+   *
+   * @return The cap on the number of instances, a negative value for no limit.
+   */
+  public int getMaxTotal() {
+    return this.internalPool.getMaxTotal();
+  }
+
   private boolean poolInactive() {
     return this.internalPool == null || this.internalPool.isClosed();
   }
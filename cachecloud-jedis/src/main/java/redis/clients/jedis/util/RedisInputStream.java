@@ -27,6 +27,8 @@ public class RedisInputStream extends FilterInputStream {
 
   protected int count, limit;
 
+  private long readBytes;
+
   public RedisInputStream(InputStream in, int size) {
     super(in);
     if (size <= 0) {
@@ -39,11 +41,26 @@ public class RedisInputStream extends FilterInputStream {
     this(in, 8192);
   }
 
+  /**
+   * @return total number of bytes read from the underlying stream
+   */
+  public long getReadBytes() {
+    return readBytes;
+  }
+
   public byte readByte() throws JedisConnectionException {
     ensureFill();
     return buf[count++];
   }
 
+  /**
+   * @return the next byte without consuming it, blocking until it is available
+   */
+  public byte peekByte() throws JedisConnectionException {
+    ensureFill();
+    return buf[count];
+  }
+
   public String readLine() {
     final StringBuilder sb = new StringBuilder();
     while (true) {
@@ -201,6 +218,7 @@ public class RedisInputStream extends FilterInputStream {
         if (limit == -1) {
           throw new JedisConnectionException("Unexpected end of stream.");
         }
+        readBytes += limit;
       } catch (IOException e) {
         throw new JedisConnectionException(e);
       }
@@ -14,6 +14,8 @@ public final class RedisOutputStream extends FilterOutputStream {
 
   protected int count;
 
+  private long flushedBytes;
+
   private final static int[] sizeTable = { 9, 99, 999, 9999, 99999, 999999, 9999999, 99999999,
           999999999, Integer.MAX_VALUE };
 
@@ -35,6 +37,9 @@ public final class RedisOutputStream extends FilterOutputStream {
           'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k', 'l', 'm', 'n', 'o', 'p', 'q', 'r', 's',
           't', 'u', 'v', 'w', 'x', 'y', 'z' };
 
+  private final static byte[] LONG_MIN_VALUE = { '-', '9', '2', '2', '3', '3', '7', '2', '0', '3',
+          '6', '8', '5', '4', '7', '7', '5', '8', '0', '8' };
+
   public RedisOutputStream(final OutputStream out) {
     this(out, 8192);
   }
@@ -50,10 +55,18 @@ public final class RedisOutputStream extends FilterOutputStream {
   private void flushBuffer() throws IOException {
     if (count > 0) {
       out.write(buf, 0, count);
+      flushedBytes += count;
       count = 0;
     }
   }
 
+  /**
+   * @return total number of bytes written to this stream, including bytes still buffered
+   */
+  public long getWrittenBytes() {
+    return flushedBytes + count;
+  }
+
   public void write(final byte b) throws IOException {
     if (count == buf.length) {
       flushBuffer();
@@ -71,6 +84,7 @@ public final class RedisOutputStream extends FilterOutputStream {
     if (len >= buf.length) {
       flushBuffer();
       out.write(b, off, len);
+      flushedBytes += len;
     } else {
       if (len >= buf.length - count) {
         flushBuffer();
@@ -128,6 +142,117 @@ public final class RedisOutputStream extends FilterOutputStream {
     writeCrLf();
   }
 
+  /**
+   * Write a long in decimal straight into the buffer, without going through its String.
+   */
+  public void writeLong(final long value) throws IOException {
+    final int size = longSize(value);
+    if (size >= buf.length - count) {
+      flushBuffer();
+    }
+    count += size;
+    putLong(value, count, buf);
+  }
+
+  /**
+   * Write the UTF-8 encoding of a string straight into the buffer, without an intermediate byte[].
+   * Unpaired surrogates are written as '?', like {@link String#getBytes}.
+   */
+  public void writeUtf8(final String str) throws IOException {
+    final int length = str.length();
+    for (int i = 0; i < length; i++) {
+      if (4 >= buf.length - count) {
+        flushBuffer();
+      }
+      final char c = str.charAt(i);
+      if (c < 0x80) {
+        buf[count++] = (byte) c;
+      } else if (c < 0x800) {
+        buf[count++] = (byte) (0xc0 | (c >> 6));
+        buf[count++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length
+          && Character.isLowSurrogate(str.charAt(i + 1))) {
+        final int codePoint = Character.toCodePoint(c, str.charAt(++i));
+        buf[count++] = (byte) (0xf0 | (codePoint >> 18));
+        buf[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+        buf[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        buf[count++] = (byte) (0x80 | (codePoint & 0x3f));
+      } else if (Character.isSurrogate(c)) {
+        buf[count++] = '?';
+      } else {
+        buf[count++] = (byte) (0xe0 | (c >> 12));
+        buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        buf[count++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+  }
+
+  /**
+   * @return number of bytes {@link #writeUtf8} writes for the string
+   */
+  public static int utf8Length(final String str) {
+    final int length = str.length();
+    int bytes = length;
+    for (int i = 0; i < length; i++) {
+      final char c = str.charAt(i);
+      if (c >= 0x80) {
+        if (c < 0x800) {
+          bytes++;
+        } else if (Character.isHighSurrogate(c) && i + 1 < length
+            && Character.isLowSurrogate(str.charAt(i + 1))) {
+          // 4 bytes for the two chars of the pair
+          bytes += 2;
+          i++;
+        } else if (!Character.isSurrogate(c)) {
+          bytes += 2;
+        }
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * @return number of chars of the decimal representation of the long
+   */
+  public static int longSize(final long value) {
+    if (value == Long.MIN_VALUE) {
+      return LONG_MIN_VALUE.length;
+    }
+    long v = value < 0 ? -value : value;
+    int size = value < 0 ? 2 : 1;
+    while (v >= 10) {
+      v /= 10;
+      size++;
+    }
+    return size;
+  }
+
+  /**
+   * Write the decimal representation of the long into dest, ending right before index end.
+   */
+  public static void putLong(final long value, int end, final byte[] dest) {
+    if (value == Long.MIN_VALUE) {
+      System.arraycopy(LONG_MIN_VALUE, 0, dest, end - LONG_MIN_VALUE.length, LONG_MIN_VALUE.length);
+      return;
+    }
+    long v = value < 0 ? -value : value;
+    while (v >= 100) {
+      final int r = (int) (v % 100);
+      v /= 100;
+      dest[--end] = DigitOnes[r];
+      dest[--end] = DigitTens[r];
+    }
+    if (v >= 10) {
+      dest[--end] = DigitOnes[(int) v];
+      dest[--end] = DigitTens[(int) v];
+    } else {
+      dest[--end] = digits[(int) v];
+    }
+    if (value < 0) {
+      dest[--end] = '-';
+    }
+  }
+
   @Override
   public void flush() throws IOException {
     flushBuffer();
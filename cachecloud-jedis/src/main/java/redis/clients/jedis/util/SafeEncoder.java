@@ -1,10 +1,8 @@
 package redis.clients.jedis.util;
 
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 
-import redis.clients.jedis.Protocol;
 import redis.clients.jedis.exceptions.JedisDataException;
-import redis.clients.jedis.exceptions.JedisException;
 
 /**
  * The only reason to have this is to be able to compatible with java 1.5 :(
@@ -23,21 +21,14 @@ public final class SafeEncoder {
   }
 
   public static byte[] encode(final String str) {
-    try {
-      if (str == null) {
-        throw new JedisDataException("value sent to redis cannot be null");
-      }
-      return str.getBytes(Protocol.CHARSET);
-    } catch (UnsupportedEncodingException e) {
-      throw new JedisException(e);
+    if (str == null) {
+      throw new JedisDataException("value sent to redis cannot be null");
     }
+    // Charset instead of its name (Protocol.CHARSET) saves the charset lookup on every call
+    return str.getBytes(StandardCharsets.UTF_8);
   }
 
   public static String encode(final byte[] data) {
-    try {
-      return new String(data, Protocol.CHARSET);
-    } catch (UnsupportedEncodingException e) {
-      throw new JedisException(e);
-    }
+    return new String(data, StandardCharsets.UTF_8);
   }
 }
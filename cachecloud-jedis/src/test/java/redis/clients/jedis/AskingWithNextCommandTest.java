@@ -0,0 +1,172 @@
+package redis.clients.jedis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.array;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.bulk;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.error;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.integer;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.slotRange;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.tests.utils.FakeRedisServer;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+/**
+ * {@link BinaryClient#askingWithNextCommand()} and the dropped replies of {@link Connection}: ASKING
+ * goes out in the flush of the next command and its reply is read and dropped ahead of it.
+ */
+public class AskingWithNextCommandTest {
+
+  private static final List<String> ASKING = Collections.singletonList("ASKING");
+
+  // reply of node b to ASKING, null closes the connection
+  private final AtomicReference<String> askingReply = new AtomicReference<>(FakeRedisServer.ok());
+  private FakeRedisServer nodeA;
+  private FakeRedisServer nodeB;
+  private Jedis jedis;
+
+  @Before
+  public void setUp() throws IOException {
+    // a owns every slot and redirects "ask:" keys to b
+    nodeA = new FakeRedisServer((connection, command) -> replyA(command));
+    nodeB = new FakeRedisServer((connection, command) -> replyB(command));
+    jedis = new Jedis(nodeB.getHostAndPort().getHost(), nodeB.getPort());
+  }
+
+  @After
+  public void tearDown() {
+    jedis.close();
+    nodeA.close();
+    nodeB.close();
+  }
+
+  private String replyA(List<String> command) {
+    String name = command.get(0).toUpperCase();
+    if (name.equals("CLUSTER")) {
+      return array(slotRange(0, 16383, nodeA.getHostAndPort()));
+    }
+    if (command.size() > 1 && command.get(1).startsWith("ask:")) {
+      return error("ASK " + JedisClusterCRC16.getSlot(command.get(1)) + " 127.0.0.1:" + nodeB.getPort());
+    }
+    if (name.equals("GET")) {
+      return bulk("a-" + command.get(1));
+    }
+    if (name.equals("PUBLISH")) {
+      return integer(1);
+    }
+    return error("ERR unknown command '" + command.get(0) + "'");
+  }
+
+  private String replyB(List<String> command) {
+    String name = command.get(0).toUpperCase();
+    if (name.equals("ASKING")) {
+      return askingReply.get();
+    }
+    if (name.equals("GET")) {
+      return bulk("b-" + command.get(1));
+    }
+    if (name.equals("PUBLISH")) {
+      return integer(2);
+    }
+    return error("ERR unknown command '" + command.get(0) + "'");
+  }
+
+  private List<List<String>> lastBatch(FakeRedisServer node) {
+    List<List<List<String>>> batches = node.getBatches();
+    return batches.get(batches.size() - 1);
+  }
+
+  @Test(timeout = 15000)
+  public void askingGoesOutWithNextCommand() {
+    jedis.getClient().askingWithNextCommand();
+    assertEquals(1, jedis.getClient().getDiscardedReplies());
+    assertEquals("b-k", jedis.get("k"));
+    assertEquals(Arrays.asList(ASKING, Arrays.asList("GET", "k")), lastBatch(nodeB));
+    assertEquals(0, jedis.getClient().getDiscardedReplies());
+    // the next command reads its own reply
+    assertEquals("b-k2", jedis.get("k2"));
+  }
+
+  @Test(timeout = 15000)
+  public void askingErrorIsDropped() {
+    askingReply.set(error("ERR ASKING not allowed"));
+    jedis.getClient().askingWithNextCommand();
+    assertEquals("b-k", jedis.get("k"));
+    assertEquals("b-k2", jedis.get("k2"));
+  }
+
+  @Test(timeout = 15000)
+  public void connectionErrorResetsDroppedReplies() {
+    jedis.getClient().connect();
+    askingReply.set(null);
+    jedis.getClient().askingWithNextCommand();
+    jedis.getClient().askingWithNextCommand();
+    assertEquals(2, jedis.getClient().getDiscardedReplies());
+    try {
+      jedis.get("k");
+      fail();
+    } catch (JedisConnectionException e) {
+      // the node closed the connection on the first ASKING
+    }
+    assertEquals(0, jedis.getClient().getDiscardedReplies());
+  }
+
+  @Test(timeout = 15000)
+  public void disconnectResetsDroppedReplies() {
+    jedis.getClient().askingWithNextCommand();
+    jedis.getClient().disconnect();
+    assertEquals(0, jedis.getClient().getDiscardedReplies());
+    // a new connection has no ASKING reply to drop
+    assertEquals("b-k", jedis.get("k"));
+    // the buffered ASKING is flushed to the old connection on disconnect
+    for (List<List<String>> batch : nodeB.getBatches()) {
+      if (batch.contains(Arrays.asList("GET", "k"))) {
+        assertEquals(Collections.singletonList(Arrays.asList("GET", "k")), batch);
+      }
+    }
+  }
+
+  @Test(timeout = 15000)
+  public void askRedirectSendsAskingWithCommand() {
+    try (PipelineCluster cluster = new PipelineCluster(new GenericObjectPoolConfig(),
+        new HashSet<>(Collections.singletonList(nodeA.getHostAndPort())), 2000, 2000, 5)) {
+      assertEquals("b-ask:k", cluster.get("ask:k"));
+      assertEquals(Arrays.asList(ASKING, Arrays.asList("GET", "ask:k")), lastBatch(nodeB));
+
+      // an ASKING error does not fail the redirected command
+      askingReply.set(error("ERR ASKING not allowed"));
+      assertEquals("b-ask:k2", cluster.get("ask:k2"));
+    }
+  }
+
+  @Test(timeout = 15000)
+  public void subPubAskingGoesOutWithNextCommand() {
+    try (PipelineCluster cluster = new PipelineCluster(new GenericObjectPoolConfig(),
+        new HashSet<>(Collections.singletonList(nodeA.getHostAndPort())), 2000, 2000, 5)) {
+      SubPubClusterCommand command = new SubPubClusterCommand(cluster, cluster.getConnectionHandler(), 5);
+      command.askConnection.set(cluster.getConnectionHandler().getConnectionFromNode(nodeB.getHostAndPort()));
+      Jedis asking = command.returnRetriesJedis("channel", 5, false, true);
+      try {
+        assertEquals(Long.valueOf(2), asking.publish("channel", "m"));
+        assertEquals(Arrays.asList(ASKING, Arrays.asList("PUBLISH", "channel", "m")), lastBatch(nodeB));
+      } finally {
+        command.releaseConnection(asking);
+      }
+      // without a redirect the channel goes to its slot owner
+      assertEquals(Long.valueOf(1), cluster.publish("channel", "m"));
+    }
+  }
+}
@@ -0,0 +1,175 @@
+package redis.clients.jedis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.array;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.bulk;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.error;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.slotRange;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.tests.utils.FakeRedisServer;
+
+/**
+ * {@link AsyncPipelineCluster} futures against a fake cluster node: completion, failed commands and
+ * the shared timeout scheduler.
+ */
+public class AsyncPipelineClusterTest {
+
+  private final CountDownLatch release = new CountDownLatch(1);
+  private FakeRedisServer node;
+  private PipelineCluster cluster;
+  private AsyncPipelineCluster async;
+
+  @Before
+  public void setUp() throws IOException {
+    node = new FakeRedisServer((connection, command) -> reply(command));
+    cluster = new PipelineCluster(new GenericObjectPoolConfig(),
+        new HashSet<>(Collections.singletonList(node.getHostAndPort())), 2000, 2000, 5);
+    async = new AsyncPipelineCluster(cluster, 2, 4);
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    async.close();
+    cluster.close();
+    node.close();
+  }
+
+  private String reply(List<String> command) {
+    String name = command.get(0).toUpperCase();
+    if (name.equals("CLUSTER")) {
+      return array(slotRange(0, 16383, node.getHostAndPort()));
+    }
+    if (name.equals("GET")) {
+      String key = command.get(1);
+      if (key.equals("wrong")) {
+        return error("WRONGTYPE Operation against a key holding the wrong kind of value");
+      }
+      if (key.startsWith("slow")) {
+        try {
+          release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      return bulk("v-" + key);
+    }
+    return error("ERR unknown command '" + command.get(0) + "'");
+  }
+
+  @Test(timeout = 15000)
+  public void futuresCompleteWithResults() throws Exception {
+    CompletableFuture<String> get = async.get("k1");
+    CompletableFuture<Map<String, String>> mget = async.mget(Arrays.asList("k2", "k3"));
+    Map<String, String> expected = new HashMap<>();
+    expected.put("k2", "v-k2");
+    expected.put("k3", "v-k3");
+    assertEquals("v-k1", get.get(5, TimeUnit.SECONDS));
+    assertEquals(expected, mget.get(5, TimeUnit.SECONDS));
+    assertEquals("v-k4", async.execute(c -> c.get("k4")).get(5, TimeUnit.SECONDS));
+  }
+
+  @Test(timeout = 15000)
+  public void failedCommandCompletesExceptionally() throws Exception {
+    CompletableFuture<String> future = async.get("wrong");
+    try {
+      future.get(5, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof JedisDataException);
+      assertTrue(e.getCause().getMessage().startsWith("WRONGTYPE"));
+    }
+    assertTrue(future.isCompletedExceptionally());
+  }
+
+  @Test(timeout = 15000)
+  public void slowCommandTimesOut() throws Exception {
+    async.setTimeout(100, TimeUnit.MILLISECONDS);
+    long start = System.nanoTime();
+    CompletableFuture<String> future = async.get("slow");
+    try {
+      future.get(5, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof TimeoutException);
+      assertEquals("AsyncPipelineCluster timeout after 100ms", e.getCause().getMessage());
+    }
+    // well before the 2s socket timeout
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+
+    // the late reply does not change the outcome
+    release.countDown();
+    assertEquals("v-k1", async.get("k1").get(5, TimeUnit.SECONDS));
+    assertTrue(future.isCompletedExceptionally());
+  }
+
+  @Test(timeout = 15000)
+  public void completedFutureCancelsTimeoutTask() throws Exception {
+    async.setTimeout(60, TimeUnit.SECONDS);
+    assertEquals("v-k1", async.get("k1").get(5, TimeUnit.SECONDS));
+    // the timeout task is removed from the shared scheduler once the future completes
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!AsyncPipelineCluster.TIMEOUT_SCHEDULER.getQueue().isEmpty() && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertTrue(AsyncPipelineCluster.TIMEOUT_SCHEDULER.getQueue().isEmpty());
+  }
+
+  @Test(timeout = 15000)
+  public void withTimeoutKeepsDoneFuture() {
+    CompletableFuture<String> done = CompletableFuture.completedFuture("v");
+    assertTrue(done == AsyncPipelineCluster.withTimeout(done, 1, TimeUnit.MILLISECONDS));
+    assertFalse(done.isCompletedExceptionally());
+  }
+
+  @Test(timeout = 15000)
+  public void fullQueueIsRejected() throws Exception {
+    // two threads busy, four queued
+    for (int i = 0; i < 6; i++) {
+      async.get("slow" + i);
+    }
+    CompletableFuture<String> rejected = async.get("k1");
+    assertTrue(rejected.isCompletedExceptionally());
+    try {
+      rejected.get();
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof RejectedExecutionException);
+    }
+  }
+
+  @Test(timeout = 15000)
+  public void closeShutsDownOwnExecutor() throws Exception {
+    async.close();
+    CompletableFuture<String> future = async.get("k1");
+    try {
+      future.get(5, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof RejectedExecutionException);
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package redis.clients.jedis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sohu.tv.cc.client.spectator.AsyncStatsCollector;
+import com.sohu.tv.cc.client.spectator.ClientConfig;
+
+import redis.clients.jedis.Protocol.Command;
+import redis.clients.jedis.tests.utils.FakeRedisServer;
+
+/**
+ * String and mixed arguments go straight into the output buffer also when a stats collector
+ * tracks the connection.
+ */
+public class ConnectionStatsTest {
+
+  private FakeRedisServer server;
+  private AsyncStatsCollector statsCollector;
+  private Connection connection;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new FakeRedisServer((c, command) -> FakeRedisServer.ok());
+    statsCollector = new AsyncStatsCollector(1, new ClientConfig(Collections.<String, Object> emptyMap(), true));
+    connection = new Connection("127.0.0.1", server.getPort(), statsCollector);
+  }
+
+  @After
+  public void tearDown() {
+    connection.close();
+    server.close();
+  }
+
+  @Test(timeout = 5000)
+  public void stringArgumentsWithStats() {
+    connection.sendCommand(Command.SET, "kéy", "😀");
+    assertEquals("OK", connection.getStatusCodeReply());
+    connection.sendCommand(Command.ZADD, "z", 2.5, 3L, "m");
+    assertEquals("OK", connection.getStatusCodeReply());
+    List<List<String>> commands = server.getCommands();
+    assertEquals(Arrays.asList("SET", "kéy", "😀"), commands.get(0));
+    assertEquals(Arrays.asList("ZADD", "z", "2.5", "3", "m"), commands.get(1));
+  }
+
+  @Test(timeout = 5000)
+  public void recordedCommandsStillReplay() {
+    connection.setRecordLastCommand(true);
+    connection.sendCommand(Command.GET, "k");
+    assertEquals("OK", connection.getStatusCodeReply());
+    assertEquals(Arrays.asList("GET", "k"), server.getCommands().get(0));
+  }
+}
@@ -0,0 +1,204 @@
+package redis.clients.jedis;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.util.RedisInputStream;
+
+/**
+ * {@link FlatReply} must decode RESP exactly like Protocol.read followed by the matching
+ * BuilderFactory builder.
+ */
+public class FlatReplyTest {
+
+  private static RedisInputStream stream(String resp) {
+    // a tiny buffer splits replies across refills
+    return new RedisInputStream(new ByteArrayInputStream(resp.getBytes(StandardCharsets.UTF_8)), 3);
+  }
+
+  private static FlatReply flat(String resp) {
+    FlatReply reply = new FlatReply();
+    reply.read(stream(resp));
+    return reply;
+  }
+
+  private static Object legacy(String resp) {
+    return Protocol.read(stream(resp));
+  }
+
+  @Test
+  public void bulkAndStatus() {
+    String bulk = "$5\r\nhello\r\n";
+    assertEquals(BuilderFactory.STRING.build(legacy(bulk)), flat(bulk).getString(0));
+    assertArrayEquals((byte[]) legacy(bulk), flat(bulk).getBytes(0));
+    assertEquals(5, flat(bulk).getReplyBytes());
+    assertEquals("OK", flat("+OK\r\n").getString(0));
+    // binary safe, CRLF inside a bulk string
+    assertEquals("a\r\nb", flat("$4\r\na\r\nb\r\n").getString(0));
+    assertEquals("", flat("$0\r\n\r\n").getString(0));
+  }
+
+  @Test
+  public void nullBulkAndNullArray() {
+    FlatReply nullBulk = flat("$-1\r\n");
+    assertTrue(nullBulk.isNull(0));
+    assertNull(legacy("$-1\r\n"));
+    assertNull(nullBulk.getString(0));
+    assertNull(nullBulk.getBytes(0));
+    assertNull(flat("*-1\r\n").toStringList());
+    assertNull(BuilderFactory.STRING_LIST.build(legacy("*-1\r\n")));
+    assertNull(flat("*-1\r\n").toTupleSet());
+  }
+
+  @Test
+  public void stringListWithNullElements() {
+    String resp = "*4\r\n$1\r\na\r\n$-1\r\n$0\r\n\r\n$3\r\nbcd\r\n";
+    assertEquals(BuilderFactory.STRING_LIST.build(legacy(resp)), flat(resp).toStringList());
+    assertEquals(0, flat("*0\r\n").toStringList().size());
+  }
+
+  @Test
+  public void stringMap() {
+    String resp = "*4\r\n$2\r\nf1\r\n$2\r\nv1\r\n$2\r\nf2\r\n$2\r\nv2\r\n";
+    assertEquals(BuilderFactory.STRING_MAP.build(legacy(resp)), flat(resp).toStringMap());
+  }
+
+  @Test
+  public void tupleSetKeepsOrderAndScores() {
+    String resp = "*8\r\n$1\r\na\r\n$1\r\n1\r\n$1\r\nb\r\n$4\r\n-2.5\r\n$1\r\nc\r\n$3\r\ninf\r\n$1\r\nd\r\n$4\r\n-inf\r\n";
+    Set<Tuple> expected = BuilderFactory.TUPLE_ZSET.build(legacy(resp));
+    Set<Tuple> actual = flat(resp).toTupleSet();
+    assertEquals(new ArrayList<>(expected), new ArrayList<>(actual));
+    List<Double> scores = new ArrayList<>();
+    for (Tuple tuple : actual) {
+      scores.add(tuple.getScore());
+    }
+    assertEquals(Double.POSITIVE_INFINITY, scores.get(2), 0);
+    assertEquals(Double.NEGATIVE_INFINITY, scores.get(3), 0);
+  }
+
+  @Test
+  public void doubles() {
+    String[] values = { "0", "-1", "3.25", "123456789012345", "1234567890123456789", "1e3", "-0.5", "inf",
+        "-inf", "+inf" };
+    for (String value : values) {
+      String resp = "$" + value.length() + "\r\n" + value + "\r\n";
+      Double expected = BuilderFactory.DOUBLE.build(legacy(resp));
+      assertEquals(value, expected, flat(resp).getDouble(0), 0);
+    }
+    assertEquals(42, flat(":42\r\n").getDouble(0), 0);
+  }
+
+  @Test
+  public void integers() {
+    assertEquals(BuilderFactory.LONG.build(legacy(":-12\r\n")).longValue(), flat(":-12\r\n").getLong(0));
+    assertEquals(Long.MAX_VALUE, flat("$19\r\n9223372036854775807\r\n").getLong(0));
+    assertEquals(Long.MIN_VALUE, flat("$20\r\n-9223372036854775808\r\n").getLong(0));
+    assertEquals(1234567890123456L, flat("$16\r\n1234567890123456\r\n").getLong(0));
+  }
+
+  @Test
+  public void integerOverflowThrows() {
+    String[] values = { "9223372036854775808", "-9223372036854775809", "12345678901234567890",
+        "99999999999999999999999" };
+    for (String value : values) {
+      try {
+        flat("$" + value.length() + "\r\n" + value + "\r\n").getLong(0);
+        fail(value);
+      } catch (JedisDataException e) {
+        assertTrue(e.getMessage().contains(value));
+      }
+    }
+    try {
+      flat("$2\r\n1a\r\n").getLong(0);
+      fail();
+    } catch (JedisDataException e) {
+    }
+    try {
+      flat("$1\r\n-\r\n").getLong(0);
+      fail();
+    } catch (JedisDataException e) {
+    }
+  }
+
+  @Test
+  public void nestedArraysAreRejected() {
+    String resp = "*2\r\n$1\r\na\r\n*1\r\n$1\r\nb\r\n";
+    FlatReply reply = flat(resp);
+    assertEquals(4, reply.size());
+    assertEquals(FlatReply.ARRAY, reply.getType(2));
+    try {
+      reply.toStringList();
+      fail();
+    } catch (JedisDataException e) {
+    }
+    try {
+      reply.toStringMap();
+      fail();
+    } catch (JedisDataException e) {
+    }
+  }
+
+  @Test
+  public void topLevelErrorThrowsLikeProtocol() {
+    String resp = "-ERR wrong number of arguments\r\n";
+    RuntimeException expected = null;
+    try {
+      legacy(resp);
+    } catch (RuntimeException e) {
+      expected = e;
+    }
+    try {
+      flat(resp);
+      fail();
+    } catch (RuntimeException e) {
+      assertEquals(expected.getClass(), e.getClass());
+      assertEquals(expected.getMessage(), e.getMessage());
+    }
+    // MOVED keeps its type
+    try {
+      flat("-MOVED 3999 127.0.0.1:6381\r\n");
+      fail();
+    } catch (RuntimeException e) {
+      assertEquals(Protocol.errorReply("MOVED 3999 127.0.0.1:6381").getClass(), e.getClass());
+    }
+  }
+
+  @Test
+  public void nestedErrorThrowsWhenRead() {
+    FlatReply reply = flat("*2\r\n$1\r\na\r\n-ERR inner\r\n");
+    assertEquals("a", reply.getString(1));
+    try {
+      reply.getString(2);
+      fail();
+    } catch (JedisDataException e) {
+      assertEquals("ERR inner", e.getMessage());
+    }
+  }
+
+  @Test
+  public void readerIsReusable() {
+    FlatReply reply = new FlatReply();
+    RedisInputStream is = stream("*2\r\n$1\r\na\r\n$1\r\nb\r\n:7\r\n$3\r\nxyz\r\n");
+    reply.read(is);
+    assertEquals(2, reply.toStringList().size());
+    reply.read(is);
+    assertEquals(1, reply.size());
+    assertEquals(7, reply.getLong(0));
+    reply.read(is);
+    assertEquals("xyz", reply.getString(0));
+    assertEquals(3, reply.getReplyBytes());
+  }
+}
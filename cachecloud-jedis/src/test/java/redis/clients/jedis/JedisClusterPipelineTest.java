@@ -0,0 +1,211 @@
+package redis.clients.jedis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.array;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.bulk;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.error;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.slotRange;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.tests.utils.FakeRedisServer;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+/**
+ * {@link JedisClusterPipeline} against two fake nodes: redirected commands are sent again, a node
+ * failing during sync fails only its own responses and connections always go back to the pools.
+ */
+public class JedisClusterPipelineTest {
+
+  // slot 3300 on node a, slot 15495 on node b
+  private static final String B1 = "{b}1";
+  private static final String A1 = "{a}1";
+
+  private volatile boolean bFailing;
+  private FakeRedisServer nodeA;
+  private FakeRedisServer nodeB;
+  private PipelineCluster cluster;
+
+  @Before
+  public void setUp() throws IOException {
+    nodeA = new FakeRedisServer((connection, command) -> replyA(command));
+    nodeB = new FakeRedisServer((connection, command) -> bFailing ? null : replyB(command));
+    cluster = new PipelineCluster(new GenericObjectPoolConfig(),
+        new HashSet<>(Collections.singletonList(nodeA.getHostAndPort())), 2000, 2000, 5);
+  }
+
+  @After
+  public void tearDown() {
+    cluster.close();
+    nodeA.close();
+    nodeB.close();
+  }
+
+  private String slots() {
+    return array(slotRange(0, 8191, nodeA.getHostAndPort()), slotRange(8192, 16383, nodeB.getHostAndPort()));
+  }
+
+  private String replyA(List<String> command) {
+    String name = command.get(0).toUpperCase();
+    if (name.equals("CLUSTER")) {
+      return slots();
+    }
+    if (name.equals("GET")) {
+      String key = command.get(1);
+      if (key.startsWith("moved:")) {
+        return error("MOVED " + JedisClusterCRC16.getSlot(key) + " 127.0.0.1:" + nodeB.getPort());
+      }
+      if (key.startsWith("ask:")) {
+        return error("ASK " + JedisClusterCRC16.getSlot(key) + " 127.0.0.1:" + nodeB.getPort());
+      }
+      return bulk("a-" + key);
+    }
+    return error("ERR unknown command '" + command.get(0) + "'");
+  }
+
+  private String replyB(List<String> command) {
+    String name = command.get(0).toUpperCase();
+    if (name.equals("CLUSTER")) {
+      return slots();
+    }
+    if (name.equals("ASKING")) {
+      return FakeRedisServer.ok();
+    }
+    if (name.equals("GET")) {
+      return bulk("b-" + command.get(1));
+    }
+    return error("ERR unknown command '" + command.get(0) + "'");
+  }
+
+  private JedisPool pool(FakeRedisServer node) {
+    return cluster.getClusterNodes().get(JedisClusterInfoCache.getNodeKey(node.getHostAndPort()));
+  }
+
+  private void assertConnectionsReturned() {
+    assertEquals(0, pool(nodeA).getNumActive());
+    assertEquals(0, pool(nodeB).getNumActive());
+  }
+
+  @Test(timeout = 15000)
+  public void responsesKeepCommandOrder() {
+    JedisClusterPipeline pipeline = cluster.pipelined();
+    Response<String> b1 = pipeline.get(B1);
+    Response<String> a1 = pipeline.get(A1);
+    Response<String> b2 = pipeline.get("{b}2");
+    assertEquals(3, pipeline.size());
+    pipeline.sync();
+    assertEquals("a-" + B1, b1.get());
+    assertEquals("b-" + A1, a1.get());
+    assertEquals("a-{b}2", b2.get());
+    assertEquals(0, pipeline.size());
+    assertConnectionsReturned();
+  }
+
+  @Test(timeout = 15000)
+  public void movedCommandsAreSentToTarget() {
+    JedisClusterPipeline pipeline = cluster.pipelined();
+    String moved = "moved:{b}1";
+    Response<String> b1 = pipeline.get(B1);
+    Response<String> redirected = pipeline.get(moved);
+    pipeline.sync();
+    assertEquals("a-" + B1, b1.get());
+    assertEquals("b-" + moved, redirected.get());
+    assertEquals(Collections.singletonList(Arrays.asList("GET", moved)), getCommands(nodeB));
+    assertConnectionsReturned();
+  }
+
+  @Test(timeout = 15000)
+  public void askCommandsAreSentWithAsking() {
+    JedisClusterPipeline pipeline = cluster.pipelined();
+    String ask = "ask:{b}1";
+    pipeline.get(B1);
+    pipeline.get(ask);
+    List<Object> results = pipeline.syncAndReturnAll();
+    assertEquals(Arrays.<Object> asList("a-" + B1, "b-" + ask), results);
+    assertEquals(Arrays.asList(Collections.singletonList("ASKING"), Arrays.asList("GET", ask)), getCommands(nodeB));
+    assertConnectionsReturned();
+  }
+
+  private static List<List<String>> getCommands(FakeRedisServer node) {
+    List<List<String>> commands = node.getCommands();
+    commands.removeIf(command -> command.get(0).equalsIgnoreCase("CLUSTER"));
+    return commands;
+  }
+
+  @Test(timeout = 15000)
+  public void nodeFailingDuringSyncFailsOnlyItsResponses() {
+    JedisClusterPipeline pipeline = cluster.pipelined();
+    Response<String> b1 = pipeline.get(B1);
+    Response<String> a1 = pipeline.get(A1);
+    bFailing = true;
+    try {
+      pipeline.sync();
+      fail();
+    } catch (JedisConnectionException e) {
+      // thrown after the responses of the other node are set
+    }
+    assertEquals("a-" + B1, b1.get());
+    try {
+      a1.get();
+      fail();
+    } catch (JedisDataException e) {
+      assertTrue(e.getMessage().contains("JedisClusterPipeline connection error"));
+    }
+    assertConnectionsReturned();
+
+    // the broken connection is not reused
+    bFailing = false;
+    pipeline = cluster.pipelined();
+    a1 = pipeline.get(A1);
+    pipeline.sync();
+    assertEquals("b-" + A1, a1.get());
+  }
+
+  @Test(timeout = 15000)
+  public void nodeFailingDuringSyncAndReturnAll() {
+    JedisClusterPipeline pipeline = cluster.pipelined();
+    pipeline.get(B1);
+    pipeline.get(A1);
+    bFailing = true;
+    try {
+      pipeline.syncAndReturnAll();
+      fail();
+    } catch (JedisConnectionException e) {
+      // expected
+    }
+    assertConnectionsReturned();
+  }
+
+  @Test(timeout = 15000)
+  public void closeWithoutSyncReturnsConnections() {
+    JedisClusterPipeline pipeline = cluster.pipelined();
+    pipeline.get(B1);
+    pipeline.get(A1);
+    assertEquals(1, pool(nodeA).getNumActive());
+    assertEquals(1, pool(nodeB).getNumActive());
+    pipeline.close();
+    assertEquals(0, pipeline.size());
+    assertConnectionsReturned();
+
+    // replies of the abandoned commands are never read as replies of later ones
+    pipeline = cluster.pipelined();
+    Response<String> b2 = pipeline.get("{b}2");
+    Response<String> a2 = pipeline.get("{a}2");
+    pipeline.sync();
+    assertEquals("a-{b}2", b2.get());
+    assertEquals("b-{a}2", a2.get());
+  }
+}
@@ -0,0 +1,259 @@
+package redis.clients.jedis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * {@link LocalCache} queues, admission, weighted capacity and expiry with a fake clock.
+ */
+public class LocalCacheTest {
+
+  private final AtomicLong clock = new AtomicLong();
+
+  private LocalCache cache(long maximum, boolean weighted) {
+    return new LocalCache(maximum, weighted, clock::get);
+  }
+
+  private void advance(long seconds) {
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+  }
+
+  private static String repeat(char c, int count) {
+    StringBuilder sb = new StringBuilder(count);
+    for (int i = 0; i < count; i++) {
+      sb.append(c);
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void windowToProbationToProtected() {
+    LocalCache cache = cache(10, false);
+    cache.putGet("a", "1");
+    assertEquals(LocalCache.WINDOW, cache.queueOf("a"));
+    // the window holds a single entry, the older one moves to probation
+    cache.putGet("b", "2");
+    assertEquals(LocalCache.PROBATION, cache.queueOf("a"));
+    assertEquals(LocalCache.WINDOW, cache.queueOf("b"));
+    assertEquals("1", cache.get("a"));
+    assertEquals(LocalCache.PROTECTED, cache.queueOf("a"));
+    // a hit in the window stays in the window
+    assertEquals("2", cache.get("b"));
+    assertEquals(LocalCache.WINDOW, cache.queueOf("b"));
+    assertEquals(-1, cache.queueOf("c"));
+  }
+
+  @Test
+  public void protectedOverflowDemotesOldest() {
+    // window 1, protected 7
+    LocalCache cache = cache(10, false);
+    for (int i = 0; i < 10; i++) {
+      cache.putGet("k" + i, "v" + i);
+    }
+    for (int i = 0; i < 8; i++) {
+      assertEquals("v" + i, cache.get("k" + i));
+    }
+    assertEquals(LocalCache.PROBATION, cache.queueOf("k0"));
+    for (int i = 1; i < 8; i++) {
+      assertEquals(LocalCache.PROTECTED, cache.queueOf("k" + i));
+    }
+    assertEquals(LocalCache.PROBATION, cache.queueOf("k8"));
+    assertEquals(10, cache.size());
+    assertEquals(0, cache.getEvictions());
+  }
+
+  @Test
+  public void candidateCompetesWithVictim() {
+    LocalCache cache = cache(100, false);
+    for (int i = 0; i < 100; i++) {
+      cache.putGet("k" + i, "v" + i);
+    }
+    assertEquals(100, cache.size());
+    for (int i = 0; i < 3; i++) {
+      assertNull(cache.get("hot"));
+    }
+    // k99 leaves the window, it was never read and loses against the oldest probation entry
+    cache.putGet("hot", "h");
+    assertEquals(-1, cache.queueOf("k99"));
+    assertEquals(LocalCache.PROBATION, cache.queueOf("k0"));
+    assertEquals(1, cache.getEvictions());
+
+    // the frequently requested key leaves the window next and replaces the victim
+    cache.putGet("cold", "c");
+    assertEquals(LocalCache.PROBATION, cache.queueOf("hot"));
+    assertEquals(-1, cache.queueOf("k0"));
+    assertEquals(LocalCache.PROBATION, cache.queueOf("k1"));
+    assertEquals(2, cache.getEvictions());
+    assertEquals(100, cache.size());
+  }
+
+  @Test
+  public void expiredVictimIsEvictedFirst() {
+    LocalCache cache = cache(10, false).setTtl(Protocol.Command.GET, 10, TimeUnit.SECONDS);
+    cache.putGet("old", "o");
+    advance(5);
+    for (int i = 0; i < 9; i++) {
+      cache.putGet("k" + i, "v" + i);
+    }
+    advance(6);
+    // the never read candidate k8 is admitted because the victim expired
+    cache.putGet("new", "n");
+    assertEquals(-1, cache.queueOf("old"));
+    assertEquals(LocalCache.PROBATION, cache.queueOf("k8"));
+    assertEquals(1, cache.getExpirations());
+    assertEquals(0, cache.getEvictions());
+  }
+
+  @Test
+  public void entryLargerThanSegmentIsNotCached() {
+    LocalCache cache = cache(1000, true);
+    cache.putGet("small", "0123456789");
+    assertEquals(64 + 5 + 10, cache.weight());
+    // larger than the window but within the segment
+    cache.putGet("medium", repeat('m', 500));
+    assertEquals(repeat('m', 500), cache.get("medium"));
+
+    cache.putGet("large", repeat('x', 1000));
+    assertNull(cache.get("large"));
+    assertEquals(2, cache.size());
+    assertEquals("0123456789", cache.get("small"));
+    assertEquals(0, cache.getEvictions());
+
+    // an oversized new value drops the old one
+    cache.putGet("medium", repeat('y', 1000));
+    assertNull(cache.get("medium"));
+    assertEquals(1, cache.size());
+    assertEquals(64 + 5 + 10, cache.weight());
+  }
+
+  @Test
+  public void weightedEvictionKeepsWithinCapacity() {
+    LocalCache cache = cache(1000, true);
+    for (int i = 0; i < 50; i++) {
+      cache.putGet(String.format("key%02d", i), repeat('v', 100));
+    }
+    assertEquals(1000 / (64 + 5 + 100), cache.size());
+    assertEquals(cache.size() * (64 + 5 + 100), cache.weight());
+  }
+
+  @Test
+  public void ttlAndNegativeTtl() {
+    LocalCache cache = cache(100, false).setTtl(Protocol.Command.GET, 10, TimeUnit.SECONDS)
+        .setNegativeTtl(2, TimeUnit.SECONDS);
+    cache.putGet("a", "v");
+    cache.putGet("none", null);
+    assertSame(LocalCache.NULL, cache.get("none"));
+    advance(3);
+    assertNull(cache.get("none"));
+    assertEquals("v", cache.get("a"));
+    assertEquals(1, cache.getExpirations());
+    advance(8);
+    assertNull(cache.get("a"));
+    assertEquals(2, cache.getExpirations());
+    assertEquals(0, cache.size());
+
+    // the negative ttl is capped by the command ttl
+    cache.setNegativeTtl(60, TimeUnit.SECONDS);
+    cache.putGet("none", null);
+    advance(9);
+    assertSame(LocalCache.NULL, cache.get("none"));
+    advance(2);
+    assertNull(cache.get("none"));
+  }
+
+  @Test
+  public void missingKeysAreNotCachedByDefault() {
+    LocalCache cache = cache(100, false);
+    cache.putGet("none", null);
+    cache.putHget("h", "f", null);
+    cache.putHgetAll("empty", Collections.<String, String> emptyMap());
+    assertEquals(0, cache.size());
+
+    cache.setNegativeTtl(1, TimeUnit.SECONDS);
+    cache.putHgetAll("empty", Collections.<String, String> emptyMap());
+    assertSame(LocalCache.NULL, cache.hgetAll("empty"));
+  }
+
+  @Test
+  public void disabledCommandIsNotCached() {
+    LocalCache cache = cache(100, false).setTtl(Protocol.Command.HGET, 0, TimeUnit.SECONDS);
+    cache.putHget("h", "f", "v");
+    assertNull(cache.hget("h", "f"));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void invalidateDropsAllResultsOfKey() {
+    LocalCache cache = cache(100, false);
+    Map<String, String> hash = new HashMap<>();
+    hash.put("f", "v");
+    cache.putGet("k", "v");
+    cache.putHget("k", "f", "v");
+    cache.putHgetAll("k", hash);
+    cache.putGet("other", "o");
+    // the cached hash is a copy
+    hash.put("g", "w");
+    assertEquals(Collections.singletonMap("f", "v"), cache.hgetAll("k"));
+    assertEquals(4, cache.size());
+
+    cache.invalidate("k");
+    assertNull(cache.get("k"));
+    assertNull(cache.hget("k", "f"));
+    assertNull(cache.hgetAll("k"));
+    assertEquals(1, cache.size());
+
+    cache.invalidateAll();
+    assertNull(cache.get("other"));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void resultLoadedBeforeInvalidateIsDiscarded() {
+    LocalCache cache = cache(100, false);
+    long token = cache.loadToken("k");
+    long other = cache.loadToken("other");
+    cache.invalidate("k");
+    cache.putGet("k", "old", token);
+    cache.putHget("k", "f", "old", token);
+    assertNull(cache.get("k"));
+    assertNull(cache.hget("k", "f"));
+    // other keys of the segment are not affected
+    cache.putGet("other", "o", other);
+    assertEquals("o", cache.get("other"));
+    // a load started after the invalidate is cached
+    cache.putGet("k", "new", cache.loadToken("k"));
+    assertEquals("new", cache.get("k"));
+  }
+
+  @Test
+  public void invalidateAllDiscardsAllLoads() {
+    LocalCache cache = cache(100, false);
+    long token = cache.loadToken("k");
+    cache.invalidateAll();
+    cache.putGet("k", "old", token);
+    assertNull(cache.get("k"));
+  }
+
+  @Test
+  public void invalidatedKeysOverflowDiscardsOlderLoads() {
+    LocalCache cache = cache(100, false);
+    long token = cache.loadToken("k");
+    // too many keys to track one by one, every load started before is discarded
+    for (int i = 0; i <= 1024; i++) {
+      cache.invalidate("w" + i);
+    }
+    cache.putGet("k", "old", token);
+    assertNull(cache.get("k"));
+    cache.putGet("k", "new", cache.loadToken("k"));
+    assertEquals("new", cache.get("k"));
+  }
+}
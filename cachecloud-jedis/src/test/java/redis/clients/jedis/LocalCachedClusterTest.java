@@ -0,0 +1,282 @@
+package redis.clients.jedis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.array;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.bulk;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.integer;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.slotRange;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.tests.utils.FakeRedisServer;
+
+/**
+ * {@link LocalCachedCluster} batch reads against two fake nodes: cached keys are not requested
+ * again, keys missing from the result of a failed node are not cached, values read before a write
+ * are not cached after it.
+ */
+public class LocalCachedClusterTest {
+
+  // slot 3300 on the first node, slot 15495 on the second
+  private static final String B1 = "{b}1";
+  private static final String B2 = "{b}2";
+  private static final String A1 = "{a}1";
+  private static final String A2 = "{a}2";
+
+  private final Map<String, String> strings = new ConcurrentHashMap<>();
+  private final Map<String, Map<String, String>> hashes = new ConcurrentHashMap<>();
+  private volatile boolean secondFailing;
+  // set to hold GET and MGET replies after reading the values
+  private volatile CountDownLatch readDone;
+  private volatile CountDownLatch releaseRead;
+
+  private FakeRedisServer first;
+  private FakeRedisServer second;
+  private PipelineCluster pipelineCluster;
+  private LocalCachedCluster<PipelineCluster> cluster;
+
+  @Before
+  public void setUp() throws IOException {
+    first = new FakeRedisServer((c, command) -> reply(command));
+    second = new FakeRedisServer((c, command) -> secondFailing && !command.get(0).equalsIgnoreCase("CLUSTER")
+        ? null : reply(command));
+    pipelineCluster = new PipelineCluster(new GenericObjectPoolConfig(),
+        new HashSet<>(Collections.singletonList(first.getHostAndPort())), 2000, 2000, 5);
+    cluster = new LocalCachedCluster<>(pipelineCluster,
+        LocalCache.maxSize(100).setNegativeTtl(10, TimeUnit.SECONDS));
+  }
+
+  @After
+  public void tearDown() {
+    pipelineCluster.close();
+    first.close();
+    second.close();
+  }
+
+  private String reply(List<String> command) {
+    switch (command.get(0).toUpperCase()) {
+    case "CLUSTER":
+      return array(slotRange(0, 8191, first.getHostAndPort()), slotRange(8192, 16383, second.getHostAndPort()));
+    case "GET":
+      String value = strings.get(command.get(1));
+      holdRead();
+      return bulk(value);
+    case "MGET":
+      List<String> values = new ArrayList<>();
+      for (String key : command.subList(1, command.size())) {
+        values.add(bulk(strings.get(key)));
+      }
+      holdRead();
+      return array(values);
+    case "HGETALL":
+      List<String> fields = new ArrayList<>();
+      Map<String, String> hash = hashes.get(command.get(1));
+      if (hash != null) {
+        for (Map.Entry<String, String> entry : hash.entrySet()) {
+          fields.add(bulk(entry.getKey()));
+          fields.add(bulk(entry.getValue()));
+        }
+      }
+      return array(fields);
+    case "SET":
+      strings.put(command.get(1), command.get(2));
+      return FakeRedisServer.ok();
+    case "DEL":
+      return integer(strings.remove(command.get(1)) == null ? 0 : 1);
+    default:
+      return FakeRedisServer.error("ERR unknown command '" + command.get(0) + "'");
+    }
+  }
+
+  private void holdRead() {
+    CountDownLatch release = releaseRead;
+    if (release == null) {
+      return;
+    }
+    readDone.countDown();
+    try {
+      release.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Keys requested by the GET, MGET and HGETALL commands of both nodes.
+   */
+  private List<String> requestedKeys() {
+    List<String> keys = new ArrayList<>();
+    for (FakeRedisServer server : Arrays.asList(first, second)) {
+      for (List<String> command : server.getCommands()) {
+        String name = command.get(0).toUpperCase();
+        if (name.equals("GET") || name.equals("MGET") || name.equals("HGETALL")) {
+          keys.addAll(command.subList(1, command.size()));
+        }
+      }
+    }
+    Collections.sort(keys);
+    return keys;
+  }
+
+  private void clearCommands() {
+    first.clearCommands();
+    second.clearCommands();
+  }
+
+  @Test(timeout = 15000)
+  public void mgetMergesCachedAndLoadedValues() {
+    strings.put(B1, "b1");
+    strings.put(A1, "a1");
+    strings.put(A2, "a2");
+    assertEquals("b1", cluster.get(B1));
+    assertNull(cluster.get(B2));
+    clearCommands();
+
+    // written by another client, the cached value is returned until it expires
+    strings.put(B1, "changed");
+    Map<String, String> expected = new HashMap<>();
+    expected.put(B1, "b1");
+    expected.put(A1, "a1");
+    expected.put(A2, "a2");
+    assertEquals(expected, cluster.mget(Arrays.asList(B1, B2, A1, A2)));
+    // B1 is cached, B2 is negative cached
+    assertEquals(Arrays.asList(A1, A2), requestedKeys());
+
+    clearCommands();
+    assertEquals(expected, cluster.mget(Arrays.asList(B1, B2, A1, A2)));
+    assertEquals(Collections.emptyList(), requestedKeys());
+  }
+
+  @Test(timeout = 15000)
+  public void mgetMissingKeysAreNotCached() {
+    strings.put(B1, "b1");
+    assertEquals(Collections.singletonMap(B1, "b1"), cluster.mget(Arrays.asList(B1, B2)));
+    clearCommands();
+    // missing from the batch result, it could as well have failed to load
+    strings.put(B2, "b2");
+    Map<String, String> expected = new HashMap<>();
+    expected.put(B1, "b1");
+    expected.put(B2, "b2");
+    assertEquals(expected, cluster.mget(Arrays.asList(B1, B2)));
+    assertEquals(Collections.singletonList(B2), requestedKeys());
+  }
+
+  @Test(timeout = 15000)
+  public void mgetFailingNodeIsNotNegativeCached() {
+    strings.put(B1, "b1");
+    strings.put(A1, "a1");
+    // the second node goes down after the slot table is loaded
+    assertEquals("b1", cluster.get(B1));
+    secondFailing = true;
+    assertEquals(Collections.singletonMap(B1, "b1"), cluster.mget(Arrays.asList(B1, A1)));
+    assertNull(cluster.getCache().get(A1));
+
+    secondFailing = false;
+    clearCommands();
+    Map<String, String> expected = new HashMap<>();
+    expected.put(B1, "b1");
+    expected.put(A1, "a1");
+    assertEquals(expected, cluster.mget(Arrays.asList(B1, A1)));
+    assertEquals(Collections.singletonList(A1), requestedKeys());
+  }
+
+  @Test(timeout = 15000)
+  public void mHgetAllFailingNodeIsNotNegativeCached() {
+    hashes.put(B1, Collections.singletonMap("f", "b1"));
+    hashes.put(A1, Collections.singletonMap("f", "a1"));
+    assertEquals(Collections.singletonMap("f", "b1"), cluster.hgetAll(B1));
+    secondFailing = true;
+    assertEquals(Collections.singletonMap(B1, Collections.singletonMap("f", "b1")),
+        cluster.mHgetAll(Arrays.asList(B1, A1)));
+
+    secondFailing = false;
+    clearCommands();
+    Map<String, Map<String, String>> expected = new HashMap<>();
+    expected.put(B1, Collections.singletonMap("f", "b1"));
+    expected.put(A1, Collections.singletonMap("f", "a1"));
+    assertEquals(expected, cluster.mHgetAll(Arrays.asList(B1, A1)));
+    assertEquals(Collections.singletonList(A1), requestedKeys());
+    clearCommands();
+    assertEquals(expected, cluster.mHgetAll(Arrays.asList(B1, A1)));
+    assertEquals(Collections.emptyList(), requestedKeys());
+  }
+
+  @Test(timeout = 15000)
+  public void writesInvalidate() {
+    strings.put(B1, "v1");
+    assertEquals("v1", cluster.get(B1));
+    cluster.set(B1, "v2");
+    assertEquals("v2", cluster.get(B1));
+    cluster.del(B1);
+    assertNull(cluster.get(B1));
+    // the missing key is negative cached now
+    strings.put(B1, "v3");
+    assertNull(cluster.get(B1));
+  }
+
+  /**
+   * Runs the read on another thread, holds its reply until the key was written through the cache
+   * and returns the value the read returned.
+   */
+  private <T> T readAcrossWrite(Callable<T> read, String key, String value) throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    readDone = new CountDownLatch(1);
+    releaseRead = release;
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<T> future = executor.submit(read);
+      assertTrue(readDone.await(10, TimeUnit.SECONDS));
+      releaseRead = null;
+      cluster.set(key, value);
+      release.countDown();
+      return future.get(10, TimeUnit.SECONDS);
+    } finally {
+      release.countDown();
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(timeout = 15000)
+  public void getReadBeforeWriteIsNotCached() throws Exception {
+    strings.put(B1, "old");
+    assertEquals("old", readAcrossWrite(() -> cluster.get(B1), B1, "new"));
+    // the old value arrived after the write invalidated the key
+    assertNull(cluster.getCache().get(B1));
+    assertEquals("new", cluster.get(B1));
+  }
+
+  @Test(timeout = 15000)
+  public void mgetReadBeforeWriteIsNotCached() throws Exception {
+    strings.put(B1, "old");
+    strings.put(B2, "b2");
+    Map<String, String> expected = new HashMap<>();
+    expected.put(B1, "old");
+    expected.put(B2, "b2");
+    assertEquals(expected, readAcrossWrite(() -> cluster.mget(Arrays.asList(B1, B2)), B1, "new"));
+    assertNull(cluster.getCache().get(B1));
+    // keys not written meanwhile are cached
+    assertEquals("b2", cluster.getCache().get(B2));
+    assertEquals("new", cluster.get(B1));
+  }
+}
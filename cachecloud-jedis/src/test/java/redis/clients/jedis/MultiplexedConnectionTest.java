@@ -0,0 +1,258 @@
+package redis.clients.jedis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.Protocol.Command;
+import redis.clients.jedis.tests.utils.FakeRedisServer;
+
+/**
+ * READONLY on a {@link MultiplexedConnection} sharing more than one socket, and the flush window of
+ * a single shared socket.
+ */
+public class MultiplexedConnectionTest {
+
+  // holds the reply of GET slow
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final List<Connection> connections = new ArrayList<>();
+  private ExecutorService executor;
+  private FakeRedisServer server;
+  private MultiplexedConnection multiplexedConnection;
+  private Connection connection;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new FakeRedisServer((c, command) -> reply(command));
+    multiplexedConnection = new MultiplexedConnection(new DefaultJedisSocketFactory("127.0.0.1", server.getPort(),
+        2000, 2000, false, null, null, null), null, null, null, 2);
+    connection = new Connection("127.0.0.1", server.getPort());
+    connection.setMultiplexedConnection(multiplexedConnection);
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    for (Connection c : connections) {
+      c.close();
+    }
+    connection.close();
+    multiplexedConnection.close();
+    server.close();
+  }
+
+  private String reply(List<String> command) {
+    if (!command.get(0).equalsIgnoreCase("GET")) {
+      return FakeRedisServer.ok();
+    }
+    if (command.get(1).equals("slow")) {
+      try {
+        release.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    return FakeRedisServer.bulk("v-" + command.get(1));
+  }
+
+  private void get(String key) {
+    connection.sendCommand(Command.GET, key);
+    assertEquals("v-" + key, connection.getBulkReply());
+  }
+
+  private void readOnly() {
+    connection.sendCommand(Command.READONLY);
+    assertEquals("OK", connection.getStatusCodeReply());
+  }
+
+  @Test(timeout = 5000)
+  public void readOnlyIsSentOnEveryConnectedSocket() {
+    // one command per socket, both connected before READONLY
+    get("a");
+    get("b");
+    assertEquals(2, server.getConnectionCount());
+    readOnly();
+    get("c");
+    get("d");
+    get("e");
+
+    assertEquals(2, server.getConnectionCount());
+    for (int i = 0; i < 2; i++) {
+      assertReadOnlyBeforeLaterReads(server.getCommands(i));
+    }
+    assertEquals(Arrays.asList(Arrays.asList("GET", "b"), Arrays.asList("READONLY"), Arrays.asList("GET", "c"),
+      Arrays.asList("GET", "e")), server.getCommands(1));
+  }
+
+  @Test(timeout = 5000)
+  public void socketsConnectedLaterSendReadOnlyOnce() {
+    readOnly();
+    get("a");
+    get("b");
+
+    assertEquals(2, server.getConnectionCount());
+    assertEquals(Arrays.asList(Arrays.asList("READONLY"), Arrays.asList("GET", "a")), server.getCommands(1));
+    assertEquals(Arrays.asList("READONLY"), server.getCommands(0).get(0));
+    assertEquals(Arrays.asList("GET", "b"), server.getCommands(0).get(server.getCommands(0).size() - 1));
+  }
+
+  /**
+   * Every GET after the first READONLY of the socket (i.e. sent after READONLY returned) must follow it.
+   */
+  private static void assertReadOnlyBeforeLaterReads(List<List<String>> commands) {
+    int readOnlyAt = -1;
+    for (int i = 0; i < commands.size(); i++) {
+      if (commands.get(i).get(0).equals("READONLY")) {
+        readOnlyAt = i;
+        break;
+      }
+    }
+    assertTrue("no READONLY in " + commands, readOnlyAt >= 0);
+    for (int i = readOnlyAt + 1; i < commands.size(); i++) {
+      String command = commands.get(i).get(0);
+      assertTrue(command.equals("GET") || command.equals("READONLY"));
+    }
+    for (int i = 0; i < readOnlyAt; i++) {
+      String key = commands.get(i).get(1);
+      assertTrue("GET " + key + " sent after READONLY", key.equals("a") || key.equals("b"));
+    }
+  }
+
+  /**
+   * A multiplexed connection with a single socket, so every command shares the flush window.
+   */
+  private MultiplexedConnection singleSocket() {
+    MultiplexedConnection single = new MultiplexedConnection(new DefaultJedisSocketFactory("127.0.0.1",
+        server.getPort(), 2000, 2000, false, null, null, null), null, null, null, 1);
+    executor = Executors.newCachedThreadPool();
+    return single;
+  }
+
+  /**
+   * GET on its own connection bound to the multiplexed connection, run on the executor.
+   */
+  private Future<String> getAsync(MultiplexedConnection multiplexed, String key) {
+    Connection c = new Connection("127.0.0.1", server.getPort());
+    c.setMultiplexedConnection(multiplexed);
+    connections.add(c);
+    return executor.submit(() -> {
+      c.sendCommand(Command.GET, key);
+      return c.getBulkReply();
+    });
+  }
+
+  private void awaitFlushes(MultiplexedConnection multiplexed, int count) throws InterruptedException {
+    while (multiplexed.getFlushes() < count) {
+      Thread.sleep(1);
+    }
+  }
+
+  @Test(timeout = 5000)
+  public void windowIsSkippedWithoutCommandsInFlight() throws Exception {
+    MultiplexedConnection single = singleSocket();
+    try {
+      single.setFlushWindow(TimeUnit.SECONDS.toMicros(10), 128);
+      long start = System.nanoTime();
+      assertEquals("v-a", getAsync(single, "a").get());
+      assertEquals("v-b", getAsync(single, "b").get());
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+      assertEquals(2, single.getFlushes());
+      assertEquals(2, single.getFlushedCommands());
+    } finally {
+      single.close();
+    }
+  }
+
+  @Test(timeout = 5000)
+  public void writerWaitsForWindowWhileCommandsInFlight() throws Exception {
+    MultiplexedConnection single = singleSocket();
+    try {
+      Future<String> slow = getAsync(single, "slow");
+      awaitFlushes(single, 1);
+      single.setFlushWindow(TimeUnit.MILLISECONDS.toMicros(300), 128);
+
+      long start = System.nanoTime();
+      Future<String> a = getAsync(single, "a");
+      // the server is still holding the reply of slow
+      awaitFlushes(single, 2);
+      assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(250));
+
+      release.countDown();
+      assertEquals("v-slow", slow.get());
+      assertEquals("v-a", a.get());
+      assertEquals(2, single.getFlushes());
+      assertEquals(2, single.getFlushedCommands());
+    } finally {
+      single.close();
+    }
+  }
+
+  @Test(timeout = 5000)
+  public void writerWakesEarlyAtMaxBatchCommands() throws Exception {
+    MultiplexedConnection single = singleSocket();
+    try {
+      Future<String> slow = getAsync(single, "slow");
+      awaitFlushes(single, 1);
+      single.setFlushWindow(TimeUnit.SECONDS.toMicros(10), 3);
+
+      long start = System.nanoTime();
+      List<Future<String>> futures = new ArrayList<>();
+      futures.add(getAsync(single, "a"));
+      // the first writer is waiting in the window, the others only queue their commands
+      Thread.sleep(100);
+      futures.add(getAsync(single, "b"));
+      futures.add(getAsync(single, "c"));
+      awaitFlushes(single, 2);
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+
+      release.countDown();
+      assertEquals("v-slow", slow.get());
+      for (Future<String> future : futures) {
+        assertTrue(future.get().startsWith("v-"));
+      }
+      // slow alone, then a, b and c in one flush
+      assertEquals(2, single.getFlushes());
+      assertEquals(4, single.getFlushedCommands());
+      List<List<List<String>>> batches = server.getBatches();
+      assertEquals(3, batches.get(batches.size() - 1).size());
+    } finally {
+      single.close();
+    }
+  }
+
+  @Test(timeout = 5000)
+  public void flushWindowIsValidated() {
+    try {
+      multiplexedConnection.setFlushWindow(-1, 1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      multiplexedConnection.setFlushWindow(100, 0);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    multiplexedConnection.setFlushWindow(100, 16);
+    assertEquals(100, multiplexedConnection.getFlushWindowMicros());
+    assertEquals(16, multiplexedConnection.getMaxBatchCommands());
+  }
+}
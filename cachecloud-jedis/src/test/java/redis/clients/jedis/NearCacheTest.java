@@ -0,0 +1,319 @@
+package redis.clients.jedis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.array;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.bulk;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.integer;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.slotRange;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Test;
+
+import redis.clients.jedis.tests.utils.FakeRedisServer;
+import redis.clients.jedis.util.SafeEncoder;
+
+/**
+ * {@link NearCache} placeholders, CLOCK eviction and flushes, and the near cache of
+ * {@link PipelineCluster} against a fake node that supports CLIENT TRACKING.
+ */
+public class NearCacheTest {
+
+  private NearCache cache;
+  private FakeRedisServer server;
+  private PipelineCluster cluster;
+
+  private final Map<String, String> store = new ConcurrentHashMap<>();
+  private final AtomicInteger trackerConnection = new AtomicInteger(-1);
+  private final AtomicReference<String> slotsReply = new AtomicReference<>();
+
+  @After
+  public void tearDown() {
+    if (cache != null) {
+      cache.close();
+    }
+    if (cluster != null) {
+      cluster.close();
+    }
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  private static <T> Supplier<T> failingLoader() {
+    return () -> {
+      throw new AssertionError("loader called for a cached key");
+    };
+  }
+
+  @Test
+  public void loadedValueIsCached() {
+    cache = new NearCache(null, 100);
+    assertEquals("v", cache.get("k", () -> "v"));
+    assertEquals("v", cache.get("k", failingLoader()));
+    // a missing key is cached as well
+    assertNull(cache.get("none", () -> null));
+    assertNull(cache.get("none", failingLoader()));
+    assertEquals(2, cache.getHits());
+    assertEquals(2, cache.getMisses());
+    assertEquals(2, cache.size());
+  }
+
+  @Test
+  public void invalidationDuringLoadDiscardsValue() {
+    cache = new NearCache(null, 100);
+    // the invalidation message arrives while the old value is being read
+    assertEquals("old", cache.get("k", () -> {
+      cache.invalidate("k");
+      return "old";
+    }));
+    assertEquals("new", cache.get("k", () -> "new"));
+    assertEquals("new", cache.get("k", failingLoader()));
+
+    assertEquals("old", cache.hget("h", "f", () -> {
+      cache.invalidate("h");
+      return "old";
+    }));
+    assertEquals("new", cache.hget("h", "f", () -> "new"));
+    assertEquals("new", cache.hget("h", "f", failingLoader()));
+
+    assertEquals(Collections.singletonMap("f", "old"), cache.hgetAll("a", () -> {
+      cache.invalidate("a");
+      return Collections.singletonMap("f", "old");
+    }));
+    assertEquals(Collections.singletonMap("f", "new"), cache.hgetAll("a", () -> Collections.singletonMap("f", "new")));
+    assertEquals(Collections.singletonMap("f", "new"), cache.hgetAll("a", failingLoader()));
+  }
+
+  @Test
+  public void flushDuringLoadDiscardsValue() {
+    cache = new NearCache(null, 100);
+    assertEquals("old", cache.get("k", () -> {
+      cache.flush();
+      return "old";
+    }));
+    assertEquals(0, cache.size());
+    assertEquals("new", cache.get("k", () -> "new"));
+    assertEquals(1, cache.getFlushes());
+  }
+
+  @Test
+  public void concurrentLoadSharesPlaceholder() {
+    cache = new NearCache(null, 100);
+    // a second miss while the first is still loading joins the same placeholder, an invalidation
+    // drops both results
+    assertEquals("outer", cache.get("k", () -> {
+      assertEquals("inner", cache.get("k", () -> "inner"));
+      cache.invalidate("k");
+      return "outer";
+    }));
+    assertEquals(0, cache.size());
+    assertEquals("new", cache.get("k", () -> "new"));
+  }
+
+  @Test
+  public void fieldsCountTowardsSize() {
+    cache = new NearCache(null, 100);
+    cache.hget("h", "f1", () -> "1");
+    cache.hget("h", "f2", () -> "2");
+    cache.hget("h", "f1", failingLoader());
+    assertEquals(3, cache.size());
+    cache.invalidate("h");
+    assertEquals(0, cache.size());
+    assertEquals(1, cache.getInvalidations());
+    // invalidating a key that is not cached is not counted
+    cache.invalidate("h");
+    assertEquals(1, cache.getInvalidations());
+  }
+
+  @Test
+  public void clockEvictionKeepsAccessedEntries() {
+    cache = new NearCache(null, 16);
+    for (int i = 0; i < 16; i++) {
+      String value = "v" + i;
+      cache.get("k" + i, () -> value);
+    }
+    assertEquals(16, cache.size());
+    for (int i = 0; i < 8; i++) {
+      assertEquals("v" + i, cache.get("k" + i, failingLoader()));
+    }
+    // the 17th entry evicts down to 15/16 of the capacity, only entries not accessed since the
+    // last sweep are candidates
+    cache.get("k16", () -> "v16");
+    assertEquals(15, cache.size());
+    assertEquals(2, cache.getEvictions());
+    for (int i = 0; i < 8; i++) {
+      assertEquals("v" + i, cache.get("k" + i, failingLoader()));
+    }
+
+    // the sweep cleared the access marks, accessed entries go on the next rounds
+    int evictions = 0;
+    for (int i = 100; i < 200; i++) {
+      String value = "v" + i;
+      cache.get("k" + i, () -> value);
+      assertTrue(cache.size() <= 16);
+      evictions = (int) cache.getEvictions();
+    }
+    int cachedOld = 0;
+    for (int i = 0; i < 8; i++) {
+      AtomicInteger loads = new AtomicInteger();
+      cache.get("k" + i, () -> {
+        loads.incrementAndGet();
+        return "x";
+      });
+      if (loads.get() == 0) {
+        cachedOld++;
+      }
+    }
+    assertTrue(evictions > 90);
+    assertTrue("entries not accessed again were kept: " + cachedOld, cachedOld < 8);
+  }
+
+  private void startCluster() throws IOException {
+    server = new FakeRedisServer(this::reply);
+    slotsReply.set(array(slotRange(0, 16383, server.getHostAndPort())));
+    cluster = new PipelineCluster(new GenericObjectPoolConfig(),
+        new HashSet<>(Collections.singletonList(server.getHostAndPort())), 2000, 2000, 5);
+    cluster.setNearCache(100);
+    waitFor("near cache active", () -> cluster.getNearCache().isActive());
+  }
+
+  private String reply(int connection, List<String> command) {
+    String name = command.get(0).toUpperCase();
+    switch (name) {
+    case "CLUSTER":
+      return slotsReply.get();
+    case "CLIENT":
+      if (command.get(1).equalsIgnoreCase("ID")) {
+        return integer(connection);
+      }
+      if (command.get(1).equalsIgnoreCase("TRACKING")) {
+        trackerConnection.set(connection);
+      }
+      return FakeRedisServer.ok();
+    case "SUBSCRIBE":
+      return array(bulk("subscribe"), bulk(command.get(1)), integer(1));
+    case "PING":
+      return connection == trackerConnection.get() ? array(bulk("pong"), bulk("")) : FakeRedisServer.simple("PONG");
+    case "GET":
+      return bulk(store.get(command.get(1)));
+    case "SET":
+      store.put(command.get(1), command.get(2));
+      return FakeRedisServer.ok();
+    case "DEL":
+      return integer(store.remove(command.get(1)) == null ? 0 : 1);
+    default:
+      return FakeRedisServer.error("ERR unknown command '" + command.get(0) + "'");
+    }
+  }
+
+  private static void waitFor(String what, BooleanSupplier condition) {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!condition.getAsBoolean()) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new AssertionError("timed out waiting for " + what);
+      }
+      try {
+        Thread.sleep(10);
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+    }
+  }
+
+  private void invalidateMessage(String keys) throws IOException {
+    server.send(trackerConnection.get(), array(bulk("message"), bulk(NearCache.INVALIDATE_CHANNEL), keys));
+  }
+
+  @Test(timeout = 15000)
+  public void ownWritesInvalidateSynchronously() throws IOException {
+    startCluster();
+    store.put("k", "v1");
+    assertEquals("v1", cluster.get("k"));
+    assertEquals("v1", cluster.get("k"));
+    assertEquals(1, server.count("GET"));
+
+    // no invalidation message is ever sent, the write itself drops the cached value
+    cluster.set("k", "v2");
+    assertEquals("v2", cluster.get("k"));
+    cluster.set("k", SafeEncoder.encode("v3"));
+    assertEquals("v3", cluster.get("k"));
+    cluster.del("k");
+    assertNull(cluster.get("k"));
+    assertNull(cluster.get("k"));
+    assertEquals(4, server.count("GET"));
+  }
+
+  @Test(timeout = 15000)
+  public void invalidationMessagesDropKeys() throws IOException {
+    startCluster();
+    store.put("k", "v1");
+    store.put("j", "w1");
+    assertEquals("v1", cluster.get("k"));
+    assertEquals("w1", cluster.get("j"));
+
+    // written by another client
+    store.put("k", "v2");
+    invalidateMessage(array(bulk("k")));
+    waitFor("invalidation", () -> cluster.getNearCache().getInvalidations() == 1);
+    assertEquals("v2", cluster.get("k"));
+    assertEquals("w1", cluster.get("j"));
+
+    // FLUSHALL is sent as a null key list
+    long flushes = cluster.getNearCache().getFlushes();
+    invalidateMessage(array((String[]) null));
+    waitFor("flush", () -> cluster.getNearCache().getFlushes() == flushes + 1);
+    assertEquals(0, cluster.getNearCache().size());
+  }
+
+  @Test(timeout = 15000)
+  public void lostTrackerFlushesCache() throws IOException {
+    startCluster();
+    store.put("k", "v1");
+    assertEquals("v1", cluster.get("k"));
+    NearCache nearCache = cluster.getNearCache();
+    long flushes = nearCache.getFlushes();
+
+    // writes while the tracking connection is down have no invalidation message
+    server.closeConnections();
+    store.put("k", "v2");
+    waitFor("flush on lost tracker", () -> nearCache.getFlushes() > flushes);
+    waitFor("resubscribed", nearCache::isActive);
+    assertEquals("v2", cluster.get("k"));
+    assertEquals("v2", cluster.get("k"));
+  }
+
+  @Test(timeout = 15000)
+  public void topologyChangeFlushesCache() throws IOException {
+    startCluster();
+    store.put("k", "v1");
+    assertEquals("v1", cluster.get("k"));
+    NearCache nearCache = cluster.getNearCache();
+    long flushes = nearCache.getFlushes();
+
+    // a replica joins, the master keeps its slots
+    slotsReply.set(array(slotRange(0, 16383, server.getHostAndPort(), new HostAndPort("127.0.0.1", 1))));
+    cluster.connectionHandler.setMinRefreshIntervalMillis(0);
+    cluster.connectionHandler.renewSlotCache();
+    store.put("k", "v2");
+    // the changed slot table bypasses the cache until the trackers are synced
+    assertFalse(nearCache.isCacheable("k"));
+    waitFor("flush on topology change", () -> nearCache.getFlushes() > flushes);
+    waitFor("active again", nearCache::isActive);
+    assertEquals("v2", cluster.get("k"));
+  }
+}
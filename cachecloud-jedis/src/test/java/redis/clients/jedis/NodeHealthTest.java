@@ -0,0 +1,175 @@
+package redis.clients.jedis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.array;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.slotRange;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.Test;
+
+import redis.clients.jedis.exceptions.JedisNodeQuarantinedException;
+import redis.clients.jedis.tests.utils.FakeRedisServer;
+
+public class NodeHealthTest {
+
+  private final AtomicLong now = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+  private final AtomicInteger quarantines = new AtomicInteger();
+
+  private NodeHealth health(int consecutiveFailures, double errorRate, int minRequests) {
+    return new NodeHealth("127.0.0.1:7000", consecutiveFailures, errorRate, minRequests,
+        h -> quarantines.incrementAndGet(), now::get);
+  }
+
+  private void advanceSeconds(long seconds) {
+    now.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+  }
+
+  @Test
+  public void consecutiveFailuresQuarantine() {
+    NodeHealth health = health(3, 0.5, 1000);
+    health.failure();
+    health.failure();
+    health.success();
+    health.failure();
+    health.failure();
+    assertFalse(health.isQuarantined());
+    health.failure();
+    assertTrue(health.isQuarantined());
+    assertEquals(1, quarantines.get());
+    // already quarantined, the listener is not called again
+    health.failure();
+    assertEquals(1, quarantines.get());
+    assertEquals(1, health.getQuarantineCount());
+    try {
+      health.checkAvailable();
+      fail();
+    } catch (JedisNodeQuarantinedException e) {
+      assertTrue(e.getMessage().contains("127.0.0.1:7000"));
+    }
+  }
+
+  @Test
+  public void errorRateNeedsMinRequests() {
+    NodeHealth health = health(100, 0.5, 20);
+    for (int i = 0; i < 9; i++) {
+      health.success();
+      health.failure();
+    }
+    health.success();
+    assertEquals(19, health.getRequests());
+    assertFalse(health.isQuarantined());
+    health.failure();
+    assertEquals(0.5, health.getErrorRate(), 1e-9);
+    assertTrue(health.isQuarantined());
+  }
+
+  @Test
+  public void oldBucketsLeaveTheWindow() {
+    NodeHealth health = health(100, 0.9, 1000);
+    for (int i = 0; i < 10; i++) {
+      health.success();
+      health.failure();
+    }
+    assertEquals(0.5, health.getErrorRate(), 1e-9);
+    advanceSeconds(5);
+    for (int i = 0; i < 10; i++) {
+      health.success();
+    }
+    assertEquals(30, health.getRequests());
+    assertEquals(10.0 / 30, health.getErrorRate(), 1e-9);
+    // the first second is out of the 10 second window
+    advanceSeconds(6);
+    assertEquals(10, health.getRequests());
+    assertEquals(0, health.getErrorRate(), 0);
+    advanceSeconds(10);
+    assertEquals(0, health.getRequests());
+  }
+
+  @Test
+  public void reusedBucketIsReset() {
+    NodeHealth health = health(100, 0.9, 1000);
+    health.failure();
+    health.failure();
+    // same bucket index ten seconds later
+    advanceSeconds(10);
+    health.success();
+    assertEquals(1, health.getRequests());
+    assertEquals(0, health.getErrorRate(), 0);
+  }
+
+  @Test
+  public void recoverClearsStatistics() {
+    NodeHealth health = health(2, 0.5, 1000);
+    health.failure();
+    health.failure();
+    assertTrue(health.isQuarantined());
+    health.recover();
+    assertFalse(health.isQuarantined());
+    assertEquals(0, health.getRequests());
+    assertEquals(0, health.getConsecutiveFailures());
+    health.checkAvailable();
+    health.failure();
+    assertFalse(health.isQuarantined());
+  }
+
+  @Test
+  public void invalidThresholds() {
+    try {
+      health(0, 0.5, 20);
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+    try {
+      health(3, 1.5, 20);
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+    try {
+      health(3, 0.5, 0);
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void quarantineIsOptIn() throws IOException {
+    try (FakeRedisServer node = new FakeRedisServer((connection, command) -> null)) {
+      final HostAndPort hostAndPort = node.getHostAndPort();
+      node.close();
+      try (FakeRedisServer server = new FakeRedisServer(
+          (connection, command) -> array(slotRange(0, 16383, hostAndPort)))) {
+        PipelineCluster cluster = new PipelineCluster(new GenericObjectPoolConfig(),
+            new HashSet<>(Collections.singletonList(server.getHostAndPort())), 2000, 2000, 1);
+        try {
+          assertTrue(cluster.getNodeHealths().isEmpty());
+          cluster.setNodeQuarantineThresholds(5, 0.9, 100);
+          cluster.setNodeQuarantineEnabled(true);
+          Map<String, NodeHealth> healths = cluster.getNodeHealths();
+          assertFalse(healths.isEmpty());
+          NodeHealth health = healths.get(JedisClusterInfoCache.getNodeKey(hostAndPort));
+          for (int i = 0; i < 4; i++) {
+            health.failure();
+          }
+          assertFalse(health.isQuarantined());
+          health.failure();
+          assertTrue(health.isQuarantined());
+          cluster.setNodeQuarantineEnabled(false);
+          assertTrue(cluster.getNodeHealths().isEmpty());
+        } finally {
+          cluster.close();
+        }
+      }
+    }
+  }
+}
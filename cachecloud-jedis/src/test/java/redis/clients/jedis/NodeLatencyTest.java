@@ -0,0 +1,65 @@
+package redis.clients.jedis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class NodeLatencyTest {
+
+  private static long millis(long millis) {
+    return TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+
+  @Test
+  public void firstSampleSetsEwma() {
+    NodeLatency latency = new NodeLatency();
+    assertEquals(0, latency.getEwmaMillis(), 0);
+    latency.commandSent();
+    latency.replyReceived(millis(10));
+    assertEquals(10, latency.getEwmaMillis(), 1e-9);
+    assertEquals(1, latency.getSamples());
+  }
+
+  @Test
+  public void laterSamplesMoveEwmaByAlpha() {
+    NodeLatency latency = new NodeLatency();
+    latency.commandSent();
+    latency.replyReceived(millis(10));
+    latency.commandSent();
+    latency.replyReceived(millis(20));
+    // 10 + 0.1 * (20 - 10)
+    assertEquals(11, latency.getEwmaMillis(), 1e-9);
+    latency.commandSent();
+    latency.replyReceived(millis(1));
+    // 11 + 0.1 * (1 - 11)
+    assertEquals(10, latency.getEwmaMillis(), 1e-9);
+  }
+
+  @Test
+  public void inFlightCountsUnansweredCommands() {
+    NodeLatency latency = new NodeLatency();
+    latency.commandSent();
+    latency.commandSent();
+    latency.commandSent();
+    assertEquals(3, latency.getInFlight());
+    latency.replyReceived(millis(1));
+    assertEquals(2, latency.getInFlight());
+    latency.release(2);
+    assertEquals(0, latency.getInFlight());
+    latency.release(0);
+    assertEquals(0, latency.getInFlight());
+  }
+
+  @Test
+  public void costGrowsWithInFlight() {
+    NodeLatency latency = new NodeLatency();
+    latency.commandSent();
+    latency.replyReceived(millis(2));
+    assertEquals(millis(2), latency.getCost(), 1e-3);
+    latency.commandSent();
+    latency.commandSent();
+    assertEquals(3 * millis(2), latency.getCost(), 1e-3);
+  }
+}
@@ -0,0 +1,232 @@
+package redis.clients.jedis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.array;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.bulk;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.error;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.integer;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.slotRange;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisPipelineLimitException;
+import redis.clients.jedis.tests.utils.FakeRedisServer;
+
+/**
+ * Result splitting of slot commands, against a fake cluster node.
+ */
+public class PipelineClusterCommandTest {
+
+  private FakeRedisServer nodeA;
+  private PipelineCluster cluster;
+
+  @Before
+  public void setUp() throws IOException {
+    nodeA = new FakeRedisServer((connection, command) -> replyA(command));
+    cluster = new PipelineCluster(new GenericObjectPoolConfig(),
+        new HashSet<>(Collections.singletonList(nodeA.getHostAndPort())), 2000, 2000, 5);
+  }
+
+  @After
+  public void tearDown() {
+    cluster.close();
+    nodeA.close();
+  }
+
+  private String replyA(List<String> command) {
+    String name = command.get(0).toUpperCase();
+    if (name.equals("CLUSTER")) {
+      return array(slotRange(0, 16383, nodeA.getHostAndPort()));
+    }
+    if (name.equals("GET")) {
+      return bulk("v-" + command.get(1));
+    }
+    if (name.equals("MGET")) {
+      List<String> values = new ArrayList<>();
+      for (String key : command.subList(1, command.size())) {
+        values.add(bulk("v-" + key));
+      }
+      return array(values);
+    }
+    if (name.equals("EXISTS") || name.equals("UNLINK")) {
+      int count = 0;
+      for (String key : command.subList(1, command.size())) {
+        if (key.startsWith("hit:")) {
+          count++;
+        }
+      }
+      return integer(count);
+    }
+    return error("ERR unknown command '" + command.get(0) + "'");
+  }
+
+  private static PipelineClusterSlotCommand<Object> splitter() {
+    return new PipelineClusterSlotCommand<Object>(null, null) {
+      @Override
+      public void pipelineSlotCommand(Pipeline pipeline, List<String> slotKeys) {
+      }
+
+      @Override
+      public void pipelineCommand(Pipeline pipeline, List<String> pipelineKeys) {
+      }
+
+      @Override
+      public Object getResult(Map<String, Object> resultMap) {
+        return null;
+      }
+    };
+  }
+
+  @Test
+  public void splitSlotResultMatchesListToKeys() {
+    List<Object> values = Arrays.<Object> asList("1", null, "3");
+    assertSame(values, splitter().splitSlotResult(Arrays.asList("a", "b", "c"), values));
+  }
+
+  @Test
+  public void splitSlotResultSharesSingleResult() {
+    assertEquals(Arrays.asList("OK", "OK"), splitter().splitSlotResult(Arrays.asList("a", "b"), "OK"));
+    // a list of another size is not a per key result
+    List<Object> pair = Arrays.<Object> asList("x", "y");
+    assertEquals(Arrays.<Object> asList(pair, pair, pair),
+        splitter().splitSlotResult(Arrays.asList("a", "b", "c"), pair));
+    JedisDataException error = new JedisDataException("ERR");
+    assertEquals(Arrays.<Object> asList(error, error), splitter().splitSlotResult(Arrays.asList("a", "b"), error));
+  }
+
+  @Test
+  public void splitCountResultKeepsCountOnFirstKey() {
+    assertEquals(Arrays.<Object> asList(2L, 0L, 0L),
+        PipelineClusterSlotCommand.splitCountResult(Arrays.asList("a", "b", "c"), 2L));
+    assertEquals(Collections.<Object> singletonList(1L),
+        PipelineClusterSlotCommand.splitCountResult(Collections.singletonList("a"), 1L));
+    JedisDataException error = new JedisDataException("ERR");
+    assertEquals(Arrays.<Object> asList(error, error),
+        PipelineClusterSlotCommand.splitCountResult(Arrays.asList("a", "b"), error));
+  }
+
+  @Test
+  public void toCountAcceptsLongAndBoolean() {
+    assertEquals(3, PipelineClusterSlotCommand.toCount(3L));
+    assertEquals(1, PipelineClusterSlotCommand.toCount(Boolean.TRUE));
+    assertEquals(0, PipelineClusterSlotCommand.toCount(Boolean.FALSE));
+    assertEquals(0, PipelineClusterSlotCommand.toCount(new JedisDataException("ERR")));
+  }
+
+  @Test
+  public void keysAreSentOneByOneByDefault() {
+    List<String> keys = Arrays.asList("{t}1", "{t}2", "{u}3");
+    assertFalse(cluster.isSlotCommandEnabled());
+    assertEquals(3, cluster.mget(keys).size());
+    assertEquals(3, nodeA.count("GET"));
+    assertEquals(0, nodeA.count("MGET"));
+
+    cluster.setSlotCommandEnabled(true);
+    nodeA.clearCommands();
+    Map<String, String> result = cluster.mget(keys);
+    assertEquals("v-{t}2", result.get("{t}2"));
+    assertEquals("v-{u}3", result.get("{u}3"));
+    assertEquals(0, nodeA.count("GET"));
+    assertEquals(2, nodeA.count("MGET"));
+  }
+
+  @Test
+  public void slotCountsSumToKeyCount() {
+    cluster.setSlotCommandEnabled(true);
+    // keys sharing a hash tag go out as a single EXISTS, the count lands on one key only
+    List<String> keys = Arrays.asList("hit:{t}1", "hit:{t}2", "miss:{t}3", "hit:{u}4");
+    assertEquals(Long.valueOf(3), cluster.mexists(keys));
+    assertEquals(Long.valueOf(3), cluster.munlink(keys));
+    assertEquals(2, nodeA.count("EXISTS"));
+  }
+
+  private static final List<String> KEYS = Arrays.asList("k1", "k2", "k3", "k4", "k5");
+
+  /**
+   * Number of GET commands in each write received by the node.
+   */
+  private List<Integer> getBatchSizes() {
+    List<Integer> sizes = new ArrayList<>();
+    for (List<List<String>> batch : nodeA.getBatches()) {
+      if (batch.get(0).get(0).equalsIgnoreCase("GET")) {
+        sizes.add(batch.size());
+      }
+    }
+    return sizes;
+  }
+
+  @Test
+  public void pipelineIsNotChunkedByDefault() {
+    assertEquals(5, cluster.mget(KEYS).size());
+    assertEquals(Collections.singletonList(5), getBatchSizes());
+  }
+
+  @Test
+  public void chunkedByCommandCount() {
+    cluster.setPipelineMaxCommands(2);
+    Map<String, String> result = cluster.mget(KEYS);
+    assertEquals(5, result.size());
+    assertEquals("v-k5", result.get("k5"));
+    assertEquals(Arrays.asList(2, 2, 1), getBatchSizes());
+  }
+
+  @Test
+  public void chunkedByRequestBytes() {
+    // every GET of a two byte key is 21 bytes, the chunk is synced once 60 bytes are written
+    cluster.setPipelineMaxBytes(60);
+    Map<String, String> result = cluster.mget(KEYS);
+    assertEquals(5, result.size());
+    assertEquals("v-k4", result.get("k4"));
+    assertEquals(Arrays.asList(3, 2), getBatchSizes());
+  }
+
+  @Test
+  public void replyBytesWithinCapAreReturned() {
+    cluster.setPipelineMaxCommands(2);
+    // every reply is 10 bytes
+    cluster.setPipelineMaxReplyBytes(50);
+    assertEquals(5, cluster.mget(KEYS).size());
+  }
+
+  @Test
+  public void replyBytesOverCapStopBeforeNextChunk() {
+    cluster.setPipelineMaxCommands(2);
+    cluster.setPipelineMaxReplyBytes(25);
+    try {
+      cluster.mget(KEYS);
+      fail();
+    } catch (JedisPipelineLimitException e) {
+      assertTrue(e.getMessage().contains("reply bytes 40"));
+    }
+    // the cap is checked after each chunk, the last chunk is never sent
+    assertEquals(Arrays.asList(2, 2), getBatchSizes());
+  }
+
+  @Test
+  public void replyBytesCapIsCheckedAfterUnchunkedSync() {
+    cluster.setPipelineMaxReplyBytes(25);
+    try {
+      cluster.mget(KEYS);
+      fail();
+    } catch (JedisPipelineLimitException e) {
+      assertTrue(e.getMessage().contains("reply bytes 50"));
+    }
+    assertEquals(Collections.singletonList(5), getBatchSizes());
+  }
+}
@@ -0,0 +1,154 @@
+package redis.clients.jedis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.array;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.bulk;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.slotRange;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.exceptions.JedisPipelineLimitException;
+import redis.clients.jedis.tests.utils.FakeRedisServer;
+
+/**
+ * Batch commands fanned out to two fake nodes through {@link PipelineCluster#setPipelineExecutor}.
+ */
+public class PipelineClusterParallelTest {
+
+  // slot 3300 on the first node, slot 15495 on the second
+  private static final String B1 = "{b}1";
+  private static final String B2 = "{b}2";
+  private static final String A1 = "{a}1";
+  private static final String A2 = "{a}2";
+
+  private final Map<String, String> strings = new ConcurrentHashMap<>();
+  private volatile boolean secondFailing;
+
+  private FakeRedisServer first;
+  private FakeRedisServer second;
+  private PipelineCluster cluster;
+
+  @Before
+  public void setUp() throws IOException {
+    first = new FakeRedisServer((c, command) -> reply(command));
+    second = new FakeRedisServer((c, command) -> secondFailing && !command.get(0).equalsIgnoreCase("CLUSTER")
+        ? null : reply(command));
+    cluster = new PipelineCluster(new GenericObjectPoolConfig(),
+        new HashSet<>(Collections.singletonList(first.getHostAndPort())), 2000, 2000, 5);
+    strings.put(B1, "b1");
+    strings.put(B2, "b2");
+    strings.put(A1, "a1");
+    strings.put(A2, "a2");
+  }
+
+  @After
+  public void tearDown() {
+    cluster.close();
+    first.close();
+    second.close();
+  }
+
+  private String reply(List<String> command) {
+    switch (command.get(0).toUpperCase()) {
+    case "CLUSTER":
+      return array(slotRange(0, 8191, first.getHostAndPort()), slotRange(8192, 16383, second.getHostAndPort()));
+    case "GET":
+      return bulk(strings.get(command.get(1)));
+    default:
+      return FakeRedisServer.error("ERR unknown command '" + command.get(0) + "'");
+    }
+  }
+
+  private static Map<String, String> map(String... keyValues) {
+    Map<String, String> map = new HashMap<>();
+    for (int i = 0; i < keyValues.length; i += 2) {
+      map.put(keyValues[i], keyValues[i + 1]);
+    }
+    return map;
+  }
+
+  @Test(timeout = 15000)
+  public void resultsOfAllNodesAreMerged() {
+    ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(2);
+    cluster.setPipelineExecutor(executor, true);
+    assertEquals(map(B1, "b1", B2, "b2", A1, "a1", A2, "a2"), cluster.mget(Arrays.asList(B1, A1, B2, A2)));
+    // the calling thread runs one node, the executor the other
+    assertEquals(1, executor.getTaskCount());
+    assertEquals(2, first.count("GET"));
+    assertEquals(2, second.count("GET"));
+  }
+
+  @Test(timeout = 15000)
+  public void failedNodeKeysAreMissing() {
+    cluster.setPipelineExecutor(Executors.newFixedThreadPool(2), true);
+    // the slot table is loaded before the second node goes down
+    assertEquals("a1", cluster.get(A1));
+    secondFailing = true;
+    assertEquals(map(B1, "b1", B2, "b2"), cluster.mget(Arrays.asList(B1, A1, B2, A2)));
+
+    secondFailing = false;
+    assertEquals(map(B1, "b1", B2, "b2", A1, "a1", A2, "a2"), cluster.mget(Arrays.asList(B1, A1, B2, A2)));
+  }
+
+  @Test(timeout = 15000)
+  public void limitExceededOnOneNodeIsThrown() {
+    cluster.setPipelineExecutor(Executors.newFixedThreadPool(2), true);
+    cluster.setPipelineMaxReplyBytes(1000);
+    StringBuilder large = new StringBuilder();
+    for (int i = 0; i < 2000; i++) {
+      large.append('x');
+    }
+    strings.put(A2, large.toString());
+    try {
+      cluster.mget(Arrays.asList(B1, A1, B2, A2));
+      fail();
+    } catch (JedisPipelineLimitException e) {
+      assertTrue(e.getMessage().contains("pipelineMaxReplyBytes 1000"));
+    }
+  }
+
+  @Test(timeout = 15000)
+  public void ownedExecutorIsShutDownOnClose() throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    cluster.setPipelineExecutor(executor, true);
+    assertEquals(map(B1, "b1", A1, "a1"), cluster.mget(Arrays.asList(B1, A1)));
+    cluster.close();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+  }
+
+  @Test(timeout = 15000)
+  public void replacedOwnedExecutorIsShutDown() {
+    ExecutorService owned = Executors.newFixedThreadPool(2);
+    ExecutorService shared = Executors.newFixedThreadPool(2);
+    try {
+      cluster.setPipelineExecutor(owned, true);
+      cluster.setPipelineExecutor(shared);
+      assertTrue(owned.isShutdown());
+      assertEquals(map(B1, "b1", A1, "a1"), cluster.mget(Arrays.asList(B1, A1)));
+      // shared executors stay with the caller
+      cluster.close();
+      assertFalse(shared.isShutdown());
+    } finally {
+      shared.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package redis.clients.jedis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.array;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.bulk;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.error;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.slotRange;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.tests.utils.FakeRedisServer;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+/**
+ * Batched MOVED/ASK re-routing of {@link PipelineClusterCommand}, against fake cluster nodes.
+ */
+public class PipelineClusterRedirectTest {
+
+  private FakeRedisServer nodeA;
+  private FakeRedisServer nodeB;
+  private PipelineCluster cluster;
+
+  @Before
+  public void setUp() throws IOException {
+    // a owns every slot, b only answers redirected keys
+    nodeA = new FakeRedisServer((connection, command) -> replyA(command));
+    nodeB = new FakeRedisServer((connection, command) -> replyB(command));
+    cluster = new PipelineCluster(new GenericObjectPoolConfig(),
+        new HashSet<>(Collections.singletonList(nodeA.getHostAndPort())), 2000, 2000, 5);
+  }
+
+  @After
+  public void tearDown() {
+    cluster.close();
+    nodeA.close();
+    nodeB.close();
+  }
+
+  private String replyA(List<String> command) {
+    String name = command.get(0).toUpperCase();
+    if (name.equals("CLUSTER")) {
+      return array(slotRange(0, 16383, nodeA.getHostAndPort()));
+    }
+    if (name.equals("GET") || name.equals("MGET")) {
+      String key = command.get(1);
+      if (key.startsWith("moved:")) {
+        return error("MOVED " + JedisClusterCRC16.getSlot(key) + " 127.0.0.1:" + nodeB.getPort());
+      }
+      if (key.startsWith("ask:")) {
+        return error("ASK " + JedisClusterCRC16.getSlot(key) + " 127.0.0.1:" + nodeB.getPort());
+      }
+      if (name.equals("GET")) {
+        return bulk("a-" + key);
+      }
+      List<String> values = new ArrayList<>();
+      for (String k : command.subList(1, command.size())) {
+        values.add(bulk("a-" + k));
+      }
+      return array(values);
+    }
+    return error("ERR unknown command '" + command.get(0) + "'");
+  }
+
+  private String replyB(List<String> command) {
+    String name = command.get(0).toUpperCase();
+    if (name.equals("ASKING")) {
+      return FakeRedisServer.ok();
+    }
+    if (name.equals("GET")) {
+      return bulk("b-" + command.get(1));
+    }
+    if (name.equals("MGET")) {
+      List<String> values = new ArrayList<>();
+      for (String k : command.subList(1, command.size())) {
+        values.add(bulk("b-" + k));
+      }
+      return array(values);
+    }
+    return error("ERR unknown command '" + command.get(0) + "'");
+  }
+
+  @Test
+  public void movedKeysAreRedirectedInOneBatch() {
+    List<String> keys = Arrays.asList("a1", "moved:1", "a2", "moved:2", "moved:3");
+    nodeB.clearCommands();
+    Map<String, String> result = cluster.mget(keys);
+    assertEquals(5, result.size());
+    assertEquals("a-a1", result.get("a1"));
+    assertEquals("b-moved:1", result.get("moved:1"));
+    assertEquals("b-moved:3", result.get("moved:3"));
+    // all moved keys go to b over a single connection
+    assertEquals(1, nodeB.getConnectionCount());
+    List<String> redirected = new ArrayList<>();
+    for (List<String> command : nodeB.getCommands()) {
+      redirected.addAll(command.subList(1, command.size()));
+    }
+    assertEquals(new HashSet<>(Arrays.asList("moved:1", "moved:2", "moved:3")), new HashSet<>(redirected));
+  }
+
+  @Test
+  public void askKeysAreSentWithAsking() {
+    List<String> keys = Arrays.asList("a1", "ask:1", "ask:2");
+    Map<String, String> result = cluster.mget(keys);
+    assertEquals("b-ask:1", result.get("ask:1"));
+    assertEquals("b-ask:2", result.get("ask:2"));
+    List<List<String>> commands = nodeB.getCommands();
+    assertEquals(4, commands.size());
+    for (int i = 0; i < commands.size(); i += 2) {
+      assertEquals("ASKING", commands.get(i).get(0));
+      assertEquals("GET", commands.get(i + 1).get(0));
+      assertTrue(commands.get(i + 1).get(1).startsWith("ask:"));
+    }
+  }
+}
@@ -0,0 +1,256 @@
+package redis.clients.jedis;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.array;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.bulk;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.slotRange;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.exceptions.JedisPipelineLimitException;
+import redis.clients.jedis.tests.utils.FakeRedisServer;
+
+/**
+ * Streaming and iterator variants of mget, mgetBytes and mHgetAll against two fake nodes: values
+ * are delivered per node, missing keys are skipped and errors stop the stream.
+ */
+public class PipelineClusterStreamTest {
+
+  // slot 3300 on the first node, slot 15495 on the second
+  private static final String B1 = "{b}1";
+  private static final String B2 = "{b}2";
+  private static final String B3 = "{b}3";
+  private static final String A1 = "{a}1";
+  private static final String A2 = "{a}2";
+  // the first node is requested first, B3 does not exist
+  private static final List<String> KEYS = Arrays.asList(B1, A1, B2, B3, A2);
+
+  private final Map<String, String> strings = new ConcurrentHashMap<>();
+  private volatile boolean secondFailing;
+
+  private FakeRedisServer first;
+  private FakeRedisServer second;
+  private PipelineCluster cluster;
+
+  @Before
+  public void setUp() throws IOException {
+    first = new FakeRedisServer((c, command) -> reply(command));
+    second = new FakeRedisServer((c, command) -> secondFailing && !command.get(0).equalsIgnoreCase("CLUSTER")
+        ? null : reply(command));
+    cluster = new PipelineCluster(new GenericObjectPoolConfig(),
+        new HashSet<>(Collections.singletonList(first.getHostAndPort())), 2000, 2000, 5);
+    strings.put(B1, "b1");
+    strings.put(B2, "b2");
+    strings.put(A1, "a1");
+    strings.put(A2, "a2");
+  }
+
+  @After
+  public void tearDown() {
+    cluster.close();
+    first.close();
+    second.close();
+  }
+
+  private String reply(List<String> command) {
+    switch (command.get(0).toUpperCase()) {
+    case "CLUSTER":
+      return array(slotRange(0, 8191, first.getHostAndPort()), slotRange(8192, 16383, second.getHostAndPort()));
+    case "GET":
+      return bulk(strings.get(command.get(1)));
+    case "HGETALL":
+      String value = strings.get(command.get(1));
+      return value == null ? array() : array(bulk("f"), bulk(value));
+    default:
+      return FakeRedisServer.error("ERR unknown command '" + command.get(0) + "'");
+    }
+  }
+
+  private int sent() {
+    return first.count("GET") + second.count("GET");
+  }
+
+  private static Map<String, String> map(String... keyValues) {
+    Map<String, String> map = new HashMap<>();
+    for (int i = 0; i < keyValues.length; i += 2) {
+      map.put(keyValues[i], keyValues[i + 1]);
+    }
+    return map;
+  }
+
+  @Test(timeout = 15000)
+  public void mgetCallsBackAfterEachNode() {
+    Map<String, Integer> sentAtCallback = new HashMap<>();
+    Map<String, String> values = new HashMap<>();
+    cluster.mget(KEYS, (key, value) -> {
+      values.put(key, value);
+      sentAtCallback.put(key, sent());
+    });
+    assertEquals(map(B1, "b1", B2, "b2", A1, "a1", A2, "a2"), values);
+    // keys of the first node are called back before the second node is requested
+    Map<String, Integer> expected = new HashMap<>();
+    expected.put(B1, 3);
+    expected.put(B2, 3);
+    expected.put(A1, 5);
+    expected.put(A2, 5);
+    assertEquals(expected, sentAtCallback);
+  }
+
+  @Test(timeout = 15000)
+  public void mgetIteratorRunsNodesOnDemand() {
+    Iterator<Map.Entry<String, String>> iterator = cluster.mgetIterator(KEYS);
+    assertEquals(0, sent());
+    assertTrue(iterator.hasNext());
+    assertEquals(3, sent());
+
+    Map<String, String> values = new HashMap<>();
+    Map.Entry<String, String> entry = iterator.next();
+    values.put(entry.getKey(), entry.getValue());
+    try {
+      iterator.remove();
+      fail();
+    } catch (UnsupportedOperationException e) {
+      // read only
+    }
+    while (iterator.hasNext()) {
+      entry = iterator.next();
+      values.put(entry.getKey(), entry.getValue());
+    }
+    assertEquals(map(B1, "b1", B2, "b2", A1, "a1", A2, "a2"), values);
+    assertEquals(5, sent());
+
+    assertFalse(iterator.hasNext());
+    try {
+      iterator.next();
+      fail();
+    } catch (NoSuchElementException e) {
+      // exhausted
+    }
+  }
+
+  @Test(timeout = 15000)
+  public void emptyKeysNeitherCallBackNorIterate() {
+    cluster.mget(Collections.<String> emptyList(), (key, value) -> fail());
+    assertFalse(cluster.mgetIterator(Collections.<String> emptyList()).hasNext());
+    assertEquals(0, sent());
+  }
+
+  @Test(timeout = 15000)
+  public void mgetBytesIteratorSkipsMissingKeys() {
+    Map<String, String> values = new HashMap<>();
+    Iterator<Map.Entry<String, byte[]>> iterator = cluster.mgetBytesIterator(KEYS);
+    while (iterator.hasNext()) {
+      Map.Entry<String, byte[]> entry = iterator.next();
+      values.put(entry.getKey(), new String(entry.getValue(), StandardCharsets.UTF_8));
+    }
+    assertEquals(map(B1, "b1", B2, "b2", A1, "a1", A2, "a2"), values);
+
+    List<String> keys = new ArrayList<>();
+    cluster.mgetBytes(Arrays.asList(B3, A1), (key, value) -> {
+      keys.add(key);
+      assertArrayEquals("a1".getBytes(StandardCharsets.UTF_8), value);
+    });
+    assertEquals(Collections.singletonList(A1), keys);
+  }
+
+  @Test(timeout = 15000)
+  public void mHgetAllStreamSkipsMissingKeys() {
+    Map<String, Map<String, String>> values = new HashMap<>();
+    cluster.mHgetAll(KEYS, values::put);
+    assertEquals(4, values.size());
+    assertEquals(Collections.singletonMap("f", "b2"), values.get(B2));
+    assertFalse(values.containsKey(B3));
+
+    values.clear();
+    Iterator<Map.Entry<String, Map<String, String>>> iterator = cluster.mHgetAllIterator(KEYS);
+    while (iterator.hasNext()) {
+      Map.Entry<String, Map<String, String>> entry = iterator.next();
+      values.put(entry.getKey(), entry.getValue());
+    }
+    assertEquals(4, values.size());
+    assertEquals(Collections.singletonMap("f", "a1"), values.get(A1));
+  }
+
+  @Test(timeout = 15000)
+  public void consumerErrorStopsStream() {
+    List<String> keys = new ArrayList<>();
+    try {
+      cluster.mget(KEYS, (key, value) -> {
+        keys.add(key);
+        throw new IllegalStateException("consumer");
+      });
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("consumer", e.getMessage());
+    }
+    assertEquals(1, keys.size());
+    assertEquals(0, second.count("GET"));
+  }
+
+  @Test(timeout = 15000)
+  public void limitExceededMidStreamIsThrown() {
+    // the replies of the first node are 21 bytes, the second node's 16 more exceed the cap
+    cluster.setPipelineMaxReplyBytes(30);
+    Map<String, String> values = new HashMap<>();
+    try {
+      cluster.mget(KEYS, values::put);
+      fail();
+    } catch (JedisPipelineLimitException e) {
+      assertTrue(e.getMessage().contains("reply bytes 37"));
+    }
+    assertEquals(map(B1, "b1", B2, "b2"), values);
+  }
+
+  @Test(timeout = 15000)
+  public void limitExceededMidIteratorIsThrown() {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    cluster.setPipelineExecutor(executor, true);
+    cluster.setPipelineMaxCommands(1);
+    // every chunk is a single reply of at most 8 bytes
+    cluster.setPipelineMaxReplyBytes(20);
+    Iterator<Map.Entry<String, String>> iterator = cluster.mgetIterator(KEYS);
+    int delivered = 0;
+    try {
+      while (iterator.hasNext()) {
+        iterator.next();
+        delivered++;
+      }
+      fail();
+    } catch (JedisPipelineLimitException e) {
+      assertTrue(e.getMessage().contains("exceed pipelineMaxReplyBytes 20"));
+    }
+    assertTrue("delivered " + delivered, delivered >= 1 && delivered < 4);
+  }
+
+  @Test(timeout = 15000)
+  public void failedNodeIsSkipped() {
+    // the slot table is loaded before the second node goes down
+    assertEquals("a1", cluster.get(A1));
+    secondFailing = true;
+    Map<String, String> values = new HashMap<>();
+    cluster.mget(KEYS, values::put);
+    assertEquals(map(B1, "b1", B2, "b2"), values);
+  }
+}
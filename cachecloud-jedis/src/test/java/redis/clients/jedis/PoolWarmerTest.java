@@ -0,0 +1,154 @@
+package redis.clients.jedis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.tests.utils.FakeRedisServer;
+import redis.clients.jedis.util.Pool;
+
+/**
+ * {@link PoolWarmer} against a fake node: how many connections each pool gets, the report counts
+ * and the time budget.
+ */
+public class PoolWarmerTest {
+
+  // holds the replies of AUTH
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final List<Pool<?>> pools = new ArrayList<>();
+  private volatile boolean authBlocking;
+
+  private FakeRedisServer server;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new FakeRedisServer((c, command) -> {
+      if (authBlocking && command.get(0).equalsIgnoreCase("AUTH")) {
+        try {
+          release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      return FakeRedisServer.ok();
+    });
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    for (Pool<?> pool : pools) {
+      pool.destroy();
+    }
+    server.close();
+  }
+
+  private JedisPool jedisPool(int maxTotal, int port) {
+    GenericObjectPoolConfig config = new GenericObjectPoolConfig();
+    config.setMaxTotal(maxTotal);
+    JedisPool pool = new JedisPool(config, "127.0.0.1", port, 2000);
+    pools.add(pool);
+    return pool;
+  }
+
+  private static int unusedPort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+
+  @Test(timeout = 15000)
+  public void poolsAreFilledUpToConnectionsPerPool() {
+    JedisPool pool = jedisPool(8, server.getPort());
+    PoolWarmer.Report report = PoolWarmer.warmUp(Collections.singletonList(pool), 3, 5000);
+    assertEquals(1, report.getPools());
+    assertEquals(3, report.getRequested());
+    assertEquals(3, report.getWarmed());
+    assertEquals(0, report.getFailed());
+    assertEquals(0, report.getTimedOut());
+    assertEquals(3, pool.getNumIdle());
+
+    // idle connections already in the pool count towards connectionsPerPool
+    report = PoolWarmer.warmUp(Collections.singletonList(pool), 5, 5000);
+    assertEquals(2, report.getRequested());
+    assertEquals(2, report.getWarmed());
+    assertEquals(5, pool.getNumIdle());
+  }
+
+  @Test(timeout = 15000)
+  public void activeConnectionsLeaveRoomUpToMaxTotal() {
+    JedisPool pool = jedisPool(4, server.getPort());
+    Jedis borrowed = pool.getResource();
+    try {
+      // one active and one idle: maxTotal 4 leaves room for 3, the idle one is among them
+      pool.addObjects(1);
+      PoolWarmer.Report report = PoolWarmer.warmUp(Collections.singletonList(pool), 10, 5000);
+      assertEquals(2, report.getRequested());
+      assertEquals(2, report.getWarmed());
+      assertEquals(3, pool.getNumIdle());
+      assertEquals(1, pool.getNumActive());
+
+      // full pools are not warmed
+      report = PoolWarmer.warmUp(Collections.singletonList(pool), 10, 5000);
+      assertEquals(0, report.getRequested());
+    } finally {
+      borrowed.close();
+    }
+  }
+
+  @Test(timeout = 15000)
+  public void reportCountsWarmedAndFailed() throws IOException {
+    JedisPool good = jedisPool(8, server.getPort());
+    JedisPool bad = jedisPool(8, unusedPort());
+    PoolWarmer.Report report = PoolWarmer.warmUp(Arrays.asList(good, bad), 2, 5000);
+    assertEquals(2, report.getPools());
+    assertEquals(4, report.getRequested());
+    assertEquals(2, report.getWarmed());
+    assertEquals(2, report.getFailed());
+    assertEquals(0, report.getTimedOut());
+    assertEquals(2, good.getNumIdle());
+    assertEquals(0, bad.getNumIdle());
+  }
+
+  @Test(timeout = 15000)
+  public void unfinishedConnectionsTimeOut() {
+    authBlocking = true;
+    GenericObjectPoolConfig config = new GenericObjectPoolConfig();
+    config.setMaxTotal(100);
+    config.setMaxIdle(100);
+    JedisShardInfo shard = new JedisShardInfo("127.0.0.1", server.getPort(), 5000);
+    shard.setPassword("secret");
+    ShardedJedisPool pool = new ShardedJedisPool(config, Collections.singletonList(shard));
+    pools.add(pool);
+
+    // 70 tasks on at most 64 threads, 6 never start
+    PoolWarmer.Report report = PoolWarmer.warmUp(Collections.singletonList(pool), 70, 200);
+    assertTrue(report.toString(), report.getCostMillis() < 2000);
+    assertEquals(70, report.getRequested());
+    assertEquals(70, report.getTimedOut());
+    assertEquals(0, report.getWarmed());
+    // the tasks that did not start returned their ShardedJedis, the running ones still hold theirs
+    assertEquals(64, pool.getNumActive());
+    assertEquals(6, pool.getNumIdle());
+
+    // running tasks return their ShardedJedis once connected
+    release.countDown();
+    while (pool.getNumActive() > 0) {
+      Thread.yield();
+    }
+    assertEquals(70, pool.getNumIdle());
+  }
+}
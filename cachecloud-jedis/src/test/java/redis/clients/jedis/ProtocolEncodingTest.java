@@ -0,0 +1,99 @@
+package redis.clients.jedis;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import redis.clients.jedis.Protocol.Command;
+import redis.clients.jedis.Protocol.Keyword;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.util.RedisOutputStream;
+import redis.clients.jedis.util.SafeEncoder;
+
+public class ProtocolEncodingTest {
+
+  private static String toString(byte[] bytes) {
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void doubles() {
+    assertEquals("3", toString(Protocol.toByteArray(3.0)));
+    assertEquals("-3", toString(Protocol.toByteArray(-3.0)));
+    assertEquals("1600000000000", toString(Protocol.toByteArray(1600000000000.0)));
+    assertEquals("0", toString(Protocol.toByteArray(0.0)));
+    // -0.0 and large or fractional values keep Double.toString
+    assertEquals("-0.0", toString(Protocol.toByteArray(-0.0)));
+    assertEquals("1.0E15", toString(Protocol.toByteArray(1e15)));
+    assertEquals("2.5", toString(Protocol.toByteArray(2.5)));
+    assertEquals("-1.0E-5", toString(Protocol.toByteArray(-0.00001)));
+    assertEquals("+inf", toString(Protocol.toByteArray(Double.POSITIVE_INFINITY)));
+    assertEquals("-inf", toString(Protocol.toByteArray(Double.NEGATIVE_INFINITY)));
+    assertEquals("NaN", toString(Protocol.toByteArray(Double.NaN)));
+  }
+
+  @Test
+  public void longs() {
+    for (long value : new long[] { 0, -1, 42, Long.MAX_VALUE, Long.MIN_VALUE }) {
+      assertEquals(String.valueOf(value), toString(Protocol.toByteArray(value)));
+    }
+    assertEquals(String.valueOf(Integer.MIN_VALUE), toString(Protocol.toByteArray(Integer.MIN_VALUE)));
+  }
+
+  @Test
+  public void mixedArgumentsMatchBinaryEncoding() throws IOException {
+    Object[] args = { "kéy", new byte[] { 1, 2 }, 7, -8L, (short) 3, (byte) 4, 2.5, 3.0f,
+        Keyword.WITHSCORES, Command.GET };
+    byte[][] binary = new byte[args.length][];
+    long length = 0;
+    for (int i = 0; i < args.length; i++) {
+      binary[i] = Protocol.encodeArgument(args[i]);
+      length += binary[i].length;
+    }
+    assertEquals(length, Protocol.argumentsLength(args));
+
+    ByteArrayOutputStream mixed = new ByteArrayOutputStream();
+    RedisOutputStream os = new RedisOutputStream(mixed, 64);
+    Protocol.sendCommand(os, Command.ZADD, args);
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    RedisOutputStream eos = new RedisOutputStream(expected, 64);
+    Protocol.sendCommand(eos, Command.ZADD, binary);
+    os.flush();
+    eos.flush();
+    assertArrayEquals(expected.toByteArray(), mixed.toByteArray());
+  }
+
+  @Test
+  public void argumentsLengthOfStrings() {
+    String[] args = { "a", "中", "😀", "\ud83d" };
+    long expected = 0;
+    for (String arg : args) {
+      expected += SafeEncoder.encode(arg).length;
+    }
+    assertEquals(expected, Protocol.argumentsLength(args));
+    assertEquals(0, Protocol.argumentsLength(new Object[] { null, new Object() }));
+  }
+
+  @Test
+  public void invalidArgumentWritesNothing() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    RedisOutputStream os = new RedisOutputStream(bytes, 64);
+    try {
+      Protocol.sendCommand(os, Command.SET, new Object[] { "key", null });
+      fail();
+    } catch (JedisDataException e) {
+    }
+    try {
+      Protocol.sendCommand(os, Command.SET, "key", new Object());
+      fail();
+    } catch (JedisDataException e) {
+    }
+    assertEquals(0, os.getWrittenBytes());
+  }
+}
@@ -0,0 +1,219 @@
+package redis.clients.jedis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.array;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.bulk;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.slotRange;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Test;
+
+import redis.clients.jedis.exceptions.JedisNoReachableClusterNodeException;
+import redis.clients.jedis.tests.utils.FakeRedisServer;
+
+public class ReadFromTest {
+
+  private final List<JedisPool> pools = new ArrayList<>();
+  private final List<FakeRedisServer> servers = new ArrayList<>();
+  private PipelineCluster cluster;
+
+  @After
+  public void tearDown() {
+    for (JedisPool pool : pools) {
+      pool.close();
+    }
+    if (cluster != null) {
+      cluster.close();
+    }
+    for (FakeRedisServer server : servers) {
+      server.close();
+    }
+  }
+
+  /**
+   * Pool of an unreachable node whose latency is the given round trip, never connected.
+   */
+  private JedisPool pool(long rttMillis) {
+    JedisPool pool = new JedisPool("127.0.0.1", 1);
+    NodeLatency latency = new NodeLatency();
+    latency.commandSent();
+    latency.replyReceived(TimeUnit.MILLISECONDS.toNanos(rttMillis));
+    pool.setNodeLatency(latency);
+    pools.add(pool);
+    return pool;
+  }
+
+  private static void quarantine(JedisPool pool) {
+    NodeHealth health = new NodeHealth(pool.getHost() + ":" + pool.getPort(), null);
+    for (int i = 0; i < NodeHealth.DEFAULT_CONSECUTIVE_FAILURES; i++) {
+      health.failure();
+    }
+    assertTrue(health.isQuarantined());
+    pool.setNodeHealth(health);
+  }
+
+  @Test
+  public void masterAlwaysReadsMaster() {
+    JedisPool master = pool(10);
+    JedisPool replica = pool(1);
+    assertSame(master, ReadFrom.MASTER.select(master, new JedisPool[] { replica }));
+  }
+
+  @Test
+  public void withoutReplicas() {
+    JedisPool master = pool(1);
+    JedisPool[] none = new JedisPool[0];
+    assertSame(master, ReadFrom.REPLICA_PREFERRED.select(master, none));
+    assertNull(ReadFrom.REPLICA.select(master, none));
+    assertSame(master, ReadFrom.NEAREST.select(master, none));
+  }
+
+  @Test
+  public void replicaReadsNeverPickMaster() {
+    JedisPool master = pool(1);
+    JedisPool[] replicas = { pool(5), pool(6) };
+    for (int i = 0; i < 100; i++) {
+      assertNotSame(master, ReadFrom.REPLICA.select(master, replicas));
+      assertNotSame(master, ReadFrom.REPLICA_PREFERRED.select(master, replicas));
+    }
+  }
+
+  @Test
+  public void nearestPicksCheaperOfTwo() {
+    JedisPool master = pool(20);
+    JedisPool replica = pool(2);
+    for (int i = 0; i < 100; i++) {
+      assertSame(replica, ReadFrom.NEAREST.select(master, new JedisPool[] { replica }));
+    }
+  }
+
+  @Test
+  public void powerOfTwoChoicesNeverPicksWorst() {
+    JedisPool master = pool(30);
+    JedisPool fast = pool(1);
+    JedisPool medium = pool(10);
+    JedisPool[] replicas = { fast, medium };
+    Map<JedisPool, Integer> picks = new HashMap<>();
+    for (int i = 0; i < 1000; i++) {
+      JedisPool chosen = ReadFrom.NEAREST.select(master, replicas);
+      Integer count = picks.get(chosen);
+      picks.put(chosen, count == null ? 1 : count + 1);
+    }
+    // the slowest of three candidates always loses its comparison
+    assertNull(picks.get(master));
+    // medium wins whenever it is paired with master
+    assertTrue(picks.get(medium) > 0);
+    assertTrue(picks.get(fast) > picks.get(medium));
+  }
+
+  @Test
+  public void quarantinedNodesAreAvoided() {
+    JedisPool master = pool(1);
+    JedisPool bad = pool(1);
+    JedisPool good = pool(50);
+    quarantine(bad);
+    for (int i = 0; i < 100; i++) {
+      assertSame(good, ReadFrom.REPLICA.select(master, new JedisPool[] { bad, good }));
+      assertNotSame(bad, ReadFrom.NEAREST.select(master, new JedisPool[] { bad, good }));
+    }
+    // no healthy replica left: preferred falls back to master, replica only keeps the chosen one
+    assertSame(master, ReadFrom.REPLICA_PREFERRED.select(master, new JedisPool[] { bad }));
+    assertSame(bad, ReadFrom.REPLICA.select(master, new JedisPool[] { bad }));
+  }
+
+  @Test
+  public void alternateSkipsExcludedAndQuarantined() {
+    JedisPool master = pool(10);
+    JedisPool bad = pool(1);
+    JedisPool replica = pool(5);
+    quarantine(bad);
+    JedisPool[] replicas = { bad, replica };
+    assertSame(replica, ReadFrom.alternate(master, replicas, null));
+    assertSame(master, ReadFrom.alternate(master, replicas, replica));
+    assertNull(ReadFrom.alternate(null, new JedisPool[] { replica }, replica));
+  }
+
+  @Test
+  public void fallback() {
+    assertEquals(ReadFrom.MASTER, ReadFrom.MASTER.fallback());
+    assertEquals(ReadFrom.MASTER, ReadFrom.REPLICA_PREFERRED.fallback());
+    assertEquals(ReadFrom.MASTER, ReadFrom.NEAREST.fallback());
+    assertEquals(ReadFrom.REPLICA, ReadFrom.REPLICA.fallback());
+  }
+
+  /**
+   * Node answering GET and MGET with its name and the key.
+   */
+  private FakeRedisServer node(String name, HostAndPort[][] slots) throws IOException {
+    FakeRedisServer server = new FakeRedisServer((c, command) -> {
+      switch (command.get(0).toUpperCase()) {
+      case "CLUSTER":
+        return array(slotRange(0, 8191, slots[0]), slotRange(8192, 16383, slots[1]));
+      case "GET":
+        return bulk(name + "-" + command.get(1));
+      case "MGET":
+        List<String> values = new ArrayList<>();
+        for (String key : command.subList(1, command.size())) {
+          values.add(bulk(name + "-" + key));
+        }
+        return array(values);
+      default:
+        return FakeRedisServer.ok();
+      }
+    });
+    servers.add(server);
+    return server;
+  }
+
+  @Test(timeout = 15000)
+  public void batchReadOfShardWithoutReplica() throws IOException {
+    // the first shard has a replica, the second has none
+    HostAndPort[][] slots = new HostAndPort[2][];
+    FakeRedisServer master = node("m", slots);
+    FakeRedisServer replica = node("r", slots);
+    FakeRedisServer single = node("s", slots);
+    slots[0] = new HostAndPort[] { master.getHostAndPort(), replica.getHostAndPort() };
+    slots[1] = new HostAndPort[] { single.getHostAndPort() };
+    cluster = new PipelineCluster(new GenericObjectPoolConfig(),
+        new HashSet<>(Collections.singletonList(master.getHostAndPort())), 2000, 2000, 5);
+    // slot 3300 on the first shard, slot 15495 on the second
+    List<String> keys = Arrays.asList("{b}1", "{a}1");
+
+    cluster.setReadFrom(ReadFrom.REPLICA);
+    try {
+      cluster.mget(keys);
+      fail("keys of the shard without replica were dropped");
+    } catch (JedisNoReachableClusterNodeException e) {
+      // like a single key read
+    }
+    try {
+      cluster.get("{a}1");
+      fail();
+    } catch (JedisNoReachableClusterNodeException e) {
+      // expected
+    }
+    assertEquals("r-{b}1", cluster.get("{b}1"));
+
+    cluster.setReadFrom(ReadFrom.REPLICA_PREFERRED);
+    Map<String, String> expected = new HashMap<>();
+    expected.put("{b}1", "r-{b}1");
+    expected.put("{a}1", "s-{a}1");
+    assertEquals(expected, cluster.mget(keys));
+  }
+}
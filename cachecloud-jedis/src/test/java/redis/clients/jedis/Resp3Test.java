@@ -0,0 +1,245 @@
+package redis.clients.jedis;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.tests.utils.FakeRedisServer;
+import redis.clients.jedis.util.RedisInputStream;
+import redis.clients.jedis.util.SafeEncoder;
+
+/**
+ * RESP3 replies are decoded by {@link Protocol} and {@link FlatReply} into their RESP2 shapes,
+ * push frames go to the {@link PushListener}.
+ */
+public class Resp3Test {
+
+  private static final String PUSH = ">2\r\n$10\r\ninvalidate\r\n*1\r\n$3\r\nkey\r\n";
+
+  private static RedisInputStream stream(String resp) {
+    // a tiny buffer splits frames across refills
+    return new RedisInputStream(new ByteArrayInputStream(resp.getBytes(StandardCharsets.UTF_8)), 3);
+  }
+
+  private static Object read(String resp) {
+    return Protocol.read(stream(resp));
+  }
+
+  private static FlatReply flat(String resp) {
+    FlatReply reply = new FlatReply();
+    reply.read(stream(resp));
+    return reply;
+  }
+
+  private static String string(Object bytes) {
+    return SafeEncoder.encode((byte[]) bytes);
+  }
+
+  @Test
+  public void nullReply() {
+    assertNull(read("_\r\n"));
+    assertTrue(flat("_\r\n").isNull(0));
+    assertEquals(Arrays.asList("a", null), flat("*2\r\n$1\r\na\r\n_\r\n").toStringList());
+  }
+
+  @Test
+  public void doubleAndBigNumberAreText() {
+    assertEquals("3.14", string(read(",3.14\r\n")));
+    assertEquals("-inf", string(read(",-inf\r\n")));
+    String big = "3492890328409238509324850943850943825024385";
+    assertEquals(big, string(read("(" + big + "\r\n")));
+    assertEquals(3.14, BuilderFactory.DOUBLE.build(read(",3.14\r\n")), 0);
+    assertEquals(3.14, flat(",3.14\r\n").getDouble(0), 0);
+    assertEquals(Double.NEGATIVE_INFINITY, flat(",-inf\r\n").getDouble(0), 0);
+    assertEquals("12345678901234567890", flat("(12345678901234567890\r\n").getString(0));
+  }
+
+  @Test
+  public void booleanIsOneOrZero() {
+    assertEquals(1L, read("#t\r\n"));
+    assertEquals(0L, read("#f\r\n"));
+    assertEquals(1, flat("#t\r\n").getLong(0));
+    assertEquals(0, flat("#f\r\n").getLong(0));
+  }
+
+  @Test
+  public void verbatimPrefixIsStripped() {
+    String resp = "=15\r\ntxt:Some string\r\n";
+    assertEquals("Some string", string(read(resp)));
+    assertEquals("Some string", flat(resp).getString(0));
+    assertEquals(11, flat(resp).getReplyBytes());
+    // nothing to strip from a text shorter than the prefix
+    assertEquals("abc", string(read("=3\r\nabc\r\n")));
+    assertEquals("abc", flat("=3\r\nabc\r\n").getString(0));
+    assertEquals("", string(read("=4\r\ntxt:\r\n")));
+  }
+
+  @Test
+  public void blobErrorThrows() {
+    String resp = "!21\r\nSYNTAX invalid syntax\r\n";
+    try {
+      read(resp);
+      fail();
+    } catch (JedisDataException e) {
+      assertEquals("SYNTAX invalid syntax", e.getMessage());
+    }
+    try {
+      flat(resp);
+      fail();
+    } catch (JedisDataException e) {
+      assertEquals("SYNTAX invalid syntax", e.getMessage());
+    }
+  }
+
+  @Test
+  public void mapIsFlatMultiBulk() {
+    String resp = "%2\r\n$2\r\nf1\r\n$2\r\nv1\r\n+f2\r\n:2\r\n";
+    List<?> list = (List<?>) read(resp);
+    assertEquals(4, list.size());
+    assertEquals("f1", string(list.get(0)));
+    assertEquals("v1", string(list.get(1)));
+    assertEquals("f2", string(list.get(2)));
+    assertEquals(2L, list.get(3));
+
+    String hgetall = "%2\r\n$2\r\nf1\r\n$2\r\nv1\r\n$2\r\nf2\r\n$2\r\nv2\r\n";
+    Map<String, String> expected = new HashMap<>();
+    expected.put("f1", "v1");
+    expected.put("f2", "v2");
+    assertEquals(expected, BuilderFactory.STRING_MAP.build(read(hgetall)));
+    assertEquals(expected, flat(hgetall).toStringMap());
+    assertEquals(4, flat(hgetall).getCount(0));
+  }
+
+  @Test
+  public void mapKeepsNestedErrors() {
+    List<?> list = (List<?>) read("%1\r\n$1\r\nk\r\n-ERR inner\r\n");
+    assertEquals("k", string(list.get(0)));
+    assertEquals("ERR inner", ((JedisDataException) list.get(1)).getMessage());
+  }
+
+  @Test
+  public void setAndPushAreMultiBulks() {
+    assertEquals(Arrays.asList("a", "b"), BuilderFactory.STRING_LIST.build(read("~2\r\n$1\r\na\r\n$1\r\nb\r\n")));
+    assertEquals(Arrays.asList("a", "b"), flat("~2\r\n$1\r\na\r\n$1\r\nb\r\n").toStringList());
+    // without a listener a push is returned like a reply
+    List<?> push = (List<?>) Protocol.read(stream(PUSH), null);
+    assertEquals("invalidate", string(push.get(0)));
+    assertEquals("key", string(((List<?>) push.get(1)).get(0)));
+  }
+
+  @Test
+  public void attributeIsSkipped() {
+    String attribute = "|1\r\n$14\r\nkey-popularity\r\n%1\r\n$1\r\na\r\n,0.1923\r\n";
+    assertEquals("OK", string(read(attribute + "+OK\r\n")));
+    FlatReply reply = flat(attribute + "*2\r\n:1\r\n:2\r\n");
+    assertEquals(3, reply.size());
+    assertEquals(2, reply.getCount(0));
+    assertEquals(2, reply.getLong(2));
+    assertEquals(0, reply.getReplyBytes());
+  }
+
+  @Test
+  public void nestedScorePairsBuildTuples() {
+    String resp = "*2\r\n*2\r\n$1\r\na\r\n,1.5\r\n*2\r\n$1\r\nb\r\n,2\r\n";
+    List<Tuple> tuples = new ArrayList<>(BuilderFactory.TUPLE_ZSET.build(read(resp)));
+    assertEquals(new Tuple("a", 1.5), tuples.get(0));
+    assertEquals(new Tuple("b", 2d), tuples.get(1));
+  }
+
+  @Test
+  public void pushesAheadOfReplyGoToListener() {
+    List<List<Object>> pushes = new ArrayList<>();
+    RedisInputStream is = stream(PUSH + PUSH + "$1\r\nv\r\n" + PUSH + ":1\r\n");
+    assertEquals("v", string(Protocol.read(is, pushes::add)));
+    assertEquals(2, pushes.size());
+    assertEquals("invalidate", string(pushes.get(0).get(0)));
+    assertArrayEquals(SafeEncoder.encode("key"), (byte[]) ((List<?>) pushes.get(1).get(1)).get(0));
+    // a push after the reply waits for the next read
+    Protocol.readPushes(is, pushes::add);
+    assertEquals(3, pushes.size());
+    assertEquals(1L, Protocol.read(is));
+  }
+
+  @Test
+  public void failingListenerDoesNotLoseReply() {
+    RedisInputStream is = stream(PUSH + ":5\r\n");
+    assertEquals(5L, Protocol.read(is, push -> {
+      throw new IllegalStateException("listener bug");
+    }));
+  }
+
+  @Test
+  public void readPushesWithoutListenerConsumesNothing() {
+    RedisInputStream is = stream(PUSH);
+    Protocol.readPushes(is, null);
+    assertEquals(Protocol.GREATER_THAN_BYTE, is.peekByte());
+  }
+
+  @Test
+  public void connectionHandsPushesToListener() throws IOException {
+    FakeRedisServer server = new FakeRedisServer((c, command) -> PUSH + FakeRedisServer.bulk("v"));
+    BinaryClient client = new BinaryClient("127.0.0.1", server.getPort());
+    try {
+      List<List<Object>> pushes = new ArrayList<>();
+      client.setPushListener(pushes::add);
+      client.sendCommand(Protocol.Command.GET, "k");
+      assertEquals("v", client.getBulkReply());
+      client.setFlatReplyEnabled(true);
+      client.sendCommand(Protocol.Command.GET, "k");
+      assertEquals("v", client.getBulkReply());
+      assertEquals(2, pushes.size());
+      assertEquals("invalidate", string(pushes.get(1).get(0)));
+    } finally {
+      client.close();
+      server.close();
+    }
+  }
+
+  @Test
+  public void helloIsSentNowAndOnReconnect() throws IOException {
+    FakeRedisServer server = new FakeRedisServer((c, command) -> command.get(0).equals("HELLO")
+        ? "%1\r\n$5\r\nproto\r\n:" + command.get(1) + "\r\n" : FakeRedisServer.simple("PONG"));
+    BinaryClient client = new BinaryClient("127.0.0.1", server.getPort());
+    try {
+      client.ping();
+      assertEquals("PONG", client.getStatusCodeReply());
+      client.setProtocolVersion(Protocol.RESP3);
+      assertEquals(Protocol.RESP3, client.getProtocolVersion());
+      assertEquals(Arrays.asList(Arrays.asList("PING"), Arrays.asList("HELLO", "3")), server.getCommands(0));
+
+      client.disconnect();
+      client.ping();
+      assertEquals("PONG", client.getStatusCodeReply());
+      assertEquals(Arrays.asList(Arrays.asList("HELLO", "3"), Arrays.asList("PING")), server.getCommands(1));
+
+      // switching back to RESP2 is negotiated as well, setting the current version is a no-op
+      client.setProtocolVersion(Protocol.RESP2);
+      client.setProtocolVersion(Protocol.RESP2);
+      assertEquals(Collections.singletonList("HELLO"), server.getCommands(1).get(2).subList(0, 1));
+      assertEquals(3, server.getCommands(1).size());
+    } finally {
+      client.close();
+      server.close();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unsupportedProtocolVersion() {
+    new BinaryClient().setProtocolVersion(4);
+  }
+}
@@ -0,0 +1,191 @@
+package redis.clients.jedis.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Test;
+
+import redis.clients.jedis.HedgePolicy;
+import redis.clients.jedis.exceptions.JedisException;
+
+public class HedgePolicyTest {
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(4);
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    executor.shutdownNow();
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      assertTrue(latch.await(5, TimeUnit.SECONDS));
+    } catch (InterruptedException e) {
+      throw new JedisException(e);
+    }
+  }
+
+  /**
+   * Primary read that only returns once the test is over, any hedge sent wins.
+   */
+  private Supplier<String> slow() {
+    return () -> {
+      await(release);
+      return "primary";
+    };
+  }
+
+  @Test
+  public void withoutHedgeRunsPrimaryOnCaller() {
+    HedgePolicy policy = HedgePolicy.fixedDelay(executor, 1, 1.0);
+    Thread caller = Thread.currentThread();
+    assertEquals("primary", policy.execute("get", () -> {
+      assertEquals(caller, Thread.currentThread());
+      return "primary";
+    }, null));
+    assertEquals(1, policy.getRequests());
+    assertEquals(0, policy.getHedges());
+  }
+
+  @Test
+  public void fastPrimaryIsNotHedged() {
+    HedgePolicy policy = HedgePolicy.fixedDelay(executor, 5000, 1.0);
+    assertEquals("primary", policy.execute("get", () -> "primary", () -> {
+      fail("hedge must not be sent");
+      return null;
+    }));
+    assertEquals(0, policy.getHedges());
+  }
+
+  @Test
+  public void hedgeWinsOverSlowPrimary() {
+    HedgePolicy policy = HedgePolicy.fixedDelay(executor, 1, 1.0);
+    assertEquals("hedge", policy.execute("get", slow(), () -> "hedge"));
+    assertEquals(1, policy.getHedges());
+    assertEquals(1, policy.getHedgeWins());
+  }
+
+  @Test
+  public void zeroBudgetAllowsOnlyInitialToken() {
+    HedgePolicy policy = HedgePolicy.fixedDelay(executor, 1, 0);
+    assertEquals("hedge", policy.execute("get", slow(), () -> "hedge"));
+    // out of tokens, waits for the primary
+    release.countDown();
+    assertEquals("primary", policy.execute("get", slow(), () -> "hedge"));
+    assertEquals(2, policy.getRequests());
+    assertEquals(1, policy.getHedges());
+  }
+
+  @Test
+  public void budgetRefillsPerRequest() {
+    HedgePolicy policy = HedgePolicy.fixedDelay(executor, 1, 0.5);
+    StringBuilder winners = new StringBuilder();
+    for (int i = 0; i < 6; i++) {
+      // each request deposits half a hedge: 1.5, 1.0, 0.5, 1.0, 0.5, 1.0 tokens before acquiring
+      CountDownLatch primaryDone = new CountDownLatch(1);
+      winners.append(policy.execute("get", () -> {
+        try {
+          primaryDone.await(50, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return "p";
+      }, () -> "h"));
+    }
+    assertEquals("hhphph", winners.toString());
+    assertEquals(4, policy.getHedges());
+  }
+
+  @Test
+  public void primaryWinsAfterHedgeSent() {
+    HedgePolicy policy = HedgePolicy.fixedDelay(executor, 1, 1.0);
+    CountDownLatch hedgeStarted = new CountDownLatch(1);
+    String result = policy.execute("get", () -> {
+      await(hedgeStarted);
+      return "primary";
+    }, () -> {
+      hedgeStarted.countDown();
+      await(release);
+      return "hedge";
+    });
+    assertEquals("primary", result);
+    assertEquals(1, policy.getHedges());
+    assertEquals(0, policy.getHedgeWins());
+  }
+
+  @Test
+  public void failedPrimaryWaitsForHedge() {
+    HedgePolicy policy = HedgePolicy.fixedDelay(executor, 1, 1.0);
+    CountDownLatch hedgeStarted = new CountDownLatch(1);
+    CountDownLatch primaryFailed = new CountDownLatch(1);
+    String result = policy.execute("get", () -> {
+      await(hedgeStarted);
+      primaryFailed.countDown();
+      throw new JedisException("primary failed");
+    }, () -> {
+      hedgeStarted.countDown();
+      await(primaryFailed);
+      return "hedge";
+    });
+    assertEquals("hedge", result);
+    assertEquals(1, policy.getHedgeWins());
+  }
+
+  @Test
+  public void bothFailedThrows() {
+    HedgePolicy policy = HedgePolicy.fixedDelay(executor, 1, 1.0);
+    CountDownLatch hedgeStarted = new CountDownLatch(1);
+    try {
+      policy.execute("get", () -> {
+        await(hedgeStarted);
+        throw new JedisException("primary failed");
+      }, () -> {
+        hedgeStarted.countDown();
+        throw new JedisException("hedge failed");
+      });
+      fail();
+    } catch (JedisException e) {
+      assertTrue(e.getMessage().endsWith("failed"));
+    }
+    assertEquals(0, policy.getHedgeWins());
+  }
+
+  @Test
+  public void primaryFailingBeforeDelayIsNotHedged() {
+    HedgePolicy policy = HedgePolicy.fixedDelay(executor, 5000, 1.0);
+    try {
+      policy.execute("get", () -> {
+        throw new JedisException("primary failed");
+      }, () -> "hedge");
+      fail();
+    } catch (JedisException e) {
+      assertEquals("primary failed", e.getMessage());
+    }
+    assertEquals(0, policy.getHedges());
+  }
+
+  @Test
+  public void percentileDelayNeedsSamples() {
+    HedgePolicy policy = HedgePolicy.p95Delay(executor, 1.0);
+    assertEquals(-1, policy.getDelayMillis("get"), 0);
+    // no delay known yet, the hedge is never sent
+    release.countDown();
+    assertEquals("primary", policy.execute("get", slow(), () -> "hedge"));
+    assertEquals(0, policy.getHedges());
+    for (int i = 0; i < 127; i++) {
+      policy.execute("get", () -> "primary", null);
+    }
+    assertTrue(policy.getDelayMillis("get") >= 0);
+    assertEquals(-1, policy.getDelayMillis("hget"), 0);
+  }
+}
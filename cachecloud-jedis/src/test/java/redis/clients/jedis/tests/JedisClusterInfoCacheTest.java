@@ -0,0 +1,194 @@
+package redis.clients.jedis.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.array;
+import static redis.clients.jedis.tests.utils.FakeRedisServer.slotRange;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisClusterInfoCache;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.tests.utils.FakeRedisServer;
+
+/**
+ * Slot table publication of {@link JedisClusterInfoCache} driven by fake CLUSTER SLOTS replies.
+ */
+public class JedisClusterInfoCacheTest {
+
+  private static final HostAndPort MASTER1 = new HostAndPort("127.0.0.1", 17001);
+  private static final HostAndPort MASTER2 = new HostAndPort("127.0.0.1", 17002);
+  private static final HostAndPort REPLICA1 = new HostAndPort("127.0.0.1", 17003);
+
+  private final AtomicReference<String> slotsReply = new AtomicReference<>();
+  private FakeRedisServer server;
+  private Jedis jedis;
+  private JedisClusterInfoCache cache;
+
+  @Before
+  public void setUp() throws IOException {
+    slotsReply.set(array(slotRange(0, 5460, MASTER1, REPLICA1), slotRange(5461, 16383, MASTER2)));
+    server = new FakeRedisServer((connection, command) -> slotsReply.get());
+    jedis = new Jedis(server.getHostAndPort().getHost(), server.getPort());
+    cache = new JedisClusterInfoCache(new GenericObjectPoolConfig(), 2000);
+    cache.discoverClusterNodesAndSlots(jedis);
+  }
+
+  @After
+  public void tearDown() {
+    cache.reset();
+    jedis.close();
+    server.close();
+  }
+
+  private JedisPool pool(HostAndPort node) {
+    return cache.getNode(JedisClusterInfoCache.getNodeKey(node));
+  }
+
+  @Test
+  public void discoverBuildsSlotsReplicasAndRanges() {
+    JedisPool master1 = pool(MASTER1);
+    JedisPool master2 = pool(MASTER2);
+    assertSame(master1, cache.getSlotPool(0));
+    assertSame(master1, cache.getSlotPool(5460));
+    assertSame(master2, cache.getSlotPool(5461));
+    assertSame(master2, cache.getSlotPool(16383));
+    assertArrayEquals(new JedisPool[] { pool(REPLICA1) }, cache.getSlotReplicaPools(100));
+    assertEquals(0, cache.getSlotReplicaPools(10000).length);
+
+    Map<JedisPool, List<int[]>> ranges = cache.getSlotRanges();
+    assertEquals(2, ranges.size());
+    assertArrayEquals(new int[] { 0, 5460 }, ranges.get(master1).get(0));
+    assertArrayEquals(new int[] { 5461, 16383 }, ranges.get(master2).get(0));
+    assertTrue(cache.isInSlots(master1));
+    assertFalse(cache.isInSlots(pool(REPLICA1)));
+  }
+
+  @Test
+  public void changedSlotsArePublishedAsNewTable() {
+    cache.setMinRefreshIntervalMillis(0);
+    Map<JedisPool, List<int[]>> before = cache.getSlotRanges();
+    slotsReply.set(array(slotRange(0, 99, MASTER2), slotRange(100, 5460, MASTER1, REPLICA1),
+      slotRange(5461, 16383, MASTER2)));
+    cache.renewClusterSlots(jedis);
+
+    Map<JedisPool, List<int[]>> after = cache.getSlotRanges();
+    assertSame(pool(MASTER2), cache.getSlotPool(0));
+    assertSame(pool(MASTER1), cache.getSlotPool(100));
+    assertEquals(2, after.get(pool(MASTER2)).size());
+    // readers holding the old snapshot keep a consistent view
+    assertEquals(1, before.get(pool(MASTER2)).size());
+    assertArrayEquals(new int[] { 0, 5460 }, before.get(pool(MASTER1)).get(0));
+  }
+
+  @Test
+  public void unchangedSlotsKeepCurrentTable() {
+    cache.setMinRefreshIntervalMillis(0);
+    Map<JedisPool, List<int[]>> before = cache.getSlotRanges();
+    cache.renewClusterSlots(jedis);
+    assertSame(before, cache.getSlotRanges());
+  }
+
+  @Test
+  public void replyWithoutSlotsKeepsCurrentTable() {
+    cache.setMinRefreshIntervalMillis(0);
+    Map<JedisPool, List<int[]>> before = cache.getSlotRanges();
+    slotsReply.set(array());
+    cache.renewClusterSlots(jedis);
+    assertSame(before, cache.getSlotRanges());
+    assertSame(pool(MASTER1), cache.getSlotPool(0));
+  }
+
+  @Test
+  public void refreshesWithinMinIntervalAreDropped() {
+    cache.setMinRefreshIntervalMillis(60000);
+    int before = server.count("CLUSTER");
+    slotsReply.set(array(slotRange(0, 16383, MASTER2)));
+    cache.renewClusterSlots(jedis);
+    cache.renewClusterSlots(jedis);
+    assertEquals(before, server.count("CLUSTER"));
+    assertSame(pool(MASTER1), cache.getSlotPool(0));
+
+    cache.setMinRefreshIntervalMillis(0);
+    cache.renewClusterSlots(jedis);
+    assertEquals(before + 1, server.count("CLUSTER"));
+    assertSame(pool(MASTER2), cache.getSlotPool(0));
+  }
+
+  @Test
+  public void noMinIntervalByDefault() {
+    assertEquals(0, cache.getMinRefreshIntervalMillis());
+    int before = server.count("CLUSTER");
+    cache.renewClusterSlots(jedis);
+    cache.renewClusterSlots(jedis);
+    assertEquals(before + 2, server.count("CLUSTER"));
+  }
+
+  @Test
+  public void failedRefreshDoesNotStartInterval() {
+    JedisClusterInfoCache fresh = new JedisClusterInfoCache(new GenericObjectPoolConfig(), 2000);
+    fresh.setMinRefreshIntervalMillis(60000);
+    // the node closes the connection
+    slotsReply.set(null);
+    fresh.renewClusterSlots(jedis);
+    assertNull(fresh.getSlotPool(0));
+
+    slotsReply.set(array(slotRange(0, 16383, MASTER2)));
+    try (Jedis other = new Jedis(server.getHostAndPort().getHost(), server.getPort())) {
+      int before = server.count("CLUSTER");
+      fresh.renewClusterSlots(other);
+      assertEquals(before + 1, server.count("CLUSTER"));
+      assertSame(fresh.getNode(JedisClusterInfoCache.getNodeKey(MASTER2)), fresh.getSlotPool(0));
+      // the successful refresh starts the interval
+      fresh.renewClusterSlots(other);
+      assertEquals(before + 1, server.count("CLUSTER"));
+    } finally {
+      fresh.reset();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void droppedRefreshRunsAtEndOfInterval() throws InterruptedException {
+    // the fake node serves slots itself, the trailing refresh has no connection to reuse
+    slotsReply.set(array(slotRange(0, 16383, server.getHostAndPort())));
+    cache.renewClusterSlots(jedis);
+    assertSame(pool(server.getHostAndPort()), cache.getSlotPool(0));
+
+    cache.setMinRefreshIntervalMillis(300);
+    slotsReply.set(array(slotRange(0, 99, MASTER2), slotRange(100, 16383, server.getHostAndPort())));
+    int before = server.count("CLUSTER");
+    cache.renewClusterSlots(jedis);
+    cache.renewClusterSlots(jedis);
+    cache.renewClusterSlots(jedis);
+    assertEquals(before, server.count("CLUSTER"));
+    assertSame(pool(server.getHostAndPort()), cache.getSlotPool(0));
+
+    while (cache.getSlotPool(0) != pool(MASTER2)) {
+      Thread.sleep(10);
+    }
+    // the dropped requests share one refresh
+    Thread.sleep(500);
+    assertEquals(before + 1, server.count("CLUSTER"));
+  }
+
+  @Test
+  public void resetClearsTable() {
+    cache.reset();
+    assertNull(cache.getSlotPool(0));
+    assertTrue(cache.getSlotRanges().isEmpty());
+  }
+}
@@ -0,0 +1,338 @@
+package redis.clients.jedis.tests.utils;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import redis.clients.jedis.HostAndPort;
+
+/**
+ * Minimal in-process RESP server for tests that must not depend on a running redis: every command
+ * received on any connection is passed to a {@link Handler} that returns the raw reply.
+ */
+public class FakeRedisServer implements Closeable {
+
+  public interface Handler {
+    /**
+     * @param connection sequence number of the connection, starting at 0
+     * @param command command name and arguments
+     * @return raw RESP reply, null to close the connection without replying
+     */
+    String reply(int connection, List<String> command);
+  }
+
+  private final ServerSocket serverSocket;
+  private final Handler handler;
+  private final AtomicInteger connections = new AtomicInteger();
+  private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+  private final Map<Integer, Socket> socketsByConnection = new ConcurrentHashMap<>();
+  private final List<Command> commands = Collections.synchronizedList(new ArrayList<Command>());
+  private volatile boolean closed;
+
+  public FakeRedisServer(Handler handler) throws IOException {
+    this.handler = handler;
+    this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    Thread acceptor = new Thread(this::accept, "FakeRedisServer-" + getPort());
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  public HostAndPort getHostAndPort() {
+    return new HostAndPort("127.0.0.1", getPort());
+  }
+
+  public int getConnectionCount() {
+    return connections.get();
+  }
+
+  /**
+   * @return all commands received so far, in arrival order
+   */
+  public List<List<String>> getCommands() {
+    List<List<String>> result = new ArrayList<>();
+    synchronized (commands) {
+      for (Command command : commands) {
+        result.add(command.args);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return commands received on one connection, in arrival order
+   */
+  public List<List<String>> getCommands(int connection) {
+    List<List<String>> result = new ArrayList<>();
+    synchronized (commands) {
+      for (Command command : commands) {
+        if (command.connection == connection) {
+          result.add(command.args);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Commands grouped by the client write they arrived in: a batch ends with a command that nothing
+   * else was sent after before its reply, e.g. the last command before a pipeline sync.
+   *
+   * @return batches in arrival order, each with its commands in order
+   */
+  public List<List<List<String>>> getBatches() {
+    List<List<List<String>>> result = new ArrayList<>();
+    Map<Integer, List<List<String>>> open = new HashMap<>();
+    Map<Integer, Integer> openBatch = new HashMap<>();
+    synchronized (commands) {
+      for (Command command : commands) {
+        List<List<String>> batch = open.get(command.connection);
+        if (batch == null || openBatch.get(command.connection) != command.batch) {
+          batch = new ArrayList<>();
+          result.add(batch);
+          open.put(command.connection, batch);
+          openBatch.put(command.connection, command.batch);
+        }
+        batch.add(command.args);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return number of received commands with the given name (case insensitive)
+   */
+  public int count(String name) {
+    int count = 0;
+    for (List<String> command : getCommands()) {
+      if (command.get(0).equalsIgnoreCase(name)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  public void clearCommands() {
+    commands.clear();
+  }
+
+  /**
+   * Writes an unsolicited frame (e.g. a pub/sub message) to one connection.
+   */
+  public void send(int connection, String raw) throws IOException {
+    Socket socket = socketsByConnection.get(connection);
+    if (socket == null) {
+      throw new IOException("no connection " + connection);
+    }
+    synchronized (socket) {
+      OutputStream out = socket.getOutputStream();
+      out.write(raw.getBytes(StandardCharsets.UTF_8));
+      out.flush();
+    }
+  }
+
+  /**
+   * Drops every client connection; the server keeps accepting new ones.
+   */
+  public void closeConnections() {
+    for (Socket socket : sockets) {
+      closeQuietly(socket);
+    }
+    sockets.clear();
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    closeQuietly(serverSocket);
+    closeConnections();
+  }
+
+  private void accept() {
+    while (!closed) {
+      try {
+        final Socket socket = serverSocket.accept();
+        final int connection = connections.getAndIncrement();
+        sockets.add(socket);
+        socketsByConnection.put(connection, socket);
+        Thread worker = new Thread(() -> serve(socket, connection), "FakeRedisServer-" + getPort() + "-" + connection);
+        worker.setDaemon(true);
+        worker.start();
+      } catch (IOException e) {
+        // closed
+      }
+    }
+  }
+
+  private void serve(Socket socket, int connection) {
+    try {
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      OutputStream out = socket.getOutputStream();
+      int batch = 0;
+      while (!closed) {
+        List<String> args = readCommand(in);
+        if (args == null) {
+          break;
+        }
+        commands.add(new Command(connection, batch, args));
+        // nothing else sent yet, the client waits for this reply before writing again
+        if (in.available() == 0) {
+          batch++;
+        }
+        String reply = handler.reply(connection, args);
+        if (reply == null) {
+          break;
+        }
+        synchronized (socket) {
+          out.write(reply.getBytes(StandardCharsets.UTF_8));
+          out.flush();
+        }
+      }
+    } catch (IOException e) {
+      // client went away
+    } finally {
+      socketsByConnection.remove(connection);
+      closeQuietly(socket);
+    }
+  }
+
+  private static List<String> readCommand(InputStream in) throws IOException {
+    int b = in.read();
+    if (b == -1) {
+      return null;
+    }
+    if (b != '*') {
+      throw new IOException("unexpected command type " + (char) b);
+    }
+    int count = Integer.parseInt(readLine(in));
+    List<String> args = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      if (in.read() != '$') {
+        throw new IOException("unexpected argument type");
+      }
+      int length = Integer.parseInt(readLine(in));
+      byte[] bytes = new byte[length];
+      int read = 0;
+      while (read < length) {
+        int n = in.read(bytes, read, length - read);
+        if (n == -1) {
+          return null;
+        }
+        read += n;
+      }
+      in.read();
+      in.read();
+      args.add(new String(bytes, StandardCharsets.UTF_8));
+    }
+    return args;
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    int b;
+    while ((b = in.read()) != '\r') {
+      if (b == -1) {
+        throw new IOException("end of stream");
+      }
+      sb.append((char) b);
+    }
+    in.read();
+    return sb.toString();
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      // ignore
+    }
+  }
+
+  public static String ok() {
+    return "+OK\r\n";
+  }
+
+  public static String simple(String value) {
+    return "+" + value + "\r\n";
+  }
+
+  public static String error(String message) {
+    return "-" + message + "\r\n";
+  }
+
+  public static String integer(long value) {
+    return ":" + value + "\r\n";
+  }
+
+  /**
+   * @param value null for a null bulk string
+   */
+  public static String bulk(String value) {
+    if (value == null) {
+      return "$-1\r\n";
+    }
+    return "$" + value.getBytes(StandardCharsets.UTF_8).length + "\r\n" + value + "\r\n";
+  }
+
+  /**
+   * @param elements encoded replies, null for a null array
+   */
+  public static String array(String... elements) {
+    if (elements == null) {
+      return "*-1\r\n";
+    }
+    StringBuilder sb = new StringBuilder("*").append(elements.length).append("\r\n");
+    for (String element : elements) {
+      sb.append(element);
+    }
+    return sb.toString();
+  }
+
+  public static String array(List<String> elements) {
+    return array(elements.toArray(new String[elements.size()]));
+  }
+
+  /**
+   * One entry of a CLUSTER SLOTS reply.
+   *
+   * @param nodes master first, then replicas
+   */
+  public static String slotRange(int start, int end, HostAndPort... nodes) {
+    List<String> elements = new ArrayList<>();
+    elements.add(integer(start));
+    elements.add(integer(end));
+    for (HostAndPort node : nodes) {
+      elements.add(array(bulk(node.getHost()), integer(node.getPort()), bulk("id" + node.getPort())));
+    }
+    return array(elements);
+  }
+
+  private static final class Command {
+    final int connection;
+    final int batch;
+    final List<String> args;
+
+    Command(int connection, int batch, List<String> args) {
+      this.connection = connection;
+      this.batch = batch;
+      this.args = Collections.unmodifiableList(args);
+    }
+  }
+}
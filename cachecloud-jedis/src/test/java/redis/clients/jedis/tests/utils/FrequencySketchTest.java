@@ -0,0 +1,82 @@
+package redis.clients.jedis.tests.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import redis.clients.jedis.util.FrequencySketch;
+
+public class FrequencySketchTest {
+
+  @Test
+  public void countsUpToFifteen() {
+    FrequencySketch sketch = new FrequencySketch(1024);
+    assertEquals(0, sketch.frequency(42));
+    for (int i = 1; i <= 20; i++) {
+      sketch.increment(42);
+      assertEquals(Math.min(i, 15), sketch.frequency(42));
+    }
+    assertEquals(0, sketch.frequency(43));
+  }
+
+  @Test
+  public void estimateNeverUndercounts() {
+    FrequencySketch sketch = new FrequencySketch(512);
+    int[] counts = new int[200];
+    for (int round = 0; round < 10; round++) {
+      for (int item = 0; item < counts.length; item++) {
+        if (item % 10 <= round) {
+          sketch.increment(item);
+          counts[item]++;
+        }
+      }
+    }
+    // 1100 increments stay below the sample size of 5120, no halving yet
+    for (int item = 0; item < counts.length; item++) {
+      assertTrue(sketch.frequency(item) >= counts[item]);
+    }
+  }
+
+  @Test
+  public void sampleSizeHalvesAllCounters() {
+    int capacity = 64;
+    FrequencySketch sketch = new FrequencySketch(capacity);
+    int[] tracked = { -1, -2, -3 };
+    for (int i = 0; i < tracked.length; i++) {
+      for (int j = 0; j < 15 - i * 4; j++) {
+        sketch.increment(tracked[i]);
+      }
+    }
+    int[] before = new int[tracked.length];
+    boolean halved = false;
+    // the reset happens once 10 * capacity increments changed a counter
+    for (int item = 0; item < 20 * capacity && !halved; item++) {
+      for (int i = 0; i < tracked.length; i++) {
+        before[i] = sketch.frequency(tracked[i]);
+      }
+      sketch.increment(item);
+      if (sketch.frequency(tracked[0]) < before[0]) {
+        halved = true;
+        for (int i = 0; i < tracked.length; i++) {
+          assertEquals(before[i] / 2, sketch.frequency(tracked[i]));
+        }
+        assertTrue("reset after " + item + " increments", item >= 10 * capacity - 15 - 11 - 7 - 1);
+      }
+    }
+    assertTrue(halved);
+  }
+
+  @Test
+  public void frequencyDecaysAfterRepeatedResets() {
+    FrequencySketch sketch = new FrequencySketch(8);
+    for (int i = 0; i < 15; i++) {
+      sketch.increment(-1);
+    }
+    // sample size is 80, enough traffic halves the stale counter down to zero
+    for (int item = 0; item < 2000; item++) {
+      sketch.increment(item);
+    }
+    assertTrue(sketch.frequency(-1) < 15);
+  }
+}
@@ -0,0 +1,130 @@
+package redis.clients.jedis.tests.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+import redis.clients.jedis.util.RedisOutputStream;
+
+public class RedisOutputStreamTest {
+
+  private static final int[] BUFFER_SIZES = { 21, 23, 32, 8192 };
+
+  private static final long[] LONGS = { 0, 1, -1, 9, 10, -10, 99, 100, 12345, -987654321,
+      Integer.MAX_VALUE, Integer.MIN_VALUE, 999999999999999999L, 1000000000000000000L,
+      Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1 };
+
+  private static byte[] writeUtf8(String str, int bufferSize, int offset) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    RedisOutputStream os = new RedisOutputStream(bytes, bufferSize);
+    // shift the string so multi-byte chars straddle the buffer end
+    for (int i = 0; i < offset; i++) {
+      os.write((byte) 'x');
+    }
+    os.writeUtf8(str);
+    os.flush();
+    byte[] written = bytes.toByteArray();
+    byte[] result = new byte[written.length - offset];
+    System.arraycopy(written, offset, result, 0, result.length);
+    return result;
+  }
+
+  private static void assertUtf8(String str) throws IOException {
+    byte[] expected = str.getBytes(StandardCharsets.UTF_8);
+    assertEquals(str, expected.length, RedisOutputStream.utf8Length(str));
+    for (int size : BUFFER_SIZES) {
+      for (int offset = 0; offset < 8; offset++) {
+        assertArrayEquals(str, expected, writeUtf8(str, size, offset));
+      }
+    }
+  }
+
+  @Test
+  public void utf8MatchesGetBytes() throws IOException {
+    assertUtf8("");
+    assertUtf8("plain ascii key:1");
+    assertUtf8("café üß");
+    assertUtf8("中文键名");
+    assertUtf8("\u0080߿ࠀ￿");
+  }
+
+  @Test
+  public void surrogatePairsAreFourBytes() throws IOException {
+    String emoji = "a😀b𐀀􏿿";
+    assertUtf8(emoji);
+    assertEquals(1 + 4 + 1 + 4 + 4, RedisOutputStream.utf8Length(emoji));
+  }
+
+  @Test
+  public void unpairedSurrogatesBecomeQuestionMark() throws IOException {
+    String[] strings = { "\ud83d", "\ude00", "a\ud83db", "\ude00\ud83d", "x\ud83d😀", "\ud83d\ud83d" };
+    for (String str : strings) {
+      assertUtf8(str);
+    }
+    assertArrayEquals(new byte[] { 'a', '?', 'b' }, writeUtf8("a\ud83db", 32, 0));
+  }
+
+  @Test
+  public void randomStrings() throws IOException {
+    Random random = new Random(20201017);
+    for (int i = 0; i < 5000; i++) {
+      char[] chars = new char[random.nextInt(64)];
+      for (int j = 0; j < chars.length; j++) {
+        switch (random.nextInt(5)) {
+          case 0:
+            chars[j] = (char) random.nextInt(0x80);
+            break;
+          case 1:
+            chars[j] = (char) (0x80 + random.nextInt(0x780));
+            break;
+          case 2:
+            // includes surrogates, paired only by chance
+            chars[j] = (char) (0x800 + random.nextInt(0xf800));
+            break;
+          default:
+            chars[j] = (char) (0xd800 + random.nextInt(0x800));
+            break;
+        }
+      }
+      String str = new String(chars);
+      byte[] expected = str.getBytes(StandardCharsets.UTF_8);
+      assertEquals(expected.length, RedisOutputStream.utf8Length(str));
+      assertArrayEquals(expected, writeUtf8(str, BUFFER_SIZES[i % BUFFER_SIZES.length], i % 7));
+    }
+  }
+
+  @Test
+  public void longs() throws IOException {
+    for (long value : LONGS) {
+      byte[] expected = String.valueOf(value).getBytes(StandardCharsets.US_ASCII);
+      assertEquals(expected.length, RedisOutputStream.longSize(value));
+
+      byte[] dest = new byte[expected.length + 2];
+      RedisOutputStream.putLong(value, expected.length + 1, dest);
+      byte[] put = new byte[expected.length];
+      System.arraycopy(dest, 1, put, 0, put.length);
+      assertArrayEquals(String.valueOf(value), expected, put);
+
+      for (int size : BUFFER_SIZES) {
+        for (int offset = 0; offset < size; offset += 3) {
+          ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+          RedisOutputStream os = new RedisOutputStream(bytes, size);
+          for (int i = 0; i < offset; i++) {
+            os.write((byte) 'x');
+          }
+          os.writeLong(value);
+          os.write((byte) 'y');
+          os.flush();
+          String written = new String(bytes.toByteArray(), StandardCharsets.US_ASCII);
+          assertEquals(String.valueOf(value) + "y", written.substring(offset));
+        }
+      }
+    }
+  }
+}